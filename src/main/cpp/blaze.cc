@@ -496,6 +496,9 @@ static vector<string> GetArgumentArray() {
   if (globals->options->watchfs) {
     result.push_back("--watchfs");
   }
+  if (globals->options->native_subprocesses) {
+    result.push_back("--experimental_native_subprocesses");
+  }
   if (globals->options->fatal_event_bus_exceptions) {
     result.push_back("--fatal_event_bus_exceptions");
   } else {
@@ -48,6 +48,7 @@ StartupOptions::StartupOptions(const string &product_name)
       oom_more_eagerly_threshold(100),
       write_command_log(true),
       watchfs(false),
+      native_subprocesses(false),
       allow_configurable_attributes(false),
       fatal_event_bus_exceptions(false),
       command_port(0),
@@ -219,6 +220,12 @@ blaze_exit_code::ExitCode StartupOptions::ProcessArg(
   } else if (GetNullaryOption(arg, "--nowatchfs")) {
     watchfs = false;
     option_sources["watchfs"] = rcfile;
+  } else if (GetNullaryOption(arg, "--experimental_native_subprocesses")) {
+    native_subprocesses = true;
+    option_sources["experimental_native_subprocesses"] = rcfile;
+  } else if (GetNullaryOption(arg, "--noexperimental_native_subprocesses")) {
+    native_subprocesses = false;
+    option_sources["experimental_native_subprocesses"] = rcfile;
   } else if ((value = GetUnaryOption(
       arg, next_arg, "--command_port")) != NULL) {
     if (!blaze_util::safe_strto32(value, &command_port) ||
@@ -173,6 +173,10 @@ class StartupOptions {
   // If true, Blaze will listen to OS-level file change notifications.
   bool watchfs;
 
+  // If true, the server starts subprocesses through JNI with vfork() instead
+  // of java.lang.ProcessBuilder.
+  bool native_subprocesses;
+
   // Temporary experimental flag that permits configurable attribute syntax
   // in BUILD files. This will be removed when configurable attributes is
   // a more stable feature.
@@ -49,6 +49,24 @@ import javax.annotation.Nullable;
  * otherwise lightweight, and should be constructed anew and discarded for each build request.
  */
 public class ActionCacheChecker {
+  /** Why an action could not be served from the action cache and has to be executed. */
+  public enum MissReason {
+    /** The action is volatile and execution was requested unconditionally. */
+    UNCONDITIONAL_EXECUTION,
+    /** There is no cache entry for the action, e.g. because it is new. */
+    NOT_CACHED,
+    /** The cache entry could not be read. */
+    CORRUPTED_CACHE_ENTRY,
+    /** One of the outputs of the action does not exist. */
+    MISSING_OUTPUT,
+    /** The digest of the inputs and outputs of the action has changed. */
+    DIFFERENT_FILES,
+    /** The action key, which includes the command line, has changed. */
+    DIFFERENT_ACTION_KEY,
+    /** The client environment variables used by the action have changed. */
+    DIFFERENT_ENVIRONMENT,
+  }
+
   private final ActionCache actionCache;
   private final Predicate<? super Action> executionFilter;
   private final ArtifactResolver artifactResolver;
@@ -204,11 +222,13 @@ public class ActionCacheChecker {
       actionInputs = resolvedCacheArtifacts;
     }
     ActionCache.Entry entry = getCacheEntry(action);
-    if (mustExecute(action, entry, handler, metadataHandler, actionInputs, clientEnv)) {
+    MissReason missReason =
+        mustExecute(action, entry, handler, metadataHandler, actionInputs, clientEnv);
+    if (missReason != null) {
       if (entry != null) {
         removeCacheEntry(action);
       }
-      return new Token(getKeyString(action));
+      return new Token(getKeyString(action), missReason);
     }
 
     if (!inputsKnown) {
@@ -217,7 +237,11 @@ public class ActionCacheChecker {
     return null;
   }
 
-  protected boolean mustExecute(
+  /**
+   * Returns why the action must be executed, or null if the cache entry is up to date.
+   */
+  @Nullable
+  protected MissReason mustExecute(
       Action action,
       @Nullable ActionCache.Entry entry,
       EventHandler handler,
@@ -228,32 +252,46 @@ public class ActionCacheChecker {
     if (unconditionalExecution(action)) {
       Preconditions.checkState(action.isVolatile());
       reportUnconditionalExecution(handler, action);
-      return true; // must execute - unconditional execution is requested.
+      return MissReason.UNCONDITIONAL_EXECUTION;
     }
     if (entry == null) {
       reportNewAction(handler, action);
-      return true; // must execute -- no cache entry (e.g. first build)
+      return MissReason.NOT_CACHED; // e.g. first build
     }
 
     if (entry.isCorrupted()) {
       reportCorruptedCacheEntry(handler, action);
-      return true; // cache entry is corrupted - must execute
+      return MissReason.CORRUPTED_CACHE_ENTRY;
     } else if (validateArtifacts(entry, action, actionInputs, metadataHandler, true)) {
       reportChanged(handler, action);
-      return true; // files have changed
+      // The digest covers inputs and outputs together, so only a missing output can be told
+      // apart. The metadata of the outputs was just looked up, so this is cheap.
+      return hasMissingOutput(action, metadataHandler)
+          ? MissReason.MISSING_OUTPUT
+          : MissReason.DIFFERENT_FILES;
     } else if (!entry.getActionKey().equals(action.getKey())) {
       reportCommand(handler, action);
-      return true; // must execute -- action key is different
+      return MissReason.DIFFERENT_ACTION_KEY;
     }
     Map<String, String> usedClientEnv = computeUsedClientEnv(action, clientEnv);
     if (!entry.getUsedClientEnvDigest().equals(DigestUtils.fromEnv(usedClientEnv))) {
       reportClientEnv(handler, action, usedClientEnv);
-      return true; // different values taken from the environment -- must execute
+      return MissReason.DIFFERENT_ENVIRONMENT;
     }
 
 
     entry.getFileDigest();
-    return false; // cache hit
+    return null; // cache hit
+  }
+
+  private static boolean hasMissingOutput(Action action, MetadataHandler metadataHandler) {
+    for (Artifact output : action.getOutputs()) {
+      if (!metadataHandler.artifactOmitted(output)
+          && metadataHandler.getMetadataMaybe(output) == null) {
+        return true;
+      }
+    }
+    return false;
   }
 
   public void afterExecution(
@@ -404,9 +442,16 @@ public class ActionCacheChecker {
   /** Wrapper for all context needed by the ActionCacheChecker to handle a single action. */
   public static final class Token {
     private final String cacheKey;
+    private final MissReason missReason;
 
-    private Token(String cacheKey) {
+    private Token(String cacheKey, MissReason missReason) {
       this.cacheKey = Preconditions.checkNotNull(cacheKey);
+      this.missReason = Preconditions.checkNotNull(missReason);
+    }
+
+    /** Returns why the action has to be executed. */
+    public MissReason getMissReason() {
+      return missReason;
     }
   }
 }
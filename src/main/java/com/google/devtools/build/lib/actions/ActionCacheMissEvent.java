@@ -0,0 +1,40 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.actions;
+
+import com.google.devtools.build.lib.actions.ActionCacheChecker.MissReason;
+
+/**
+ * This event is fired during the build if an action was not up to date in the action cache and
+ * has to be executed.
+ */
+public class ActionCacheMissEvent {
+
+  private final Action action;
+  private final MissReason reason;
+
+  public ActionCacheMissEvent(Action action, MissReason reason) {
+    this.action = action;
+    this.reason = reason;
+  }
+
+  public Action getAction() {
+    return action;
+  }
+
+  public MissReason getReason() {
+    return reason;
+  }
+}
@@ -19,6 +19,7 @@ import com.google.common.eventbus.Subscribe;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
+import com.google.devtools.build.lib.profiler.MetricsRegistry;
 import com.google.devtools.build.lib.util.BlazeClock;
 import com.google.devtools.build.lib.util.Clock;
 import com.google.devtools.build.lib.util.Pair;
@@ -48,6 +49,10 @@ public final class ActionExecutionStatusReporter {
   // Maximum number of lines to output per each status category before truncation.
   private static final int MAX_LINES = 10;
 
+  private static final String IN_FLIGHT_GAUGE = "bazel_actions_in_flight";
+  private static final String PREPARING_GAUGE = "bazel_actions_preparing";
+  private static final String RUNNING_GAUGE = "bazel_actions_running";
+
   private final EventHandler eventHandler;
   private final Executor executor;
   private final EventBus eventBus;
@@ -80,6 +85,7 @@ public final class ActionExecutionStatusReporter {
         eventBus, clock == null ? BlazeClock.instance() : clock);
     if (eventBus != null) {
       eventBus.register(result);
+      result.registerGauges();
     }
     return result;
   }
@@ -95,7 +101,46 @@ public final class ActionExecutionStatusReporter {
   public void unregisterFromEventBus() {
     if (eventBus != null) {
       eventBus.unregister(this);
+      MetricsRegistry metrics = MetricsRegistry.instance();
+      metrics.removeGauge(IN_FLIGHT_GAUGE);
+      metrics.removeGauge(PREPARING_GAUGE);
+      metrics.removeGauge(RUNNING_GAUGE);
+    }
+  }
+
+  private void registerGauges() {
+    MetricsRegistry metrics = MetricsRegistry.instance();
+    metrics.registerGauge(IN_FLIGHT_GAUGE, "Actions being prepared, scheduled or executed.",
+        new MetricsRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return getCount();
+          }
+        });
+    metrics.registerGauge(PREPARING_GAUGE, "Actions waiting for their execution to start.",
+        new MetricsRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return countWithStatusPrefix(ActionStatusMessage.PREPARING);
+          }
+        });
+    metrics.registerGauge(RUNNING_GAUGE, "Actions being executed by a spawn strategy.",
+        new MetricsRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return countWithStatusPrefix("Running");
+          }
+        });
+  }
+
+  private long countWithStatusPrefix(String prefix) {
+    long count = 0;
+    for (Pair<String, Long> status : actionStatus.values()) {
+      if (status.first.startsWith(prefix)) {
+        count++;
+      }
     }
+    return count;
   }
 
   private void setStatus(ActionExecutionMetadata action, String message) {
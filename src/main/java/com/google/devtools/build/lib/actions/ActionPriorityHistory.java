@@ -0,0 +1,230 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.actions;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.eventbus.Subscribe;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.util.BlazeClock;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers, for every action executed in previous builds, the length of the longest chain of
+ * actions that had to run after it (including itself). The {@link ResourceManager} uses this as
+ * a scheduling priority, so that actions on the critical path of the previous build are started
+ * before actions that other actions are not waiting for.
+ *
+ * <p>Actions are identified by the exec path of their primary output. The dependency graph of
+ * the current build is recorded from action events posted on the event bus; after the build,
+ * {@link #save} computes the downstream path lengths and merges them into the history.
+ *
+ * <p>An incremental build only sees the actions it re-evaluated, so the paths it computes can be
+ * much shorter than those of the full build before it. A priority therefore only drops gradually
+ * when the action is seen on a shorter path. The history keeps the highest priorities only, up to
+ * a fixed number of actions.
+ */
+@ThreadSafe
+public class ActionPriorityHistory {
+
+  private static final int DEFAULT_MAX_ENTRIES = 200000;
+
+  // A previous priority loses 1 / PRIORITY_DECAY_DIVISOR of its value for every build that finds
+  // a shorter path for the action.
+  private static final long PRIORITY_DECAY_DIVISOR = 4;
+
+  /** An action that finished during the current build. */
+  private static final class Node {
+    final String key;
+    final long elapsedMillis;
+    final List<Node> deps;
+    // Longest chain of actions depending on this one, excluding this action. Only accessed while
+    // computing priorities, which is single-threaded.
+    long downstreamMillis;
+
+    Node(String key, long elapsedMillis, List<Node> deps) {
+      this.key = key;
+      this.elapsedMillis = elapsedMillis;
+      this.deps = deps;
+    }
+  }
+
+  /** Priorities from previous builds, keyed by primary output exec path. */
+  private final Map<String, Long> priorities = new ConcurrentHashMap<>();
+
+  /** Nodes of the current build, by output artifact. */
+  private final Map<Artifact, Node> outputToNode = new ConcurrentHashMap<>();
+
+  /** Nodes of the current build, in completion order. */
+  private final ConcurrentLinkedDeque<Node> completed = new ConcurrentLinkedDeque<>();
+
+  private final int maxEntries;
+
+  public ActionPriorityHistory() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  @VisibleForTesting
+  ActionPriorityHistory(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Returns the scheduling priority of the given action: the historical length of the longest
+   * path from it to the end of the build, in milliseconds, or 0 if the action is unknown.
+   */
+  public long getPriority(ActionExecutionMetadata action) {
+    Long priority = priorities.get(action.getPrimaryOutput().getExecPathString());
+    return priority == null ? 0 : priority;
+  }
+
+  /** Forgets the dependency graph recorded for the previous build. */
+  public void startBuild() {
+    outputToNode.clear();
+    completed.clear();
+  }
+
+  @Subscribe
+  public void actionComplete(ActionCompletionEvent event) {
+    addNode(event.getAction(), BlazeClock.nanoTime() - event.getRelativeActionStartTime());
+  }
+
+  @Subscribe
+  public void actionCached(CachedActionEvent event) {
+    addNode(event.getAction(), BlazeClock.nanoTime() - event.getNanoTimeStart());
+  }
+
+  @Subscribe
+  public void middlemanAction(ActionMiddlemanEvent event) {
+    addNode(event.getAction(), BlazeClock.nanoTime() - event.getNanoTimeStart());
+  }
+
+  private void addNode(Action action, long elapsedNanos) {
+    List<Node> deps = new ArrayList<>();
+    for (Artifact input : action.getInputs()) {
+      Node dep = outputToNode.get(input);
+      if (dep != null) {
+        deps.add(dep);
+      }
+    }
+    Node node = new Node(action.getPrimaryOutput().getExecPathString(),
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos), deps);
+    for (Artifact output : action.getOutputs()) {
+      outputToNode.putIfAbsent(output, node);
+    }
+    completed.add(node);
+  }
+
+  /**
+   * Computes the downstream path lengths of the actions of the current build and merges them into
+   * the priorities. Since an action always completes after all of its dependencies, processing
+   * the actions in reverse completion order visits all consumers of an action before the action.
+   */
+  @VisibleForTesting
+  void computePriorities() {
+    for (Node node : completed) {
+      node.downstreamMillis = 0;
+    }
+    Map<String, Long> pathMillisByKey = new HashMap<>();
+    for (Iterator<Node> it = completed.descendingIterator(); it.hasNext(); ) {
+      Node node = it.next();
+      long pathMillis = node.elapsedMillis + node.downstreamMillis;
+      Long other = pathMillisByKey.get(node.key);
+      if (other == null || other < pathMillis) {
+        pathMillisByKey.put(node.key, pathMillis);
+      }
+      for (Node dep : node.deps) {
+        dep.downstreamMillis = Math.max(dep.downstreamMillis, pathMillis);
+      }
+    }
+    for (Map.Entry<String, Long> entry : pathMillisByKey.entrySet()) {
+      Long previous = priorities.get(entry.getKey());
+      long priority = entry.getValue();
+      if (previous != null) {
+        priority = Math.max(priority, previous - previous / PRIORITY_DECAY_DIVISOR);
+      }
+      priorities.put(entry.getKey(), priority);
+    }
+    trim();
+  }
+
+  /** Drops the lowest priorities until at most {@code maxEntries} remain. */
+  private void trim() {
+    int excess = priorities.size() - maxEntries;
+    if (excess <= 0) {
+      return;
+    }
+    long[] values = new long[priorities.size()];
+    int i = 0;
+    for (Long value : priorities.values()) {
+      if (i == values.length) {
+        break;
+      }
+      values[i++] = value;
+    }
+    Arrays.sort(values, 0, i);
+    long threshold = values[Math.min(excess, i) - 1];
+    for (Iterator<Long> it = priorities.values().iterator(); it.hasNext() && excess > 0; ) {
+      if (it.next() <= threshold) {
+        it.remove();
+        excess--;
+      }
+    }
+  }
+
+  /** Loads priorities saved by {@link #save}. A missing file is not an error. */
+  public void load(Path file) throws IOException {
+    if (!file.exists()) {
+      return;
+    }
+    for (String line : FileSystemUtils.readLines(file, StandardCharsets.UTF_8)) {
+      List<String> fields = Splitter.on('\t').splitToList(line);
+      if (fields.size() != 2) {
+        continue;
+      }
+      try {
+        priorities.put(fields.get(0), Long.parseLong(fields.get(1)));
+      } catch (NumberFormatException e) {
+        // Ignore the line; it will be rewritten on the next save.
+      }
+    }
+    trim();
+  }
+
+  /**
+   * Updates the priorities with the actions of the current build and saves them to {@code file}.
+   */
+  public void save(Path file) throws IOException {
+    computePriorities();
+    startBuild();
+    List<String> lines = new ArrayList<>(priorities.size());
+    for (Map.Entry<String, Long> entry : priorities.entrySet()) {
+      lines.add(entry.getKey() + "\t" + entry.getValue());
+    }
+    FileSystemUtils.writeLinesAs(file, StandardCharsets.UTF_8, lines);
+  }
+}
@@ -20,13 +20,17 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.eventbus.EventBus;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
 import com.google.devtools.build.lib.profiler.AutoProfiler;
+import com.google.devtools.build.lib.profiler.MetricsRegistry;
+import com.google.devtools.build.lib.profiler.MetricsRegistry.Histogram;
 import com.google.devtools.build.lib.profiler.ProfilerTask;
-import com.google.devtools.build.lib.util.Pair;
+import com.google.devtools.build.lib.util.BlazeClock;
 import com.google.devtools.build.lib.util.Preconditions;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.concurrent.CountDownLatch;
+import javax.annotation.Nullable;
 
 /**
  * Used to keep track of resources consumed by the Blaze action execution threads and throttle them
@@ -55,6 +59,13 @@ import java.util.concurrent.CountDownLatch;
  * guarantees that at least one thread will always be able to acquire any amount of requested
  * resources (even if it is greater than amount of available resources). Therefore, assuming that
  * threads correctly release acquired resources, Blaze will never be fully blocked.
+ *
+ * <p>If a {@link ResourceUsageEstimator} is set, the CPU and RAM components of requested resource
+ * sets are replaced by the measured usage of previous executions of similar actions.
+ *
+ * <p>Threads waiting for resources are served in order of decreasing priority. Unless an
+ * {@link ActionPriorityHistory} is set, all requests have the same priority and are served in
+ * the order in which they arrived.
  */
 @ThreadSafe
 public class ResourceManager {
@@ -118,9 +129,27 @@ public class ResourceManager {
   private static final double MIN_NECESSARY_RAM_RATIO = 1.0;
   private static final double MIN_NECESSARY_IO_RATIO = 1.0;
 
-  // List of blocked threads. Associated CountDownLatch object will always
-  // be initialized to 1 during creation in the acquire() method.
-  private final List<Pair<ResourceSet, CountDownLatch>> requestList;
+  private static final Histogram RESOURCE_WAIT_TIME = MetricsRegistry.instance().histogram(
+      "bazel_resource_wait_seconds",
+      "Time actions waited for local resources, zero if they were available immediately.");
+
+  /** A request of a blocked thread for resources. */
+  private static final class ResourceRequest {
+    final ResourceSet resourceSet;
+    final long priority;
+    // Always initialized to 1; counted down when the resources are granted or the request is
+    // cancelled.
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    ResourceRequest(ResourceSet resourceSet, long priority) {
+      this.resourceSet = resourceSet;
+      this.priority = priority;
+    }
+  }
+
+  // List of blocked threads, ordered by decreasing priority and, for equal priorities, by
+  // arrival.
+  private final List<ResourceRequest> requestList;
 
   // The total amount of resources on the local host. Must be set by
   // an explicit call to setAvailableResources(), often using
@@ -149,6 +178,14 @@ public class ResourceManager {
   public static final int DEFAULT_RAM_UTILIZATION_PERCENTAGE = 67;
   private int ramUtilizationPercentage = DEFAULT_RAM_UTILIZATION_PERCENTAGE;
 
+  // Measured resource usage used to correct the static estimates of the actions, or null if
+  // static estimates should be used as is.
+  @Nullable private volatile ResourceUsageEstimator resourceUsageEstimator;
+
+  // Historical critical path data used to order waiting requests, or null if requests should be
+  // served in arrival order.
+  @Nullable private volatile ActionPriorityHistory priorityHistory;
+
   private ResourceManager() {
     requestList = new LinkedList<>();
   }
@@ -166,9 +203,9 @@ public class ResourceManager {
     usedRam = 0;
     usedIo = 0;
     usedLocalTestCount = 0;
-    for (Pair<ResourceSet, CountDownLatch> request : requestList) {
+    for (ResourceRequest request : requestList) {
       // CountDownLatch can be set only to 0 or 1.
-      request.second.countDown();
+      request.latch.countDown();
     }
     requestList.clear();
   }
@@ -195,6 +232,46 @@ public class ResourceManager {
     ramUtilizationPercentage = percentage;
   }
 
+  /**
+   * Sets the estimator used to correct requested resource sets, or null to use the requested
+   * resource sets unchanged.
+   */
+  public void setResourceUsageEstimator(@Nullable ResourceUsageEstimator estimator) {
+    resourceUsageEstimator = estimator;
+  }
+
+  /**
+   * Returns the estimator that measured resource usage should be reported to, or null if
+   * measurements are not used.
+   */
+  @Nullable
+  public ResourceUsageEstimator getResourceUsageEstimator() {
+    return resourceUsageEstimator;
+  }
+
+  /**
+   * Sets the history used to prioritize waiting requests, or null to serve them in arrival order.
+   */
+  public void setPriorityHistory(@Nullable ActionPriorityHistory history) {
+    priorityHistory = history;
+  }
+
+  /** Returns the history used to prioritize waiting requests, or null if there is none. */
+  @Nullable
+  public ActionPriorityHistory getPriorityHistory() {
+    return priorityHistory;
+  }
+
+  private long getPriority(ActionExecutionMetadata owner) {
+    ActionPriorityHistory history = priorityHistory;
+    return history == null ? 0 : history.getPriority(owner);
+  }
+
+  private ResourceSet adjust(ActionExecutionMetadata owner, ResourceSet resources) {
+    ResourceUsageEstimator estimator = resourceUsageEstimator;
+    return estimator == null ? resources : estimator.adjust(owner, resources);
+  }
+
   /**
    * Acquires requested resource set. Will block if resource is not available.
    * NB! This method must be thread-safe!
@@ -205,12 +282,14 @@ public class ResourceManager {
         resources, "acquireResources called with resources == NULL during %s", owner);
     Preconditions.checkState(
         !threadHasResources(), "acquireResources with existing resource lock during %s", owner);
+    resources = adjust(owner, resources);
 
     AutoProfiler p = profiled(owner, ProfilerTask.ACTION_LOCK);
+    long startTime = BlazeClock.nanoTime();
     CountDownLatch latch = null;
     try {
       waiting(owner);
-      latch = acquire(resources);
+      latch = acquire(resources, getPriority(owner));
       if (latch != null) {
         latch.await();
       }
@@ -235,6 +314,9 @@ public class ResourceManager {
     // Profile acquisition only if it waited for resource to become available.
     if (latch != null) {
       p.complete();
+      RESOURCE_WAIT_TIME.recordNanos(BlazeClock.nanoTime() - startTime);
+    } else {
+      RESOURCE_WAIT_TIME.recordNanos(0);
     }
 
     return new ResourceHandle(this, owner, resources);
@@ -250,6 +332,7 @@ public class ResourceManager {
         resources, "tryAcquire called with resources == NULL during %s", owner);
     Preconditions.checkState(
         !threadHasResources(), "tryAcquire with existing resource lock during %s", owner);
+    resources = adjust(owner, resources);
 
     boolean acquired = false;
 
@@ -341,15 +424,21 @@ public class ResourceManager {
     }
   }
 
-  private synchronized CountDownLatch acquire(ResourceSet resources) {
+  private synchronized CountDownLatch acquire(ResourceSet resources, long priority) {
     if (areResourcesAvailable(resources)) {
       incrementResources(resources);
       return null;
     }
-    Pair<ResourceSet, CountDownLatch> request =
-      new Pair<>(resources, new CountDownLatch(1));
-    requestList.add(request);
-    return request.second;
+    ResourceRequest request = new ResourceRequest(resources, priority);
+    ListIterator<ResourceRequest> iterator = requestList.listIterator(requestList.size());
+    while (iterator.hasPrevious()) {
+      if (iterator.previous().priority >= priority) {
+        iterator.next();
+        break;
+      }
+    }
+    iterator.add(request);
+    return request.latch;
   }
 
   private synchronized boolean release(ResourceSet resources) {
@@ -382,13 +471,13 @@ public class ResourceManager {
    * Tries to unblock one or more waiting threads if there are sufficient resources available.
    */
   private synchronized void processWaitingThreads() {
-    Iterator<Pair<ResourceSet, CountDownLatch>> iterator = requestList.iterator();
+    Iterator<ResourceRequest> iterator = requestList.iterator();
     while (iterator.hasNext()) {
-      Pair<ResourceSet, CountDownLatch> request = iterator.next();
-      if (request.second.getCount() != 0) {
-        if (areResourcesAvailable(request.first)) {
-          incrementResources(request.first);
-          request.second.countDown();
+      ResourceRequest request = iterator.next();
+      if (request.latch.getCount() != 0) {
+        if (areResourcesAvailable(request.resourceSet)) {
+          incrementResources(request.resourceSet);
+          request.latch.countDown();
           iterator.remove();
         }
       } else {
@@ -0,0 +1,195 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.actions;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.util.Preconditions;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps moving estimates of the resources actually consumed by locally executed actions, so that
+ * the {@link ResourceManager} can admit actions based on measurements instead of the static
+ * {@link ResourceSet} estimates hardcoded in the rules.
+ *
+ * <p>Measurements are tracked both per mnemonic and per (mnemonic, owner label) pair. The more
+ * specific estimate is preferred when it exists; the mnemonic-wide one is used for actions that
+ * have not run locally before. Estimates can be saved to and loaded from a file, typically in the
+ * output base, so that they survive server restarts.
+ */
+@ThreadSafe
+public class ResourceUsageEstimator {
+
+  /** Weight given to each new measurement in the exponential moving average. */
+  private static final double SMOOTHING_FACTOR = 0.3;
+
+  /**
+   * Lower bound for the CPU estimate. Actions that spend most of their time waiting still occupy a
+   * job slot, so they should never be considered free.
+   */
+  private static final double MIN_CPU_USAGE = 0.1;
+
+  /** A moving average of the CPU and memory usage of a group of actions. */
+  @VisibleForTesting
+  static final class Estimate {
+    final double cpuUsage;
+    final double memoryMb;
+    final int samples;
+
+    Estimate(double cpuUsage, double memoryMb, int samples) {
+      this.cpuUsage = cpuUsage;
+      this.memoryMb = memoryMb;
+      this.samples = samples;
+    }
+
+    Estimate update(double newCpuUsage, double newMemoryMb) {
+      return new Estimate(
+          cpuUsage + SMOOTHING_FACTOR * (newCpuUsage - cpuUsage),
+          // Be pessimistic about memory: swapping is much more expensive than an idle core.
+          Math.max(newMemoryMb, memoryMb + SMOOTHING_FACTOR * (newMemoryMb - memoryMb)),
+          samples + 1);
+    }
+  }
+
+  private final Map<String, Estimate> estimates = new ConcurrentHashMap<>();
+
+  /**
+   * Records the resources consumed by one execution of a local spawn.
+   *
+   * @param owner the action the spawn was executed for
+   * @param cpuTimeMillis user plus system CPU time of the spawn and all of its children
+   * @param wallTimeMillis elapsed wall time of the spawn
+   * @param peakMemoryMb the peak resident set size of the spawn's process tree
+   */
+  public void recordUsage(
+      ActionExecutionMetadata owner, long cpuTimeMillis, long wallTimeMillis, double peakMemoryMb) {
+    if (wallTimeMillis <= 0) {
+      return;
+    }
+    double cpuUsage = Math.max(MIN_CPU_USAGE, (double) cpuTimeMillis / wallTimeMillis);
+    update(mnemonicKey(owner), cpuUsage, peakMemoryMb);
+    String targetKey = targetKey(owner);
+    if (targetKey != null) {
+      update(targetKey, cpuUsage, peakMemoryMb);
+    }
+  }
+
+  private void update(String key, double cpuUsage, double memoryMb) {
+    while (true) {
+      Estimate previous = estimates.get(key);
+      if (previous == null) {
+        if (estimates.putIfAbsent(key, new Estimate(cpuUsage, memoryMb, 1)) == null) {
+          return;
+        }
+      } else if (estimates.replace(key, previous, previous.update(cpuUsage, memoryMb))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the resource set that should be requested for {@code owner}. The CPU and memory
+   * components of {@code staticEstimate} are replaced by measured values if any are available;
+   * I/O and local test count are passed through unchanged.
+   */
+  public ResourceSet adjust(ActionExecutionMetadata owner, ResourceSet staticEstimate) {
+    if (staticEstimate == ResourceSet.ZERO || staticEstimate.getLocalTestCount() > 0) {
+      // Tests are throttled by --local_test_jobs, not by their measured usage.
+      return staticEstimate;
+    }
+    Estimate estimate = null;
+    String targetKey = targetKey(owner);
+    if (targetKey != null) {
+      estimate = estimates.get(targetKey);
+    }
+    if (estimate == null) {
+      estimate = estimates.get(mnemonicKey(owner));
+    }
+    if (estimate == null) {
+      return staticEstimate;
+    }
+    return ResourceSet.create(
+        estimate.memoryMb,
+        estimate.cpuUsage,
+        staticEstimate.getIoUsage(),
+        staticEstimate.getLocalTestCount());
+  }
+
+  @VisibleForTesting
+  @Nullable
+  Estimate getEstimate(String key) {
+    return estimates.get(key);
+  }
+
+  private static String mnemonicKey(ActionExecutionMetadata owner) {
+    return owner.getMnemonic();
+  }
+
+  @Nullable
+  private static String targetKey(ActionExecutionMetadata owner) {
+    ActionOwner actionOwner = owner.getOwner();
+    if (actionOwner == null || actionOwner.getLabel() == null) {
+      return null;
+    }
+    return owner.getMnemonic() + " " + actionOwner.getLabel();
+  }
+
+  /**
+   * Loads previously saved estimates from {@code file}, replacing any estimate with the same key.
+   * Malformed lines are ignored; a missing file is not an error.
+   */
+  public void load(Path file) throws IOException {
+    if (!file.exists()) {
+      return;
+    }
+    for (String line : FileSystemUtils.readLines(file, StandardCharsets.UTF_8)) {
+      List<String> fields = Splitter.on('\t').splitToList(line);
+      if (fields.size() != 4) {
+        continue;
+      }
+      try {
+        estimates.put(
+            fields.get(0),
+            new Estimate(
+                Double.parseDouble(fields.get(1)),
+                Double.parseDouble(fields.get(2)),
+                Integer.parseInt(fields.get(3))));
+      } catch (NumberFormatException e) {
+        // Ignore the line; it will be rewritten on the next save.
+      }
+    }
+  }
+
+  /** Saves all estimates to {@code file}, overwriting it. */
+  public void save(Path file) throws IOException {
+    Preconditions.checkNotNull(file);
+    List<String> lines = new ArrayList<>(estimates.size());
+    for (Map.Entry<String, Estimate> entry : estimates.entrySet()) {
+      Estimate estimate = entry.getValue();
+      lines.add(entry.getKey() + "\t" + estimate.cpuUsage + "\t" + estimate.memoryMb + "\t"
+          + estimate.samples);
+    }
+    FileSystemUtils.writeLinesAs(file, StandardCharsets.UTF_8, lines);
+  }
+}
@@ -192,6 +192,15 @@ public class BuildView {
                 + " or -1 indicating the maximum possible window.")
     public long versionWindowForDirtyNodeGc;
 
+    @Option(name = "experimental_incremental_conflict_check",
+            defaultValue = "false",
+            category = "experimental",
+            help = "Keep the registered actions and output paths between builds, so that the check"
+                + " for conflicting actions only examines the targets analyzed or invalidated"
+                + " since the last one. Makes incremental analysis faster at the cost of keeping"
+                + " a copy of the action graph in memory.")
+    public boolean incrementalConflictCheck;
+
     @Deprecated
     @Option(
       name = "experimental_interleave_loading_and_analysis",
@@ -484,7 +493,12 @@ public class BuildView {
     try {
       skyframeAnalysisResult =
           skyframeBuildView.configureTargets(
-              eventHandler, topLevelCtKeys, aspectKeys, eventBus, viewOptions.keepGoing);
+              eventHandler,
+              topLevelCtKeys,
+              aspectKeys,
+              eventBus,
+              viewOptions.keepGoing,
+              viewOptions.incrementalConflictCheck);
       setArtifactRoots(skyframeAnalysisResult.getPackageRoots());
     } finally {
       skyframeBuildView.clearInvalidatedConfiguredTargets();
@@ -18,6 +18,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.analysis.RuleConfiguredTarget.Mode;
 import com.google.devtools.build.lib.cmdline.Label;
@@ -40,10 +41,13 @@ import com.google.devtools.build.lib.vfs.PathFragment;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
@@ -476,6 +480,88 @@ public final class Runfiles {
     return builder.build();
   }
 
+  /**
+   * Returns the same entries as {@link #getRunfilesInputs}, sorted by path.
+   *
+   * <p>Runfiles that consist only of artifacts, which is the common case for large runfiles trees,
+   * are not turned into a series of maps keyed by path: their entries are put into a single list,
+   * sorted, and de-duplicated. If that finds two different artifacts for the same path or an
+   * entry below another one, the entries are computed by {@link #getRunfilesInputs} after all, so
+   * that conflicts and obscured entries are reported in the same way.
+   */
+  public List<Map.Entry<PathFragment, Artifact>> getSortedRunfilesInputs(
+      EventHandler eventHandler, Location location) throws IOException {
+    List<Map.Entry<PathFragment, Artifact>> entries = getSortedArtifactEntries();
+    if (entries == null) {
+      entries = new ArrayList<>(getRunfilesInputs(eventHandler, location).entrySet());
+      Collections.sort(entries, ENTRY_BY_PATH);
+    }
+    return entries;
+  }
+
+  private static final Comparator<Map.Entry<PathFragment, Artifact>> ENTRY_BY_PATH =
+      new Comparator<Map.Entry<PathFragment, Artifact>>() {
+        @Override
+        public int compare(Map.Entry<PathFragment, Artifact> entry1,
+            Map.Entry<PathFragment, Artifact> entry2) {
+          return entry1.getKey().compareTo(entry2.getKey());
+        }
+      };
+
+  /**
+   * Returns the sorted entries of {@link #getRunfilesInputs} if these runfiles consist only of
+   * unconditional artifacts and no two entries conflict with each other, or null otherwise.
+   */
+  @Nullable
+  private List<Map.Entry<PathFragment, Artifact>> getSortedArtifactEntries() {
+    if (!symlinks.isEmpty() || !rootSymlinks.isEmpty() || !pruningManifests.isEmpty()
+        || emptyFilesSupplier != DUMMY_EMPTY_FILES_SUPPLIER) {
+      return null;
+    }
+    List<Map.Entry<PathFragment, Artifact>> entries = new ArrayList<>();
+    // This mirrors ManifestBuilder.
+    boolean sawWorkspaceName = legacyExternalRunfiles;
+    for (Artifact artifact : getUnconditionalArtifactsWithoutMiddlemen()) {
+      PathFragment path = artifact.getRootRelativePath();
+      if (!path.startsWith(Label.EXTERNAL_PACKAGE_NAME)) {
+        sawWorkspaceName = true;
+        entries.add(Maps.immutableEntry(suffix.getRelative(path), artifact));
+      } else {
+        PathFragment externalPath = path.relativeTo(Label.EXTERNAL_PACKAGE_NAME);
+        if (externalPath.segmentCount() == 0) {
+          return null;
+        }
+        if (legacyExternalRunfiles) {
+          entries.add(Maps.immutableEntry(suffix.getRelative(path), artifact));
+        }
+        entries.add(Maps.immutableEntry(externalPath, artifact));
+      }
+    }
+    if (!sawWorkspaceName) {
+      entries.add(Maps.<PathFragment, Artifact>immutableEntry(
+          suffix.getRelative(".runfile"), null));
+    }
+    Collections.sort(entries, ENTRY_BY_PATH);
+
+    // In this order, the entries below a path immediately follow it, so comparing each entry
+    // with the previous one finds all duplicates and all obscured entries.
+    int kept = 0;
+    for (Map.Entry<PathFragment, Artifact> entry : entries) {
+      if (kept > 0) {
+        Map.Entry<PathFragment, Artifact> previous = entries.get(kept - 1);
+        if (entry.getKey().equals(previous.getKey())
+            && Objects.equals(entry.getValue(), previous.getValue())) {
+          continue;
+        }
+        if (entry.getKey().startsWith(previous.getKey())) {
+          return null;
+        }
+      }
+      entries.set(kept++, entry);
+    }
+    return entries.subList(0, kept);
+  }
+
   /**
    * Helper class to handle munging the paths of external artifacts.
    */
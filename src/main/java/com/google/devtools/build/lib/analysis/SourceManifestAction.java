@@ -31,10 +31,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
@@ -112,18 +109,17 @@ public final class SourceManifestAction extends AbstractFileWriteAction {
   @VisibleForTesting
   public void writeOutputFile(OutputStream out, EventHandler eventHandler)
       throws IOException {
-    writeFile(out, runfiles.getRunfilesInputs(eventHandler, getOwner().getLocation()));
+    writeFile(out, runfiles.getSortedRunfilesInputs(eventHandler, getOwner().getLocation()));
   }
 
   @Override
-  public DeterministicWriter newDeterministicWriter(ActionExecutionContext ctx)
+  public DeterministicWriter newDeterministicWriter(final ActionExecutionContext ctx)
       throws IOException {
-    final Map<PathFragment, Artifact> runfilesInputs =
-        runfiles.getRunfilesInputs(ctx.getExecutor().getEventHandler(), getOwner().getLocation());
+    // The entries are only computed when the manifest is written, and are not kept afterwards.
     return new DeterministicWriter() {
       @Override
       public void writeOutputFile(OutputStream out) throws IOException {
-        writeFile(out, runfilesInputs);
+        SourceManifestAction.this.writeOutputFile(out, ctx.getExecutor().getEventHandler());
       }
     };
   }
@@ -149,32 +145,18 @@ public final class SourceManifestAction extends AbstractFileWriteAction {
   }
 
   /**
-   * Sort the entries in both the normal and root manifests and write the output
-   * file.
+   * Writes the output file.
    *
    * @param out is the message stream to write errors to.
-   * @param output The actual mapping of the output manifest.
+   * @param output The actual mapping of the output manifest, sorted by path.
    * @throws IOException
    */
-  private void writeFile(OutputStream out, Map<PathFragment, Artifact> output) throws IOException {
+  private void writeFile(OutputStream out, List<Map.Entry<PathFragment, Artifact>> output)
+      throws IOException {
     Writer manifestFile = new BufferedWriter(new OutputStreamWriter(out, ISO_8859_1));
-
-    Comparator<Map.Entry<PathFragment, Artifact>> fragmentComparator =
-          new Comparator<Map.Entry<PathFragment, Artifact>>() {
-      @Override
-      public int compare(Map.Entry<PathFragment, Artifact> path1,
-                         Map.Entry<PathFragment, Artifact> path2) {
-        return path1.getKey().compareTo(path2.getKey());
-      }
-    };
-
-    List<Map.Entry<PathFragment, Artifact>> sortedManifest = new ArrayList<>(output.entrySet());
-    Collections.sort(sortedManifest, fragmentComparator);
-
-    for (Map.Entry<PathFragment, Artifact> line : sortedManifest) {
+    for (Map.Entry<PathFragment, Artifact> line : output) {
       manifestWriter.writeEntry(manifestFile, line.getKey(), line.getValue());
     }
-
     manifestFile.flush();
   }
 
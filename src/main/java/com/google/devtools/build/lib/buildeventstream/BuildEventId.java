@@ -100,4 +100,11 @@ public final class BuildEventId implements Serializable {
     return new BuildEventId(
         BuildEventStreamProtos.BuildEventId.newBuilder().setTargetCompleted(targetId).build());
   }
+
+  public static BuildEventId actionCacheMissesId() {
+    BuildEventStreamProtos.BuildEventId.ActionCacheMissesId missesId =
+        BuildEventStreamProtos.BuildEventId.ActionCacheMissesId.getDefaultInstance();
+    return new BuildEventId(
+        BuildEventStreamProtos.BuildEventId.newBuilder().setActionCacheMisses(missesId).build());
+  }
 }
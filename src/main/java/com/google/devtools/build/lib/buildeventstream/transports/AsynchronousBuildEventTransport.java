@@ -0,0 +1,254 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.buildeventstream.transports;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.devtools.build.lib.buildeventstream.BuildEvent;
+import com.google.devtools.build.lib.buildeventstream.BuildEventId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventTransport;
+import com.google.devtools.build.lib.buildeventstream.GenericBuildEvent;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * A {@link BuildEventTransport} that hands the events to another transport on a background
+ * thread, so that slow transports do not hold up the thread that posts the events.
+ *
+ * <p>Events are passed through a bounded queue, in the order in which they are sent. The
+ * background thread takes them from the queue in batches; if the wrapped transport is
+ * {@link Flushable}, it is flushed after each batch rather than after each event. If the queue is
+ * full, senders block until there is room again: events of the build-event stream must not be
+ * lost. Events sent after the wrapped transport failed or after the transport was closed are
+ * dropped, and a failure is reported when the transport is closed.
+ *
+ * <p>The background thread only runs while there are events to hand over: it exits after it has
+ * been idle for a while, and is started again by the next event, so that a transport that is never
+ * closed does not keep a thread alive.
+ *
+ * <p>The transport keeps track of the largest number of events that were queued at any time, of
+ * the total time senders were blocked on a full queue, and of the number of dropped events, and
+ * logs them when it is closed.
+ */
+public final class AsynchronousBuildEventTransport implements BuildEventTransport {
+  private static final Logger LOG =
+      Logger.getLogger(AsynchronousBuildEventTransport.class.getName());
+
+  private static final int DEFAULT_CAPACITY = 10000;
+  private static final int MAX_BATCH_SIZE = 1000;
+  private static final long IDLE_TIMEOUT_MILLIS = 10000;
+
+  /** Marks the end of the events in the queue. */
+  private static final BuildEvent END_OF_EVENTS =
+      new GenericBuildEvent(
+          BuildEventId.unknownBuildEventId("end of events"), ImmutableSet.<BuildEventId>of());
+
+  private static final AtomicInteger threadCounter = new AtomicInteger();
+
+  private final BuildEventTransport delegate;
+  private final BlockingQueue<BuildEvent> queue;
+  private final long idleTimeoutMillis;
+  private final AtomicBoolean writerRunning = new AtomicBoolean();
+  private final CountDownLatch writtenAll = new CountDownLatch(1);
+  // Senders hold the read lock, so that close() can wait for them before it queues END_OF_EVENTS.
+  private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+  private final AtomicLong blockedNanos = new AtomicLong();
+  private final AtomicInteger droppedEvents = new AtomicInteger();
+  private volatile IOException failure;
+  private boolean closed; // Guarded by closeLock.
+
+  public AsynchronousBuildEventTransport(BuildEventTransport delegate) {
+    this(delegate, DEFAULT_CAPACITY, IDLE_TIMEOUT_MILLIS);
+  }
+
+  @VisibleForTesting
+  AsynchronousBuildEventTransport(
+      BuildEventTransport delegate, int capacity, long idleTimeoutMillis) {
+    this.delegate = Preconditions.checkNotNull(delegate);
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  @Override
+  public void sendBuildEvent(BuildEvent event) {
+    closeLock.readLock().lock();
+    try {
+      if (closed || failure != null) {
+        droppedEvents.incrementAndGet();
+        return;
+      }
+      if (!queue.offer(event)) {
+        ensureWriterRunning();
+        long startTime = System.nanoTime();
+        try {
+          queue.put(event);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          droppedEvents.incrementAndGet();
+          return;
+        } finally {
+          blockedNanos.addAndGet(System.nanoTime() - startTime);
+        }
+      }
+      ensureWriterRunning();
+    } finally {
+      closeLock.readLock().unlock();
+    }
+    int depth = queue.size();
+    int max = maxQueueDepth.get();
+    while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+      max = maxQueueDepth.get();
+    }
+  }
+
+  /**
+   * Waits until all events sent so far have been handed to the wrapped transport, and then closes
+   * it.
+   *
+   * @throws IOException if the wrapped transport failed to send an event or to close
+   */
+  @Override
+  public void close() throws IOException {
+    closeLock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      // The events still have to be written out, or the stream is incomplete.
+      Uninterruptibles.putUninterruptibly(queue, END_OF_EVENTS);
+      ensureWriterRunning();
+    } finally {
+      closeLock.writeLock().unlock();
+    }
+    Uninterruptibles.awaitUninterruptibly(writtenAll);
+    LOG.info(String.format(
+        "%s: at most %d events queued, blocked for %d ms, %d events dropped",
+        delegate.getClass().getSimpleName(), getMaxQueueDepth(),
+        TimeUnit.NANOSECONDS.toMillis(getBlockedNanos()), getDroppedEvents()));
+    try {
+      delegate.close();
+    } finally {
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  /** Starts the writer thread if it is not running; called after queueing an event. */
+  private void ensureWriterRunning() {
+    if (!writerRunning.get() && writerRunning.compareAndSet(false, true)) {
+      Thread writer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          writeEvents();
+        }
+      }, "build-event-transport-" + threadCounter.incrementAndGet());
+      writer.setDaemon(true);
+      writer.start();
+    }
+  }
+
+  private void writeEvents() {
+    List<BuildEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    while (true) {
+      BuildEvent first;
+      try {
+        first = queue.poll(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        // Nobody interrupts this thread but the JVM on shutdown.
+        return;
+      }
+      if (first == null) {
+        writerRunning.set(false);
+        // An event queued before the flag was cleared may not have started another thread.
+        if (queue.isEmpty() || !writerRunning.compareAndSet(false, true)) {
+          return;
+        }
+        continue;
+      }
+      batch.add(first);
+      queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+      for (BuildEvent event : batch) {
+        if (event == END_OF_EVENTS) {
+          flush();
+          writtenAll.countDown();
+          return;
+        }
+        if (failure != null) {
+          droppedEvents.incrementAndGet();
+          continue;
+        }
+        try {
+          delegate.sendBuildEvent(event);
+        } catch (IOException e) {
+          fail(e);
+        } catch (RuntimeException e) {
+          // Keep draining the queue, or the senders would block forever.
+          fail(new IOException(e));
+        }
+      }
+      batch.clear();
+      flush();
+    }
+  }
+
+  private void fail(IOException e) {
+    LOG.severe("Failed to write to build event transport: " + e);
+    failure = e;
+    droppedEvents.incrementAndGet();
+  }
+
+  private void flush() {
+    if (failure == null && delegate instanceof Flushable) {
+      try {
+        ((Flushable) delegate).flush();
+      } catch (IOException e) {
+        LOG.severe("Failed to flush build event transport: " + e);
+        failure = e;
+      }
+    }
+  }
+
+  /** Returns the largest number of events that were waiting in the queue at any one time. */
+  public int getMaxQueueDepth() {
+    return maxQueueDepth.get();
+  }
+
+  /** Returns the total time, in nanoseconds, that senders were blocked on a full queue. */
+  public long getBlockedNanos() {
+    return blockedNanos.get();
+  }
+
+  /** Returns the number of events that were not sent because the transport failed or closed. */
+  public int getDroppedEvents() {
+    return droppedEvents.get();
+  }
+}
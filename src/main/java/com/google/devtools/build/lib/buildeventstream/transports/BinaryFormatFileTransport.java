@@ -0,0 +1,52 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.buildeventstream.transports;
+
+import com.google.devtools.build.lib.buildeventstream.BuildEvent;
+import com.google.devtools.build.lib.buildeventstream.BuildEventTransport;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link BuildEventTransport} that writes the protocol-buffer representation of the events to a
+ * file, each preceded by its length as a varint, as done by
+ * {@link com.google.protobuf.MessageLite#writeDelimitedTo}.
+ *
+ * <p>Output is buffered; it is written out when the transport is flushed or closed.
+ */
+public final class BinaryFormatFileTransport implements BuildEventTransport, Flushable {
+  private final OutputStream out;
+
+  public BinaryFormatFileTransport(String path) throws IOException {
+    this.out = new BufferedOutputStream(new FileOutputStream(path));
+  }
+
+  @Override
+  public synchronized void sendBuildEvent(BuildEvent event) throws IOException {
+    event.asStreamProto().writeDelimitedTo(out);
+  }
+
+  @Override
+  public synchronized void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,288 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.buildeventstream.transports;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.devtools.build.lib.buildeventstream.BuildEvent;
+import com.google.devtools.build.lib.buildeventstream.BuildEventServiceGrpc;
+import com.google.devtools.build.lib.buildeventstream.BuildEventServiceGrpc.BuildEventServiceBlockingStub;
+import com.google.devtools.build.lib.buildeventstream.BuildEventServiceProtos.PublishBuildEventsRequest;
+import com.google.devtools.build.lib.buildeventstream.BuildEventServiceProtos.PublishBuildEventsResponse;
+import com.google.devtools.build.lib.buildeventstream.BuildEventTransport;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.NettyChannelBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A {@link BuildEventTransport} that uploads the events to a {@link BuildEventServiceGrpc build
+ * event service}.
+ *
+ * <p>Sending an event never waits for the network: events are appended to a local spool file,
+ * from which a background thread uploads them in batches once they have been flushed. A batch is
+ * only uploaded after the service acknowledged the previous one; if the service cannot be reached
+ * or fails transiently, the batch is sent again after an exponentially growing delay. Meanwhile,
+ * the events that are still to be uploaded accumulate in the spool file rather than in memory. If
+ * the service rejects a batch with an error that retrying cannot fix, such as
+ * {@code INVALID_ARGUMENT} or {@code PERMISSION_DENIED}, the upload is abandoned and later events
+ * are discarded.
+ *
+ * <p>Closing the transport does not wait for the remaining events to be uploaded either; the
+ * upload continues in the background for a limited time. The spool file is deleted when the upload
+ * ends, with a warning if not all events could be uploaded.
+ */
+public final class GrpcBuildEventTransport implements BuildEventTransport, Flushable {
+  private static final Logger LOG = Logger.getLogger(GrpcBuildEventTransport.class.getName());
+
+  private static final int MAX_BATCH_SIZE = 100;
+  private static final long CALL_TIMEOUT_SECONDS = 30;
+  private static final long INITIAL_RETRY_DELAY_MILLIS = 100;
+  private static final long MAX_RETRY_DELAY_MILLIS = 10000;
+
+  /** The failures that may not happen again if the same batch is sent later. */
+  private static final ImmutableSet<Status.Code> RETRIABLE_CODES = Sets.immutableEnumSet(
+      Status.Code.UNAVAILABLE,
+      Status.Code.DEADLINE_EXCEEDED,
+      Status.Code.RESOURCE_EXHAUSTED,
+      Status.Code.ABORTED,
+      Status.Code.INTERNAL,
+      Status.Code.UNKNOWN);
+
+  private final ManagedChannel channel;
+  private final BuildEventServiceBlockingStub stub;
+  private final String invocationId;
+  private final File spoolFile;
+  private final long uploadTimeoutMillis;
+  private final long initialRetryDelayMillis;
+  private final Thread uploader;
+
+  // All guarded by this.
+  private final OutputStream spoolOut;
+  private long writtenEvents;
+  private long flushedEvents;
+  private boolean closing;
+  private boolean abandoned;
+  private long uploadDeadlineMillis;
+
+  private volatile long uploadedEvents;
+
+  /**
+   * Creates a transport that uploads the events of the given invocation over {@code channel},
+   * using {@code spoolFile} to hold the events until they are uploaded. After the transport is
+   * closed, the upload continues for at most {@code uploadTimeoutMillis}. The transport owns the
+   * channel, and shuts it down when the upload is finished.
+   */
+  public GrpcBuildEventTransport(
+      ManagedChannel channel, String invocationId, File spoolFile, long uploadTimeoutMillis)
+      throws IOException {
+    this(channel, invocationId, spoolFile, uploadTimeoutMillis, INITIAL_RETRY_DELAY_MILLIS);
+  }
+
+  /**
+   * Creates a transport that uploads the events of the given invocation to the build event
+   * service at {@code target}, a host:port address.
+   */
+  public GrpcBuildEventTransport(
+      String target, String invocationId, File spoolFile, long uploadTimeoutMillis)
+      throws IOException {
+    this(NettyChannelBuilder.forTarget(target).usePlaintext(true).build(),
+        invocationId, spoolFile, uploadTimeoutMillis);
+  }
+
+  @VisibleForTesting
+  GrpcBuildEventTransport(
+      ManagedChannel channel,
+      String invocationId,
+      File spoolFile,
+      long uploadTimeoutMillis,
+      long initialRetryDelayMillis)
+      throws IOException {
+    this.channel = channel;
+    this.stub = BuildEventServiceGrpc.newBlockingStub(channel);
+    this.invocationId = invocationId;
+    this.spoolFile = spoolFile;
+    this.uploadTimeoutMillis = uploadTimeoutMillis;
+    this.initialRetryDelayMillis = initialRetryDelayMillis;
+    this.spoolOut = new BufferedOutputStream(new FileOutputStream(spoolFile));
+    this.uploader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        uploadEvents();
+      }
+    }, "build-event-upload");
+    uploader.setDaemon(true);
+    uploader.start();
+  }
+
+  @Override
+  public synchronized void sendBuildEvent(BuildEvent event) throws IOException {
+    if (closing) {
+      throw new IOException("Build event transport is already closed");
+    }
+    if (abandoned) {
+      return;
+    }
+    event.asStreamProto().writeDelimitedTo(spoolOut);
+    writtenEvents++;
+  }
+
+  /** Makes the events sent so far available for upload. */
+  @Override
+  public synchronized void flush() throws IOException {
+    spoolOut.flush();
+    flushedEvents = writtenEvents;
+    notifyAll();
+  }
+
+  /**
+   * Stops accepting events. The events sent so far continue to be uploaded in the background, for
+   * at most the upload timeout given on construction.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closing) {
+      return;
+    }
+    closing = true;
+    uploadDeadlineMillis = System.currentTimeMillis() + uploadTimeoutMillis;
+    try {
+      spoolOut.close();
+    } finally {
+      flushedEvents = writtenEvents;
+      notifyAll();
+    }
+  }
+
+  /** Returns the number of events the service has acknowledged so far. */
+  public long getUploadedEvents() {
+    return uploadedEvents;
+  }
+
+  /** Waits for the upload to finish or give up. */
+  @VisibleForTesting
+  void awaitUpload() throws InterruptedException {
+    uploader.join();
+  }
+
+  private void uploadEvents() {
+    try {
+      upload();
+    } catch (InterruptedException e) {
+      // The server is shutting down.
+      LOG.warning("Build event upload interrupted after " + uploadedEvents + " events");
+    } catch (IOException e) {
+      LOG.severe("Failed to read build events from " + spoolFile + ": " + e);
+    } finally {
+      channel.shutdown();
+      // Events that were not uploaded by now never will be, since no later invocation uploads
+      // them.
+      if (!spoolFile.delete()) {
+        LOG.warning("Could not delete build event spool file " + spoolFile);
+      }
+    }
+  }
+
+  private void upload() throws InterruptedException, IOException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(spoolFile))) {
+      List<ByteString> batch = new ArrayList<>(MAX_BATCH_SIZE);
+      long batchStart = 0;
+      long retryDelayMillis = initialRetryDelayMillis;
+      while (true) {
+        long available;
+        synchronized (this) {
+          while (batch.isEmpty() && batchStart == flushedEvents && !closing) {
+            wait();
+          }
+          available = flushedEvents;
+          if (closing && batchStart < available
+              && System.currentTimeMillis() > uploadDeadlineMillis) {
+            LOG.warning(String.format(
+                "Uploaded %d of %d build events before the upload timeout; discarding the rest",
+                batchStart, writtenEvents));
+            return;
+          }
+        }
+        while (batch.size() < MAX_BATCH_SIZE && batchStart + batch.size() < available) {
+          batch.add(readDelimited(in));
+        }
+        if (batch.isEmpty()) {
+          // The transport is closed and all events have been uploaded.
+          return;
+        }
+
+        long acknowledged = batchStart;
+        try {
+          PublishBuildEventsResponse response =
+              stub.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                  .publishBuildEvents(PublishBuildEventsRequest.newBuilder()
+                      .setInvocationId(invocationId)
+                      .setFirstSequenceNumber(batchStart)
+                      .addAllEvents(batch)
+                      .build());
+          acknowledged = Math.min(
+              Math.max(response.getStoredEventCount(), batchStart), batchStart + batch.size());
+        } catch (StatusRuntimeException e) {
+          if (!RETRIABLE_CODES.contains(e.getStatus().getCode())) {
+            synchronized (this) {
+              abandoned = true;
+            }
+            LOG.warning(String.format(
+                "Build event service rejected the upload after %d events, discarding the rest: %s",
+                batchStart, e.getStatus()));
+            return;
+          }
+          LOG.info("Failed to upload build events, retrying: " + e.getStatus());
+        }
+        if (acknowledged > batchStart) {
+          batch.subList(0, (int) (acknowledged - batchStart)).clear();
+          batchStart = acknowledged;
+          uploadedEvents = acknowledged;
+          retryDelayMillis = initialRetryDelayMillis;
+        } else {
+          Thread.sleep(retryDelayMillis);
+          retryDelayMillis = Math.min(2 * retryDelayMillis, MAX_RETRY_DELAY_MILLIS);
+        }
+      }
+    }
+  }
+
+  private static ByteString readDelimited(InputStream in) throws IOException {
+    int firstByte = in.read();
+    if (firstByte == -1) {
+      throw new EOFException();
+    }
+    byte[] event = new byte[CodedInputStream.readRawVarint32(firstByte, in)];
+    ByteStreams.readFully(in, event);
+    return ByteString.copyFrom(event);
+  }
+}
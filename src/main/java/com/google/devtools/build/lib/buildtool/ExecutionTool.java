@@ -35,6 +35,7 @@ import com.google.devtools.build.lib.actions.ActionContextMarker;
 import com.google.devtools.build.lib.actions.ActionContextProvider;
 import com.google.devtools.build.lib.actions.ActionGraph;
 import com.google.devtools.build.lib.actions.ActionInputFileCache;
+import com.google.devtools.build.lib.actions.ActionPriorityHistory;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.ArtifactFactory;
 import com.google.devtools.build.lib.actions.BlazeExecutor;
@@ -47,6 +48,7 @@ import com.google.devtools.build.lib.actions.ExecutorInitException;
 import com.google.devtools.build.lib.actions.LocalHostCapacity;
 import com.google.devtools.build.lib.actions.ResourceManager;
 import com.google.devtools.build.lib.actions.ResourceSet;
+import com.google.devtools.build.lib.actions.ResourceUsageEstimator;
 import com.google.devtools.build.lib.actions.SimpleActionContextProvider;
 import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.actions.TestExecException;
@@ -166,6 +168,12 @@ public class ExecutionTool {
 
   static final Logger log = Logger.getLogger(ExecutionTool.class.getName());
 
+  // Name of the file in the output base holding the measured resource usage of local actions.
+  private static final String RESOURCE_ESTIMATES_FILE = "resource_estimates";
+
+  // Name of the file in the output base holding the scheduling priorities of actions.
+  private static final String ACTION_PRIORITIES_FILE = "action_priorities";
+
   private final CommandEnvironment env;
   private final BlazeRuntime runtime;
   private final BuildRequest request;
@@ -194,7 +202,9 @@ public class ExecutionTool {
                 env.getReporter(), env.getWorkspaceName()),
             new SimpleActionContextProvider(
                 new SymlinkTreeStrategy(
-                    env.getOutputService(), env.getBlazeWorkspace().getBinTools())));
+                    env.getOutputService(),
+                    env.getBlazeWorkspace().getBinTools(),
+                    request.getOptions(ExecutionOptions.class).incrementalRunfiles)));
     StrategyConverter strategyConverter = new StrategyConverter(actionContextProviders);
 
     ImmutableList<ActionContextConsumer> actionContextConsumers =
@@ -706,6 +716,47 @@ public class ExecutionTool {
         request.getExecutionOptions().usingLocalTestJobs()
             ? request.getExecutionOptions().localTestJobs : Integer.MAX_VALUE
     ));
+
+    if (options.measuredLocalResources) {
+      if (resourceMgr.getResourceUsageEstimator() == null) {
+        ResourceUsageEstimator estimator = new ResourceUsageEstimator();
+        try {
+          estimator.load(getResourceEstimatesFile());
+        } catch (IOException e) {
+          getReporter().handle(
+              Event.warn("Failed to load measured resource estimates: " + e.getMessage()));
+        }
+        resourceMgr.setResourceUsageEstimator(estimator);
+      }
+    } else {
+      resourceMgr.setResourceUsageEstimator(null);
+    }
+
+    if (options.criticalPathScheduling) {
+      ActionPriorityHistory history = resourceMgr.getPriorityHistory();
+      if (history == null) {
+        history = new ActionPriorityHistory();
+        try {
+          history.load(getActionPrioritiesFile());
+        } catch (IOException e) {
+          getReporter().handle(
+              Event.warn("Failed to load action priorities: " + e.getMessage()));
+        }
+        resourceMgr.setPriorityHistory(history);
+      }
+      history.startBuild();
+      env.getEventBus().register(history);
+    } else {
+      resourceMgr.setPriorityHistory(null);
+    }
+  }
+
+  private Path getActionPrioritiesFile() {
+    return env.getDirectories().getOutputBase().getRelative(ACTION_PRIORITIES_FILE);
+  }
+
+  private Path getResourceEstimatesFile() {
+    return env.getDirectories().getOutputBase().getRelative(RESOURCE_ESTIMATES_FILE);
   }
 
   /**
@@ -727,6 +778,25 @@ public class ExecutionTool {
     }
     env.getEventBus().post(new CachesSavedEvent(
         actionCacheSaveTimeInMs, actionCacheSizeInBytes));
+
+    ResourceUsageEstimator estimator = ResourceManager.instance().getResourceUsageEstimator();
+    if (estimator != null) {
+      try {
+        estimator.save(getResourceEstimatesFile());
+      } catch (IOException e) {
+        getReporter().handle(
+            Event.warn("Failed to save measured resource estimates: " + e.getMessage()));
+      }
+    }
+
+    ActionPriorityHistory history = ResourceManager.instance().getPriorityHistory();
+    if (history != null) {
+      try {
+        history.save(getActionPrioritiesFile());
+      } catch (IOException e) {
+        getReporter().handle(Event.warn("Failed to save action priorities: " + e.getMessage()));
+      }
+    }
   }
 
   private ActionInputFileCache createBuildSingleFileCache(Path execRoot) {
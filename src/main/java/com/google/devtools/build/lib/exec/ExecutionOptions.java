@@ -196,6 +196,40 @@ public class ExecutionOptions extends OptionsBase {
   )
   public int localTestJobs;
 
+  @Option(name = "experimental_measured_local_resources",
+      defaultValue = "false",
+      category = "strategy",
+      help = "If enabled, Blaze records the CPU time and peak memory of locally executed "
+          + "actions, keeps per-mnemonic and per-target moving averages in the output base, and "
+          + "uses them instead of the built-in estimates when deciding how many actions to run "
+          + "in parallel.")
+  public boolean measuredLocalResources;
+
+  @Option(name = "experimental_critical_path_scheduling",
+      defaultValue = "false",
+      category = "strategy",
+      help = "If enabled, Blaze remembers how long the chain of actions following each action "
+          + "took in previous builds, and when local resources are scarce, starts the actions "
+          + "with the longest such chain first.")
+  public boolean criticalPathScheduling;
+
+  @Option(name = "experimental_redirect_local_spawn_output",
+      defaultValue = "false",
+      category = "strategy",
+      help = "If enabled, the stdout and stderr of locally executed actions are connected "
+          + "directly to the files that hold the action output instead of being copied there by "
+          + "Blaze. The output is only read back when it has to be shown.")
+  public boolean redirectLocalSpawnOutput;
+
+  @Option(name = "experimental_incremental_runfiles",
+      defaultValue = "false",
+      category = "strategy",
+      help = "If enabled, runfiles trees that already exist are brought up to date by Blaze itself, "
+          + "which only creates and removes the symlinks that differ between the old and the new "
+          + "runfiles manifest, instead of by the build-runfiles tool, which reconciles the whole "
+          + "tree.")
+  public boolean incrementalRunfiles;
+
   public boolean usingLocalTestJobs() {
     return localTestJobs != 0;
   }
@@ -0,0 +1,292 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.exec;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Brings an existing runfiles tree up to date with a new runfiles manifest without running the
+ * build-runfiles tool.
+ *
+ * <p>build-runfiles leaves a copy of the manifest it was run with in the {@code MANIFEST} file at
+ * the root of the tree. If that file is present, the tree is updated by removing and creating
+ * only the entries in which it differs from the new manifest, instead of scanning and
+ * reconciling the whole tree. If there are many such entries, they are processed in parallel.
+ *
+ * <p>The {@code MANIFEST} file is deleted before the tree is touched and only written back once
+ * all changes have been applied, so a tree whose update failed half-way is never mistaken for an
+ * up-to-date one; the caller falls back to build-runfiles, which rebuilds it from scratch.
+ */
+final class RunfilesTreeUpdater {
+  private static final Logger LOG = Logger.getLogger(RunfilesTreeUpdater.class.getName());
+
+  /** The number of changed entries above which the tree is updated in parallel. */
+  private static final int PARALLEL_THRESHOLD = 1000;
+
+  private static final int PARALLELISM = 8;
+
+  /** Shared by all updates; its threads exit when they have been idle for a while. */
+  private static final ExecutorService EXECUTOR = createExecutor();
+
+  /** Orders paths so that directories come after the paths under them. */
+  private static final Comparator<Path> DEEPEST_FIRST = new Comparator<Path>() {
+    @Override
+    public int compare(Path a, Path b) {
+      return b.getPathString().compareTo(a.getPathString());
+    }
+  };
+
+  private RunfilesTreeUpdater() {}
+
+  private static ExecutorService createExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(PARALLELISM, PARALLELISM,
+        60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setNameFormat("runfiles-update-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Updates the runfiles tree at {@code treeRoot} to match {@code inputManifest}.
+   *
+   * @return true if the tree is now up to date, false if it has to be built by build-runfiles
+   *     instead; that is the case if the tree has never been built or the last update did not
+   *     complete, if either manifest cannot be parsed, or if a change could not be applied
+   */
+  static boolean update(Path inputManifest, Path treeRoot) throws InterruptedException {
+    return update(inputManifest, treeRoot, PARALLEL_THRESHOLD);
+  }
+
+  @VisibleForTesting
+  static boolean update(Path inputManifest, Path treeRoot, int parallelThreshold)
+      throws InterruptedException {
+    Path outputManifest = treeRoot.getChild("MANIFEST");
+    try {
+      if (!outputManifest.isFile()) {
+        return false;
+      }
+      Map<String, String> oldEntries = parseManifest(outputManifest);
+      Map<String, String> newEntries = parseManifest(inputManifest);
+      if (oldEntries == null || newEntries == null) {
+        return false;
+      }
+
+      final List<Path> removed = new ArrayList<>();
+      for (Map.Entry<String, String> entry : oldEntries.entrySet()) {
+        if (!entry.getValue().equals(newEntries.get(entry.getKey()))) {
+          removed.add(treeRoot.getRelative(entry.getKey()));
+        }
+      }
+      final List<Map.Entry<Path, String>> created = new ArrayList<>();
+      for (Map.Entry<String, String> entry : newEntries.entrySet()) {
+        if (!entry.getValue().equals(oldEntries.get(entry.getKey()))) {
+          created.add(Maps.immutableEntry(treeRoot.getRelative(entry.getKey()), entry.getValue()));
+        }
+      }
+
+      outputManifest.delete();
+      boolean parallel = removed.size() + created.size() > parallelThreshold;
+      forEach(parallel, removed, new Operation<Path>() {
+        @Override
+        public void apply(Path link) throws IOException {
+          link.delete();
+        }
+      });
+      pruneEmptyParents(removed, treeRoot);
+
+      Set<Path> parents = new HashSet<>();
+      for (Map.Entry<Path, String> entry : created) {
+        parents.add(entry.getKey().getParentDirectory());
+      }
+      for (Path parent : parents) {
+        FileSystemUtils.createDirectoryAndParents(parent);
+      }
+      forEach(parallel, created, new Operation<Map.Entry<Path, String>>() {
+        @Override
+        public void apply(Map.Entry<Path, String> entry) throws IOException {
+          createEntry(entry.getKey(), entry.getValue());
+        }
+      });
+
+      Path tmpManifest = treeRoot.getChild("MANIFEST.tmp");
+      FileSystemUtils.copyFile(inputManifest, tmpManifest);
+      tmpManifest.renameTo(outputManifest);
+      return true;
+    } catch (IOException e) {
+      LOG.info("Could not update runfiles tree " + treeRoot + " incrementally: " + e);
+      return false;
+    }
+  }
+
+  /**
+   * Returns the entries of a runfiles manifest, mapping each link to its target or to the empty
+   * string for empty files, or null if the manifest is not in the format build-runfiles expects.
+   */
+  @Nullable
+  private static Map<String, String> parseManifest(Path manifest) throws IOException {
+    String content = FileSystemUtils.readContent(manifest, ISO_8859_1);
+    Map<String, String> entries = new LinkedHashMap<>();
+    int start = 0;
+    while (start < content.length()) {
+      int end = content.indexOf('\n', start);
+      if (end == -1) {
+        return null;
+      }
+      int space = content.indexOf(' ', start);
+      if (space == -1 || space > end) {
+        return null;
+      }
+      String link = content.substring(start, space);
+      String target = content.substring(space + 1, end);
+      if (link.isEmpty() || link.startsWith("/") || link.equals("MANIFEST")
+          || target.indexOf(' ') != -1
+          || !(target.isEmpty() || new PathFragment(target).isAbsolute())) {
+        return null;
+      }
+      entries.put(link, target);
+      start = end + 1;
+    }
+    return entries;
+  }
+
+  private static void createEntry(Path link, String target) throws IOException {
+    if (target.isEmpty()) {
+      // No target means an empty file, which build-runfiles creates read-only.
+      FileSystemUtils.createEmptyFile(link);
+      link.chmod(0555);
+    } else {
+      link.createSymbolicLink(new PathFragment(target));
+    }
+  }
+
+  /**
+   * Deletes the directories that contained removed entries and are now empty, up to but not
+   * including the root of the tree. Directories that are still needed are created again later.
+   */
+  private static void pruneEmptyParents(List<Path> removed, Path treeRoot) throws IOException {
+    Set<Path> dirs = new TreeSet<>(DEEPEST_FIRST);
+    for (Path link : removed) {
+      for (Path dir = link.getParentDirectory();
+          dir != null && !dir.equals(treeRoot) && dir.startsWith(treeRoot);
+          dir = dir.getParentDirectory()) {
+        if (!dirs.add(dir)) {
+          break;
+        }
+      }
+    }
+    for (Path dir : dirs) {
+      if (dir.isDirectory(Symlinks.NOFOLLOW)
+          && dir.getDirectoryEntries().isEmpty()) {
+        dir.delete();
+      }
+    }
+  }
+
+  private interface Operation<T> {
+    void apply(T item) throws IOException;
+  }
+
+  /**
+   * Applies {@code operation} to all {@code items}, in parallel chunks if {@code parallel} is set.
+   *
+   * <p>If an operation fails or the calling thread is interrupted, the remaining chunks are
+   * skipped, and this method only returns once the running ones have stopped, so that the tree
+   * is no longer modified when the caller falls back to build-runfiles.
+   */
+  private static <T> void forEach(boolean parallel, List<T> items, final Operation<T> operation)
+      throws IOException, InterruptedException {
+    if (!parallel) {
+      for (T item : items) {
+        operation.apply(item);
+      }
+      return;
+    }
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    int chunkSize = Math.max(1, items.size() / (4 * PARALLELISM));
+    List<List<T>> chunks = Lists.partition(items, chunkSize);
+    // Counted down by every chunk when it stops. Cancelling the futures instead would not wait
+    // for the chunks that are already running.
+    final CountDownLatch stopped = new CountDownLatch(chunks.size());
+    List<Future<Void>> futures = new ArrayList<>();
+    boolean done = false;
+    try {
+      for (final List<T> chunk : chunks) {
+        futures.add(EXECUTOR.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            try {
+              for (T item : chunk) {
+                if (cancelled.get()) {
+                  break;
+                }
+                operation.apply(item);
+              }
+              return null;
+            } finally {
+              stopped.countDown();
+            }
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      done = true;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      if (!done) {
+        cancelled.set(true);
+        // Chunks that were never submitted will never count down.
+        for (int i = futures.size(); i < chunks.size(); i++) {
+          stopped.countDown();
+        }
+        Uninterruptibles.awaitUninterruptibly(stopped);
+      }
+    }
+  }
+}
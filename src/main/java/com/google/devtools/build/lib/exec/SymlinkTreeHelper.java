@@ -55,6 +55,7 @@ public final class SymlinkTreeHelper {
   private final Path inputManifest;
   private final Path symlinkTreeRoot;
   private final boolean filesetTree;
+  private final boolean incremental;
 
   /**
    * Creates SymlinkTreeHelper instance. Can be used independently of
@@ -67,9 +68,20 @@ public final class SymlinkTreeHelper {
    */
   public SymlinkTreeHelper(Path inputManifest, Path symlinkTreeRoot,
       boolean filesetTree) {
+    this(inputManifest, symlinkTreeRoot, filesetTree, false);
+  }
+
+  /**
+   * Creates SymlinkTreeHelper instance that, if {@code incremental} is true, updates an existing
+   * runfiles tree in-process by applying the difference between its previous and its new
+   * manifest, and only runs build-runfiles if that is not possible.
+   */
+  public SymlinkTreeHelper(Path inputManifest, Path symlinkTreeRoot,
+      boolean filesetTree, boolean incremental) {
     this.inputManifest = inputManifest;
     this.symlinkTreeRoot = symlinkTreeRoot;
     this.filesetTree = filesetTree;
+    this.incremental = incremental && !filesetTree;
   }
 
   public Path getOutputManifest() {
@@ -122,6 +134,9 @@ public final class SymlinkTreeHelper {
               actionExecutionContext.getExecutor().getExecRoot(), binTools);
       try (ResourceHandle handle =
                ResourceManager.instance().acquireResources(action, RESOURCE_SET)) {
+        if (incremental && RunfilesTreeUpdater.update(inputManifest, symlinkTreeRoot)) {
+          return;
+        }
         actionExecutionContext.getExecutor().getSpawnActionContext(action.getMnemonic()).exec(
             new BaseSpawn.Local(args, shellEnvironment, action),
             actionExecutionContext);
@@ -35,10 +35,17 @@ public final class SymlinkTreeStrategy implements SymlinkTreeActionContext {
 
   private final OutputService outputService;
   private final BinTools binTools;
+  private final boolean incrementalRunfiles;
 
   public SymlinkTreeStrategy(OutputService outputService, BinTools binTools) {
+    this(outputService, binTools, false);
+  }
+
+  public SymlinkTreeStrategy(
+      OutputService outputService, BinTools binTools, boolean incrementalRunfiles) {
     this.outputService = outputService;
     this.binTools = binTools;
+    this.incrementalRunfiles = incrementalRunfiles;
   }
 
   @Override
@@ -55,7 +62,8 @@ public final class SymlinkTreeStrategy implements SymlinkTreeActionContext {
       try {
         SymlinkTreeHelper helper = new SymlinkTreeHelper(
             action.getInputManifest().getPath(),
-            action.getOutputManifest().getPath().getParentDirectory(), action.isFilesetTree());
+            action.getOutputManifest().getPath().getParentDirectory(), action.isFilesetTree(),
+            incrementalRunfiles);
         if (outputService != null && outputService.canCreateSymlinkTree()) {
           outputService.createSymlinkTree(action.getInputManifest().getPath(),
               action.getOutputManifest().getPath(),
@@ -33,6 +33,7 @@ import com.google.devtools.build.lib.events.EventHandler;
 import com.google.devtools.build.lib.events.Location;
 import com.google.devtools.build.lib.packages.AttributeMap.AcceptsLabelAttribute;
 import com.google.devtools.build.lib.packages.License.DistributionType;
+import com.google.devtools.build.lib.syntax.EvalException;
 import com.google.devtools.build.lib.util.Preconditions;
 import com.google.devtools.build.lib.util.SpellChecker;
 import com.google.devtools.build.lib.vfs.Canonicalizer;
@@ -769,6 +770,18 @@ public class Package {
      */
     private Map<String, OutputFile> outputFilePrefixes = new HashMap<>();
 
+    /**
+     * Canonical instances of the immutable attribute values of the rules in this package, and the
+     * visibilities computed from {@code visibility} attribute values.
+     *
+     * <p>Rules instantiated by the same macro often have equal values for attributes such as
+     * {@code visibility}, {@code tags} or {@code deps}. Storing a single instance of each value
+     * saves memory for as long as the package is live. Like {@link #outputFilePrefixes}, the maps
+     * themselves are dropped once the package has been built.
+     */
+    private Map<Object, Object> attributeValues = new HashMap<>();
+    private Map<List<Label>, RuleVisibility> ruleVisibilities = new HashMap<>();
+
     private boolean alreadyBuilt = false;
 
     private EventHandler builderEventHandler = new EventHandler() {
@@ -1346,10 +1359,47 @@ public class Package {
 
       // Build the package.
       pkg.finishInit(this);
+      attributeValues = null;
+      ruleVisibilities = null;
       alreadyBuilt = true;
       return pkg;
     }
 
+    /**
+     * Returns the canonical instance of an attribute value equal to {@code value}. Only immutable
+     * lists are interned; other values are returned as they are.
+     */
+    Object internAttributeValue(Object value) {
+      if (attributeValues == null
+          || !(value instanceof ImmutableList)
+          || ((ImmutableList<?>) value).isEmpty()) {
+        return value;
+      }
+      Object canonical = attributeValues.get(value);
+      if (canonical == null) {
+        attributeValues.put(value, value);
+        return value;
+      }
+      return canonical;
+    }
+
+    /**
+     * Returns the visibility of a rule of this package with the given {@code visibility}
+     * attribute value, sharing the instance among rules with equal values.
+     */
+    RuleVisibility getRuleVisibility(Label ruleLabel, List<Label> labels) throws EvalException {
+      RuleVisibility visibility = ruleVisibilities == null ? null : ruleVisibilities.get(labels);
+      if (visibility == null) {
+        // The visibility only depends on the repository of the rule, which is the same for all
+        // rules of the package.
+        visibility = PackageFactory.getVisibility(ruleLabel, labels);
+        if (ruleVisibilities != null) {
+          ruleVisibilities.put(labels, visibility);
+        }
+      }
+      return visibility;
+    }
+
     public ExternalPackageBuilder externalPackageData() {
       return externalPackageData;
     }
@@ -1395,10 +1395,10 @@ public final class RuleClass {
       EventHandler eventHandler)
       throws InterruptedException, CannotPrecomputeDefaultsException {
     BitSet definedAttrIndices =
-        populateDefinedRuleAttributeValues(rule, attributeValues, eventHandler);
+        populateDefinedRuleAttributeValues(rule, pkgBuilder, attributeValues, eventHandler);
     populateDefaultRuleAttributeValues(rule, pkgBuilder, definedAttrIndices, eventHandler);
     // Now that all attributes are bound to values, collect and store configurable attribute keys.
-    populateConfigDependenciesAttribute(rule);
+    populateConfigDependenciesAttribute(rule, pkgBuilder);
   }
 
   /**
@@ -1413,7 +1413,10 @@ public final class RuleClass {
    * on {@code eventHandler}.
    */
   private BitSet populateDefinedRuleAttributeValues(
-      Rule rule, AttributeValuesMap attributeValues, EventHandler eventHandler) {
+      Rule rule,
+      Package.Builder pkgBuilder,
+      AttributeValuesMap attributeValues,
+      EventHandler eventHandler) {
     BitSet definedAttrIndices = new BitSet();
     for (String attributeName : attributeValues.getAttributeNames()) {
       // The attribute named "name" was handled in a special way already.
@@ -1452,7 +1455,13 @@ public final class RuleClass {
       }
 
       boolean explicit = attributeValues.isAttributeExplicitlySpecified(attributeName);
-      setRuleAttributeValue(rule, eventHandler, attr, nativeAttributeValue, explicit);
+      setRuleAttributeValue(
+          rule,
+          pkgBuilder,
+          eventHandler,
+          attr,
+          pkgBuilder.internAttributeValue(nativeAttributeValue),
+          explicit);
       definedAttrIndices.set(attrIndex);
     }
     return definedAttrIndices;
@@ -1548,7 +1557,7 @@ public final class RuleClass {
    * Collects all labels used as keys for configurable attributes and places them into
    * the special implicit attribute that tracks them.
    */
-  private static void populateConfigDependenciesAttribute(Rule rule) {
+  private static void populateConfigDependenciesAttribute(Rule rule, Package.Builder pkgBuilder) {
     RawAttributeMapper attributes = RawAttributeMapper.of(rule);
     Attribute configDepsAttribute = attributes.getAttributeDefinition("$config_dependencies");
     if (configDepsAttribute == null) {
@@ -1564,7 +1573,8 @@ public final class RuleClass {
       }
     }
 
-    rule.setAttributeValue(configDepsAttribute, ImmutableList.copyOf(configLabels),
+    rule.setAttributeValue(configDepsAttribute,
+        pkgBuilder.internAttributeValue(ImmutableList.copyOf(configLabels)),
         /*explicit=*/false);
   }
 
@@ -1705,6 +1715,7 @@ public final class RuleClass {
    */
   private static void setRuleAttributeValue(
       Rule rule,
+      Package.Builder pkgBuilder,
       EventHandler eventHandler,
       Attribute attr,
       Object nativeAttrVal,
@@ -1719,7 +1730,7 @@ public final class RuleClass {
             eventHandler);
       }
       try {
-        rule.setVisibility(PackageFactory.getVisibility(rule.getLabel(), attrList));
+        rule.setVisibility(pkgBuilder.getRuleVisibility(rule.getLabel(), attrList));
       } catch (EvalException e) {
          rule.reportError(rule.getLabel() + " " + e.getMessage(), eventHandler);
       }
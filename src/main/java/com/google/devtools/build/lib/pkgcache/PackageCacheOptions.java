@@ -121,6 +121,17 @@ public class PackageCacheOptions extends OptionsBase {
   )
   public int maxDirectoriesToEagerlyVisitInGlobbing;
 
+  @Option(
+    name = "experimental_skylark_compile_threshold",
+    defaultValue = "-1",
+    category = "undocumented",
+    help =
+        "If non-negative, Skylark functions are compiled to Java byte code after they have been "
+            + "interpreted this many times. Functions using constructs the compiler does not "
+            + "support keep being interpreted."
+  )
+  public int skylarkCompileThreshold;
+
   @Option(name = "fetch",
       defaultValue = "true",
       category = "undocumented",
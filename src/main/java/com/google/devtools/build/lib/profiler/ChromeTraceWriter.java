@@ -0,0 +1,256 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes profiler tasks as a JSON file in the Chrome trace event format, which can be opened in
+ * chrome://tracing and other trace viewers.
+ *
+ * <p>Every thread gets its own track. Tasks with a duration are written as complete events and
+ * tasks without one as instant events, where build phase markers span all tracks. The category
+ * of each event is one of "action", "skyframe", "vfs", "critical path" and "general", followed by
+ * the name of the task type. Memory usage written by {@link #writeMemoryUsage} and the number of
+ * actions being processed at any time are shown as counters.
+ *
+ * <p>Events are written as they come; they do not have to be ordered by time. Only the start and
+ * end times of action tasks are kept in memory, to compute the action counter when the writer is
+ * closed.
+ */
+//@ThreadCompatible - commented out to avoid cyclic dependency with lib.util.
+public final class ChromeTraceWriter implements Closeable {
+  private static final int PID = 1;
+
+  private static final Set<ProfilerTask> ACTION_TYPES = EnumSet.of(
+      ProfilerTask.ACTION,
+      ProfilerTask.ACTION_BUILDER,
+      ProfilerTask.ACTION_SUBMIT,
+      ProfilerTask.ACTION_CHECK,
+      ProfilerTask.ACTION_EXECUTE,
+      ProfilerTask.ACTION_LOCK,
+      ProfilerTask.ACTION_RELEASE,
+      ProfilerTask.ACTION_GRAPH,
+      ProfilerTask.ACTION_UPDATE,
+      ProfilerTask.ACTION_COMPLETE,
+      ProfilerTask.SPAWN,
+      ProfilerTask.REMOTE_EXECUTION,
+      ProfilerTask.LOCAL_EXECUTION,
+      ProfilerTask.SCANNER,
+      ProfilerTask.LOCAL_PARSE,
+      ProfilerTask.UPLOAD_TIME,
+      ProfilerTask.PROCESS_TIME,
+      ProfilerTask.REMOTE_QUEUE,
+      ProfilerTask.REMOTE_SETUP,
+      ProfilerTask.FETCH);
+
+  private static final Set<ProfilerTask> SKYFRAME_TYPES = EnumSet.of(
+      ProfilerTask.SKYFRAME_EVAL,
+      ProfilerTask.SKYFUNCTION,
+      ProfilerTask.CREATE_PACKAGE,
+      ProfilerTask.PACKAGE_VALIDITY_CHECK,
+      ProfilerTask.CONFIGURED_TARGET,
+      ProfilerTask.TRANSITIVE_CLOSURE);
+
+  private final Writer out;
+  private final Set<Long> namedThreads = new HashSet<>();
+  private boolean firstEvent = true;
+
+  // Start and end times of ACTION tasks, in ns; start times are encoded as 2 * time and end
+  // times as 2 * time + 1, so that ends sort after starts at the same time.
+  private long[] actionEvents = new long[1024];
+  private int actionEventCount;
+
+  /**
+   * Starts writing a trace to the given stream, which is closed along with the writer.
+   *
+   * @param comment a comment to include in the trace metadata
+   */
+  public ChromeTraceWriter(OutputStream stream, String comment) throws IOException {
+    out = new BufferedWriter(new OutputStreamWriter(stream, UTF_8), 262144);
+    out.write("{\"otherData\":{\"comment\":");
+    writeString(comment);
+    out.write("},\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+  }
+
+  /**
+   * Converts the given binary profile file to a trace file, reading it one task record at a time.
+   * The trace file is only created once the header of the profile file has been read.
+   *
+   * @return false if the profile file was truncated or corrupted, in which case the trace contains
+   *     the tasks that could be read
+   */
+  public static boolean convert(Path profileFile, Path traceFile) throws IOException {
+    try (ProfileReader reader = ProfileReader.open(profileFile);
+        ChromeTraceWriter writer =
+            new ChromeTraceWriter(traceFile.getOutputStream(), reader.getComment())) {
+      List<String> descriptions = new ArrayList<>();
+      while (true) {
+        try {
+          if (!reader.next()) {
+            return true;
+          }
+        } catch (IOException e) {
+          return false;
+        }
+        if (reader.getNewDescription() != null) {
+          descriptions.add(reader.getNewDescription());
+        }
+        writer.writeTask(reader.getThreadId(), null, reader.getType(),
+            descriptions.get(reader.getDescriptionIndex()), reader.getStartTime(),
+            reader.getDuration());
+      }
+    }
+  }
+
+  /**
+   * Writes a task.
+   *
+   * @param threadName the name of the thread, or null to name it after its id; only the name
+   *     given with the first task of each thread is used
+   * @param startTime the start time in ns, relative to the start of the profile
+   * @param duration the duration in ns
+   */
+  public void writeTask(long threadId, String threadName, ProfilerTask type, String description,
+      long startTime, long duration) throws IOException {
+    if (namedThreads.add(threadId)) {
+      startEvent();
+      out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + PID + ",\"tid\":" + threadId
+          + ",\"args\":{\"name\":");
+      writeString(threadName != null ? threadName : "thread " + threadId);
+      out.write("}}");
+    }
+    startEvent();
+    out.write("{\"name\":");
+    writeString(description);
+    out.write(",\"cat\":\"" + getCategory(type) + "," + type + "\"");
+    if (duration > 0) {
+      out.write(",\"ph\":\"X\",\"ts\":" + toMicros(startTime) + ",\"dur\":" + toMicros(duration));
+    } else {
+      // Phase markers are the only events that concern all threads.
+      out.write(",\"ph\":\"i\",\"s\":\"" + (type == ProfilerTask.PHASE ? 'g' : 't')
+          + "\",\"ts\":" + toMicros(startTime));
+    }
+    out.write(",\"pid\":" + PID + ",\"tid\":" + threadId + "}");
+
+    if (type == ProfilerTask.ACTION) {
+      addActionEvent(2 * startTime);
+      addActionEvent(2 * (startTime + Math.max(duration, 0)) + 1);
+    }
+  }
+
+  /**
+   * Writes the memory usage at the given time, in ns relative to the start of the profile.
+   */
+  public void writeMemoryUsage(long time, long usedBytes, long totalBytes) throws IOException {
+    writeCounter("memory", time,
+        "\"used MB\":" + (usedBytes >> 20) + ",\"free MB\":" + ((totalBytes - usedBytes) >> 20));
+  }
+
+  /** Flushes the events written so far to the underlying stream. */
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /** Writes the action counter and finishes the trace. */
+  @Override
+  public void close() throws IOException {
+    try {
+      Arrays.sort(actionEvents, 0, actionEventCount);
+      int running = 0;
+      for (int i = 0; i < actionEventCount; i++) {
+        running += (actionEvents[i] & 1) == 0 ? 1 : -1;
+        long time = actionEvents[i] >> 1;
+        // Only the last of the counter values at the same microsecond is visible.
+        if (i + 1 == actionEventCount
+            || toMicros(actionEvents[i + 1] >> 1) != toMicros(time)) {
+          writeCounter("actions", time, "\"running\":" + running);
+        }
+      }
+      out.write("\n]}\n");
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeCounter(String name, long time, String values) throws IOException {
+    startEvent();
+    out.write("{\"name\":\"" + name + "\",\"ph\":\"C\",\"ts\":" + toMicros(time) + ",\"pid\":"
+        + PID + ",\"args\":{" + values + "}}");
+  }
+
+  private void addActionEvent(long event) {
+    if (actionEventCount == actionEvents.length) {
+      actionEvents = Arrays.copyOf(actionEvents, 2 * actionEventCount);
+    }
+    actionEvents[actionEventCount++] = event;
+  }
+
+  private void startEvent() throws IOException {
+    if (!firstEvent) {
+      out.write(",\n");
+    }
+    firstEvent = false;
+  }
+
+  private void writeString(String value) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.write('\\');
+        out.write(c);
+      } else if (c < 0x20) {
+        out.write(String.format("\\u%04x", (int) c));
+      } else {
+        out.write(c);
+      }
+    }
+    out.write('"');
+  }
+
+  private static long toMicros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  private static String getCategory(ProfilerTask type) {
+    if (type.isVfs()) {
+      return "vfs";
+    } else if (ACTION_TYPES.contains(type)) {
+      return "action";
+    } else if (SKYFRAME_TYPES.contains(type)) {
+      return "skyframe";
+    } else if (type == ProfilerTask.CRITICAL_PATH
+        || type == ProfilerTask.CRITICAL_PATH_COMPONENT) {
+      return "critical path";
+    } else {
+      return "general";
+    }
+  }
+}
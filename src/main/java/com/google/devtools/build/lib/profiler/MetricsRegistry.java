@@ -0,0 +1,278 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler;
+
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.util.Preconditions;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide registry of named counters, gauges and histograms describing the running build.
+ *
+ * <p>Metrics are created once, typically in static fields of the class that updates them, and are
+ * cheap to update from any thread. Counters and histograms are zeroed by {@link #reset} at the
+ * start of every command, gauges are computed when the metrics are read. {@link #writeText} writes
+ * all metrics in the Prometheus text exposition format, so that they can be scraped by a
+ * monitoring system while the build is running or collected from a file after it finished.
+ */
+@ThreadSafe
+public final class MetricsRegistry {
+
+  private static final MetricsRegistry instance = new MetricsRegistry();
+
+  private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+  /** Upper bounds of the histogram buckets, in milliseconds. */
+  private static final long[] BUCKET_BOUNDS_MILLIS =
+      {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+  private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS_MILLIS.length];
+
+  static {
+    for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+      BUCKET_BOUNDS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKET_BOUNDS_MILLIS[i]);
+    }
+  }
+
+  /** A value computed when the metrics are read. */
+  public interface Gauge {
+    long getValue();
+  }
+
+  private abstract static class Metric {
+    final String name;
+    final String help;
+
+    Metric(String name, String help) {
+      this.name = name;
+      this.help = help;
+    }
+
+    abstract String getType();
+
+    abstract void reset();
+
+    abstract void writeSamples(Appendable out) throws IOException;
+  }
+
+  /** A monotonically increasing count of events. */
+  public static final class Counter extends Metric {
+    private final AtomicLong value = new AtomicLong();
+
+    private Counter(String name, String help) {
+      super(name, help);
+    }
+
+    public void increment() {
+      value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+      Preconditions.checkArgument(delta >= 0, "Counters can't be decremented: %s", delta);
+      value.addAndGet(delta);
+    }
+
+    public long get() {
+      return value.get();
+    }
+
+    @Override
+    String getType() {
+      return "counter";
+    }
+
+    @Override
+    void reset() {
+      value.set(0);
+    }
+
+    @Override
+    void writeSamples(Appendable out) throws IOException {
+      out.append(name).append(' ').append(Long.toString(get())).append('\n');
+    }
+  }
+
+  /**
+   * A distribution of durations, with a fixed set of buckets between one millisecond and one
+   * minute.
+   */
+  public static final class Histogram extends Metric {
+    // The last bucket counts the durations above the highest bound.
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    private Histogram(String name, String help) {
+      super(name, help);
+    }
+
+    public void recordNanos(long durationNanos) {
+      durationNanos = Math.max(0, durationNanos);
+      // Buckets include their upper bound.
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS_NANOS.length && durationNanos > BUCKET_BOUNDS_NANOS[bucket]) {
+        bucket++;
+      }
+      buckets.incrementAndGet(bucket);
+      sumNanos.addAndGet(durationNanos);
+      count.incrementAndGet();
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getSumNanos() {
+      return sumNanos.get();
+    }
+
+    @Override
+    String getType() {
+      return "histogram";
+    }
+
+    @Override
+    void reset() {
+      for (int i = 0; i < buckets.length(); i++) {
+        buckets.set(i, 0);
+      }
+      count.set(0);
+      sumNanos.set(0);
+    }
+
+    @Override
+    void writeSamples(Appendable out) throws IOException {
+      // Bucket counts are cumulative. They may be slightly inconsistent with each other if
+      // durations are recorded concurrently, which is acceptable for monitoring.
+      long cumulative = 0;
+      for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+        cumulative += buckets.get(i);
+        out.append(name).append("_bucket{le=\"")
+            .append(Double.toString(BUCKET_BOUNDS_MILLIS[i] / 1000.0)).append("\"} ")
+            .append(Long.toString(cumulative)).append('\n');
+      }
+      cumulative += buckets.get(BUCKET_BOUNDS_MILLIS.length);
+      out.append(name).append("_bucket{le=\"+Inf\"} ")
+          .append(Long.toString(cumulative)).append('\n');
+      out.append(name).append("_sum ")
+          .append(Double.toString(getSumNanos() / 1e9)).append('\n');
+      out.append(name).append("_count ").append(Long.toString(cumulative)).append('\n');
+    }
+  }
+
+  private static final class GaugeMetric extends Metric {
+    private final Gauge gauge;
+
+    GaugeMetric(String name, String help, Gauge gauge) {
+      super(name, help);
+      this.gauge = gauge;
+    }
+
+    @Override
+    String getType() {
+      return "gauge";
+    }
+
+    @Override
+    void reset() {}
+
+    @Override
+    void writeSamples(Appendable out) throws IOException {
+      out.append(name).append(' ').append(Long.toString(gauge.getValue())).append('\n');
+    }
+  }
+
+  private final ConcurrentMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+  /** Use {@link #instance()} instead, except in tests. */
+  MetricsRegistry() {}
+
+  public static MetricsRegistry instance() {
+    return instance;
+  }
+
+  /** Returns the counter with the given name, creating it if needed. */
+  public Counter counter(String name, String help) {
+    Metric metric = metrics.get(name);
+    if (metric == null) {
+      checkName(name);
+      metric = putIfAbsent(new Counter(name, help));
+    }
+    Preconditions.checkArgument(metric instanceof Counter, "%s is not a counter", name);
+    return (Counter) metric;
+  }
+
+  /** Returns the histogram with the given name, creating it if needed. */
+  public Histogram histogram(String name, String help) {
+    Metric metric = metrics.get(name);
+    if (metric == null) {
+      checkName(name);
+      metric = putIfAbsent(new Histogram(name, help));
+    }
+    Preconditions.checkArgument(metric instanceof Histogram, "%s is not a histogram", name);
+    return (Histogram) metric;
+  }
+
+  /**
+   * Registers a gauge, replacing the gauge previously registered with the same name. Gauges
+   * usually read state that only exists during a command, so they should be removed with {@link
+   * #removeGauge} at the end of it.
+   */
+  public void registerGauge(String name, String help, Gauge gauge) {
+    checkName(name);
+    Metric previous = metrics.get(name);
+    Preconditions.checkArgument(
+        previous == null || previous instanceof GaugeMetric, "%s is not a gauge", name);
+    metrics.put(name, new GaugeMetric(name, help, gauge));
+  }
+
+  public void removeGauge(String name) {
+    Metric metric = metrics.get(name);
+    if (metric instanceof GaugeMetric) {
+      metrics.remove(name, metric);
+    }
+  }
+
+  /** Zeroes all counters and histograms. */
+  public void reset() {
+    for (Metric metric : metrics.values()) {
+      metric.reset();
+    }
+  }
+
+  /** Writes the current value of all metrics, sorted by name, in the Prometheus text format. */
+  public void writeText(Appendable out) throws IOException {
+    for (Metric metric : metrics.values()) {
+      out.append("# HELP ").append(metric.name).append(' ')
+          .append(metric.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+      out.append("# TYPE ").append(metric.name).append(' ').append(metric.getType()).append('\n');
+      metric.writeSamples(out);
+    }
+  }
+
+  private Metric putIfAbsent(Metric metric) {
+    Metric previous = metrics.putIfAbsent(metric.name, metric);
+    return previous != null ? previous : metric;
+  }
+
+  private static void checkName(String name) {
+    Preconditions.checkArgument(NAME_PATTERN.matcher(name).matches(), "Invalid name: %s", name);
+  }
+}
@@ -0,0 +1,305 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.devtools.build.lib.util.VarInt;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the task records of a profile file written by {@link Profiler} one at a time, without
+ * keeping them in memory.
+ *
+ * <p>Call {@link #next} to advance to the next record, and the getters to access the fields of
+ * the current record. Descriptions are stored only once in the file; the reader does not keep
+ * them, so callers that need the description of every record have to remember the ones returned
+ * by {@link #getNewDescription}, by their {@link #getDescriptionIndex index}.
+ */
+public final class ProfileReader implements Closeable {
+  private final DataInputStream in;
+  private final boolean previousVersion;
+  private final String comment;
+  private final List<ProfilerTask> typeList = new ArrayList<>();
+  private boolean hasUnknownTypes;
+  private int descriptionCount;
+
+  private long threadId;
+  private int id;
+  private int parentId;
+  private long startTime;
+  private long duration;
+  private ProfilerTask type;
+  private int descriptionIndex;
+  private String newDescription;
+  private byte[] aggregatedStats;
+
+  /**
+   * Opens the given profile file and reads its header.
+   *
+   * @throws UnsupportedEncodingException if the file format is invalid
+   * @throws IOException if the file can't be read
+   */
+  public static ProfileReader open(Path profileFile) throws IOException {
+    return new ProfileReader(profileFile.getInputStream());
+  }
+
+  /**
+   * Reads the header of the profile data in the given stream, which is closed along with the
+   * reader.
+   *
+   * @throws UnsupportedEncodingException if the data format is invalid
+   * @throws IOException if the stream can't be read
+   */
+  public ProfileReader(InputStream stream) throws IOException {
+    // It is extremely important to wrap InflaterInputStream using
+    // BufferedInputStream because majority of reads would be done using
+    // readInt()/readLong() methods and InflaterInputStream is very inefficient
+    // in handling small read requests (performance difference with 1MB buffer
+    // used below is almost 10x).
+    in = new DataInputStream(
+        new BufferedInputStream(new InflaterInputStream(
+        stream, new Inflater(false), 65536), 1024 * 1024));
+    try {
+      if (in.readInt() != Profiler.MAGIC) {
+        throw new UnsupportedEncodingException("Invalid profile datafile format");
+      }
+      int version = in.readInt();
+      if (version != Profiler.VERSION && version != Profiler.PREVIOUS_VERSION) {
+        throw new UnsupportedEncodingException("Incompatible profile datafile version");
+      }
+      previousVersion = version == Profiler.PREVIOUS_VERSION;
+      comment = in.readUTF();
+
+      // Read list of used record types
+      int typeCount = in.readInt();
+      Set<String> supportedTasks = new HashSet<>();
+      for (ProfilerTask task : ProfilerTask.values()) {
+        supportedTasks.add(task.toString());
+      }
+      for (int i = 0; i < typeCount; i++) {
+        String name = in.readUTF();
+        if (supportedTasks.contains(name)) {
+          typeList.add(ProfilerTask.valueOf(name));
+        } else {
+          hasUnknownTypes = true;
+          typeList.add(ProfilerTask.UNKNOWN);
+        }
+      }
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /** Returns the comment given when the profile was started. */
+  public String getComment() {
+    return comment;
+  }
+
+  /**
+   * Advances to the next task record.
+   *
+   * @return false if the end of the profile has been reached
+   * @throws IOException if the profile is truncated or corrupted, or can't be read
+   */
+  public boolean next() throws IOException {
+    int size = previousVersion ? in.readInt() : readVarInt(in);
+    if (size == (previousVersion ? Profiler.PREVIOUS_EOF_MARKER : Profiler.EOF_MARKER)) {
+      return false;
+    }
+    if (size < 0) {
+      throw new IOException("Invalid task record size " + size);
+    }
+    byte[] backingArray = new byte[size];
+    in.readFully(backingArray);
+    ByteBuffer buffer = ByteBuffer.wrap(backingArray);
+    threadId = VarInt.getVarLong(buffer);
+    id = VarInt.getVarInt(buffer);
+    parentId = VarInt.getVarInt(buffer);
+    startTime = VarInt.getVarLong(buffer);
+    duration = VarInt.getVarLong(buffer);
+    newDescription = null;
+    if (previousVersion) {
+      descriptionIndex = VarInt.getVarInt(buffer) - 1;
+      if (descriptionIndex == -1) {
+        newDescription = in.readUTF();
+      }
+      type = getType(buffer.get());
+    } else {
+      type = getType(buffer.get());
+      descriptionIndex = VarInt.getVarInt(buffer) - 1;
+      if (descriptionIndex == -1) {
+        int length = VarInt.getVarInt(buffer);
+        newDescription = new String(backingArray, buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+      }
+    }
+    if (newDescription != null) {
+      descriptionIndex = descriptionCount++;
+    } else if (descriptionIndex >= descriptionCount) {
+      throw new IOException("Invalid description index " + descriptionIndex);
+    }
+
+    aggregatedStats = null;
+    if (buffer.hasRemaining()) {
+      // Copy aggregated stats.
+      int offset = buffer.position();
+      aggregatedStats = Arrays.copyOfRange(backingArray, offset, size);
+      if (hasUnknownTypes) {
+        while (buffer.hasRemaining()) {
+          if (getType(buffer.get()) == ProfilerTask.UNKNOWN) {
+            // We're dealing with unknown aggregated type - update stats array to
+            // use ProfilerTask.UNKNOWN.ordinal() value.
+            aggregatedStats[buffer.position() - 1 - offset] =
+                (byte) ProfilerTask.UNKNOWN.ordinal();
+          }
+          VarInt.getVarInt(buffer);
+          VarInt.getVarLong(buffer);
+        }
+      }
+    }
+    return true;
+  }
+
+  private ProfilerTask getType(byte index) throws IOException {
+    if (index < 0 || index >= typeList.size()) {
+      throw new IOException("Invalid task type " + index);
+    }
+    return typeList.get(index);
+  }
+
+  /**
+   * Reads a varint32 like {@link VarInt#getVarInt(InputStream)}, but throws
+   * {@link java.io.EOFException} if the stream ends in the middle.
+   */
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.readByte();
+      result |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IOException("varint too long");
+  }
+
+  /** Returns the id of the thread that ran the current task, as returned by Thread.getId(). */
+  public long getThreadId() {
+    return threadId;
+  }
+
+  /** Returns the id of the current task; ids start from 1. */
+  public int getId() {
+    return id;
+  }
+
+  /** Returns the id of the parent of the current task, or 0 for root tasks. */
+  public int getParentId() {
+    return parentId;
+  }
+
+  /** Returns the start time of the current task in ns, relative to the start of profiling. */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /** Returns the duration of the current task in ns. */
+  public long getDuration() {
+    return duration;
+  }
+
+  public ProfilerTask getType() {
+    return type;
+  }
+
+  /**
+   * Returns the index of the description of the current task. Descriptions are numbered from 0
+   * in the order in which they first appear in the profile.
+   */
+  public int getDescriptionIndex() {
+    return descriptionIndex;
+  }
+
+  /**
+   * Returns the description of the current task if it appears for the first time in the
+   * profile, and null otherwise.
+   */
+  @Nullable
+  public String getNewDescription() {
+    return newDescription;
+  }
+
+  /**
+   * Returns the aggregated statistics of the subtasks of the current task, in the encoding of
+   * {@link ProfileInfo.CompactStatistics}, or null if there are none.
+   */
+  @Nullable
+  byte[] getAggregatedStats() {
+    return aggregatedStats;
+  }
+
+  /**
+   * Returns the total duration of the subtasks whose statistics were aggregated into the current
+   * task, in ns; see {@link ProfileInfo.Task#getInheritedDuration}.
+   */
+  public long getAggregatedDuration() {
+    long duration = 0;
+    if (aggregatedStats != null) {
+      ByteBuffer source = ByteBuffer.wrap(aggregatedStats);
+      while (source.hasRemaining()) {
+        source.get();
+        VarInt.getVarInt(source);
+        duration += VarInt.getVarLong(source);
+      }
+    }
+    return duration;
+  }
+
+  /**
+   * Adds the aggregated counts and durations of the subtasks of the current task to the given
+   * arrays, which are indexed by the ordinal of the subtask type.
+   */
+  public void addAggregatedStats(long[] counts, long[] durations) {
+    if (aggregatedStats != null) {
+      ByteBuffer source = ByteBuffer.wrap(aggregatedStats);
+      while (source.hasRemaining()) {
+        byte index = source.get();
+        counts[index] += VarInt.getVarInt(source);
+        durations[index] += VarInt.getVarLong(source);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -14,6 +14,7 @@
 package com.google.devtools.build.lib.profiler;
 
 import static com.google.devtools.build.lib.profiler.ProfilerTask.TASK_COUNT;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
@@ -30,14 +31,18 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -53,7 +58,10 @@ import java.util.zip.DeflaterOutputStream;
  * obtain reference.
  * <p>
  * Internally, profiler uses two data structures - ThreadLocal task stack to track
- * nested tasks and single ConcurrentLinkedQueue to gather all completed tasks.
+ * nested tasks and ThreadLocal buffers of fixed size to gather completed tasks.
+ * Threads record completed tasks only into their own buffer; full buffers are
+ * handed over to the writer thread, which saves them in bulk, so threads do not
+ * contend with each other for every completed task.
  * <p>
  * Also, due to the nature of the provided functionality (instrumentation of all
  * Blaze components), build.lib.profiler package will be used by almost every
@@ -86,7 +94,7 @@ import java.util.zip.DeflaterOutputStream;
  *               their position in this table starting from 0.
  *
  * TASK_RECORD:
- *   int32 size: size of the encoded task record
+ *   varint32 size: size of the encoded task record (always > 0)
  *   byte[size] encoded_task_record:
  *     varint64: thread id - as was returned by Thread.getId()
  *     varint32: task id - starting from 1.
@@ -96,13 +104,17 @@ import java.util.zip.DeflaterOutputStream;
  *     byte:     task type id (see TASK_TYPE_TABLE)
  *     varint32: description string index incremented by 1 (>0) or 0 this is
  *               a first occurrence of the description string
+ *     DESCRIPTION: *optional* description string, will appear only if
+ *                  description string index above was 0. In that case this
+ *                  string will be assigned next sequential id so every unique
+ *                  description string will appear in the file only once -
+ *                  after that it will be referenced by id.
  *     AGGREGATED_STAT...: remainder of the field (if present) represents
  *                         aggregated stats for that task
- *   string: *optional* description string, will appear only if description
- *           string index above was 0. In that case this string will be
- *           assigned next sequential id so every unique description string
- *           will appear in the file only once - after that it will be
- *           referenced by id.
+ *
+ * DESCRIPTION:
+ *   varint32: length of the description in bytes
+ *   byte[length]: UTF-8 encoded description
  *
  * AGGREGATE_STAT:
  *   byte:     stat type
@@ -110,10 +122,18 @@ import java.util.zip.DeflaterOutputStream;
  *   varint64: cumulative duration of subtask invocations in ns.
  *
  * EOF_MARKER:
- *   int64: -1 - please note that this corresponds to the thread id in the
- *               TASK_RECORD which is always > 0
+ *   varint32: 0 - please note that this corresponds to the size of the
+ *                 TASK_RECORD which is always > 0
  * </pre>
  *
+ * <p>Task records are not ordered by task id. Profile files of the previous
+ * version ({@link #PREVIOUS_VERSION}), which used an int32 size, wrote the
+ * description after the encoded task record with DataOutput.writeUTF() and
+ * ended with an int32 -1, can still be read by {@link ProfileInfo}.
+ *
+ * <p>Alternatively, the profiler can write the tasks in the Chrome trace event
+ * format instead, see {@link Format#JSON_TRACE_FILE_FORMAT}.
+ *
  * @see ProfilerTask enum for recognized task types.
  */
 //@ThreadSafe - commented out to avoid cyclic dependency with lib.util package
@@ -125,10 +145,20 @@ public final class Profiler {
   // File version number. Note that merely adding new record types in
   // the ProfilerTask does not require bumping version number as long as original
   // enum values are not renamed or deleted.
-  static final int VERSION = 0x03;
+  static final int VERSION = 0x04;
+
+  // The previous file version, which ProfileInfo can still read.
+  static final int PREVIOUS_VERSION = 0x03;
+
+  // EOF marker. Must not be a valid task record size.
+  static final int EOF_MARKER = 0;
+
+  // EOF marker of PREVIOUS_VERSION files.
+  static final int PREVIOUS_EOF_MARKER = -1;
 
-  // EOF marker. Must be < 0.
-  static final int EOF_MARKER = -1;
+  // Number of completed tasks each thread gathers before handing them over to
+  // the writer.
+  private static final int TASK_BUFFER_SIZE = 256;
 
   // Profiler will check for gathered data and persist all of it in the
   // separate thread every SAVE_DELAY ms.
@@ -141,6 +171,11 @@ public final class Profiler {
 
   private static final int HISTOGRAM_BUCKETS = 20;
 
+  private static final ProfilerTask[] TASK_TYPES = ProfilerTask.values();
+
+  // Room in the sink for everything but the description of a task record.
+  private static final int MIN_SINK_SIZE = 64 + 16 * TASK_COUNT;
+
   /**
    *
    * A task that was very slow.
@@ -287,6 +322,108 @@ public final class Profiler {
     }
   }
 
+  /**
+   * A fixed-size buffer of the completed tasks of a single thread, stored as
+   * parallel arrays of their fields.
+   *
+   * <p>Only the owning thread adds tasks. Buffers are handed over to the writer
+   * under their own lock, either by the owning thread when they are full or by
+   * the writer itself when it saves the tasks recorded so far; the owning thread
+   * then continues with a new buffer.
+   */
+  private static final class TaskBuffer {
+    final long threadId = Thread.currentThread().getId();
+    final String threadName = Thread.currentThread().getName();
+    final int[] ids = new int[TASK_BUFFER_SIZE];
+    final int[] parentIds = new int[TASK_BUFFER_SIZE];
+    final long[] startTimes = new long[TASK_BUFFER_SIZE];
+    final long[] durations = new long[TASK_BUFFER_SIZE];
+    final byte[] types = new byte[TASK_BUFFER_SIZE];
+    final Object[] objects = new Object[TASK_BUFFER_SIZE];
+    final int[][] aggregatedCounts = new int[TASK_BUFFER_SIZE][];
+    final long[][] aggregatedDurations = new long[TASK_BUFFER_SIZE][];
+    int size;
+    boolean handedOver;
+
+    void add(TaskData data) {
+      int index = size;
+      ids[index] = data.id;
+      parentIds[index] = data.parentId;
+      startTimes[index] = data.startTime;
+      durations[index] = data.duration;
+      types[index] = (byte) data.type.ordinal();
+      objects[index] = data.object;
+      aggregatedCounts[index] = data.counts;
+      aggregatedDurations[index] = data.durations;
+      size = index + 1;
+    }
+
+    boolean isFull() {
+      return size == TASK_BUFFER_SIZE;
+    }
+  }
+
+  /**
+   * Gives each thread its own {@link TaskBuffer} and keeps track of the buffers
+   * that are waiting to be saved. A new instance is used for every profiling
+   * session.
+   */
+  //@ThreadSafe - commented out to avoid cyclic dependency with lib.util.
+  private static final class TaskBuffers extends ThreadLocal<TaskBuffer> {
+    private final Set<TaskBuffer> open =
+        Collections.newSetFromMap(new ConcurrentHashMap<TaskBuffer, Boolean>());
+    private final Queue<TaskBuffer> full = new ConcurrentLinkedQueue<>();
+
+    @Override
+    protected TaskBuffer initialValue() {
+      TaskBuffer buffer = new TaskBuffer();
+      open.add(buffer);
+      return buffer;
+    }
+
+    /** Records a completed task in the buffer of the current thread. */
+    void add(TaskData data) {
+      TaskBuffer buffer = get();
+      synchronized (buffer) {
+        if (!buffer.handedOver) {
+          buffer.add(data);
+          if (buffer.isFull()) {
+            handOver(buffer);
+          }
+          return;
+        }
+      }
+      // The writer took the buffer; continue with a new one.
+      remove();
+      add(data);
+    }
+
+    /**
+     * Hands over the buffers that are not full yet, too, so that the tasks
+     * recorded so far are saved even if the profiler is never stopped.
+     */
+    void handOverAll() {
+      for (TaskBuffer buffer : open) {
+        synchronized (buffer) {
+          if (!buffer.handedOver && buffer.size > 0) {
+            handOver(buffer);
+          }
+        }
+      }
+    }
+
+    private void handOver(TaskBuffer buffer) {
+      buffer.handedOver = true;
+      open.remove(buffer);
+      full.add(buffer);
+    }
+
+    /** Returns the next buffer to be saved, or null if there is none. */
+    TaskBuffer poll() {
+      return full.poll();
+    }
+  }
+
   private static String toDescription(Object object) {
     return (object instanceof Describable)
         ? ((Describable) object).describe()
@@ -296,32 +433,35 @@ public final class Profiler {
   /**
    * Implements datastore for object description indices. Intended to be used
    * only by the Profiler.save() method.
+   *
+   * <p>Objects are told apart by identity, except for strings, which share
+   * the index of an equal string that was described before.
    */
   //@ThreadCompatible - commented out to avoid cyclic dependency with lib.util.
   private final class ObjectDescriber {
     private Map<Object, Integer> descMap = new IdentityHashMap<>(2000);
+    private Map<String, Integer> stringDescMap = new HashMap<>(2000);
     private int indexCounter = 0;
 
     ObjectDescriber() { }
 
     int getDescriptionIndex(Object object) {
-      Integer index = descMap.get(object);
+      Integer index = (object instanceof String) ? stringDescMap.get(object) : descMap.get(object);
       return (index != null) ? index : -1;
     }
 
     String getDescription(Object object) {
       String description = toDescription(object);
 
-      Integer oldIndex = descMap.put(object, indexCounter++);
+      Integer oldIndex = (object instanceof String)
+          ? stringDescMap.put((String) object, indexCounter++)
+          : descMap.put(object, indexCounter++);
       // Do not use Preconditions class below due to the rather expensive
       // toString() calls used in the message.
       if (oldIndex != null) {
         throw new IllegalStateException(" Object '" + description + "' @ "
             + System.identityHashCode(object) + " already had description index "
-            + oldIndex + " while assigning index " + descMap.get(object));
-      } else if (description.length() > 20000) {
-        // Note size 64k byte limitation in DataOutputStream#writeUTF().
-        description = description.substring(0, 20000);
+            + oldIndex + " while assigning index " + (indexCounter - 1));
       }
       return description;
     }
@@ -402,6 +542,20 @@ public final class Profiler {
     }
   }
 
+  /**
+   * The format of the profile file.
+   */
+  public enum Format {
+    /** The binary format described above, which is read by {@link ProfileInfo}. */
+    BINARY_BAZEL_FORMAT,
+
+    /**
+     * A JSON file in the Chrome trace event format, written by {@link ChromeTraceWriter}, which
+     * also contains the memory usage of the JVM at every save.
+     */
+    JSON_TRACE_FILE_FORMAT
+  }
+
   /**
    * Which {@link ProfilerTask}s are profiled.
    */
@@ -455,8 +609,10 @@ public final class Profiler {
   private AtomicInteger taskId = new AtomicInteger();
 
   private TaskStack taskStack;
-  private Queue<TaskData> taskQueue;
+  private TaskBuffers taskBuffers;
   private DataOutputStream out;
+  private ChromeTraceWriter traceWriter;
+  private ByteBuffer sink;
   private Timer timer;
   private IOException saveException;
   private ObjectDescriber describer;
@@ -527,12 +683,24 @@ public final class Profiler {
    * @param clock a {@code BlazeClock.instance()}
    * @param execStartTimeNanos execution start time in nanos obtained from {@code clock.nanoTime()}
    */
-  public synchronized void start(ProfiledTaskKinds profiledTaskKinds, OutputStream stream,
+  public void start(ProfiledTaskKinds profiledTaskKinds, OutputStream stream,
       String comment, boolean recordAllDurations, Clock clock, long execStartTimeNanos)
       throws IOException {
+    start(profiledTaskKinds, stream, Format.BINARY_BAZEL_FORMAT, comment, recordAllDurations,
+        clock, execStartTimeNanos);
+  }
+
+  /**
+   * Enable profiling, writing the profile data in the given format.
+   *
+   * @see #start(ProfiledTaskKinds, OutputStream, String, boolean, Clock, long)
+   */
+  public synchronized void start(ProfiledTaskKinds profiledTaskKinds, OutputStream stream,
+      Format format, String comment, boolean recordAllDurations, Clock clock,
+      long execStartTimeNanos) throws IOException {
     Preconditions.checkState(!isActive(), "Profiler already active");
     taskStack = new TaskStack();
-    taskQueue = new ConcurrentLinkedQueue<>();
+    taskBuffers = (stream != null) ? new TaskBuffers() : null;
     describer = new ObjectDescriber();
 
     this.profiledTaskKinds = profiledTaskKinds;
@@ -547,7 +715,12 @@ public final class Profiler {
     taskId.set(0);
     this.recordAllDurations = recordAllDurations;
     this.saveException = null;
-    if (stream != null) {
+    this.out = null;
+    this.traceWriter = null;
+    if (stream != null && format == Format.JSON_TRACE_FILE_FORMAT) {
+      this.timer = new Timer("ProfilerTimer", true);
+      this.traceWriter = new ChromeTraceWriter(stream, comment);
+    } else if (stream != null) {
       this.timer = new Timer("ProfilerTimer", true);
       // Wrapping deflater stream in the buffered stream proved to reduce CPU consumption caused by
       // the save() method. Values for buffer sizes were chosen by running small amount of tests
@@ -555,6 +728,8 @@ public final class Profiler {
       // them.
       this.out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(
           stream, new Deflater(Deflater.BEST_SPEED, false), 65536), 262144));
+      // Allocate the sink once to avoid GC; it only grows for very long descriptions.
+      this.sink = ByteBuffer.allocate(MIN_SINK_SIZE);
 
       this.out.writeInt(MAGIC); // magic
       this.out.writeInt(VERSION); // protocol_version
@@ -565,13 +740,12 @@ public final class Profiler {
       for (ProfilerTask type : ProfilerTask.values()) {
         this.out.writeUTF(type.toString());
       }
-
+    }
+    if (timer != null) {
       // Start save thread
       timer.schedule(new TimerTask() {
         @Override public void run() { save(); }
       }, SAVE_DELAY, SAVE_DELAY);
-    } else {
-      this.out = null;
     }
 
     // activate profiler
@@ -617,9 +791,14 @@ public final class Profiler {
       throw saveException;
     }
     if (out != null) {
-      out.writeInt(EOF_MARKER);
+      VarInt.putVarInt(EOF_MARKER, out);
       out.close();
       out = null;
+      sink = null;
+    }
+    if (traceWriter != null) {
+      traceWriter.close();
+      traceWriter = null;
     }
   }
 
@@ -635,62 +814,103 @@ public final class Profiler {
   }
 
   /**
-   * Saves all gathered information from taskQueue queue to the file.
+   * Saves the tasks recorded so far by all threads to the file.
    * Method is invoked internally by the Timer-based thread and at the end of
    * profiling session.
    */
   private synchronized void save() {
-    if (out == null) {
+    if (taskBuffers == null) {
       return;
     }
     try {
-      // Allocate the sink once to avoid GC
-      ByteBuffer sink = ByteBuffer.allocate(1024);
-      while (!taskQueue.isEmpty()) {
-        sink.clear();
-        TaskData data = taskQueue.poll();
-
-        VarInt.putVarLong(data.threadId, sink);
-        VarInt.putVarInt(data.id, sink);
-        VarInt.putVarInt(data.parentId, sink);
-        VarInt.putVarLong(data.startTime - profileStartTime, sink);
-        VarInt.putVarLong(data.duration, sink);
-
-        // To save space (and improve performance), convert all description
-        // strings to the canonical object and use IdentityHashMap to assign
-        // unique numbers for each string.
-        int descIndex = describer.getDescriptionIndex(data.object);
-        VarInt.putVarInt(descIndex + 1, sink); // Add 1 to avoid encoding negative values.
-
-        // Save types using their ordinal() value
-        sink.put((byte) data.type.ordinal());
-
-        // Save aggregated data stats.
-        if (data.counts != null) {
-          for (int i = 0; i < TASK_COUNT; i++) {
-            if (data.counts[i] > 0) {
-              sink.put((byte) i); // aggregated type ordinal value
-              VarInt.putVarInt(data.counts[i], sink);
-              VarInt.putVarLong(data.durations[i], sink);
-            }
-          }
-        }
-
-        this.out.writeInt(sink.position());
-        this.out.write(sink.array(), 0, sink.position());
-        if (describer.isUnassigned(descIndex)) {
-          this.out.writeUTF(describer.getDescription(data.object));
+      taskBuffers.handOverAll();
+      TaskBuffer buffer;
+      while ((buffer = taskBuffers.poll()) != null) {
+        if (out != null) {
+          save(buffer);
+        } else {
+          saveTrace(buffer);
         }
       }
-      this.out.flush();
+      if (out != null) {
+        this.out.flush();
+      } else {
+        Runtime runtime = Runtime.getRuntime();
+        traceWriter.writeMemoryUsage(clock.nanoTime() - profileStartTime,
+            runtime.totalMemory() - runtime.freeMemory(), runtime.totalMemory());
+        traceWriter.flush();
+      }
     } catch (IOException e) {
       saveException = e;
       clear();
       try {
-        out.close();
+        if (out != null) {
+          out.close();
+        } else {
+          traceWriter.close();
+        }
       } catch (IOException e2) {
         // ignore it
       }
+      out = null;
+      traceWriter = null;
+    }
+  }
+
+  private void saveTrace(TaskBuffer buffer) throws IOException {
+    int size = buffer.size;
+    for (int index = 0; index < size; index++) {
+      traceWriter.writeTask(buffer.threadId, buffer.threadName, TASK_TYPES[buffer.types[index]],
+          toDescription(buffer.objects[index]), buffer.startTimes[index] - profileStartTime,
+          buffer.durations[index]);
+    }
+  }
+
+  private void save(TaskBuffer buffer) throws IOException {
+    int size = buffer.size;
+    for (int index = 0; index < size; index++) {
+      sink.clear();
+      VarInt.putVarLong(buffer.threadId, sink);
+      VarInt.putVarInt(buffer.ids[index], sink);
+      VarInt.putVarInt(buffer.parentIds[index], sink);
+      VarInt.putVarLong(buffer.startTimes[index] - profileStartTime, sink);
+      VarInt.putVarLong(buffer.durations[index], sink);
+
+      // Save types using their ordinal() value
+      sink.put(buffer.types[index]);
+
+      // To save space (and improve performance), use the describer to assign
+      // unique numbers for each description.
+      Object object = buffer.objects[index];
+      int descIndex = describer.getDescriptionIndex(object);
+      VarInt.putVarInt(descIndex + 1, sink); // Add 1 to avoid encoding negative values.
+      if (describer.isUnassigned(descIndex)) {
+        byte[] description = describer.getDescription(object).getBytes(UTF_8);
+        if (sink.remaining() < description.length + MIN_SINK_SIZE) {
+          ByteBuffer largerSink = ByteBuffer.allocate(
+              sink.position() + description.length + MIN_SINK_SIZE);
+          largerSink.put(sink.array(), 0, sink.position());
+          sink = largerSink;
+        }
+        VarInt.putVarInt(description.length, sink);
+        sink.put(description);
+      }
+
+      // Save aggregated data stats.
+      int[] counts = buffer.aggregatedCounts[index];
+      if (counts != null) {
+        long[] durations = buffer.aggregatedDurations[index];
+        for (int i = 0; i < TASK_COUNT; i++) {
+          if (counts[i] > 0) {
+            sink.put((byte) i); // aggregated type ordinal value
+            VarInt.putVarInt(counts[i], sink);
+            VarInt.putVarLong(durations[i], sink);
+          }
+        }
+      }
+
+      VarInt.putVarInt(sink.position(), this.out);
+      this.out.write(sink.array(), 0, sink.position());
     }
   }
 
@@ -702,7 +922,7 @@ public final class Profiler {
       timer = null;
     }
     taskStack = null;
-    taskQueue = null;
+    taskBuffers = null;
     describer = null;
 
     // Note that slowest task aggregator are not cleared here because clearing happens
@@ -738,8 +958,8 @@ public final class Profiler {
     tasksHistograms[type.ordinal()].addStat((int) TimeUnit.NANOSECONDS.toMillis(duration), object);
     // Store instance fields as local variables so they are not nulled out from under us by #clear.
     TaskStack localStack = taskStack;
-    Queue<TaskData> localQueue = taskQueue;
-    if (localStack == null || localQueue == null) {
+    TaskBuffers localBuffers = taskBuffers;
+    if (localStack == null) {
       // Variables have been nulled out by #clear in between the check the caller made and this
       // point in the code. Probably due to an asynchronous crash.
       LOG.severe("Variables null in profiler for " + type + ", probably due to async crash");
@@ -752,8 +972,8 @@ public final class Profiler {
     if (wasTaskSlowEnoughToRecord(type, duration)) {
       TaskData data = localStack.create(startTime, type, object);
       data.duration = duration;
-      if (out != null) {
-        localQueue.add(data);
+      if (localBuffers != null) {
+        localBuffers.add(data);
       }
 
       SlowestTaskAggregator aggregator = slowestTasks[type.ordinal()];
@@ -876,8 +1096,9 @@ public final class Profiler {
         taskStack.peek().aggregateChild(data.type, data.duration);
       }
       boolean shouldRecordTask = wasTaskSlowEnoughToRecord(type, data.duration);
-      if (out != null && (shouldRecordTask || data.counts != null)) {
-        taskQueue.add(data);
+      TaskBuffers localBuffers = taskBuffers;
+      if (localBuffers != null && (shouldRecordTask || data.counts != null)) {
+        localBuffers.add(data);
       }
 
       if (shouldRecordTask) {
@@ -13,20 +13,30 @@
 // limitations under the License.
 package com.google.devtools.build.lib.profiler.statistics;
 
-import com.google.devtools.build.lib.profiler.ProfileInfo;
+import com.google.common.base.Throwables;
 import com.google.devtools.build.lib.profiler.ProfileInfo.InfoListener;
 import com.google.devtools.build.lib.profiler.ProfilePhase;
 import com.google.devtools.build.lib.vfs.Path;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Builds and aggregates statistics for multiple profile files.
+ *
+ * <p>The files are analyzed in parallel with {@link StreamingProfileStatistics}, so that neither
+ * the number nor the size of the files is limited by the available memory. The statistics are
+ * combined in the order in which the files are given.
  */
 public final class MultiProfileStatistics implements Iterable<Path> {
   private final PhaseSummaryStatistics summaryStatistics;
@@ -34,7 +44,6 @@ public final class MultiProfileStatistics implements Iterable<Path> {
   private final Map<Path, EnumMap<ProfilePhase, PhaseStatistics>> filePhaseStatistics;
   private final SkylarkStatistics skylarkStatistics;
 
-  private int missingActionsCount;
   private boolean generateVfsStatistics;
 
   public MultiProfileStatistics(
@@ -43,13 +52,65 @@ public final class MultiProfileStatistics implements Iterable<Path> {
       List<String> files,
       InfoListener listener,
       boolean generateVfsStatistics) {
+    this(
+        workingDirectory,
+        workSpaceName,
+        files,
+        listener,
+        generateVfsStatistics,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param jobs the maximum number of files analyzed at the same time
+   */
+  public MultiProfileStatistics(
+      Path workingDirectory,
+      final String workSpaceName,
+      List<String> files,
+      InfoListener listener,
+      final boolean generateVfsStatistics,
+      int jobs) {
     summaryStatistics = new PhaseSummaryStatistics();
     summaryPhaseStatistics = new EnumMap<>(ProfilePhase.class);
     filePhaseStatistics = new HashMap<>();
     skylarkStatistics = new SkylarkStatistics();
     this.generateVfsStatistics = generateVfsStatistics;
-    for (String file : files) {
-      loadProfileFile(workingDirectory, workSpaceName, file, listener);
+
+    ExecutorService executor = Executors.newFixedThreadPool(jobs);
+    try {
+      List<Future<StreamingProfileStatistics>> futures = new ArrayList<>(files.size());
+      for (String file : files) {
+        final Path profileFile = workingDirectory.getRelative(file);
+        futures.add(executor.submit(new Callable<StreamingProfileStatistics>() {
+          @Override
+          public StreamingProfileStatistics call() throws IOException {
+            return StreamingProfileStatistics.create(
+                profileFile, workSpaceName, generateVfsStatistics);
+          }
+        }));
+      }
+      for (int i = 0; i < files.size(); i++) {
+        String file = files.get(i);
+        StreamingProfileStatistics statistics;
+        try {
+          statistics = futures.get(i).get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            listener.warn(
+                "Ignoring file " + file + " - cannot load: " + e.getCause().getMessage());
+            continue;
+          }
+          throw Throwables.propagate(e.getCause());
+        }
+        // Only the phase statistics of the file are kept.
+        futures.set(i, null);
+        addProfileStatistics(workingDirectory.getRelative(file), file, statistics, listener);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
     }
   }
 
@@ -69,8 +130,12 @@ public final class MultiProfileStatistics implements Iterable<Path> {
     return skylarkStatistics;
   }
 
+  /**
+   * Always returns 0, as missing actions are only found when computing the critical path, which
+   * is not done for multiple files.
+   */
   public int getMissingActionsCount() {
-    return missingActionsCount;
+    return 0;
   }
 
   public EnumMap<ProfilePhase, PhaseStatistics> getPhaseStatistics(Path file) {
@@ -83,30 +148,25 @@ public final class MultiProfileStatistics implements Iterable<Path> {
   }
 
   /**
-   * Loads a single profile file and adds the statistics to the previously collected ones.
+   * Adds the statistics of a single profile file to the previously collected ones.
    */
-  private void loadProfileFile(
-      Path workingDirectory, String workSpaceName, String file, InfoListener listener) {
-    ProfileInfo info;
-    Path profileFile = workingDirectory.getRelative(file);
-    try {
-      info = ProfileInfo.loadProfileVerbosely(profileFile, listener);
-      ProfileInfo.aggregateProfile(info, listener);
-    } catch (IOException e) {
-      listener.warn("Ignoring file " + file + " - cannot load: " + e.getMessage());
-      return;
+  private void addProfileStatistics(
+      Path profileFile, String file, StreamingProfileStatistics statistics, InfoListener listener) {
+    if (statistics.isCorruptedOrIncomplete()) {
+      listener.warn(
+          "Profile file " + file + " is incomplete or corrupted - not all records were parsed");
     }
+    listener.info(
+        file + ": " + statistics.getComment() + ", " + statistics.getRecordCount() + " record(s)");
 
-    summaryStatistics.addProfileInfo(info);
+    for (ProfilePhase phase : statistics.getSummaryStatistics()) {
+      summaryStatistics.addPhase(phase, statistics.getSummaryStatistics().getDurationNanos(phase));
+    }
 
-    EnumMap<ProfilePhase, PhaseStatistics> fileStatistics = new EnumMap<>(ProfilePhase.class);
+    EnumMap<ProfilePhase, PhaseStatistics> fileStatistics = statistics.getPhaseStatistics();
     filePhaseStatistics.put(profileFile, fileStatistics);
 
     for (ProfilePhase phase : ProfilePhase.values()) {
-      PhaseStatistics filePhaseStat =
-          new PhaseStatistics(phase, info, workSpaceName, generateVfsStatistics);
-      fileStatistics.put(phase, filePhaseStat);
-
       PhaseStatistics summaryPhaseStats;
       if (summaryPhaseStatistics.containsKey(phase)) {
         summaryPhaseStats = summaryPhaseStatistics.get(phase);
@@ -114,11 +174,9 @@ public final class MultiProfileStatistics implements Iterable<Path> {
         summaryPhaseStats = new PhaseStatistics(phase, generateVfsStatistics);
         summaryPhaseStatistics.put(phase, summaryPhaseStats);
       }
-      summaryPhaseStats.add(filePhaseStat);
+      summaryPhaseStats.add(fileStatistics.get(phase));
     }
 
-    skylarkStatistics.addProfileInfo(info);
-
-    missingActionsCount += info.getMissingActionsCount();
+    skylarkStatistics.add(statistics.getSkylarkStatistics());
   }
 }
@@ -88,6 +88,24 @@ public final class PhaseStatistics implements Iterable<ProfilerTask> {
     }
   }
 
+  /**
+   * Add the statistics of one execution of this phase, as computed by
+   * {@link StreamingProfileStatistics}.
+   *
+   * @param counts the number of tasks of each type, indexed by {@link ProfilerTask#ordinal}
+   * @param durations the duration of the tasks of each type, indexed the same way
+   */
+  void addPhase(
+      long phaseDurationNanos, long totalDurationNanos, long[] counts, long[] durations) {
+    wasExecuted = true;
+    this.phaseDurationNanos += phaseDurationNanos;
+    this.totalDurationNanos += totalDurationNanos;
+    for (ProfilerTask type : ProfilerTask.values()) {
+      add(taskCounts, type, Math.max(0, counts[type.ordinal()]));
+      add(taskDurations, type, Math.max(0, durations[type.ordinal()]));
+    }
+  }
+
   /**
    * Add statistics accumulated in another PhaseStatistics object to this one.
    */
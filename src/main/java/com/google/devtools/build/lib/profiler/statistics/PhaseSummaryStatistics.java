@@ -46,13 +46,19 @@ public final class PhaseSummaryStatistics implements Iterable<ProfilePhase> {
     for (ProfilePhase phase : ProfilePhase.values()) {
       ProfileInfo.Task phaseTask = info.getPhaseTask(phase);
       if (phaseTask != null) {
-        long phaseDuration = info.getPhaseDuration(phaseTask);
-        totalDurationNanos += phaseDuration;
-        durations.put(phase, phaseDuration);
+        addPhase(phase, info.getPhaseDuration(phaseTask));
       }
     }
   }
 
+  /**
+   * Add the duration of one {@link ProfilePhase}.
+   */
+  void addPhase(ProfilePhase phase, long phaseDuration) {
+    totalDurationNanos += phaseDuration;
+    durations.put(phase, phaseDuration);
+  }
+
   /**
    * @return whether the given {@link ProfilePhase} was executed
    */
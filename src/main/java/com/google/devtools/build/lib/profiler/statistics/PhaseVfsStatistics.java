@@ -184,17 +184,23 @@ public final class PhaseVfsStatistics implements Iterable<ProfilerTask> {
       if (!task.type.name().startsWith("VFS_")) {
         continue;
       }
+      addTask(workSpaceName, task.type, task.getDescription(), task.durationNanos);
+    }
+  }
 
-      String path = pathMapping(workSpaceName, task.getDescription());
-
-      Stat stat = statistics.get(task.type, path);
-      if (stat == null) {
-        stat = new Stat(path);
-        statistics.put(task.type, path, stat);
-      }
+  /**
+   * Add a single VFS operation on the path given by {@code description}.
+   */
+  void addTask(String workSpaceName, ProfilerTask type, String description, long duration) {
+    String path = pathMapping(workSpaceName, description);
 
-      stat.add(task.durationNanos);
+    Stat stat = statistics.get(type, path);
+    if (stat == null) {
+      stat = new Stat(path);
+      statistics.put(type, path, stat);
     }
+
+    stat.add(duration);
   }
 
   private String pathMapping(String workSpaceName, String input) {
@@ -18,6 +18,7 @@ import com.google.common.collect.Maps.EntryTransformer;
 import com.google.common.collect.Multimap;
 import com.google.devtools.build.lib.profiler.ProfileInfo;
 import com.google.devtools.build.lib.profiler.ProfileInfo.Task;
+import com.google.devtools.build.lib.profiler.ProfilerTask;
 import com.google.devtools.build.lib.util.LongArrayList;
 
 import java.util.Collection;
@@ -73,6 +74,49 @@ public final class SkylarkStatistics {
         info.getSkylarkBuiltinFunctionTasks());
   }
 
+  /**
+   * Adds the durations accumulated in another SkylarkStatistics object to this one.
+   */
+  public void add(SkylarkStatistics other) {
+    userTotalNanos += other.userTotalNanos;
+    userCompiledTotalNanos += other.userCompiledTotalNanos;
+    builtinTotalNanos += other.builtinTotalNanos;
+    addDurations(other.userFunctionDurations, userFunctionDurations);
+    addDurations(other.userFunctionSelfDurations, userFunctionSelfDurations);
+    addDurations(other.userCompiledDurations, userCompiledDurations);
+    addDurations(other.userCompiledSelfDurations, userCompiledSelfDurations);
+    addDurations(other.builtinFunctionDurations, builtinFunctionDurations);
+    addDurations(other.builtinFunctionSelfDurations, builtinFunctionSelfDurations);
+  }
+
+  /**
+   * Adds the duration and self duration of a single Skylark function call.
+   *
+   * @param type one of {@link ProfilerTask#SKYLARK_USER_FN},
+   *     {@link ProfilerTask#SKYLARK_USER_COMPILED_FN} and {@link ProfilerTask#SKYLARK_BUILTIN_FN}
+   */
+  void addTask(ProfilerTask type, String function, long durationNanos, long selfDurationNanos) {
+    switch (type) {
+      case SKYLARK_USER_FN:
+        userTotalNanos += durationNanos;
+        addDuration(function, durationNanos, selfDurationNanos,
+            userFunctionDurations, userFunctionSelfDurations);
+        break;
+      case SKYLARK_USER_COMPILED_FN:
+        userCompiledTotalNanos += durationNanos;
+        addDuration(function, durationNanos, selfDurationNanos,
+            userCompiledDurations, userCompiledSelfDurations);
+        break;
+      case SKYLARK_BUILTIN_FN:
+        builtinTotalNanos += durationNanos;
+        addDuration(function, durationNanos, selfDurationNanos,
+            builtinFunctionDurations, builtinFunctionSelfDurations);
+        break;
+      default:
+        throw new IllegalArgumentException("Not a Skylark function task: " + type);
+    }
+  }
+
   /**
    * @return the total time taken by all calls to built-in Skylark functions
    */
@@ -246,6 +290,38 @@ public final class SkylarkStatistics {
     return totalTime;
   }
 
+  private static void addDurations(
+      Map<String, LongArrayList> source, Map<String, LongArrayList> durationsMap) {
+    for (Entry<String, LongArrayList> entry : source.entrySet()) {
+      LongArrayList durations = durationsMap.get(entry.getKey());
+      if (durations == null) {
+        durations = new LongArrayList(entry.getValue().size());
+        durationsMap.put(entry.getKey(), durations);
+      }
+      durations.addAll(entry.getValue());
+    }
+  }
+
+  private static void addDuration(
+      String function,
+      long duration,
+      long selfDuration,
+      Map<String, LongArrayList> durationsMap,
+      Map<String, LongArrayList> selfDurationsMap) {
+    LongArrayList durations = durationsMap.get(function);
+    LongArrayList selfDurations;
+    if (durations == null) {
+      durations = new LongArrayList();
+      selfDurations = new LongArrayList();
+      durationsMap.put(function, durations);
+      selfDurationsMap.put(function, selfDurations);
+    } else {
+      selfDurations = selfDurationsMap.get(function);
+    }
+    durations.add(duration);
+    selfDurations.add(selfDuration);
+  }
+
   /**
    * Build a Map of {@link TasksStatistics} from the given duration maps.
    */
@@ -0,0 +1,308 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler.statistics;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.profiler.ProfileInfo;
+import com.google.devtools.build.lib.profiler.ProfilePhase;
+import com.google.devtools.build.lib.profiler.ProfileReader;
+import com.google.devtools.build.lib.profiler.ProfilerTask;
+import com.google.devtools.build.lib.util.Preconditions;
+import com.google.devtools.build.lib.vfs.Path;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the phase and Skylark statistics of a single profile file without loading it into
+ * a {@link ProfileInfo}.
+ *
+ * <p>The file is read twice with a {@link ProfileReader}. The first pass only keeps the parent id
+ * of every task and the phase markers, the second pass adds every task to the statistics of the
+ * phase its root task belongs to. Apart from the statistics themselves, the memory needed is 4
+ * bytes per task, plus the descriptions of the Skylark function calls (and of the VFS operations,
+ * if requested). The results are the same as those computed from a {@link ProfileInfo}.
+ *
+ * <p>The critical path is not computed, as it requires the whole action graph.
+ */
+public final class StreamingProfileStatistics {
+
+  private static final ImmutableMap<String, ProfilePhase> PHASES_BY_DESCRIPTION;
+
+  static {
+    ImmutableMap.Builder<String, ProfilePhase> builder = ImmutableMap.builder();
+    for (ProfilePhase phase : ProfilePhase.values()) {
+      builder.put(phase.description, phase);
+    }
+    PHASES_BY_DESCRIPTION = builder.build();
+  }
+
+  private static final Set<ProfilerTask> SKYLARK_FUNCTION_TYPES = EnumSet.of(
+      ProfilerTask.SKYLARK_USER_FN,
+      ProfilerTask.SKYLARK_USER_COMPILED_FN,
+      ProfilerTask.SKYLARK_BUILTIN_FN);
+
+  /** Parent id of tasks that are not in the profile. */
+  private static final int MISSING = -1;
+
+  /**
+   * A root {@link ProfilerTask#PHASE} task, and the statistics of the root tasks started between
+   * it and the next one.
+   */
+  private static final class PhaseMarker {
+    final int id;
+    final long startTime;
+    final long threadId;
+    final int descriptionIndex;
+    ProfilePhase phase;
+    long duration;
+    long otherThreadsDuration;
+    final long[] counts = new long[ProfilerTask.TASK_COUNT];
+    final long[] durations = new long[ProfilerTask.TASK_COUNT];
+
+    PhaseMarker(int id, long startTime, long threadId, int descriptionIndex) {
+      this.id = id;
+      this.startTime = startTime;
+      this.threadId = threadId;
+      this.descriptionIndex = descriptionIndex;
+    }
+  }
+
+  private final String workSpaceName;
+  private final boolean generateVfsStatistics;
+
+  private String comment;
+  private int recordCount;
+  private boolean corruptedOrIncomplete;
+  private final PhaseSummaryStatistics summaryStatistics = new PhaseSummaryStatistics();
+  private final EnumMap<ProfilePhase, PhaseStatistics> phaseStatistics =
+      new EnumMap<>(ProfilePhase.class);
+  private final SkylarkStatistics skylarkStatistics = new SkylarkStatistics();
+
+  // Only used during the analysis.
+  private int[] parentIds = new int[0];
+  private final List<PhaseMarker> markers = new ArrayList<>();
+  private int[] markerIds;
+  private final BitSet neededDescriptions = new BitSet();
+  private final Map<Integer, String> descriptions = new HashMap<>();
+
+  private StreamingProfileStatistics(String workSpaceName, boolean generateVfsStatistics) {
+    this.workSpaceName = workSpaceName;
+    this.generateVfsStatistics = generateVfsStatistics;
+    for (ProfilePhase phase : ProfilePhase.values()) {
+      phaseStatistics.put(phase, new PhaseStatistics(phase, generateVfsStatistics));
+    }
+  }
+
+  /**
+   * Computes the statistics of the given profile file. If the file is truncated or corrupted, the
+   * statistics of the tasks that could be read are computed.
+   *
+   * @throws java.io.UnsupportedEncodingException if the file format is invalid
+   * @throws IOException if the file can't be read
+   */
+  public static StreamingProfileStatistics create(
+      Path profileFile, String workSpaceName, boolean generateVfsStatistics) throws IOException {
+    StreamingProfileStatistics statistics =
+        new StreamingProfileStatistics(workSpaceName, generateVfsStatistics);
+    try (ProfileReader reader = ProfileReader.open(profileFile)) {
+      statistics.readStructure(reader);
+    }
+    try (ProfileReader reader = ProfileReader.open(profileFile)) {
+      statistics.collectStatistics(reader);
+    }
+    return statistics;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+
+  /** Returns the number of task records that could be read. */
+  public int getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Returns true if profile datafile was corrupted or incomplete and false otherwise.
+   */
+  public boolean isCorruptedOrIncomplete() {
+    return corruptedOrIncomplete;
+  }
+
+  public PhaseSummaryStatistics getSummaryStatistics() {
+    return summaryStatistics;
+  }
+
+  /** Returns the statistics of every {@link ProfilePhase}, including the ones not executed. */
+  public EnumMap<ProfilePhase, PhaseStatistics> getPhaseStatistics() {
+    return phaseStatistics;
+  }
+
+  public SkylarkStatistics getSkylarkStatistics() {
+    return skylarkStatistics;
+  }
+
+  /**
+   * First pass: records the parent of every task, the phase markers and which descriptions are
+   * needed in the second pass.
+   */
+  private void readStructure(ProfileReader reader) {
+    comment = reader.getComment();
+    Map<Integer, ProfilePhase> phaseDescriptions = new HashMap<>();
+    int lastRootId = 0;
+    long lastRootEndTime = 0;
+    try {
+      while (reader.next()) {
+        recordCount++;
+        String description = reader.getNewDescription();
+        ProfilePhase descriptionPhase =
+            description != null ? PHASES_BY_DESCRIPTION.get(description) : null;
+        if (descriptionPhase != null) {
+          phaseDescriptions.put(reader.getDescriptionIndex(), descriptionPhase);
+        }
+        int id = reader.getId();
+        if (id > 0) {
+          if (id >= parentIds.length) {
+            int oldLength = parentIds.length;
+            parentIds = Arrays.copyOf(parentIds, Math.max(2 * oldLength, id + 1024));
+            Arrays.fill(parentIds, oldLength, parentIds.length, MISSING);
+          }
+          parentIds[id] = reader.getParentId();
+        }
+        ProfilerTask type = reader.getType();
+        if (reader.getParentId() == 0) {
+          if (id > lastRootId) {
+            lastRootId = id;
+            lastRootEndTime = reader.getStartTime() + reader.getDuration();
+          }
+          if (type == ProfilerTask.PHASE) {
+            markers.add(new PhaseMarker(
+                id, reader.getStartTime(), reader.getThreadId(), reader.getDescriptionIndex()));
+          }
+        }
+        if (SKYLARK_FUNCTION_TYPES.contains(type) || (generateVfsStatistics && type.isVfs())) {
+          neededDescriptions.set(reader.getDescriptionIndex());
+        }
+      }
+    } catch (IOException e) {
+      corruptedOrIncomplete = true;
+    }
+
+    Collections.sort(markers, new Comparator<PhaseMarker>() {
+      @Override
+      public int compare(PhaseMarker a, PhaseMarker b) {
+        return Integer.compare(a.id, b.id);
+      }
+    });
+    markerIds = new int[markers.size()];
+    for (int i = 0; i < markers.size(); i++) {
+      PhaseMarker marker = markers.get(i);
+      markerIds[i] = marker.id;
+      long endTime = i + 1 < markers.size() ? markers.get(i + 1).startTime : lastRootEndTime;
+      marker.duration = endTime - marker.startTime;
+      Preconditions.checkState(marker.duration >= 0);
+      // Like ProfileInfo, only use the first marker of each phase.
+      ProfilePhase phase = phaseDescriptions.get(marker.descriptionIndex);
+      if (phase != null && !summaryStatistics.contains(phase)) {
+        marker.phase = phase;
+        summaryStatistics.addPhase(phase, marker.duration);
+      }
+    }
+  }
+
+  /**
+   * Second pass: adds every task to the statistics.
+   */
+  private void collectStatistics(ProfileReader reader) throws IOException {
+    for (int i = 0; i < recordCount && reader.next(); i++) {
+      int descriptionIndex = reader.getDescriptionIndex();
+      String description = reader.getNewDescription();
+      if (description != null && neededDescriptions.get(descriptionIndex)) {
+        descriptions.put(descriptionIndex, description);
+      }
+      ProfilerTask type = reader.getType();
+      long duration = reader.getDuration();
+      long inheritedDuration = reader.getAggregatedDuration();
+      if (SKYLARK_FUNCTION_TYPES.contains(type)) {
+        skylarkStatistics.addTask(
+            type, descriptions.get(descriptionIndex), duration, duration - inheritedDuration);
+      }
+
+      PhaseMarker marker = getPhaseMarker(reader.getId(), reader.getParentId());
+      if (marker == null) {
+        continue;
+      }
+      // Same as ProfileInfo.getStatsForType() over the aggregated statistics of the root tasks.
+      reader.addAggregatedStats(marker.counts, marker.durations);
+      int index = type.ordinal();
+      if (reader.getParentId() == 0) {
+        marker.counts[index]++;
+        marker.durations[index] += duration - inheritedDuration;
+        if (reader.getThreadId() != marker.threadId) {
+          marker.otherThreadsDuration += duration;
+        }
+      } else {
+        marker.durations[index] -= inheritedDuration;
+      }
+      if (generateVfsStatistics && type.isVfs()) {
+        phaseStatistics.get(marker.phase).getVfsStatistics().addTask(
+            workSpaceName, type, descriptions.get(descriptionIndex), duration);
+      }
+    }
+
+    for (PhaseMarker marker : markers) {
+      if (marker.phase != null) {
+        phaseStatistics.get(marker.phase).addPhase(marker.duration,
+            marker.duration + marker.otherThreadsDuration, marker.counts, marker.durations);
+      }
+    }
+    parentIds = null;
+    markers.clear();
+    descriptions.clear();
+  }
+
+  /**
+   * Returns the marker of the phase the root of the given task was started in, or null if the
+   * root task is missing or not in a phase whose statistics are computed.
+   */
+  private PhaseMarker getPhaseMarker(int id, int parentId) {
+    while (parentId != 0) {
+      // Parents are started before their subtasks, so they have a lower id.
+      if (parentId < 0 || parentId >= id || parentIds[parentId] == MISSING) {
+        return null;
+      }
+      id = parentId;
+      parentId = parentIds[id];
+    }
+    int index = Arrays.binarySearch(markerIds, id);
+    if (index < 0) {
+      index = -index - 2;
+      if (index < 0) {
+        return null;
+      }
+    }
+    PhaseMarker marker = markers.get(index);
+    return marker.phase != null ? marker : null;
+  }
+}
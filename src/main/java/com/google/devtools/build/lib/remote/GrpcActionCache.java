@@ -58,7 +58,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -318,11 +320,20 @@ public final class GrpcActionCache implements RemoteActionCache {
     // TODO(olaola): profile to maybe replace with separate concurrent requests.
     CasDownloadBlobRequest.Builder request = CasDownloadBlobRequest.newBuilder();
     ArrayList<Output> fileOutputs = new ArrayList<>();
+    // Outputs with the same contents as an earlier output; these are copied locally instead of
+    // being downloaded again.
+    ArrayList<Output> duplicateOutputs = new ArrayList<>();
+    Map<ContentDigest, Output> outputsByDigest = new HashMap<>();
     for (Output output : result.getOutputList()) {
       Path path = execRoot.getRelative(output.getPath());
       if (output.getContentCase() == ContentCase.FILE_METADATA) {
         ContentDigest digest = output.getFileMetadata().getDigest();
         if (digest.getSizeBytes() > 0) {
+          if (outputsByDigest.containsKey(digest)) {
+            duplicateOutputs.add(output);
+            continue;
+          }
+          outputsByDigest.put(digest, output);
           request.addDigest(digest);
           fileOutputs.add(output);
         } else {
@@ -339,6 +350,14 @@ public final class GrpcActionCache implements RemoteActionCache {
       createFileFromStream(
           execRoot.getRelative(output.getPath()), output.getFileMetadata(), replies);
     }
+    for (Output output : duplicateOutputs) {
+      // On file systems that support it, the copy shares its data with the original.
+      Output original = outputsByDigest.get(output.getFileMetadata().getDigest());
+      Path path = execRoot.getRelative(output.getPath());
+      FileSystemUtils.createDirectoryAndParents(path.getParentDirectory());
+      FileSystemUtils.copyFile(execRoot.getRelative(original.getPath()), path);
+      path.setExecutable(output.getFileMetadata().getExecutable());
+    }
   }
 
   private void createFileFromStream(
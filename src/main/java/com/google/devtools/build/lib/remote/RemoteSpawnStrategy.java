@@ -29,6 +29,8 @@ import com.google.devtools.build.lib.actions.Spawns;
 import com.google.devtools.build.lib.actions.UserExecException;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
+import com.google.devtools.build.lib.profiler.MetricsRegistry;
+import com.google.devtools.build.lib.profiler.MetricsRegistry.Counter;
 import com.google.devtools.build.lib.remote.ContentDigests.ActionKey;
 import com.google.devtools.build.lib.remote.RemoteProtocol.Action;
 import com.google.devtools.build.lib.remote.RemoteProtocol.ActionResult;
@@ -58,6 +60,12 @@ import java.util.TreeSet;
   contextType = SpawnActionContext.class
 )
 final class RemoteSpawnStrategy implements SpawnActionContext {
+  private static final Counter REMOTE_CACHE_HITS = MetricsRegistry.instance().counter(
+      "bazel_remote_cache_hits_total",
+      "Spawns whose outputs were downloaded from the remote cache.");
+  private static final Counter REMOTE_CACHE_MISSES = MetricsRegistry.instance().counter(
+      "bazel_remote_cache_misses_total", "Spawns that were not found in the remote cache.");
+
   private final Path execRoot;
   private final StandaloneSpawnStrategy standaloneStrategy;
   private final RemoteActionCache remoteActionCache;
@@ -185,11 +193,13 @@ final class RemoteSpawnStrategy implements SpawnActionContext {
         // just update the TreeNodeRepository and continue the build.
         try {
           remoteActionCache.downloadAllResults(result, execRoot);
+          REMOTE_CACHE_HITS.increment();
           return;
         } catch (CacheNotFoundException e) {
           acceptCached = false; // Retry the action remotely and invalidate the results.
         }
       }
+      REMOTE_CACHE_MISSES.increment();
 
       if (remoteWorkExecutor == null) {
         execLocally(spawn, actionExecutionContext, actionKey);
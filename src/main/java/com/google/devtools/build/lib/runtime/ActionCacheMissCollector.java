@@ -0,0 +1,90 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.runtime;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.devtools.build.lib.actions.Action;
+import com.google.devtools.build.lib.actions.ActionCacheChecker.MissReason;
+import com.google.devtools.build.lib.actions.ActionCacheMissEvent;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.runtime.ActionCacheMissesEvent.ActionMiss;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts why actions were not up to date in the action cache during the execution phase. Only
+ * the first {@link #MAX_REPORTED_ACTIONS} actions are kept, so the memory used doesn't depend on
+ * the size of the build.
+ */
+@ThreadSafe
+class ActionCacheMissCollector {
+  static final int MAX_REPORTED_ACTIONS = 100;
+
+  private final AtomicLongArray counts = new AtomicLongArray(MissReason.values().length);
+  private final List<ActionMiss> actions = new ArrayList<>();
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void actionCacheMiss(ActionCacheMissEvent event) {
+    counts.incrementAndGet(event.getReason().ordinal());
+    synchronized (actions) {
+      if (actions.size() < MAX_REPORTED_ACTIONS) {
+        Action action = event.getAction();
+        actions.add(new ActionMiss(action.getPrimaryOutput().getExecPathString(),
+            action.getMnemonic(), event.getReason()));
+      }
+    }
+  }
+
+  /** Returns the number of actions executed for each reason that occurred. */
+  Map<MissReason, Long> getCounts() {
+    Map<MissReason, Long> result = new EnumMap<>(MissReason.class);
+    for (MissReason reason : MissReason.values()) {
+      long count = counts.get(reason.ordinal());
+      if (count > 0) {
+        result.put(reason, count);
+      }
+    }
+    return result;
+  }
+
+  ActionCacheMissesEvent toBuildEvent() {
+    synchronized (actions) {
+      return new ActionCacheMissesEvent(getCounts(), actions);
+    }
+  }
+
+  /**
+   * Returns a one line summary of the reasons, e.g. "Action cache misses: 12 (not_cached: 3,
+   * different_files: 9)", or null if all actions were up to date.
+   */
+  String toSummary() {
+    Map<MissReason, Long> reasons = getCounts();
+    if (reasons.isEmpty()) {
+      return null;
+    }
+    long total = 0;
+    StringBuilder details = new StringBuilder();
+    for (Map.Entry<MissReason, Long> entry : reasons.entrySet()) {
+      total += entry.getValue();
+      details.append(details.length() == 0 ? "" : ", ")
+          .append(entry.getKey().name().toLowerCase()).append(": ").append(entry.getValue());
+    }
+    return "Action cache misses: " + total + " (" + details + ")";
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.runtime;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.actions.ActionCacheChecker.MissReason;
+import com.google.devtools.build.lib.buildeventstream.BuildEvent;
+import com.google.devtools.build.lib.buildeventstream.BuildEventId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.ActionCacheMisses;
+import com.google.devtools.build.lib.buildeventstream.GenericBuildEvent;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Build event summarizing why actions were not up to date in the action cache during the
+ * execution phase, with the first few actions that had to be executed.
+ */
+public final class ActionCacheMissesEvent implements BuildEvent {
+
+  /** An action that had to be executed. */
+  public static final class ActionMiss {
+    private final String primaryOutput;
+    private final String mnemonic;
+    private final MissReason reason;
+
+    public ActionMiss(String primaryOutput, String mnemonic, MissReason reason) {
+      this.primaryOutput = primaryOutput;
+      this.mnemonic = mnemonic;
+      this.reason = reason;
+    }
+  }
+
+  private final ImmutableMap<MissReason, Long> counts;
+  private final ImmutableList<ActionMiss> actions;
+
+  public ActionCacheMissesEvent(Map<MissReason, Long> counts, Collection<ActionMiss> actions) {
+    this.counts = ImmutableMap.copyOf(counts);
+    this.actions = ImmutableList.copyOf(actions);
+  }
+
+  /** Returns the number of actions executed for each reason that occurred. */
+  public ImmutableMap<MissReason, Long> getCounts() {
+    return counts;
+  }
+
+  @Override
+  public BuildEventId getEventId() {
+    return BuildEventId.actionCacheMissesId();
+  }
+
+  @Override
+  public Collection<BuildEventId> getChildrenEvents() {
+    return ImmutableList.of();
+  }
+
+  @Override
+  public BuildEventStreamProtos.BuildEvent asStreamProto() {
+    ActionCacheMisses.Builder misses = ActionCacheMisses.newBuilder();
+    for (Map.Entry<MissReason, Long> entry : counts.entrySet()) {
+      misses.addCounts(ActionCacheMisses.ReasonCount.newBuilder()
+          .setReason(toProto(entry.getKey()))
+          .setCount(entry.getValue()));
+    }
+    for (ActionMiss action : actions) {
+      misses.addActions(ActionCacheMisses.ActionMiss.newBuilder()
+          .setPrimaryOutput(action.primaryOutput)
+          .setMnemonic(action.mnemonic)
+          .setReason(toProto(action.reason)));
+    }
+    return GenericBuildEvent.protoChaining(this).setActionCacheMisses(misses.build()).build();
+  }
+
+  private static ActionCacheMisses.Reason toProto(MissReason reason) {
+    return ActionCacheMisses.Reason.valueOf(reason.name());
+  }
+}
@@ -28,6 +28,9 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
 import com.google.common.io.Flushables;
 import com.google.devtools.build.lib.buildeventstream.BuildEventTransport;
+import com.google.devtools.build.lib.buildeventstream.transports.AsynchronousBuildEventTransport;
+import com.google.devtools.build.lib.buildeventstream.transports.BinaryFormatFileTransport;
+import com.google.devtools.build.lib.buildeventstream.transports.GrpcBuildEventTransport;
 import com.google.devtools.build.lib.buildeventstream.transports.TextFormatFileTransport;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
@@ -58,6 +61,7 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import javax.annotation.Nullable;
 
@@ -454,17 +458,39 @@ public class BlazeCommandDispatcher {
     Reporter reporter = env.getReporter();
     reporter.addHandler(handler);
     env.getEventBus().register(handler);
-    if (eventHandlerOptions.buildEventTextFile.length() > 0) {
-      try {
-        BuildEventStreamer streamer =
-            new BuildEventStreamer(
-                ImmutableSet.<BuildEventTransport>of(
-                    new TextFormatFileTransport(eventHandlerOptions.buildEventTextFile)));
-        reporter.addHandler(streamer);
-        env.getEventBus().register(streamer);
-      } catch (IOException e) {
-        return ExitCode.LOCAL_ENVIRONMENTAL_ERROR.getNumericExitCode();
+    List<BuildEventTransport> buildEventTransports = new ArrayList<>();
+    try {
+      if (eventHandlerOptions.buildEventTextFile.length() > 0) {
+        buildEventTransports.add(
+            new TextFormatFileTransport(eventHandlerOptions.buildEventTextFile));
+      }
+      if (eventHandlerOptions.buildEventBinaryFile.length() > 0) {
+        buildEventTransports.add(
+            new BinaryFormatFileTransport(eventHandlerOptions.buildEventBinaryFile));
+      }
+      if (eventHandlerOptions.buildEventUploadService.length() > 0) {
+        Path spoolDir = env.getOutputBase().getRelative("build_event_spool");
+        FileSystemUtils.createDirectoryAndParents(spoolDir);
+        buildEventTransports.add(
+            new GrpcBuildEventTransport(
+                eventHandlerOptions.buildEventUploadService,
+                env.getCommandId().toString(),
+                spoolDir.getChild(env.getCommandId() + ".bin").getPathFile(),
+                TimeUnit.SECONDS.toMillis(eventHandlerOptions.buildEventUploadTimeout)));
+      }
+    } catch (IOException e) {
+      return ExitCode.LOCAL_ENVIRONMENTAL_ERROR.getNumericExitCode();
+    }
+    if (!buildEventTransports.isEmpty()) {
+      // Write the events on background threads, so that writing them does not slow down the
+      // threads that post them.
+      ImmutableSet.Builder<BuildEventTransport> asyncTransports = ImmutableSet.builder();
+      for (BuildEventTransport transport : buildEventTransports) {
+        asyncTransports.add(new AsynchronousBuildEventTransport(transport));
       }
+      BuildEventStreamer streamer = new BuildEventStreamer(asyncTransports.build());
+      reporter.addHandler(streamer);
+      env.getEventBus().register(streamer);
     }
 
     // We register an ANSI-allowing handler associated with {@code handler} so that ANSI control
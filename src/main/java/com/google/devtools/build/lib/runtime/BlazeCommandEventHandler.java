@@ -177,6 +177,34 @@ public class BlazeCommandEventHandler implements EventHandler {
     )
     public String buildEventTextFile;
 
+    @Option(
+      name = "experimental_build_event_binary_file",
+      defaultValue = "",
+      category = "hidden",
+      help = "If non-empty, write a varint delimited binary representation of the build event "
+          + "protocol to that file."
+    )
+    public String buildEventBinaryFile;
+
+    @Option(
+      name = "experimental_build_event_upload_service",
+      defaultValue = "",
+      category = "hidden",
+      help = "If non-empty, upload the build event protocol to the build event service at this "
+          + "host:port address."
+    )
+    public String buildEventUploadService;
+
+    @Option(
+      name = "experimental_build_event_upload_timeout",
+      defaultValue = "60",
+      category = "hidden",
+      help = "The number of seconds for which build events that have not been uploaded yet when "
+          + "a command finishes are still retried in the background. Events that could not be "
+          + "uploaded are kept in the output base."
+    )
+    public int buildEventUploadTimeout;
+
     public boolean useColor() {
       return useColorEnum == UseColor.YES || (useColorEnum == UseColor.AUTO && isATty);
     }
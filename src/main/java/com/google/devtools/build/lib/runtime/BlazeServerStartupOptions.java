@@ -275,4 +275,12 @@ public class BlazeServerStartupOptions extends OptionsBase {
       category = "undocumented",
       help = "Whether or not to write the command.log file")
   public boolean writeCommandLog;
+
+  @Option(name = "experimental_native_subprocesses",
+      defaultValue = "false", // NOTE: purely decorative!
+      category = "server startup",
+      help = "If true, %{product} starts subprocesses with vfork() and execve() through JNI "
+          + "instead of java.lang.ProcessBuilder. This keeps the cost of starting a process "
+          + "independent of the size of the server's heap. Ignored on Windows.")
+  public boolean nativeSubprocesses;
 }
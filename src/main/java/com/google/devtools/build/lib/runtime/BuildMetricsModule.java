@@ -0,0 +1,176 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.runtime;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.events.Event;
+import com.google.devtools.build.lib.profiler.MetricsRegistry;
+import com.google.devtools.build.lib.runtime.GCStatsRecorder.GCStat;
+import com.google.devtools.build.lib.util.OptionsUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.common.options.Option;
+import com.google.devtools.common.options.OptionsBase;
+import com.google.devtools.common.options.OptionsProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * Blaze module that exposes the {@link MetricsRegistry} of the running command, either over HTTP
+ * on a local port while the command runs, or in a file written when it completes. The metrics are
+ * in the Prometheus text format.
+ */
+public class BuildMetricsModule extends BlazeModule {
+
+  /** Options of the build metrics module. */
+  public static class Options extends OptionsBase {
+    @Option(name = "experimental_metrics_port",
+        defaultValue = "0",
+        category = "verbosity",
+        help = "If positive, serve the metrics of the running command (action cache hit rates, "
+            + "action throughput, Skyframe and GC statistics) at http://localhost:<port>/metrics "
+            + "in the Prometheus text format until the command completes.")
+    public int port;
+
+    @Option(name = "experimental_metrics_file",
+        defaultValue = "null",
+        category = "verbosity",
+        converter = OptionsUtils.PathFragmentConverter.class,
+        help = "If set, write the metrics of the command in the Prometheus text format to the "
+            + "specified file when it completes.")
+    public PathFragment file;
+  }
+
+  private static final String GC_COLLECTIONS_GAUGE = "bazel_gc_collections";
+  private static final String GC_TIME_GAUGE = "bazel_gc_time_ms";
+  private static final String HEAP_USED_GAUGE = "bazel_jvm_heap_used_bytes";
+
+  private CommandEnvironment env;
+  private HttpServer server;
+  private Path metricsFile;
+
+  @Override
+  public void beforeCommand(Command command, CommandEnvironment env) {
+    this.env = env;
+    MetricsRegistry metrics = MetricsRegistry.instance();
+    metrics.reset();
+    final GCStatsRecorder gcStatsRecorder =
+        new GCStatsRecorder(ManagementFactory.getGarbageCollectorMXBeans());
+    metrics.registerGauge(GC_COLLECTIONS_GAUGE,
+        "Garbage collections since the start of the command, for all collectors.",
+        new MetricsRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            long collections = 0;
+            for (GCStat stat : gcStatsRecorder.getCurrentGcStats()) {
+              collections += stat.getNumCollections();
+            }
+            return collections;
+          }
+        });
+    metrics.registerGauge(GC_TIME_GAUGE,
+        "Time spent in garbage collection since the start of the command, for all collectors.",
+        new MetricsRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            long timeMs = 0;
+            for (GCStat stat : gcStatsRecorder.getCurrentGcStats()) {
+              timeMs += stat.getTotalTimeInMs();
+            }
+            return timeMs;
+          }
+        });
+    metrics.registerGauge(HEAP_USED_GAUGE, "Heap memory currently used by the server.",
+        new MetricsRegistry.Gauge() {
+          @Override
+          public long getValue() {
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+          }
+        });
+  }
+
+  @Override
+  public Iterable<Class<? extends OptionsBase>> getCommonCommandOptions() {
+    return ImmutableList.<Class<? extends OptionsBase>>of(Options.class);
+  }
+
+  @Override
+  public void handleOptions(OptionsProvider optionsProvider) {
+    Options options = optionsProvider.getOptions(Options.class);
+    if (options == null) {
+      return;
+    }
+    if (options.file != null) {
+      metricsFile = env.getWorkingDirectory().getRelative(options.file);
+    }
+    if (options.port > 0) {
+      try {
+        server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), 0);
+        server.createContext("/metrics", new MetricsHandler());
+        server.start();
+      } catch (IOException e) {
+        server = null;
+        env.getReporter().handle(Event.warn(
+            "Cannot serve metrics on port " + options.port + ": " + e.getMessage()));
+      }
+    }
+  }
+
+  @Override
+  public void afterCommand() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+    if (metricsFile != null) {
+      try (Writer writer = new OutputStreamWriter(metricsFile.getOutputStream(), UTF_8)) {
+        MetricsRegistry.instance().writeText(writer);
+      } catch (IOException e) {
+        env.getReporter().handle(Event.warn(
+            "Cannot write metrics to '" + metricsFile + "': " + e.getMessage()));
+      }
+      metricsFile = null;
+    }
+    MetricsRegistry metrics = MetricsRegistry.instance();
+    metrics.removeGauge(GC_COLLECTIONS_GAUGE);
+    metrics.removeGauge(GC_TIME_GAUGE);
+    metrics.removeGauge(HEAP_USED_GAUGE);
+    env = null;
+  }
+
+  private static final class MetricsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      StringBuilder text = new StringBuilder();
+      MetricsRegistry.instance().writeText(text);
+      byte[] body = text.toString().getBytes(UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+}
@@ -16,6 +16,7 @@ package com.google.devtools.build.lib.runtime;
 import com.google.common.base.Joiner;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.devtools.build.lib.buildtool.ExecutionFinishedEvent;
 import com.google.devtools.build.lib.buildtool.buildevent.BuildCompleteEvent;
 import com.google.devtools.build.lib.buildtool.buildevent.ExecutionStartingEvent;
 import com.google.devtools.build.lib.events.Event;
@@ -37,6 +38,7 @@ public class BuildSummaryStatsModule extends BlazeModule {
   private static final Logger LOG = Logger.getLogger(BuildSummaryStatsModule.class.getName());
 
   private SimpleCriticalPathComputer criticalPathComputer;
+  private ActionCacheMissCollector actionCacheMissCollector;
   private EventBus eventBus;
   private Reporter reporter;
 
@@ -50,6 +52,7 @@ public class BuildSummaryStatsModule extends BlazeModule {
   @Override
   public void afterCommand() {
     this.criticalPathComputer = null;
+    this.actionCacheMissCollector = null;
     this.eventBus = null;
     this.reporter = null;
   }
@@ -58,6 +61,15 @@ public class BuildSummaryStatsModule extends BlazeModule {
   public void executionPhaseStarting(ExecutionStartingEvent event) {
     criticalPathComputer = new SimpleCriticalPathComputer(BlazeClock.instance());
     eventBus.register(criticalPathComputer);
+    actionCacheMissCollector = new ActionCacheMissCollector();
+    eventBus.register(actionCacheMissCollector);
+  }
+
+  @Subscribe
+  public void executionFinished(ExecutionFinishedEvent event) {
+    if (actionCacheMissCollector != null) {
+      eventBus.post(actionCacheMissCollector.toBuildEvent());
+    }
   }
 
   @Subscribe
@@ -88,8 +100,15 @@ public class BuildSummaryStatsModule extends BlazeModule {
       }
 
       reporter.handle(Event.info(Joiner.on(", ").join(items)));
+      if (actionCacheMissCollector != null) {
+        String summary = actionCacheMissCollector.toSummary();
+        if (summary != null) {
+          reporter.handle(Event.info(summary));
+        }
+      }
     } finally {
       criticalPathComputer = null;
+      actionCacheMissCollector = null;
     }
   }
 }
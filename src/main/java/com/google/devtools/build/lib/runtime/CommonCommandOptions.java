@@ -13,10 +13,12 @@
 // limitations under the License.
 package com.google.devtools.build.lib.runtime;
 
+import com.google.devtools.build.lib.profiler.Profiler;
 import com.google.devtools.build.lib.util.OptionsUtils;
 import com.google.devtools.build.lib.vfs.PathFragment;
 import com.google.devtools.common.options.Converter;
 import com.google.devtools.common.options.Converters;
+import com.google.devtools.common.options.EnumConverter;
 import com.google.devtools.common.options.Option;
 import com.google.devtools.common.options.OptionsBase;
 import com.google.devtools.common.options.OptionsParsingException;
@@ -51,6 +53,13 @@ public class CommonCommandOptions extends OptionsBase {
     }
   }
 
+  /** Converter for the --experimental_profile_format option. */
+  public static class ProfileFormatConverter extends EnumConverter<Profiler.Format> {
+    public ProfileFormatConverter() {
+      super(Profiler.Format.class, "profile format");
+    }
+  }
+
   /**
    * Converter for --default_override. The format is:
    * --default_override=blazerc:command=option.
@@ -182,6 +191,15 @@ public class CommonCommandOptions extends OptionsBase {
       + "file. Use blaze analyze-profile to analyze the profile.")
   public PathFragment profilePath;
 
+  @Option(name = "experimental_profile_format",
+      defaultValue = "binary_bazel_format",
+      category = "undocumented",
+      converter = ProfileFormatConverter.class,
+      help = "The format of the file written with --profile: either 'binary_bazel_format', "
+          + "which blaze analyze-profile reads, or 'json_trace_file_format', a JSON file in the "
+          + "Chrome trace event format that can be opened in chrome://tracing.")
+  public Profiler.Format profileFormat;
+
   @Option(name = "record_full_profiler_data",
       defaultValue = "false",
       category = "undocumented",
@@ -18,6 +18,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
+import com.google.devtools.build.lib.profiler.ChromeTraceWriter;
 import com.google.devtools.build.lib.profiler.ProfileInfo;
 import com.google.devtools.build.lib.profiler.ProfileInfo.InfoListener;
 import com.google.devtools.build.lib.profiler.ProfileInfo.Task;
@@ -76,6 +77,17 @@ public final class ProfileCommand implements BlazeCommand {
     )
     public boolean chart;
 
+    @Option(
+      name = "chrome_trace",
+      defaultValue = "false",
+      help =
+          "If present, each profile file is converted to a JSON file in the Chrome trace event"
+              + " format, which can be opened in chrome://tracing. The name of the JSON file is"
+              + " the name of the profile file plus '.json'. The profile is converted one task at"
+              + " a time, without loading it into memory."
+    )
+    public boolean chromeTrace;
+
     @Option(
       name = "combine",
       defaultValue = "null",
@@ -225,6 +237,11 @@ public final class ProfileCommand implements BlazeCommand {
         for (String name : options.getResidue()) {
           Path profileFile = env.getWorkingDirectory().getRelative(name);
           try {
+            if (opts.chromeTrace) {
+              convertToChromeTrace(env, profileFile);
+              continue;
+            }
+
             ProfileInfo info = ProfileInfo.loadProfileVerbosely(profileFile, getInfoListener(env));
 
             if (opts.dumpMode == null || !opts.dumpMode.contains("unsorted")) {
@@ -292,6 +309,20 @@ public final class ProfileCommand implements BlazeCommand {
     return ExitCode.SUCCESS;
   }
 
+  /**
+   * Converts a profile file to a Chrome trace file next to it.
+   */
+  private void convertToChromeTrace(CommandEnvironment env, Path profileFile)
+      throws IOException {
+    Path traceFile =
+        profileFile.getParentDirectory().getChild(profileFile.getBaseName() + ".json");
+    env.getReporter().handle(Event.info("Creating Chrome trace in " + traceFile));
+    if (!ChromeTraceWriter.convert(profileFile, traceFile)) {
+      env.getReporter().handle(Event.warn(
+          "Profile file is incomplete or corrupted - not all records were converted"));
+    }
+  }
+
   /**
    * Prints trees rooted at tasks with a description matching a pattern.
    * @see Task#printTaskTree(PrintStream, long)
@@ -153,8 +153,12 @@ public class HardlinkedExecRoot implements SandboxExecRoot {
     for (PathFragment output : outputs) {
       Path source = sandboxExecRoot.getRelative(output);
       Path target = execRoot.getRelative(output);
-      if (source.isFile() || source.isSymbolicLink()) {
+      if (source.isSymbolicLink()) {
         Files.move(source.getPathFile(), target.getPathFile());
+      } else if (source.isFile()) {
+        // Renames the file if possible. Otherwise, the file system may clone it instead of
+        // copying the data.
+        FileSystemUtils.moveFile(source, target);
       } else if (source.isDirectory()) {
         try {
           source.renameTo(target);
@@ -452,7 +452,11 @@ public final class Command {
       subprocessBuilder.setStderr(stdErr);
     }
     return doExecute(
-            new ByteArrayInputSource(stdinInput), observer, null, killSubprocessOnInterrupt, false)
+            new ByteArrayInputSource(stdinInput),
+            observer,
+            Consumers.createRedirectedConsumers(),
+            killSubprocessOnInterrupt,
+            false)
         .get();
   }
 
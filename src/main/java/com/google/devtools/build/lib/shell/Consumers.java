@@ -61,6 +61,14 @@ class Consumers {
                                new StreamingConsumer(err));
   }
 
+  /**
+   * Returns consumers for a process whose stdout and stderr are redirected to files, which means
+   * that there is nothing to consume. No threads are started.
+   */
+  static OutErrConsumers createRedirectedConsumers() {
+    return new OutErrConsumers(new RedirectedConsumer(), new RedirectedConsumer());
+  }
+
   static class OutErrConsumers {
 
     private final OutputConsumer out;
@@ -198,6 +206,34 @@ class Consumers {
     }
   }
 
+  /**
+   * This consumer is used for streams that the process writes directly to a file. There is no
+   * stream to read from, so it does nothing.
+   */
+  private static class RedirectedConsumer implements OutputConsumer {
+    @Override
+    public ByteArrayOutputStream getAccumulatedOut() {
+      return CommandResult.NO_OUTPUT_COLLECTED;
+    }
+
+    @Override
+    public void logConsumptionStrategy() {
+      log.finer("Output is redirected to files");
+    }
+
+    @Override
+    public void registerInput(InputStream in, boolean closeConsumer) {
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    @Override
+    public void waitForCompletion() {
+    }
+  }
+
   /**
    * A mixin that makes consumers active - this is where we kick of
    * multithreading ({@link #registerInput(InputStream, boolean)}), cancel actions
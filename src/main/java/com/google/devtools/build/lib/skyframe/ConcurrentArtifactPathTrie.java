@@ -0,0 +1,134 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadCompatible;
+import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
+import com.google.devtools.build.lib.util.Preconditions;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A trie of the exec paths of generated artifacts, one node per path segment, used to detect
+ * artifact prefix conflicts as artifacts are added, without sorting all the paths of the build.
+ *
+ * <p>Each path is reference counted, since the same artifact can be generated by shared actions
+ * of several action lookup values. Paths can be added concurrently; removal is not thread-safe.
+ */
+final class ConcurrentArtifactPathTrie {
+
+  private static final class Node {
+    final ConcurrentMap<String, Node> children = new ConcurrentHashMap<>();
+    final AtomicInteger count = new AtomicInteger();
+    volatile Artifact artifact;
+  }
+
+  private final Node root = new Node();
+
+  /**
+   * Adds the exec path of the given artifact.
+   *
+   * @return false if the path is a prefix of another path in the trie, or the other way around,
+   *     apart from tree file artifacts under their parent tree artifact. If two paths conflicting
+   *     with each other are added concurrently, at least one of the calls returns false.
+   */
+  @ThreadSafe
+  boolean add(Artifact artifact) {
+    PathFragment path = artifact.getExecPath();
+    Node[] ancestors = new Node[path.segmentCount()];
+    Node node = root;
+    for (int i = 0; i < path.segmentCount(); i++) {
+      ancestors[i] = node;
+      String segment = path.getSegment(i);
+      Node child = node.children.get(segment);
+      if (child == null) {
+        Node newChild = new Node();
+        child = node.children.putIfAbsent(segment, newChild);
+        if (child == null) {
+          child = newChild;
+        }
+      }
+      node = child;
+    }
+    if (node.artifact == null) {
+      node.artifact = artifact;
+    }
+    // Mark the path before looking for conflicts, so that of two conflicting paths added
+    // concurrently, the one marked last sees the other.
+    node.count.incrementAndGet();
+
+    for (Node ancestor : ancestors) {
+      if (ancestor.count.get() > 0 && !isParent(ancestor.artifact, artifact)) {
+        return false;
+      }
+    }
+    return !hasConflictingDescendant(node, artifact);
+  }
+
+  /** Removes the exec path of the given artifact, which must have been added before. */
+  @ThreadCompatible
+  void remove(Artifact artifact) {
+    PathFragment path = artifact.getExecPath();
+    Node[] nodes = new Node[path.segmentCount() + 1];
+    nodes[0] = root;
+    for (int i = 0; i < path.segmentCount(); i++) {
+      nodes[i + 1] = Preconditions.checkNotNull(
+          nodes[i].children.get(path.getSegment(i)), "%s not in trie", artifact);
+    }
+    Node node = nodes[path.segmentCount()];
+    int count = node.count.decrementAndGet();
+    Preconditions.checkState(count >= 0, "%s not in trie", artifact);
+    if (count > 0) {
+      return;
+    }
+    node.artifact = null;
+    // Prune the nodes that no longer lead to any path.
+    for (int i = path.segmentCount(); i > 0; i--) {
+      Node current = nodes[i];
+      if (current.count.get() > 0 || !current.children.isEmpty()) {
+        break;
+      }
+      nodes[i - 1].children.remove(path.getSegment(i - 1), current);
+    }
+  }
+
+  private static boolean hasConflictingDescendant(Node node, Artifact artifact) {
+    Deque<Node> pending = new ArrayDeque<>(node.children.values());
+    while (!pending.isEmpty()) {
+      Node descendant = pending.pop();
+      if (descendant.count.get() > 0) {
+        Artifact descendantArtifact = descendant.artifact;
+        if (!isParent(artifact, descendantArtifact)) {
+          return true;
+        }
+      }
+      pending.addAll(descendant.children.values());
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether {@code child} is a tree file artifact of the tree artifact {@code parent}.
+   * Those are not reported as conflicts by {@code Actions.findArtifactPrefixConflicts} either.
+   */
+  private static boolean isParent(Artifact parent, Artifact child) {
+    return parent != null && child != null && child.hasParent()
+        && child.getParent().equals(parent);
+  }
+}
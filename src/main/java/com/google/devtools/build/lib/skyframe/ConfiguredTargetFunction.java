@@ -16,6 +16,7 @@ package com.google.devtools.build.lib.skyframe;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
 import com.google.common.base.Verify;
 import com.google.common.base.VerifyException;
 import com.google.common.collect.ImmutableList;
@@ -289,11 +290,63 @@ final class ConfiguredTargetFunction implements SkyFunction {
       NestedSetBuilder<Package> transitivePackages,
       NestedSetBuilder<Label> transitiveLoadingRootCauses)
       throws DependencyEvaluationException, AspectCreationException, InterruptedException {
+    // The resolved dependencies do not change when we are restarted because some of them haven't
+    // been evaluated yet, so they are kept in the restart state instead of being resolved again.
+    DependencyResolutionState state = env.getState(DependencyResolutionState.SUPPLIER);
+    OrderedSetMultimap<Attribute, Dependency> depValueNames = state.depValueNames;
+    if (depValueNames != null) {
+      transitiveLoadingRootCauses.addTransitive(state.loadingRootCauses);
+    } else {
+      depValueNames = resolveDependencies(env, resolver, ctgValue, aspect, configConditions,
+          ruleClassProvider, hostConfiguration, state, transitiveLoadingRootCauses);
+      if (depValueNames == null) {
+        return null;
+      }
+    }
+
+    // Resolve configured target dependencies and handle errors.
+    Map<SkyKey, ConfiguredTarget> depValues = resolveConfiguredTargetDependencies(env,
+        depValueNames.values(), transitivePackages, transitiveLoadingRootCauses);
+    if (depValues == null) {
+      return null;
+    }
+
+    // Resolve required aspects.
+    OrderedSetMultimap<SkyKey, ConfiguredAspect> depAspects = resolveAspectDependencies(
+        env, depValues, depValueNames.values(), transitivePackages);
+    if (depAspects == null) {
+      return null;
+    }
+
+    // Merge the dependent configured targets and aspects into a single map.
+    return mergeAspects(depValueNames, depValues, depAspects);
+  }
+
+  /**
+   * Resolves the dependencies of a node in the configured target graph to (target, configuration)
+   * pairs, and stores them in {@code state} if no Skyframe dependencies were missing and no errors
+   * were reported.
+   *
+   * <p>Returns null if Skyframe hasn't evaluated the required dependencies yet.
+   */
+  @Nullable
+  private static OrderedSetMultimap<Attribute, Dependency> resolveDependencies(
+      Environment env,
+      SkyframeDependencyResolver resolver,
+      TargetAndConfiguration ctgValue,
+      Aspect aspect,
+      ImmutableMap<Label, ConfigMatchingProvider> configConditions,
+      RuleClassProvider ruleClassProvider,
+      BuildConfiguration hostConfiguration,
+      DependencyResolutionState state,
+      NestedSetBuilder<Label> transitiveLoadingRootCauses)
+      throws DependencyEvaluationException, InterruptedException {
     // Create the map from attributes to set of (target, configuration) pairs.
+    NestedSetBuilder<Label> loadingRootCauses = NestedSetBuilder.stableOrder();
     OrderedSetMultimap<Attribute, Dependency> depValueNames;
     try {
       depValueNames = resolver.dependentNodeMap(
-          ctgValue, hostConfiguration, aspect, configConditions, transitiveLoadingRootCauses);
+          ctgValue, hostConfiguration, aspect, configConditions, loadingRootCauses);
     } catch (EvalException e) {
       // EvalException can only be thrown by computed Skylark attributes in the current rule.
       env.getListener().handle(Event.error(e.getLocation(), e.getMessage()));
@@ -309,26 +362,37 @@ final class ConfiguredTargetFunction implements SkyFunction {
       depValueNames = getDynamicConfigurations(env, ctgValue, depValueNames, hostConfiguration,
           ruleClassProvider);
       if (depValueNames == null) {
+        transitiveLoadingRootCauses.addTransitive(loadingRootCauses.build());
         return null;
       }
     }
 
-    // Resolve configured target dependencies and handle errors.
-    Map<SkyKey, ConfiguredTarget> depValues = resolveConfiguredTargetDependencies(env,
-        depValueNames.values(), transitivePackages, transitiveLoadingRootCauses);
-    if (depValues == null) {
-      return null;
+    NestedSet<Label> rootCauses = loadingRootCauses.build();
+    transitiveLoadingRootCauses.addTransitive(rootCauses);
+    // The events reported during resolution belong to this call only, so if there were any, we
+    // resolve again after a restart to report them again.
+    if (!env.valuesMissing() && !resolver.hasReportedErrors()) {
+      state.depValueNames = depValueNames;
+      state.loadingRootCauses = rootCauses;
     }
+    return depValueNames;
+  }
 
-    // Resolve required aspects.
-    OrderedSetMultimap<SkyKey, ConfiguredAspect> depAspects = resolveAspectDependencies(
-        env, depValues, depValueNames.values(), transitivePackages);
-    if (depAspects == null) {
-      return null;
-    }
+  /**
+   * The state that {@link #computeDependencies} keeps across Skyframe restarts of a configured
+   * target or an aspect.
+   */
+  private static class DependencyResolutionState {
+    private static final Supplier<DependencyResolutionState> SUPPLIER =
+        new Supplier<DependencyResolutionState>() {
+          @Override
+          public DependencyResolutionState get() {
+            return new DependencyResolutionState();
+          }
+        };
 
-    // Merge the dependent configured targets and aspects into a single map.
-    return mergeAspects(depValueNames, depValues, depAspects);
+    @Nullable private OrderedSetMultimap<Attribute, Dependency> depValueNames;
+    private NestedSet<Label> loadingRootCauses;
   }
 
   /**
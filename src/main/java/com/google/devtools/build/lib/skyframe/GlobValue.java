@@ -13,6 +13,8 @@
 // limitations under the License.
 package com.google.devtools.build.lib.skyframe;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
 import com.google.devtools.build.lib.cmdline.PackageIdentifier;
 import com.google.devtools.build.lib.collect.nestedset.NestedSet;
 import com.google.devtools.build.lib.collect.nestedset.NestedSetBuilder;
@@ -92,7 +94,34 @@ public final class GlobValue implements SkyValue {
       throw new InvalidGlobPatternException(pattern, error);
     }
 
-    return internalKey(packageId, packageRoot, subdir, pattern, excludeDirs);
+    return internalKey(packageId, packageRoot, subdir, normalizePattern(pattern), excludeDirs);
+  }
+
+  /**
+   * Returns an equivalent, canonical form of a valid glob pattern, so that globs that only differ
+   * in the spelling of their pattern share the per-directory nodes of their evaluation.
+   *
+   * <p>Consecutive {@code **} segments match the same paths as a single one, so runs of them are
+   * collapsed.
+   */
+  @VisibleForTesting
+  static String normalizePattern(String pattern) {
+    if (!pattern.contains("**/**")) {
+      return pattern;
+    }
+    StringBuilder normalized = new StringBuilder(pattern.length());
+    String previous = null;
+    for (String segment : Splitter.on('/').split(pattern)) {
+      if (segment.equals("**") && segment.equals(previous)) {
+        continue;
+      }
+      if (previous != null) {
+        normalized.append('/');
+      }
+      normalized.append(segment);
+      previous = segment;
+    }
+    return normalized.toString();
   }
 
   /**
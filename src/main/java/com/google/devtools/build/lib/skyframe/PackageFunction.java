@@ -13,6 +13,9 @@
 // limitations under the License.
 package com.google.devtools.build.lib.skyframe;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
@@ -46,12 +49,19 @@ import com.google.devtools.build.lib.profiler.Profiler;
 import com.google.devtools.build.lib.profiler.ProfilerTask;
 import com.google.devtools.build.lib.skyframe.GlobValue.InvalidGlobPatternException;
 import com.google.devtools.build.lib.skyframe.SkylarkImportLookupFunction.SkylarkImportFailedException;
+import com.google.devtools.build.lib.syntax.Argument;
 import com.google.devtools.build.lib.syntax.BuildFileAST;
 import com.google.devtools.build.lib.syntax.Environment.Extension;
 import com.google.devtools.build.lib.syntax.EvalException;
+import com.google.devtools.build.lib.syntax.Expression;
+import com.google.devtools.build.lib.syntax.FuncallExpression;
+import com.google.devtools.build.lib.syntax.IntegerLiteral;
+import com.google.devtools.build.lib.syntax.ListLiteral;
 import com.google.devtools.build.lib.syntax.ParserInputSource;
 import com.google.devtools.build.lib.syntax.SkylarkImport;
 import com.google.devtools.build.lib.syntax.Statement;
+import com.google.devtools.build.lib.syntax.StringLiteral;
+import com.google.devtools.build.lib.syntax.SyntaxTreeVisitor;
 import com.google.devtools.build.lib.util.Pair;
 import com.google.devtools.build.lib.util.Preconditions;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
@@ -607,6 +617,96 @@ public class PackageFunction implements SkyFunction {
     return importResult;
   }
 
+  /** The state that {@link PackageFunction} keeps across Skyframe restarts. */
+  private static class RestartState {
+    private static final Supplier<RestartState> SUPPLIER =
+        new Supplier<RestartState>() {
+          @Override
+          public RestartState get() {
+            return new RestartState();
+          }
+        };
+
+    /** The Skylark imports loaded by inlined calls to {@link SkylarkImportLookupFunction}. */
+    private final LinkedHashMap<Label, SkylarkImportLookupValue> inlinedImports =
+        new LinkedHashMap<>();
+    /** The events reported while loading {@link #inlinedImports}. */
+    private final StoredEventHandler inlinedImportEvents = new StoredEventHandler();
+  }
+
+  /**
+   * Requests the {@link GlobValue}s for the calls to {@code glob} in the given BUILD file whose
+   * arguments are all literals, ignoring the results. This is only a hint: globs that are computed
+   * differently, or that are never evaluated, are not a problem.
+   */
+  private static void prefetchGlobDeps(PackageIdentifier packageId, Path packageRoot,
+      BuildFileAST ast, Environment env) throws InterruptedException {
+    List<SkyKey> globKeys = new ArrayList<>();
+    for (Pair<List<String>, Boolean> glob : findLiteralGlobs(ast)) {
+      for (String pattern : glob.first) {
+        try {
+          globKeys.add(GlobValue.key(packageId, packageRoot, pattern, glob.second,
+              PathFragment.EMPTY_FRAGMENT));
+        } catch (InvalidGlobPatternException e) {
+          // Reported when the BUILD file is evaluated.
+        }
+      }
+    }
+    if (!globKeys.isEmpty()) {
+      env.getValuesOrThrow(globKeys, IOException.class, BuildFileNotFoundException.class,
+          FileSymlinkCycleException.class, InconsistentFilesystemException.class);
+    }
+  }
+
+  /**
+   * Returns the include and exclude patterns, together with the value of
+   * {@code exclude_directories}, of every call to {@code glob} in the given BUILD file whose
+   * arguments are all literals.
+   */
+  @VisibleForTesting
+  static List<Pair<List<String>, Boolean>> findLiteralGlobs(BuildFileAST ast) {
+    final List<Pair<List<String>, Boolean>> globs = new ArrayList<>();
+    new SyntaxTreeVisitor() {
+      @Override
+      public void visit(FuncallExpression node) {
+        super.visit(node);
+        if (node.getObject() != null || !node.getFunction().getName().equals("glob")) {
+          return;
+        }
+        List<String> patterns = new ArrayList<>();
+        boolean excludeDirs = true;
+        for (Argument.Passed arg : node.getArguments()) {
+          if (arg.isPositional() || "include".equals(arg.getName())
+              || "exclude".equals(arg.getName())) {
+            if (!addStringLiterals(arg.getValue(), patterns)) {
+              return;
+            }
+          } else if ("exclude_directories".equals(arg.getName())
+              && arg.getValue() instanceof IntegerLiteral) {
+            excludeDirs = ((IntegerLiteral) arg.getValue()).getValue() != 0;
+          } else {
+            return;
+          }
+        }
+        globs.add(Pair.<List<String>, Boolean>of(patterns, excludeDirs));
+      }
+    }.visit(ast);
+    return globs;
+  }
+
+  private static boolean addStringLiterals(Expression expr, List<String> result) {
+    if (!(expr instanceof ListLiteral)) {
+      return false;
+    }
+    for (Expression element : ((ListLiteral) expr).getElements()) {
+      if (!(element instanceof StringLiteral)) {
+        return false;
+      }
+      result.add(((StringLiteral) element).getValue());
+    }
+    return true;
+  }
+
   /**
    * Fetch the skylark loads for this BUILD file. If any of them haven't been computed yet,
    * returns null.
@@ -675,25 +775,33 @@ public class PackageFunction implements SkyFunction {
           skylarkImportMap.put(entry.getKey(), entry.getValue().get());
         }
       } else {
-        // Inlining calls to SkylarkImportLookupFunction
+        // Inlining calls to SkylarkImportLookupFunction. The imports loaded before a Skyframe
+        // restart are kept in the restart state, along with their events, so that they are not
+        // executed again.
+        RestartState state = env.getState(RestartState.SUPPLIER);
         LinkedHashMap<Label, SkylarkImportLookupValue> alreadyVisitedImports =
-            Maps.newLinkedHashMapWithExpectedSize(importLookupKeys.size());
-        for (SkyKey importLookupKey : importLookupKeys) {
-          SkyValue skyValue =
-              skylarkImportLookupFunctionForInlining.computeWithInlineCalls(
-                  importLookupKey, env, alreadyVisitedImports);
-          if (skyValue == null) {
-            Preconditions.checkState(
-                env.valuesMissing(), "no skylark import value for %s", importLookupKey);
-            // We continue making inline calls even if some requested values are missing, to
-            // maximize the number of dependent (non-inlined) SkyFunctions that are requested, thus
-            // avoiding a quadratic number of restarts.
-            valuesMissing = true;
-          } else {
-            skylarkImportMap.put(importLookupKey, skyValue);
+            state.inlinedImports;
+        // Drop the imports whose loading was aborted by an error.
+        Iterables.removeIf(alreadyVisitedImports.values(), Predicates.isNull());
+        try {
+          for (SkyKey importLookupKey : importLookupKeys) {
+            SkyValue skyValue =
+                skylarkImportLookupFunctionForInlining.computeWithInlineCalls(
+                    importLookupKey, env, alreadyVisitedImports, state.inlinedImportEvents);
+            if (skyValue == null) {
+              Preconditions.checkState(
+                  env.valuesMissing(), "no skylark import value for %s", importLookupKey);
+              // We continue making inline calls even if some requested values are missing, to
+              // maximize the number of dependent (non-inlined) SkyFunctions that are requested,
+              // thus avoiding a quadratic number of restarts.
+              valuesMissing = true;
+            } else {
+              skylarkImportMap.put(importLookupKey, skyValue);
+            }
           }
+        } finally {
+          state.inlinedImportEvents.replayOn(env.getListener());
         }
-
       }
     } catch (SkylarkImportFailedException e) {
       throw new PackageFunctionException(
@@ -1220,6 +1328,10 @@ public class PackageFunction implements SkyFunction {
           throw e;
         }
         if (importResult == null) {
+          // We need a Skyframe restart for the Skylark imports anyway, so also request the globs
+          // that we can see in the BUILD file. They are then evaluated in parallel with the
+          // imports, instead of by the legacy globber once the imports are done.
+          prefetchGlobDeps(packageId, packageRoot, astAfterPreprocessing.ast, env);
           return null;
         }
         astCache.invalidate(packageId);
@@ -565,6 +565,7 @@ public final class SequencedSkyframeExecutor extends SkyframeExecutor {
   private void discardAnalysisCache(Collection<ConfiguredTarget> topLevelTargets) {
     try (AutoProfiler p = AutoProfiler.logged("discarding analysis cache", LOG)) {
       lastAnalysisDiscarded = true;
+      clearArtifactConflictCheckState();
       for (Map.Entry<SkyKey, SkyValue> entry : memoizingEvaluator.getValues().entrySet()) {
         if (!entry.getKey().functionName().equals(SkyFunctions.CONFIGURED_TARGET)) {
           continue;
@@ -587,6 +588,7 @@ public final class SequencedSkyframeExecutor extends SkyframeExecutor {
   public void dropConfiguredTargets() {
     skyframeBuildView.clearInvalidatedConfiguredTargets();
     skyframeBuildView.clearLegacyData();
+    clearArtifactConflictCheckState();
     memoizingEvaluator.delete(
         // We delete any value that can hold an action -- all subclasses of ActionLookupValue -- as
         // well as ActionExecutionValues, since they do not depend on ActionLookupValues.
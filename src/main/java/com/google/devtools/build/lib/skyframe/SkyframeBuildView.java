@@ -203,7 +203,8 @@ public final class SkyframeBuildView {
       List<ConfiguredTargetKey> values,
       List<AspectValueKey> aspectKeys,
       EventBus eventBus,
-      boolean keepGoing)
+      boolean keepGoing,
+      boolean incrementalConflictCheck)
       throws InterruptedException, ViewCreationFailedException {
     enableAnalysis(true);
     EvaluationResult<ActionLookupValue> result;
@@ -213,7 +214,7 @@ public final class SkyframeBuildView {
       enableAnalysis(false);
     }
     ImmutableMap<ActionAnalysisMetadata, ConflictException> badActions =
-        skyframeExecutor.findArtifactConflicts();
+        skyframeExecutor.findArtifactConflicts(incrementalConflictCheck);
 
     Collection<AspectValue> goodAspects = Lists.newArrayListWithCapacity(values.size());
     NestedSetBuilder<Package> packages = NestedSetBuilder.stableOrder();
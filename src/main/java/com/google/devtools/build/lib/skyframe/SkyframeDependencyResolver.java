@@ -43,13 +43,20 @@ import javax.annotation.Nullable;
 public final class SkyframeDependencyResolver extends DependencyResolver {
 
   private final Environment env;
+  private boolean reportedErrors;
 
   public SkyframeDependencyResolver(Environment env) {
     this.env = env;
   }
 
+  /** Returns whether this resolver has reported any errors to the environment's listener. */
+  boolean hasReportedErrors() {
+    return reportedErrors;
+  }
+
   @Override
   protected void invalidVisibilityReferenceHook(TargetAndConfiguration value, Label label) {
+    reportedErrors = true;
     env.getListener().handle(
         Event.error(TargetUtils.getLocationMaybe(value.getTarget()), String.format(
             "Label '%s' in visibility attribute does not refer to a package group", label)));
@@ -57,6 +64,7 @@ public final class SkyframeDependencyResolver extends DependencyResolver {
 
   @Override
   protected void invalidPackageGroupReferenceHook(TargetAndConfiguration value, Label label) {
+    reportedErrors = true;
     env.getListener().handle(
         Event.error(TargetUtils.getLocationMaybe(value.getTarget()), String.format(
             "label '%s' does not refer to a package group", label)));
@@ -68,6 +76,7 @@ public final class SkyframeDependencyResolver extends DependencyResolver {
     if (e instanceof NoSuchTargetException) {
       NoSuchTargetException nste = (NoSuchTargetException) e;
       if (to.equals(nste.getLabel())) {
+        reportedErrors = true;
         env.getListener().handle(
             Event.error(
                 TargetUtils.getLocationMaybe(from),
@@ -76,6 +85,7 @@ public final class SkyframeDependencyResolver extends DependencyResolver {
     } else if (e instanceof NoSuchPackageException) {
       NoSuchPackageException nspe = (NoSuchPackageException) e;
       if (nspe.getPackageId().equals(to.getPackageIdentifier())) {
+        reportedErrors = true;
         env.getListener().handle(
             Event.error(
                 TargetUtils.getLocationMaybe(from),
@@ -103,6 +103,9 @@ import com.google.devtools.build.lib.pkgcache.TargetParsingCompleteEvent;
 import com.google.devtools.build.lib.pkgcache.TestFilter;
 import com.google.devtools.build.lib.pkgcache.TransitivePackageLoader;
 import com.google.devtools.build.lib.profiler.AutoProfiler;
+import com.google.devtools.build.lib.profiler.MetricsRegistry;
+import com.google.devtools.build.lib.profiler.MetricsRegistry.Counter;
+import com.google.devtools.build.lib.profiler.MetricsRegistry.Histogram;
 import com.google.devtools.build.lib.skyframe.AspectValue.AspectValueKey;
 import com.google.devtools.build.lib.skyframe.DirtinessCheckerUtils.FileDirtinessChecker;
 import com.google.devtools.build.lib.skyframe.ExternalFilesHelper.ExternalFileAction;
@@ -110,6 +113,7 @@ import com.google.devtools.build.lib.skyframe.PackageFunction.CacheEntryWithGlob
 import com.google.devtools.build.lib.skyframe.PackageLookupFunction.CrossRepositoryLabelViolationStrategy;
 import com.google.devtools.build.lib.skyframe.SkyframeActionExecutor.ActionCompletedReceiver;
 import com.google.devtools.build.lib.skyframe.SkyframeActionExecutor.ProgressSupplier;
+import com.google.devtools.build.lib.syntax.UserDefinedFunction;
 import com.google.devtools.build.lib.util.AbruptExitException;
 import com.google.devtools.build.lib.util.ExitCode;
 import com.google.devtools.build.lib.util.Preconditions;
@@ -277,6 +281,15 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
 
   private static final Logger LOG = Logger.getLogger(SkyframeExecutor.class.getName());
 
+  private static final Counter NODES_INVALIDATED = MetricsRegistry.instance().counter(
+      "bazel_skyframe_nodes_invalidated_total", "Skyframe nodes marked dirty or deleted.");
+  private static final Counter NODES_BUILT = MetricsRegistry.instance().counter(
+      "bazel_skyframe_nodes_built_total", "Skyframe nodes evaluated to a new value.");
+  private static final Counter NODES_CLEAN = MetricsRegistry.instance().counter(
+      "bazel_skyframe_nodes_clean_total", "Dirty Skyframe nodes found to be up to date.");
+  private static final Histogram NODE_COMPUTE_TIME = MetricsRegistry.instance().histogram(
+      "bazel_skyframe_compute_seconds", "Time spent in SkyFunction#compute per call.");
+
   protected SkyframeExecutor(
       EvaluatorSupplier evaluatorSupplier,
       PackageFactory pkgFactory,
@@ -558,9 +571,18 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
     init();
     emittedEventState.clear();
     skyframeBuildView.clearLegacyData();
+    clearArtifactConflictCheckState();
     reinjectConstantValuesLazily();
   }
 
+  /**
+   * Drops the actions and output paths kept for incremental artifact conflict checking, which
+   * would otherwise keep the action lookup values they came from alive.
+   */
+  protected void clearArtifactConflictCheckState() {
+    skyframeActionExecutor.clearConflictCheckState();
+  }
+
   protected abstract Differencer evaluatorDiffer();
 
   protected abstract BuildDriver newBuildDriver();
@@ -930,6 +952,7 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
     this.pkgFactory.setGlobbingThreads(packageCacheOptions.globbingThreads);
     this.pkgFactory.setMaxDirectoriesToEagerlyVisitInGlobbing(
         packageCacheOptions.maxDirectoriesToEagerlyVisitInGlobbing);
+    UserDefinedFunction.setCompileThreshold(packageCacheOptions.skylarkCompileThreshold);
     checkPreprocessorFactory();
     emittedEventState.clear();
 
@@ -1047,15 +1070,18 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
    * Checks the actions in Skyframe for conflicts between their output artifacts. Delegates to
    * {@link SkyframeActionExecutor#findAndStoreArtifactConflicts} to do the work, since any
    * conflicts found will only be reported during execution.
+   *
+   * @param incremental whether to keep the registered actions across builds, so that only the
+   *     action lookup values that changed since the last check need to be examined
    */
   ImmutableMap<ActionAnalysisMetadata, SkyframeActionExecutor.ConflictException>
-      findArtifactConflicts() throws InterruptedException {
+      findArtifactConflicts(boolean incremental) throws InterruptedException {
     if (skyframeBuildView.isSomeConfiguredTargetEvaluated()
         || skyframeBuildView.isSomeConfiguredTargetInvalidated()) {
       // This operation is somewhat expensive, so we only do it if the graph might have changed in
       // some way -- either we analyzed a new target or we invalidated an old one.
       try (AutoProfiler p = AutoProfiler.logged("discovering artifact conflicts", LOG)) {
-        skyframeActionExecutor.findAndStoreArtifactConflicts(getActionLookupValues());
+        skyframeActionExecutor.findAndStoreArtifactConflicts(getActionLookupValues(), incremental);
         skyframeBuildView.resetEvaluatedConfiguredTargetFlag();
         // The invalidated configured targets flag will be reset later in the evaluate() call.
       }
@@ -1884,6 +1910,7 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
       if (ignoreInvalidations) {
         return;
       }
+      NODES_INVALIDATED.increment();
       skyframeBuildView.getProgressReceiver().invalidated(skyKey, state);
     }
 
@@ -1899,13 +1926,20 @@ public abstract class SkyframeExecutor implements WalkableGraphFactory {
     }
 
     @Override
-    public void computed(SkyKey skyKey, long elapsedTimeNanos) {}
+    public void computed(SkyKey skyKey, long elapsedTimeNanos) {
+      NODE_COMPUTE_TIME.recordNanos(elapsedTimeNanos);
+    }
 
     @Override
     public void evaluated(SkyKey skyKey, Supplier<SkyValue> valueSupplier, EvaluationState state) {
       if (ignoreInvalidations) {
         return;
       }
+      if (state == EvaluationState.BUILT) {
+        NODES_BUILT.increment();
+      } else {
+        NODES_CLEAN.increment();
+      }
       skyframeBuildView.getProgressReceiver().evaluated(skyKey, valueSupplier, state);
       if (executionProgressReceiver != null) {
         executionProgressReceiver.evaluated(skyKey, valueSupplier, state);
@@ -27,6 +27,7 @@ import com.google.devtools.build.lib.cmdline.Label;
 import com.google.devtools.build.lib.cmdline.LabelSyntaxException;
 import com.google.devtools.build.lib.cmdline.PackageIdentifier;
 import com.google.devtools.build.lib.events.Event;
+import com.google.devtools.build.lib.events.EventHandler;
 import com.google.devtools.build.lib.events.StoredEventHandler;
 import com.google.devtools.build.lib.packages.BuildFileNotFoundException;
 import com.google.devtools.build.lib.packages.PackageFactory;
@@ -79,7 +80,7 @@ public class SkylarkImportLookupFunction implements SkyFunction {
       InterruptedException {
     SkylarkImportLookupKey key = (SkylarkImportLookupKey) skyKey.argument();
     try {
-      return computeInternal(key.importLabel, key.inWorkspace, env, null);
+      return computeInternal(key.importLabel, key.inWorkspace, env, null, env.getListener());
     } catch (InconsistentFilesystemException e) {
       throw new SkylarkImportLookupFunctionException(e, Transience.PERSISTENT);
     } catch (SkylarkImportFailedException e) {
@@ -87,14 +88,25 @@ public class SkylarkImportLookupFunction implements SkyFunction {
     }
   }
 
+  /**
+   * Computes the given import in the Skyframe node of the caller. The events of the loaded
+   * extensions are reported to {@code eventHandler}, so that the caller can keep them along with
+   * {@code visited}.
+   */
   SkyValue computeWithInlineCalls(
-      SkyKey skyKey, Environment env, LinkedHashMap<Label, SkylarkImportLookupValue> visited)
+      SkyKey skyKey,
+      Environment env,
+      LinkedHashMap<Label, SkylarkImportLookupValue> visited,
+      EventHandler eventHandler)
       throws InconsistentFilesystemException, SkylarkImportFailedException, InterruptedException {
-    return computeWithInlineCallsInternal(skyKey, env, visited);
+    return computeWithInlineCallsInternal(skyKey, env, visited, eventHandler);
   }
 
   private SkyValue computeWithInlineCallsInternal(
-      SkyKey skyKey, Environment env, LinkedHashMap<Label, SkylarkImportLookupValue> visited)
+      SkyKey skyKey,
+      Environment env,
+      LinkedHashMap<Label, SkylarkImportLookupValue> visited,
+      EventHandler eventHandler)
       throws InconsistentFilesystemException, SkylarkImportFailedException, InterruptedException {
     SkylarkImportLookupKey key = (SkylarkImportLookupKey) skyKey.argument();
     SkylarkImportLookupValue precomputedResult = visited.get(key.importLabel);
@@ -105,14 +117,16 @@ public class SkylarkImportLookupFunction implements SkyFunction {
         key.importLabel,
         key.inWorkspace,
         env,
-        Preconditions.checkNotNull(visited, key.importLabel));
+        Preconditions.checkNotNull(visited, key.importLabel),
+        eventHandler);
   }
 
   private SkyValue computeInternal(
       Label fileLabel,
       boolean inWorkspace,
       Environment env,
-      @Nullable LinkedHashMap<Label, SkylarkImportLookupValue> alreadyVisited)
+      @Nullable LinkedHashMap<Label, SkylarkImportLookupValue> alreadyVisited,
+      EventHandler eventHandler)
       throws InconsistentFilesystemException, SkylarkImportFailedException, InterruptedException {
     PathFragment filePath = fileLabel.toPathFragment();
 
@@ -174,7 +188,8 @@ public class SkylarkImportLookupFunction implements SkyFunction {
       skylarkImportMap = Maps.newHashMapWithExpectedSize(imports.size());
       for (SkyKey importLookupKey : importLookupKeys) {
         SkyValue skyValue =
-            this.computeWithInlineCallsInternal(importLookupKey, env, alreadyVisited);
+            this.computeWithInlineCallsInternal(
+                importLookupKey, env, alreadyVisited, eventHandler);
         if (skyValue == null) {
           Preconditions.checkState(
               env.valuesMissing(), "no skylark import value for %s", importLookupKey);
@@ -207,7 +222,8 @@ public class SkylarkImportLookupFunction implements SkyFunction {
 
     // Skylark UserDefinedFunction-s in that file will share this function definition Environment,
     // which will be frozen by the time it is returned by createExtension.
-    Extension extension = createExtension(ast, fileLabel, extensionsForImports, env, inWorkspace);
+    Extension extension =
+        createExtension(ast, fileLabel, extensionsForImports, eventHandler, inWorkspace);
     SkylarkImportLookupValue result =
         new SkylarkImportLookupValue(
             extension, new SkylarkFileDependency(fileLabel, fileDependencies.build()));
@@ -352,7 +368,7 @@ public class SkylarkImportLookupFunction implements SkyFunction {
       BuildFileAST ast,
       Label extensionLabel,
       Map<String, Extension> importMap,
-      Environment env,
+      EventHandler listener,
       boolean inWorkspace)
       throws SkylarkImportFailedException, InterruptedException {
     StoredEventHandler eventHandler = new StoredEventHandler();
@@ -374,7 +390,7 @@ public class SkylarkImportLookupFunction implements SkyFunction {
         eventHandler.handle(Event.error(e.getLocation(), e.getMessage()));
       }
 
-      Event.replayEventsOn(env.getListener(), eventHandler.getEvents());
+      Event.replayEventsOn(listener, eventHandler.getEvents());
       if (eventHandler.hasErrors()) {
         throw SkylarkImportFailedException.errors(extensionFile);
       }
@@ -13,12 +13,16 @@
 // limitations under the License.
 package com.google.devtools.build.lib.standalone;
 
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
 import com.google.devtools.build.lib.actions.ActionExecutionContext;
 import com.google.devtools.build.lib.actions.ActionStatusMessage;
+import com.google.devtools.build.lib.actions.EnvironmentalExecException;
 import com.google.devtools.build.lib.actions.ExecException;
 import com.google.devtools.build.lib.actions.ExecutionStrategy;
 import com.google.devtools.build.lib.actions.Executor;
+import com.google.devtools.build.lib.actions.ResourceManager;
+import com.google.devtools.build.lib.actions.ResourceUsageEstimator;
 import com.google.devtools.build.lib.actions.Spawn;
 import com.google.devtools.build.lib.actions.SpawnActionContext;
 import com.google.devtools.build.lib.actions.Spawns;
@@ -31,12 +35,16 @@ import com.google.devtools.build.lib.shell.AbnormalTerminationException;
 import com.google.devtools.build.lib.shell.Command;
 import com.google.devtools.build.lib.shell.CommandException;
 import com.google.devtools.build.lib.shell.TerminationStatus;
+import com.google.devtools.build.lib.util.BlazeClock;
 import com.google.devtools.build.lib.util.CommandFailureUtils;
 import com.google.devtools.build.lib.util.OS;
 import com.google.devtools.build.lib.util.OsUtils;
 import com.google.devtools.build.lib.util.io.FileOutErr;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -46,12 +54,23 @@ import java.util.List;
 @ExecutionStrategy(name = { "standalone", "local" }, contextType = SpawnActionContext.class)
 public class StandaloneSpawnStrategy implements SpawnActionContext {
   private final boolean verboseFailures;
+  private final boolean redirectOutputToFiles;
   private final Path processWrapper;
   private final Path execRoot;
   private final String productName;
 
   public StandaloneSpawnStrategy(Path execRoot, boolean verboseFailures, String productName) {
+    this(execRoot, verboseFailures, /*redirectOutputToFiles=*/false, productName);
+  }
+
+  /**
+   * @param redirectOutputToFiles whether to connect the stdout and stderr of spawns directly to
+   *     the files of the action's {@link FileOutErr} instead of pumping them through Java streams
+   */
+  public StandaloneSpawnStrategy(Path execRoot, boolean verboseFailures,
+      boolean redirectOutputToFiles, String productName) {
     this.verboseFailures = verboseFailures;
+    this.redirectOutputToFiles = redirectOutputToFiles;
     this.execRoot = execRoot;
     this.processWrapper = execRoot.getRelative(
         "_bin/process-wrapper" + OsUtils.executableExtension());
@@ -83,12 +102,20 @@ public class StandaloneSpawnStrategy implements SpawnActionContext {
     // All actions therefore depend on the process-wrapper file. Since it's embedded,
     // we don't bother with declaring it as an input.
     List<String> args = new ArrayList<>();
+    FileOutErr outErr = actionExecutionContext.getFileOutErr();
+    ResourceUsageEstimator estimator = ResourceManager.instance().getResourceUsageEstimator();
+    Path statsFile = null;
     if (OS.getCurrent() != OS.WINDOWS) {
       // TODO(bazel-team): process-wrapper seems to work on Windows, but requires
       // additional setup as it is an msys2 binary, so it needs msys2 DLLs on %PATH%.
       // Disable it for now to make the setup easier and to avoid further PATH hacks.
       // Ideally we should have a native implementation of process-wrapper for Windows.
       args.add(processWrapper.getPathString());
+      if (estimator != null && outErr.getOutputPath() != null) {
+        statsFile = outErr.getOutputPath().getParentDirectory()
+            .getRelative(outErr.getOutputPath().getBaseName() + ".stats");
+        args.add("--stats=" + statsFile.getPathString());
+      }
       args.add(Integer.toString(timeoutSeconds));
       args.add("5"); /* kill delay: give some time to print stacktraces and whatnot. */
 
@@ -107,14 +134,24 @@ public class StandaloneSpawnStrategy implements SpawnActionContext {
             new File(cwd),
             OS.getCurrent() == OS.WINDOWS && timeoutSeconds >= 0 ? timeoutSeconds * 1000 : -1);
 
-    FileOutErr outErr = actionExecutionContext.getFileOutErr();
+    long startTime = BlazeClock.instance().currentTimeMillis();
     try {
-      cmd.execute(
-          /* stdin */ new byte[] {},
-          Command.NO_OBSERVER,
-          outErr.getOutputStream(),
-          outErr.getErrorStream(),
-          /*killSubprocessOnInterrupt*/ true);
+      if (canRedirectToFiles(outErr)) {
+        // The output files are only read if the output has to be shown.
+        cmd.execute(
+            /* stdin */ new byte[] {},
+            Command.NO_OBSERVER,
+            outErr.getOutputPath().getPathFile(),
+            outErr.getErrorPath().getPathFile(),
+            /*killSubprocessOnInterrupt*/ true);
+      } else {
+        cmd.execute(
+            /* stdin */ new byte[] {},
+            Command.NO_OBSERVER,
+            outErr.getOutputStream(),
+            outErr.getErrorStream(),
+            /*killSubprocessOnInterrupt*/ true);
+      }
     } catch (AbnormalTerminationException e) {
       TerminationStatus status = e.getResult().getTerminationStatus();
       boolean timedOut = !status.exited() && (
@@ -127,6 +164,61 @@ public class StandaloneSpawnStrategy implements SpawnActionContext {
       String message = CommandFailureUtils.describeCommandFailure(
           verboseFailures, spawn.getArguments(), spawn.getEnvironment(), cwd);
       throw new UserExecException(message, e);
+    } finally {
+      if (statsFile != null) {
+        recordResourceUsage(estimator, spawn, statsFile,
+            BlazeClock.instance().currentTimeMillis() - startTime);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the output of the spawn can be written directly to the files of {@code
+   * outErr}. This is only possible if nothing was written to {@code outErr} yet, since the files
+   * are recreated by the subprocess. Any open streams to the files are closed.
+   */
+  private boolean canRedirectToFiles(FileOutErr outErr) throws ExecException {
+    if (!redirectOutputToFiles
+        || outErr.getOutputPath() == null
+        || outErr.getErrorPath() == null
+        || outErr.hasRecordedOutput()) {
+      return false;
+    }
+    try {
+      outErr.clearOut();
+      outErr.clearErr();
+    } catch (IOException e) {
+      throw new EnvironmentalExecException("Could not prepare output files for spawn", e);
+    }
+    return true;
+  }
+
+  /**
+   * Reports the resource usage written by process-wrapper to {@code statsFile} to the given
+   * estimator, and deletes the file. Missing or malformed statistics are silently ignored.
+   */
+  private static void recordResourceUsage(ResourceUsageEstimator estimator, Spawn spawn,
+      Path statsFile, long wallTimeMillis) {
+    try {
+      if (!statsFile.exists()) {
+        return;
+      }
+      List<String> fields = Splitter.on(' ').trimResults().splitToList(
+          FileSystemUtils.readContent(statsFile, StandardCharsets.US_ASCII));
+      statsFile.delete();
+      if (fields.size() != 3) {
+        return;
+      }
+      long cpuMicros = Long.parseLong(fields.get(0)) + Long.parseLong(fields.get(1));
+      long maxRss = Long.parseLong(fields.get(2));
+      // ru_maxrss is in bytes on OS X and in kilobytes everywhere else.
+      double peakMemoryMb = OS.getCurrent() == OS.DARWIN
+          ? maxRss / (1024.0 * 1024.0)
+          : maxRss / 1024.0;
+      estimator.recordUsage(
+          spawn.getResourceOwner(), cpuMicros / 1000, wallTimeMillis, peakMemoryMb);
+    } catch (IOException | NumberFormatException e) {
+      // Measurements are best-effort; the static estimate will be used instead.
     }
   }
 
@@ -13,13 +13,16 @@
 // limitations under the License.
 package com.google.devtools.build.lib.syntax;
 
-import com.google.common.base.Throwables;
+import com.google.common.primitives.Primitives;
 import com.google.devtools.build.lib.events.Location;
 import com.google.devtools.build.lib.profiler.Profiler;
 import com.google.devtools.build.lib.profiler.ProfilerTask;
 import com.google.devtools.build.lib.skylarkinterface.SkylarkSignature;
 import com.google.devtools.build.lib.syntax.SkylarkType.SkylarkFunctionType;
 import com.google.devtools.build.lib.util.Preconditions;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -52,6 +55,14 @@ public class BuiltinFunction extends BaseFunction {
   // The underlying invoke() method.
   @Nullable private Method invokeMethod;
 
+  // A handle on invokeMethod taking this function and the argument array, which is faster to call
+  // than Method.invoke.
+  @Nullable private MethodHandle invokeHandle;
+
+  // The positions of the parameters of invokeMethod that have a primitive type, to which the
+  // handle cannot pass null, or null if there are none.
+  @Nullable private int[] primitiveParameters;
+
   // extra arguments required beside signature.
   @Nullable private ExtraArgKind[] extraArgs;
 
@@ -148,45 +159,31 @@ public class BuiltinFunction extends BaseFunction {
       }
     }
 
+    if (primitiveParameters != null) {
+      for (int i : primitiveParameters) {
+        if (args[i] == null) {
+          throw argumentTypeException(args, i, loc);
+        }
+      }
+    }
+
     Profiler.instance().startTask(ProfilerTask.SKYLARK_BUILTIN_FN, getName());
     // Last but not least, actually make an inner call to the function with the resolved arguments.
     try {
       env.enterScope(this, ast, env.getGlobals());
-      return invokeMethod.invoke(this, args);
-    } catch (InvocationTargetException x) {
-      Throwable e = x.getCause();
-
-      if (e instanceof EvalException) {
-        throw ((EvalException) e).ensureLocation(loc);
-      } else if (e instanceof IllegalArgumentException) {
-        throw new EvalException(loc, "Illegal argument in call to " + getName(), e);
-      }
-      // TODO(bazel-team): replace with Throwables.throwIfInstanceOf once Guava 20 is released.
-      Throwables.propagateIfInstanceOf(e, InterruptedException.class);
-      // TODO(bazel-team): replace with Throwables.throwIfUnchecked once Guava 20 is released.
-      Throwables.propagateIfPossible(e);
-      throw badCallException(loc, e, args);
+      return invokeHandle.invokeExact(this, args);
+    } catch (EvalException e) {
+      throw e.ensureLocation(loc);
+    } catch (ClassCastException e) {
+      // Either an argument doesn't have the type of the parameter of the invoke method, or it's a
+      // bug in the function.
+      checkArgumentTypes(args, loc);
+      throw e;
     } catch (IllegalArgumentException e) {
-      // Either this was thrown by Java itself, or it's a bug
-      // To cover the first case, let's manually check the arguments.
-      final int len = args.length - ((extraArgs == null) ? 0 : extraArgs.length);
-      final Class<?>[] types = invokeMethod.getParameterTypes();
-      for (int i = 0; i < args.length; i++) {
-        if (args[i] != null && !types[i].isAssignableFrom(args[i].getClass())) {
-          String paramName =
-              i < len ? signature.getSignature().getNames().get(i) : extraArgs[i - len].name();
-          int extraArgsCount = (extraArgs == null) ? 0 : extraArgs.length;
-          throw new EvalException(
-              loc,
-              String.format(
-                  "Method %s is not applicable for arguments %s: '%s' is %s, but should be %s",
-                  getShortSignature(true), printTypeString(args, args.length - extraArgsCount),
-                  paramName, EvalUtils.getDataTypeName(args[i]),
-                  EvalUtils.getDataTypeNameFromClass(types[i])));
-        }
-      }
-      throw badCallException(loc, e, args);
-    } catch (IllegalAccessException e) {
+      throw new EvalException(loc, "Illegal argument in call to " + getName(), e);
+    } catch (InterruptedException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
       throw badCallException(loc, e, args);
     } finally {
       Profiler.instance().completeTask(ProfilerTask.SKYLARK_BUILTIN_FN);
@@ -194,6 +191,46 @@ public class BuiltinFunction extends BaseFunction {
     }
   }
 
+  /**
+   * Throws an {@link EvalException} describing the first argument that cannot be passed to the
+   * invoke method, if any.
+   */
+  private void checkArgumentTypes(Object[] args, Location loc) throws EvalException {
+    final Class<?>[] types = invokeMethod.getParameterTypes();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i] != null && !Primitives.wrap(types[i]).isAssignableFrom(args[i].getClass())) {
+        throw argumentTypeException(args, i, loc);
+      }
+    }
+  }
+
+  /**
+   * Returns the {@link EvalException} for argument {@code i} not having the type of the
+   * corresponding parameter of the invoke method.
+   */
+  private EvalException argumentTypeException(Object[] args, int i, Location loc) {
+    final int extraArgsCount = (extraArgs == null) ? 0 : extraArgs.length;
+    final int len = args.length - extraArgsCount;
+    final Class<?> type = invokeMethod.getParameterTypes()[i];
+    String paramName =
+        i < len ? signature.getSignature().getNames().get(i) : extraArgs[i - len].name();
+    if (args[i] == null) {
+      return new EvalException(
+          loc,
+          String.format(
+              "Method %s is not applicable: '%s' is %s, but should be %s",
+              getShortSignature(true), paramName, EvalUtils.getDataTypeName(Runtime.NONE),
+              EvalUtils.getDataTypeNameFromClass(type)));
+    }
+    return new EvalException(
+        loc,
+        String.format(
+            "Method %s is not applicable for arguments %s: '%s' is %s, but should be %s",
+            getShortSignature(true), printTypeString(args, len),
+            paramName, EvalUtils.getDataTypeName(args[i]),
+            EvalUtils.getDataTypeNameFromClass(type)));
+  }
+
   private static String stacktraceToString(StackTraceElement[] elts) {
     StringBuilder b = new StringBuilder();
     for (StackTraceElement e : elts) {
@@ -267,6 +304,30 @@ public class BuiltinFunction extends BaseFunction {
               innerArgumentCount,
               parameterTypes.length));
     }
+    try {
+      invokeHandle =
+          MethodHandles.lookup()
+              .unreflect(invokeMethod)
+              .asSpreader(Object[].class, innerArgumentCount)
+              .asType(MethodType.methodType(Object.class, BuiltinFunction.class, Object[].class));
+    } catch (IllegalAccessException e) {
+      // findMethod made the method accessible.
+      throw new IllegalStateException(e);
+    }
+    int primitiveCount = 0;
+    for (Class<?> parameterType : parameterTypes) {
+      if (parameterType.isPrimitive()) {
+        primitiveCount++;
+      }
+    }
+    if (primitiveCount > 0) {
+      primitiveParameters = new int[primitiveCount];
+      for (int i = 0, j = 0; i < parameterTypes.length; i++) {
+        if (parameterTypes[i].isPrimitive()) {
+          primitiveParameters[j++] = i;
+        }
+      }
+    }
 
     if (enforcedArgumentTypes != null) {
       for (int i = 0; i < arguments; i++) {
@@ -104,13 +104,25 @@ public final class Environment implements Freezable {
     private final Mutability mutability;
     final Frame parent;
     final Map<String, Object> bindings = new HashMap<>();
+    // For the frame of a function call, the slots of its local variables; names that are not in
+    // the layout are kept in the bindings.
+    @Nullable
+    private final FrameLayout layout;
+    @Nullable
+    final Object[] slots;
     // The label for the target this frame is defined in (e.g., //foo:bar.bzl).
     @Nullable
     private Label label;
 
     private Frame(Mutability mutability, Frame parent) {
+      this(mutability, parent, null);
+    }
+
+    private Frame(Mutability mutability, Frame parent, @Nullable FrameLayout layout) {
       this.mutability = mutability;
       this.parent = parent;
+      this.layout = layout;
+      this.slots = layout == null ? null : new Object[layout.size()];
       this.label = parent == null ? null : parent.label;
     }
 
@@ -145,6 +157,10 @@ public final class Environment implements Freezable {
      * @return the value bound to variable
      */
     public Object get(String varname) {
+      int slot = layout == null ? -1 : layout.indexOf(varname);
+      if (slot >= 0 && slots[slot] != null) {
+        return slots[slot];
+      }
       if (bindings.containsKey(varname)) {
         return bindings.get(varname);
       }
@@ -166,7 +182,12 @@ public final class Environment implements Freezable {
     public void put(Environment env, String varname, Object value)
         throws MutabilityException {
       Mutability.checkMutable(this, env);
-      bindings.put(varname, value);
+      int slot = layout == null ? -1 : layout.indexOf(varname);
+      if (slot >= 0) {
+        slots[slot] = value;
+      } else {
+        bindings.put(varname, value);
+      }
     }
 
     /**
@@ -176,13 +197,29 @@ public final class Environment implements Freezable {
      */
     void addVariableNamesTo(Set<String> vars) {
       vars.addAll(bindings.keySet());
+      addSlotNamesTo(vars);
       if (parent != null) {
         parent.addVariableNamesTo(vars);
       }
     }
 
     public Set<String> getDirectVariableNames() {
-      return bindings.keySet();
+      if (layout == null) {
+        return bindings.keySet();
+      }
+      Set<String> vars = new HashSet<>(bindings.keySet());
+      addSlotNamesTo(vars);
+      return vars;
+    }
+
+    private void addSlotNamesTo(Set<String> vars) {
+      if (layout != null) {
+        for (int i = 0; i < slots.length; i++) {
+          if (slots[i] != null) {
+            vars.add(layout.getName(i));
+          }
+        }
+      }
     }
 
     @Override
@@ -370,10 +407,20 @@ public final class Environment implements Freezable {
    * @param globals the global Frame that this function closes over from its definition Environment
    */
   void enterScope(BaseFunction function, FuncallExpression caller, Frame globals) {
+    enterScope(function, caller, globals, null);
+  }
+
+  /**
+   * Like {@link #enterScope(BaseFunction, FuncallExpression, Frame)}, but stores the local
+   * variables of the function in the slots given by {@code layout}, if it is not null.
+   */
+  void enterScope(
+      BaseFunction function, FuncallExpression caller, Frame globals,
+      @Nullable FrameLayout layout) {
     continuation =
         new Continuation(continuation, function, caller, lexicalFrame, globalFrame,
             knownGlobalVariables, isSkylark);
-    lexicalFrame = new Frame(mutability(), null);
+    lexicalFrame = new Frame(mutability(), null, layout);
     globalFrame = globals;
     knownGlobalVariables = new HashSet<>();
     isSkylark = true;
@@ -756,6 +803,36 @@ public final class Environment implements Freezable {
     return dynamicValue;
   }
 
+  /**
+   * Looks up a local variable of the current function by the slot assigned to it by its
+   * {@link FrameLayout}, falling back to {@link #lookup(String)} if it is not bound yet, so that
+   * reading a global of the same name behaves as before.
+   */
+  Object lookupLocal(int slot, String varname) {
+    // Identifiers only have a slot inside the body of their function, which is only evaluated
+    // in a scope entered with the layout of that function.
+    if (lexicalFrame != null && lexicalFrame.slots != null) {
+      Object value = lexicalFrame.slots[slot];
+      if (value != null) {
+        return value;
+      }
+    }
+    return lookup(varname);
+  }
+
+  /**
+   * Rebinds the local variable in the given slot of the current function if it is already bound,
+   * and returns whether it was. The checks of {@link #update} have passed when the variable was
+   * first bound in this call, so they are not repeated.
+   */
+  boolean updateBoundLocal(int slot, Object value) {
+    if (lexicalFrame == null || lexicalFrame.slots == null || lexicalFrame.slots[slot] == null) {
+      return false;
+    }
+    lexicalFrame.slots[slot] = value;
+    return true;
+  }
+
   /**
    * Like {@link #lookup(String)}, but instead of throwing an exception in the case
    * where <code>varname</code> is not defined, <code>defaultValue</code> is returned instead.
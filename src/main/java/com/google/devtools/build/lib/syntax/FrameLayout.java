@@ -0,0 +1,163 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.syntax;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The local variables of a {@link FunctionDefStatement}, each assigned a fixed slot index.
+ *
+ * <p>The layout is computed once, when the function is parsed: every name bound in the function
+ * body (parameters, assignment targets, loop and comprehension variables and nested definitions)
+ * is a local variable, and every {@link Identifier} in the body that refers to one of them is
+ * annotated with its slot. Calls of the function then store their locals in an array-backed
+ * {@link Environment.Frame}, so that reading or rebinding a local is an array access instead of a
+ * hash map lookup. Names that are not local, i.e. globals and builtins, are still looked up by
+ * name.
+ */
+final class FrameLayout implements Serializable {
+
+  private final ImmutableMap<String, Integer> slots;
+  private final ImmutableList<String> names;
+
+  private FrameLayout(ImmutableMap<String, Integer> slots) {
+    this.slots = slots;
+    this.names = slots.keySet().asList();
+  }
+
+  /** Returns the number of slots of a frame with this layout. */
+  int size() {
+    return names.size();
+  }
+
+  /** Returns the slot of the given local variable, or -1 if the name is not local. */
+  int indexOf(String name) {
+    Integer slot = slots.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  /** Returns the name of the local variable in the given slot. */
+  String getName(int slot) {
+    return names.get(slot);
+  }
+
+  /**
+   * Computes the layout of a function with the given parameters and body, and annotates the
+   * identifiers of the body that refer to local variables with their slots. Parameters come first,
+   * in order.
+   */
+  static FrameLayout resolve(List<String> parameterNames, List<Statement> body) {
+    Map<String, Integer> slots = new LinkedHashMap<>();
+    for (String name : parameterNames) {
+      declare(slots, name);
+    }
+    new BindingCollector(slots).visitAll(body);
+    new SlotAssigner(slots).visitAll(body);
+    return new FrameLayout(ImmutableMap.copyOf(slots));
+  }
+
+  private static void declare(Map<String, Integer> slots, String name) {
+    if (!slots.containsKey(name)) {
+      slots.put(name, slots.size());
+    }
+  }
+
+  /**
+   * Visits the parts of the syntax tree that can appear in a function body, but not nested
+   * function bodies or the field names of {@link DotExpression}s, which are not variables.
+   */
+  private static class FunctionBodyVisitor extends SyntaxTreeVisitor {
+    @Override
+    public void visit(FunctionDefStatement node) {
+      // The body of a nested function has a layout of its own.
+      visit(node.getIdent());
+    }
+
+    @Override
+    public void visit(DotExpression node) {
+      visit(node.getObj());
+    }
+
+    @Override
+    public void visit(FuncallExpression node) {
+      if (node.getObject() != null) {
+        // A method call: the function identifier is the name of the method.
+        visit(node.getObject());
+      } else {
+        visit(node.getFunction());
+      }
+      visitAll(node.getArguments());
+    }
+  }
+
+  /** Collects the names bound in a function body. */
+  private static final class BindingCollector extends FunctionBodyVisitor {
+    private final Map<String, Integer> slots;
+
+    BindingCollector(Map<String, Integer> slots) {
+      this.slots = slots;
+    }
+
+    @Override
+    public void visit(LValue node) {
+      collect(node.getExpression());
+      super.visit(node);
+    }
+
+    @Override
+    public void visit(ForStatement node) {
+      collect(node.getVariable().getExpression());
+      super.visit(node);
+    }
+
+    @Override
+    public void visit(FunctionDefStatement node) {
+      declare(slots, node.getIdent().getName());
+    }
+
+    private void collect(Expression lvalue) {
+      if (lvalue instanceof Identifier) {
+        declare(slots, ((Identifier) lvalue).getName());
+      } else if (lvalue instanceof ListLiteral) {
+        for (Expression element : ((ListLiteral) lvalue).getElements()) {
+          collect(element);
+        }
+      }
+      // Assigning to an IndexExpression does not bind a name.
+    }
+  }
+
+  /** Annotates the identifiers referring to local variables with their slots. */
+  private static final class SlotAssigner extends FunctionBodyVisitor {
+    private final Map<String, Integer> slots;
+
+    SlotAssigner(Map<String, Integer> slots) {
+      this.slots = slots;
+    }
+
+    @Override
+    public void visit(Identifier node) {
+      Integer slot = slots.get(node.getName());
+      if (slot != null) {
+        node.setSlot(slot);
+      }
+    }
+  }
+}
@@ -41,7 +41,9 @@ import com.google.devtools.build.lib.syntax.compiler.VariableScope;
 import com.google.devtools.build.lib.util.Pair;
 import com.google.devtools.build.lib.util.Preconditions;
 import com.google.devtools.build.lib.util.StringUtilities;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -73,16 +75,70 @@ public final class FuncallExpression extends Expression {
   public static final class MethodDescriptor {
     private final Method method;
     private final SkylarkCallable annotation;
+    // A handle on the method taking the receiver (ignored for static methods) and the argument
+    // array, which is faster to call than Method.invoke.
+    private final MethodHandle handle;
+    private final Class<?>[] parameterTypes;
+    // The Skylark types of the parameters of the annotation, including None if they are noneable.
+    private final SkylarkType[] paramTypes;
+    // The default values of the parameters of the annotation, computed on first use.
+    @Nullable private volatile ImmutableList<Object> defaultValues;
 
     private MethodDescriptor(Method method, SkylarkCallable annotation) {
       this.method = method;
       this.annotation = annotation;
+      this.parameterTypes = method.getParameterTypes();
+      Param[] params = annotation.parameters();
+      this.paramTypes = new SkylarkType[params.length];
+      for (int i = 0; i < params.length; i++) {
+        SkylarkType type = getType(params[i]);
+        paramTypes[i] = params[i].noneable() ? SkylarkType.Union.of(type, SkylarkType.NONE) : type;
+      }
+      // This happens when the interface is public but the implementation classes
+      // have reduced visibility.
+      method.setAccessible(true);
+      try {
+        MethodHandle handle = MethodHandles.lookup().unreflect(method);
+        if (Modifier.isStatic(method.getModifiers())) {
+          handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        this.handle =
+            handle
+                .asSpreader(Object[].class, parameterTypes.length)
+                .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
     }
 
     Method getMethod() {
       return method;
     }
 
+    private Object invoke(Object obj, Object[] args, Location loc) throws EvalException {
+      try {
+        return (Object) handle.invokeExact(obj, args);
+      } catch (FuncallException e) {
+        throw new EvalException(loc, e.getMessage());
+      } catch (Throwable e) {
+        throw new EvalExceptionWithJavaCause(loc, e);
+      }
+    }
+
+    private Object getDefaultValue(int index) {
+      ImmutableList<Object> values = defaultValues;
+      if (values == null) {
+        // Default values are evaluated in a frozen environment, so they can be shared by calls.
+        ImmutableList.Builder<Object> builder = ImmutableList.builder();
+        for (Param param : annotation.parameters()) {
+          builder.add(SkylarkSignatureProcessor.getDefaultValue(param, null));
+        }
+        values = builder.build();
+        defaultValues = values;
+      }
+      return values.get(index);
+    }
+
     /**
      * Returns the SkylarkCallable annotation corresponding to this method.
      */
@@ -200,10 +256,26 @@ public final class FuncallExpression extends Expression {
     }
   }
 
+  /** A Java method resolved by a call site, for a given class of receivers. */
+  private static final class ResolvedMethod {
+    final Class<?> objClass;
+    final MethodDescriptor method;
+
+    ResolvedMethod(Class<?> objClass, MethodDescriptor method) {
+      this.objClass = objClass;
+      this.method = method;
+    }
+  }
+
   @Nullable private final Expression obj;
 
   private final Identifier func;
 
+  // The Java method this call site resolved to the last time, if it was the only candidate. Calls
+  // with receivers of the same class don't need to look the method up again. Not serialized with
+  // the AST, since it refers to the classes of the running server.
+  @Nullable private transient volatile ResolvedMethod resolvedMethod;
+
   private final List<Argument.Passed> args;
 
   private final int numPositionalArgs;
@@ -305,48 +377,30 @@ public final class FuncallExpression extends Expression {
 
   static Object callMethod(MethodDescriptor methodDescriptor, String methodName, Object obj,
       Object[] args, Location loc, Environment env) throws EvalException {
-    try {
-      Method method = methodDescriptor.getMethod();
-      if (obj == null && !Modifier.isStatic(method.getModifiers())) {
-        throw new EvalException(loc, "Method '" + methodName + "' is not static");
-      }
-      // This happens when the interface is public but the implementation classes
-      // have reduced visibility.
-      method.setAccessible(true);
-      Object result = method.invoke(obj, args);
-      if (method.getReturnType().equals(Void.TYPE)) {
+    Method method = methodDescriptor.getMethod();
+    if (obj == null && !Modifier.isStatic(method.getModifiers())) {
+      throw new EvalException(loc, "Method '" + methodName + "' is not static");
+    }
+    Object result = methodDescriptor.invoke(obj, args, loc);
+    if (method.getReturnType().equals(Void.TYPE)) {
+      return Runtime.NONE;
+    }
+    if (result == null) {
+      if (methodDescriptor.getAnnotation().allowReturnNones()) {
         return Runtime.NONE;
-      }
-      if (result == null) {
-        if (methodDescriptor.getAnnotation().allowReturnNones()) {
-          return Runtime.NONE;
-        } else {
-          throw new EvalException(loc,
-              "Method invocation returned None, please contact Skylark developers: " + methodName
-              + Printer.listString(ImmutableList.copyOf(args), "(", ", ", ")", null));
-        }
-      }
-      // TODO(bazel-team): get rid of this, by having everyone use the Skylark data structures
-      result = SkylarkType.convertToSkylark(result, method, env);
-      if (result != null && !EvalUtils.isSkylarkAcceptable(result.getClass())) {
-        throw new EvalException(loc, Printer.format(
-            "Method '%s' returns an object of invalid type %r", methodName, result.getClass()));
-      }
-      return result;
-    } catch (IllegalAccessException e) {
-      // TODO(bazel-team): Print a nice error message. Maybe the method exists
-      // and an argument is missing or has the wrong type.
-      throw new EvalException(loc, "Method invocation failed: " + e);
-    } catch (InvocationTargetException e) {
-      if (e.getCause() instanceof FuncallException) {
-        throw new EvalException(loc, e.getCause().getMessage());
-      } else if (e.getCause() != null) {
-        throw new EvalExceptionWithJavaCause(loc, e.getCause());
       } else {
-        // This is unlikely to happen
-        throw new EvalException(loc, "Method invocation failed: " + e);
+        throw new EvalException(loc,
+            "Method invocation returned None, please contact Skylark developers: " + methodName
+            + Printer.listString(ImmutableList.copyOf(args), "(", ", ", ")", null));
       }
     }
+    // TODO(bazel-team): get rid of this, by having everyone use the Skylark data structures
+    result = SkylarkType.convertToSkylark(result, method, env);
+    if (result != null && !EvalUtils.isSkylarkAcceptable(result.getClass())) {
+      throw new EvalException(loc, Printer.format(
+          "Method '%s' returns an object of invalid type %r", methodName, result.getClass()));
+    }
+    return result;
   }
 
   // TODO(bazel-team): If there's exactly one usable method, this works. If there are multiple
@@ -357,7 +411,14 @@ public final class FuncallExpression extends Expression {
       Class<?> objClass, String methodName, List<Object> args, Map<String, Object> kwargs)
       throws EvalException {
     Pair<MethodDescriptor, List<Object>> matchingMethod = null;
-    List<MethodDescriptor> methods = getMethods(objClass, methodName, getLocation());
+    List<MethodDescriptor> methods;
+    ResolvedMethod resolved = resolvedMethod;
+    if (resolved != null && resolved.objClass == objClass) {
+      methods = ImmutableList.of(resolved.method);
+    } else {
+      methods = getMethods(objClass, methodName, getLocation());
+      maybeCacheMethod(objClass, methods);
+    }
     ArgumentListConversionResult argumentListConversionResult = null;
     if (methods != null) {
       for (MethodDescriptor method : methods) {
@@ -400,6 +461,29 @@ public final class FuncallExpression extends Expression {
     return matchingMethod;
   }
 
+  /**
+   * Remembers the method of objClass this call site resolves to, if it is the only one with the
+   * called name. Overloaded methods are resolved on each call, since the arguments decide which
+   * one is called.
+   */
+  private void maybeCacheMethod(Class<?> objClass, @Nullable List<MethodDescriptor> methods) {
+    if (methods == null) {
+      return;
+    }
+    MethodDescriptor candidate = null;
+    for (MethodDescriptor method : methods) {
+      if (!method.getAnnotation().structField()) {
+        if (candidate != null) {
+          return;
+        }
+        candidate = method;
+      }
+    }
+    if (candidate != null) {
+      resolvedMethod = new ResolvedMethod(objClass, candidate);
+    }
+  }
+
   private static SkylarkType getType(Param param) {
     SkylarkType type =
         param.generic1() != Object.class
@@ -416,7 +500,7 @@ public final class FuncallExpression extends Expression {
   private ArgumentListConversionResult convertArgumentList(
       List<Object> args, Map<String, Object> kwargs, MethodDescriptor method) {
     ImmutableList.Builder<Object> builder = ImmutableList.builder();
-    Class<?>[] params = method.getMethod().getParameterTypes();
+    Class<?>[] params = method.parameterTypes;
     SkylarkCallable callable = method.getAnnotation();
     int mandatoryPositionals = callable.mandatoryPositionals();
     if (mandatoryPositionals < 0) {
@@ -450,12 +534,13 @@ public final class FuncallExpression extends Expression {
     }
 
     // Then the parameters specified in callable.parameters()
-    Set<String> keys = new HashSet<>(kwargs.keySet());
-    for (Param param : callable.parameters()) {
-      SkylarkType type = getType(param);
-      if (param.noneable()) {
-        type = SkylarkType.Union.of(type, SkylarkType.NONE);
-      }
+    Set<String> keys = kwargs.isEmpty()
+        ? Collections.<String>emptySet()
+        : new HashSet<>(kwargs.keySet());
+    Param[] parameters = callable.parameters();
+    for (int p = 0; p < parameters.length; p++) {
+      Param param = parameters[p];
+      SkylarkType type = method.paramTypes[p];
       Object value = null;
       if (i < args.size()) {
         value = args.get(i);
@@ -482,7 +567,7 @@ public final class FuncallExpression extends Expression {
           return ArgumentListConversionResult.fromError(
               String.format("Parameter '%s' has no default value", param.name()));
         }
-        value = SkylarkSignatureProcessor.getDefaultValue(param, null);
+        value = method.getDefaultValue(p);
       }
       builder.add(value);
       if (!param.noneable() && value instanceof NoneType) {
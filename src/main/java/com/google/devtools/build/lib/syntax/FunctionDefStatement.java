@@ -33,6 +33,7 @@ public class FunctionDefStatement extends Statement {
   private final FunctionSignature.WithValues<Expression, Expression> signature;
   private final ImmutableList<Statement> statements;
   private final ImmutableList<Parameter<Expression, Expression>> parameters;
+  private final FrameLayout layout;
 
   public FunctionDefStatement(Identifier ident,
       Iterable<Parameter<Expression, Expression>> parameters,
@@ -42,6 +43,7 @@ public class FunctionDefStatement extends Statement {
     this.signature = signature;
     this.statements = ImmutableList.copyOf(statements);
     this.parameters = ImmutableList.copyOf(parameters);
+    this.layout = FrameLayout.resolve(signature.getSignature().getNames(), this.statements);
   }
 
   @Override
@@ -63,6 +65,7 @@ public class FunctionDefStatement extends Statement {
             FunctionSignature.WithValues.<Object, SkylarkType>create(
                 signature.getSignature(), defaultValues, types),
             statements,
+            layout,
             env.getGlobals()));
   }
 
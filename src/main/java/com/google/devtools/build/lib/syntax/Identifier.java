@@ -26,15 +26,15 @@ import javax.annotation.Nullable;
 // (1) intern the strings, so we can use == to compare, and have .equals use the assumption.
 // Then have Argument and Parameter use Identifier again instead of String as keys.
 // (2) Use Identifier, not String, as keys in the Environment, which will be cleaner.
-// (3) For performance, avoid doing HashMap lookups at runtime, and compile local variable access
-// into array reference with a constant index. Variable lookups are currently a speed bottleneck,
-// as previously measured in an experiment.
 /**
  *  Syntax node for an identifier.
  */
 public final class Identifier extends Expression {
 
   private final String name;
+  // The slot of the local variable this identifier refers to, or -1 if it is not a local variable
+  // of a function. See FrameLayout.
+  private int slot = -1;
 
   public Identifier(String name) {
     this.name = name;
@@ -47,6 +47,19 @@ public final class Identifier extends Expression {
     return name;
   }
 
+  int getSlot() {
+    return slot;
+  }
+
+  void setSlot(int slot) {
+    this.slot = slot;
+  }
+
+  /** Returns whether this identifier refers to a local variable of the enclosing function. */
+  public boolean isLocal() {
+    return slot >= 0;
+  }
+
   public boolean isPrivate() {
     return name.startsWith("_");
   }
@@ -72,7 +85,7 @@ public final class Identifier extends Expression {
 
   @Override
   Object doEval(Environment env) throws EvalException {
-    Object value = env.lookup(name);
+    Object value = slot >= 0 ? env.lookupLocal(slot, name) : env.lookup(name);
     if (value == null) {
       throw createInvalidIdentifierException();
     }
@@ -14,6 +14,12 @@
 package com.google.devtools.build.lib.syntax;
 
 import com.google.devtools.build.lib.events.Location;
+import com.google.devtools.build.lib.syntax.compiler.ByteCodeUtils;
+import com.google.devtools.build.lib.syntax.compiler.DebugInfo;
+import com.google.devtools.build.lib.syntax.compiler.VariableScope;
+import java.util.ArrayList;
+import java.util.List;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
 
 /** Syntax node for an index expression. e.g. obj[field], but not obj[from:to] */
 public final class IndexExpression extends Expression {
@@ -42,10 +48,12 @@ public final class IndexExpression extends Expression {
 
   @Override
   Object doEval(Environment env) throws EvalException, InterruptedException {
-    Object objValue = obj.eval(env);
-    Object keyValue = key.eval(env);
-    Location loc = getLocation();
+    return eval(obj.eval(env), key.eval(env), getLocation(), env);
+  }
 
+  /** Returns the element of {@code objValue} at the given key. */
+  public static Object eval(Object objValue, Object keyValue, Location loc, Environment env)
+      throws EvalException {
     if (objValue instanceof SkylarkIndexable) {
       Object result = ((SkylarkIndexable) objValue).getIndex(keyValue, loc);
       return SkylarkType.convertToSkylark(result, env);
@@ -72,4 +80,23 @@ public final class IndexExpression extends Expression {
   void validate(ValidationEnvironment env) throws EvalException {
     obj.validate(env);
   }
+
+  @Override
+  ByteCodeAppender compile(VariableScope scope, DebugInfo debugInfo) throws EvalException {
+    List<ByteCodeAppender> code = new ArrayList<>();
+    code.add(obj.compile(scope, debugInfo));
+    code.add(key.compile(scope, debugInfo));
+    ByteCodeUtils.append(
+        code,
+        debugInfo.add(this).loadLocation,
+        scope.loadEnvironment(),
+        ByteCodeUtils.invoke(
+            IndexExpression.class,
+            "eval",
+            Object.class,
+            Object.class,
+            Location.class,
+            Environment.class));
+    return ByteCodeUtils.compoundAppender(code);
+  }
 }
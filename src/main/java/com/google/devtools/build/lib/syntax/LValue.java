@@ -119,18 +119,30 @@ public class LValue implements Serializable {
   private static void assign(Environment env, Location loc, Identifier ident, Object result)
       throws EvalException, InterruptedException {
     Preconditions.checkNotNull(result, "trying to assign null to %s", ident);
+    int slot = ident.getSlot();
+    if (slot >= 0 && env.updateBoundLocal(slot, result)) {
+      return;
+    }
+
+    checkUnboundLocalAssignment(env, ident.getName(), loc);
+    env.update(ident.getName(), result);
+  }
 
-    // The variable may have been referenced successfully if a global variable
-    // with the same name exists. In this case an Exception needs to be thrown.
-    if (env.isKnownGlobalVariable(ident.getName())) {
+  /**
+   * Checks the first assignment to a local variable in a call. The variable may have been
+   * referenced successfully if a global variable with the same name exists. In this case an
+   * Exception needs to be thrown.
+   */
+  public static void checkUnboundLocalAssignment(Environment env, String name, Location loc)
+      throws EvalException {
+    if (env.isKnownGlobalVariable(name)) {
       throw new EvalException(
           loc,
           String.format(
               "Variable '%s' is referenced before assignment. "
                   + "The variable is defined in the global scope.",
-              ident.getName()));
+              name));
     }
-    env.update(ident.getName(), result);
   }
 
   void validate(ValidationEnvironment env, Location loc) throws EvalException {
@@ -186,7 +198,7 @@ public class LValue implements Serializable {
       List<ByteCodeAppender> code)
       throws EvalException {
     if (leftValue instanceof Identifier) {
-      code.add(compileAssignment(scope, (Identifier) leftValue));
+      code.add(compileAssignment(scope, debugAccessors, (Identifier) leftValue));
     } else if (leftValue instanceof ListLiteral) {
       List<Expression> lValueExpressions = ((ListLiteral) leftValue).getElements();
       compileAssignment(node, debugAccessors, scope, lValueExpressions, code);
@@ -240,12 +252,13 @@ public class LValue implements Serializable {
   /**
    * Compile assignment to a single identifier.
    */
-  private static ByteCodeAppender compileAssignment(VariableScope scope, Identifier identifier) {
+  private static ByteCodeAppender compileAssignment(
+      VariableScope scope, AstAccessors debugAccessors, Identifier identifier) {
     // don't store to/create the _ "variable" the value is not needed, just remove it
     if (identifier.getName().equals("_")) {
       return new ByteCodeAppender.Simple(Removal.SINGLE);
     }
-    return scope.getVariable(identifier).store();
+    return scope.getVariable(identifier).assign(scope, debugAccessors);
   }
 
   /**
@@ -15,16 +15,14 @@
 package com.google.devtools.build.lib.syntax;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.Immutable;
 import com.google.devtools.build.lib.events.Event;
 import com.google.devtools.build.lib.events.EventHandler;
 import com.google.devtools.build.lib.events.Location;
-import com.google.devtools.build.lib.profiler.Profiler;
-import com.google.devtools.build.lib.profiler.ProfilerTask;
 import com.google.devtools.build.lib.util.Pair;
 import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -37,8 +35,8 @@ import java.util.Stack;
  * See: <a href="https://docs.python.org/2/reference/lexical_analysis.html"/>
  * for some details.
  * <p>
- * Since BUILD files are small, we just tokenize the entire file a-priori
- * instead of interleaving scanning with parsing.
+ * Tokens are produced on demand by {@link #nextToken}, so the parser consumes them as they are
+ * scanned and the tokens of the whole file are never held in memory at once.
  */
 public final class Lexer {
 
@@ -84,7 +82,15 @@ public final class Lexer {
   // bottom.
   private final Stack<Integer> indentStack = new Stack<>();
 
-  private final List<Token> tokens;
+  // Tokens that have been scanned but not yet returned by nextToken(). Scanning a single line
+  // break can produce several tokens (NEWLINE, and INDENT or a sequence of OUTDENTs).
+  private final ArrayDeque<Token> pendingTokens = new ArrayDeque<>();
+
+  // The kind of the last token scanned, or null if there was none.
+  private TokenKind lastTokenKind;
+
+  // The EOF token, once the end of the input has been reached.
+  private Token eofToken;
 
   // The number of unclosed open-parens ("(", '{', '[') at the current point in
   // the stream. Whitespace is handled differently when this is nonzero.
@@ -99,16 +105,11 @@ public final class Lexer {
   public Lexer(
       ParserInputSource input, EventHandler eventHandler, LineNumberTable lineNumberTable) {
     this.buffer = input.getContent();
-    // Empirical measurements show roughly 1 token per 8 characters in buffer.
-    this.tokens = Lists.newArrayListWithExpectedSize(buffer.length / 8);
     this.pos = 0;
     this.eventHandler = eventHandler;
     this.locationInfo = new LocationInfo(input.getPath(), lineNumberTable);
 
     indentStack.push(0);
-    long startTime = Profiler.nanoTimeMaybe();
-    tokenize();
-    Profiler.instance().logSimpleTask(startTime, ProfilerTask.SKYLARK_LEXER, getFilename());
   }
 
   public Lexer(ParserInputSource input, EventHandler eventHandler) {
@@ -127,15 +128,50 @@ public final class Lexer {
    * Returns true if there were errors during scanning of this input file or
    * string. The Lexer may attempt to recover from errors, but clients should
    * not rely on the results of scanning if this flag is set.
+   *
+   * <p>Scans the rest of the input first if the end has not been reached yet.
    */
   public boolean containsErrors() {
+    while (eofToken == null) {
+      scan();
+    }
     return containsErrors;
   }
 
   /**
-   * Returns the (mutable) list of tokens generated by the Lexer.
+   * Returns the next token of the input. After the end of the input has been reached, always
+   * returns the EOF token.
+   */
+  public Token nextToken() {
+    while (pendingTokens.isEmpty()) {
+      if (eofToken != null) {
+        return eofToken;
+      }
+      scan();
+    }
+    return pendingTokens.poll();
+  }
+
+  private void scan() {
+    if (pos < buffer.length) {
+      tokenize();
+    } else {
+      finish();
+    }
+  }
+
+  /**
+   * Scans the rest of the input and returns the (mutable) list of its tokens, up to and
+   * including EOF.
    */
   public List<Token> getTokens() {
+    // Empirical measurements show roughly 1 token per 8 characters in buffer.
+    List<Token> tokens = new ArrayList<>((buffer.length - pos) / 8 + 1);
+    Token token;
+    do {
+      token = nextToken();
+      tokens.add(token);
+    } while (token.kind != TokenKind.EOF);
     return tokens;
   }
 
@@ -206,7 +242,8 @@ public final class Lexer {
 
   /** invariant: symbol positions are half-open intervals. */
   private void addToken(Token s) {
-    tokens.add(s);
+    pendingTokens.add(s);
+    lastTokenKind = s.kind;
   }
 
   /**
@@ -666,161 +703,162 @@ public final class Lexer {
   }
 
   /**
-   * Performs tokenization of the character buffer of file contents provided to
-   * the constructor.
+   * Scans the input from the current position up to the end of the next lexeme, which may or may
+   * not produce tokens (e.g. whitespace does not).
    */
   private void tokenize() {
-    while (pos < buffer.length) {
-      if (tokenizeTwoChars()) {
-        pos += 2;
-        continue;
-      }
-      char c = buffer[pos];
-      pos++;
-      switch (c) {
-      case '{': {
-        addToken(new Token(TokenKind.LBRACE, pos - 1, pos));
-        openParenStackDepth++;
-        break;
-      }
-      case '}': {
-        addToken(new Token(TokenKind.RBRACE, pos - 1, pos));
-        popParen();
-        break;
-      }
-      case '(': {
-        addToken(new Token(TokenKind.LPAREN, pos - 1, pos));
-        openParenStackDepth++;
-        break;
-      }
-      case ')': {
-        addToken(new Token(TokenKind.RPAREN, pos - 1, pos));
-        popParen();
-        break;
-      }
-      case '[': {
-        addToken(new Token(TokenKind.LBRACKET, pos - 1, pos));
-        openParenStackDepth++;
-        break;
-      }
-      case ']': {
-        addToken(new Token(TokenKind.RBRACKET, pos - 1, pos));
-        popParen();
-        break;
-      }
-      case '>': {
-        addToken(new Token(TokenKind.GREATER, pos - 1, pos));
-        break;
-      }
-      case '<': {
-        addToken(new Token(TokenKind.LESS, pos - 1, pos));
-        break;
-      }
-      case ':': {
-        addToken(new Token(TokenKind.COLON, pos - 1, pos));
-        break;
-      }
-      case ',': {
-        addToken(new Token(TokenKind.COMMA, pos - 1, pos));
-        break;
-      }
-      case '+': {
-        addToken(new Token(TokenKind.PLUS, pos - 1, pos));
-        break;
-      }
-      case '-': {
-        addToken(new Token(TokenKind.MINUS, pos - 1, pos));
-        break;
-      }
-      case '|': {
-        addToken(new Token(TokenKind.PIPE, pos - 1, pos));
-        break;
-      }
-      case '=': {
-        addToken(new Token(TokenKind.EQUALS, pos - 1, pos));
-        break;
-      }
-      case '%': {
-        addToken(new Token(TokenKind.PERCENT, pos - 1, pos));
-        break;
-      }
-      case '/': {
-        addToken(new Token(TokenKind.SLASH, pos - 1, pos));
-        break;
-      }
-      case ';': {
-        addToken(new Token(TokenKind.SEMI, pos - 1, pos));
-        break;
-      }
-      case '.': {
-        addToken(new Token(TokenKind.DOT, pos - 1, pos));
-        break;
-      }
-      case '*': {
-        addToken(new Token(TokenKind.STAR, pos - 1, pos));
-        break;
-      }
-      case ' ':
-      case '\t':
-      case '\r': {
-        /* ignore */
-        break;
-      }
-      case '\\': {
-        // Backslash character is valid only at the end of a line (or in a string)
-        if (pos + 1 < buffer.length && buffer[pos] == '\n') {
-          pos += 1;  // skip the end of line character
-        } else if (pos + 2 < buffer.length && buffer[pos] == '\r' && buffer[pos + 1] == '\n') {
-          pos += 2;  // skip the CRLF at the end of line
+    if (tokenizeTwoChars()) {
+      pos += 2;
+      return;
+    }
+    char c = buffer[pos];
+    pos++;
+    switch (c) {
+    case '{': {
+      addToken(new Token(TokenKind.LBRACE, pos - 1, pos));
+      openParenStackDepth++;
+      break;
+    }
+    case '}': {
+      addToken(new Token(TokenKind.RBRACE, pos - 1, pos));
+      popParen();
+      break;
+    }
+    case '(': {
+      addToken(new Token(TokenKind.LPAREN, pos - 1, pos));
+      openParenStackDepth++;
+      break;
+    }
+    case ')': {
+      addToken(new Token(TokenKind.RPAREN, pos - 1, pos));
+      popParen();
+      break;
+    }
+    case '[': {
+      addToken(new Token(TokenKind.LBRACKET, pos - 1, pos));
+      openParenStackDepth++;
+      break;
+    }
+    case ']': {
+      addToken(new Token(TokenKind.RBRACKET, pos - 1, pos));
+      popParen();
+      break;
+    }
+    case '>': {
+      addToken(new Token(TokenKind.GREATER, pos - 1, pos));
+      break;
+    }
+    case '<': {
+      addToken(new Token(TokenKind.LESS, pos - 1, pos));
+      break;
+    }
+    case ':': {
+      addToken(new Token(TokenKind.COLON, pos - 1, pos));
+      break;
+    }
+    case ',': {
+      addToken(new Token(TokenKind.COMMA, pos - 1, pos));
+      break;
+    }
+    case '+': {
+      addToken(new Token(TokenKind.PLUS, pos - 1, pos));
+      break;
+    }
+    case '-': {
+      addToken(new Token(TokenKind.MINUS, pos - 1, pos));
+      break;
+    }
+    case '|': {
+      addToken(new Token(TokenKind.PIPE, pos - 1, pos));
+      break;
+    }
+    case '=': {
+      addToken(new Token(TokenKind.EQUALS, pos - 1, pos));
+      break;
+    }
+    case '%': {
+      addToken(new Token(TokenKind.PERCENT, pos - 1, pos));
+      break;
+    }
+    case '/': {
+      addToken(new Token(TokenKind.SLASH, pos - 1, pos));
+      break;
+    }
+    case ';': {
+      addToken(new Token(TokenKind.SEMI, pos - 1, pos));
+      break;
+    }
+    case '.': {
+      addToken(new Token(TokenKind.DOT, pos - 1, pos));
+      break;
+    }
+    case '*': {
+      addToken(new Token(TokenKind.STAR, pos - 1, pos));
+      break;
+    }
+    case ' ':
+    case '\t':
+    case '\r': {
+      /* ignore */
+      break;
+    }
+    case '\\': {
+      // Backslash character is valid only at the end of a line (or in a string)
+      if (pos + 1 < buffer.length && buffer[pos] == '\n') {
+        pos += 1;  // skip the end of line character
+      } else if (pos + 2 < buffer.length && buffer[pos] == '\r' && buffer[pos + 1] == '\n') {
+        pos += 2;  // skip the CRLF at the end of line
+      } else {
+        addToken(new Token(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c)));
+      }
+      break;
+    }
+    case '\n': {
+      newline();
+      break;
+    }
+    case '#': {
+      int oldPos = pos - 1;
+      while (pos < buffer.length) {
+        c = buffer[pos];
+        if (c == '\n') {
+          break;
         } else {
-          addToken(new Token(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c)));
+          pos++;
         }
-        break;
-      }
-      case '\n': {
-        newline();
-        break;
       }
-      case '#': {
-        int oldPos = pos - 1;
-        while (pos < buffer.length) {
-          c = buffer[pos];
-          if (c == '\n') {
-            break;
-          } else {
-            pos++;
-          }
-        }
-        addToken(new Token(TokenKind.COMMENT, oldPos, pos, bufferSlice(oldPos, pos)));
-        break;
-      }
-      case '\'':
-      case '\"': {
-        addToken(stringLiteral(c, false));
+      addToken(new Token(TokenKind.COMMENT, oldPos, pos, bufferSlice(oldPos, pos)));
+      break;
+    }
+    case '\'':
+    case '\"': {
+      addToken(stringLiteral(c, false));
+      break;
+    }
+    default: {
+      // detect raw strings, e.g. r"str"
+      if (c == 'r' && pos < buffer.length
+          && (buffer[pos] == '\'' || buffer[pos] == '\"')) {
+        c = buffer[pos];
+        pos++;
+        addToken(stringLiteral(c, true));
         break;
       }
-      default: {
-        // detect raw strings, e.g. r"str"
-        if (c == 'r' && pos < buffer.length
-            && (buffer[pos] == '\'' || buffer[pos] == '\"')) {
-          c = buffer[pos];
-          pos++;
-          addToken(stringLiteral(c, true));
-          break;
-        }
 
-        if (Character.isDigit(c)) {
-          addToken(integer());
-        } else if (Character.isJavaIdentifierStart(c) && c != '$') {
-          addToken(identifierOrKeyword());
-        } else {
-          error("invalid character: '" + c + "'");
-        }
-        break;
-      } // default
-      } // switch
-    } // while
+      if (Character.isDigit(c)) {
+        addToken(integer());
+      } else if (Character.isJavaIdentifierStart(c) && c != '$') {
+        addToken(identifierOrKeyword());
+      } else {
+        error("invalid character: '" + c + "'");
+      }
+      break;
+    } // default
+    } // switch
+  }
 
+  /** Adds the tokens at the end of the input. */
+  private void finish() {
     if (indentStack.size() > 1) { // top of stack is always zero
       addToken(new Token(TokenKind.NEWLINE, pos - 1, pos));
       while (indentStack.size() > 1) {
@@ -830,11 +868,12 @@ public final class Lexer {
     }
 
     // Like Python, always end with a NEWLINE token, even if no '\n' in input:
-    if (tokens.isEmpty() || Iterables.getLast(tokens).kind != TokenKind.NEWLINE) {
+    if (lastTokenKind != TokenKind.NEWLINE) {
       addToken(new Token(TokenKind.NEWLINE, pos - 1, pos));
     }
 
-    addToken(new Token(TokenKind.EOF, pos, pos));
+    eofToken = new Token(TokenKind.EOF, pos, pos);
+    addToken(eofToken);
   }
 
   /**
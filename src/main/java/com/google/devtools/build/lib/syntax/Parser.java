@@ -34,7 +34,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -186,7 +185,6 @@ public class Parser {
       EnumSet.of(Operator.MINUS, Operator.PLUS),
       EnumSet.of(Operator.DIVIDE, Operator.MULT, Operator.PERCENT));
 
-  private final Iterator<Token> tokens;
   private int errorsCount;
   private boolean recoveryMode;  // stop reporting errors until next statement
 
@@ -194,7 +192,6 @@ public class Parser {
     this.lexer = lexer;
     this.eventHandler = eventHandler;
     this.parsingMode = parsingMode;
-    this.tokens = lexer.getTokens().iterator();
     this.comments = new ArrayList<>();
     nextToken();
   }
@@ -367,11 +364,11 @@ public class Parser {
       pushedToken = null;
     } else {
       if (token == null || token.kind != TokenKind.EOF) {
-        token = tokens.next();
+        token = lexer.nextToken();
         // transparently handle comment tokens
         while (token.kind == TokenKind.COMMENT) {
           makeComment(token);
-          token = tokens.next();
+          token = lexer.nextToken();
         }
       }
     }
@@ -14,7 +14,12 @@
 package com.google.devtools.build.lib.syntax;
 
 import com.google.devtools.build.lib.events.Location;
+import com.google.devtools.build.lib.syntax.compiler.ByteCodeUtils;
+import com.google.devtools.build.lib.syntax.compiler.DebugInfo;
+import com.google.devtools.build.lib.syntax.compiler.VariableScope;
+import java.util.ArrayList;
 import java.util.List;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
 
 /** Syntax node for an index expression. e.g. obj[field], but not obj[from:to] */
 public final class SliceExpression extends Expression {
@@ -62,12 +67,18 @@ public final class SliceExpression extends Expression {
 
   @Override
   Object doEval(Environment env) throws EvalException, InterruptedException {
-    Object objValue = obj.eval(env);
-    Object startValue = start.eval(env);
-    Object endValue = end.eval(env);
-    Object stepValue = step.eval(env);
-    Location loc = getLocation();
+    return eval(obj.eval(env), start.eval(env), end.eval(env), step.eval(env), getLocation(), env);
+  }
 
+  /** Returns the slice of {@code objValue} with the given start, end and step. */
+  public static Object eval(
+      Object objValue,
+      Object startValue,
+      Object endValue,
+      Object stepValue,
+      Location loc,
+      Environment env)
+      throws EvalException {
     if (objValue instanceof SkylarkList) {
       SkylarkList<Object> list = (SkylarkList<Object>) objValue;
       Object slice = list.getSlice(startValue, endValue, stepValue, loc);
@@ -105,4 +116,27 @@ public final class SliceExpression extends Expression {
   void validate(ValidationEnvironment env) throws EvalException {
     obj.validate(env);
   }
+
+  @Override
+  ByteCodeAppender compile(VariableScope scope, DebugInfo debugInfo) throws EvalException {
+    List<ByteCodeAppender> code = new ArrayList<>();
+    code.add(obj.compile(scope, debugInfo));
+    code.add(start.compile(scope, debugInfo));
+    code.add(end.compile(scope, debugInfo));
+    code.add(step.compile(scope, debugInfo));
+    ByteCodeUtils.append(
+        code,
+        debugInfo.add(this).loadLocation,
+        scope.loadEnvironment(),
+        ByteCodeUtils.invoke(
+            SliceExpression.class,
+            "eval",
+            Object.class,
+            Object.class,
+            Object.class,
+            Object.class,
+            Location.class,
+            Environment.class));
+    return ByteCodeUtils.compoundAppender(code);
+  }
 }
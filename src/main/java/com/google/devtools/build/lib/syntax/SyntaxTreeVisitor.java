@@ -126,6 +126,8 @@ public class SyntaxTreeVisitor {
     visit(node.getReturnExpression());
   }
 
+  public void visit(@SuppressWarnings("unused") FlowStatement node) {}
+
   public void visit(DictionaryLiteral node) {
     visitAll(node.getEntries());
   }
@@ -20,6 +20,7 @@ import com.google.devtools.build.lib.events.Location;
 import com.google.devtools.build.lib.events.Location.LineAndColumn;
 import com.google.devtools.build.lib.profiler.Profiler;
 import com.google.devtools.build.lib.profiler.ProfilerTask;
+import com.google.devtools.build.lib.syntax.EvalException.EvalExceptionWithJavaCause;
 import com.google.devtools.build.lib.syntax.compiler.ByteCodeUtils;
 import com.google.devtools.build.lib.syntax.compiler.DebugInfo;
 import com.google.devtools.build.lib.syntax.compiler.LoopLabels;
@@ -36,7 +37,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.ClassFileVersion;
 import net.bytebuddy.asm.ClassVisitorWrapper;
 import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.modifier.MethodManifestation;
@@ -65,27 +69,41 @@ import org.objectweb.asm.util.TraceClassVisitor;
 public class UserDefinedFunction extends BaseFunction {
 
   private final ImmutableList<Statement> statements;
+  private final FrameLayout layout;
 
   // we close over the globals at the time of definition
   private final Environment.Frame definitionGlobals;
 
-  private final Optional<Method> method;
-  // TODO(bazel-team) make this configurable once the compiler is stable
+  // The number of calls after which a function is compiled to byte code, or -1 to never compile.
+  private static volatile int compileThreshold = -1;
   public static boolean debugCompiler = false;
   public static boolean debugCompilerPrintByteCode = false;
   private static File debugFolder;
-  public static boolean enableCompiler = false;
+
+  private final AtomicInteger interpretedCalls = new AtomicInteger();
+  // The compiled version of this function; null until compilation has been attempted, and absent if
+  // the function uses constructs the compiler does not support.
+  @Nullable private volatile Optional<Method> method;
 
   protected UserDefinedFunction(
       Identifier function,
       FunctionSignature.WithValues<Object, SkylarkType> signature,
       ImmutableList<Statement> statements,
+      FrameLayout layout,
       Environment.Frame definitionGlobals)
       throws EvalException {
     super(function.getName(), signature, function.getLocation());
     this.statements = statements;
+    this.layout = layout;
     this.definitionGlobals = definitionGlobals;
-    method = enableCompiler ? buildCompiledFunction() : Optional.<Method>absent();
+  }
+
+  /**
+   * Sets the number of times a function is interpreted before it is compiled to byte code. Zero
+   * compiles functions on their first call, a negative value disables the compiler.
+   */
+  public static void setCompileThreshold(int threshold) {
+    compileThreshold = threshold;
   }
 
   public FunctionSignature.WithValues<Object, SkylarkType> getFunctionSignature() {
@@ -108,16 +126,14 @@ public class UserDefinedFunction extends BaseFunction {
               getName(), Iterables.getLast(env.getStackTrace()).getName()));
     }
 
-    if (enableCompiler && method.isPresent()) {
-      Object returnValue = callCompiledFunction(arguments, ast, env);
-      if (returnValue != null) {
-        return returnValue;
-      }
+    Optional<Method> compiled = getCompiledFunction();
+    if (compiled.isPresent()) {
+      return callCompiledFunction(compiled.get(), arguments, ast, env);
     }
 
     Profiler.instance().startTask(ProfilerTask.SKYLARK_USER_FN, getName());
     try {
-      env.enterScope(this, ast, definitionGlobals);
+      env.enterScope(this, ast, definitionGlobals, layout);
       ImmutableList<String> names = signature.getSignature().getNames();
 
       // Registering the functions's arguments as variables in the local Environment
@@ -146,24 +162,72 @@ public class UserDefinedFunction extends BaseFunction {
     }
   }
 
-  private Object callCompiledFunction(Object[] arguments, FuncallExpression ast, Environment env) {
+  /**
+   * Returns the compiled version of this function, compiling it if it has been called often
+   * enough, or absent if it should be interpreted.
+   */
+  private Optional<Method> getCompiledFunction() {
+    Optional<Method> compiled = method;
+    if (compiled != null) {
+      return compiled;
+    }
+    int threshold = compileThreshold;
+    if (threshold < 0 || interpretedCalls.getAndIncrement() < threshold) {
+      return Optional.absent();
+    }
+    synchronized (this) {
+      if (method == null) {
+        Profiler.instance().startTask(ProfilerTask.SKYLARK_USER_FN_COMPILATION,
+            getLocationPathAndLine() + "#" + getName());
+        try {
+          method = buildCompiledFunction();
+        } finally {
+          Profiler.instance().completeTask(ProfilerTask.SKYLARK_USER_FN_COMPILATION);
+        }
+      }
+      return method;
+    }
+  }
+
+  /** Returns whether this function is called through its compiled version. */
+  boolean isCompiled() {
+    Optional<Method> compiled = method;
+    return compiled != null && compiled.isPresent();
+  }
+
+  /**
+   * Calls the compiled version of this function. Errors are never retried in the interpreter, since
+   * the compiled code may already have had side effects.
+   */
+  private Object callCompiledFunction(
+      Method compiled, Object[] arguments, FuncallExpression ast, Environment env)
+      throws EvalException, InterruptedException {
     compilerDebug("Calling compiled function " + getLocationPathAndLine() + " " + getName());
     try {
       Profiler.instance().startTask(ProfilerTask.SKYLARK_USER_COMPILED_FN,
           getLocationPathAndLine() + "#" + getName());
       env.enterScope(this, ast, definitionGlobals);
 
-      return method
-          .get()
-          .invoke(null, ImmutableList.builder().add(arguments).add(env).build().toArray());
+      return compiled.invoke(
+          null, ImmutableList.builder().add(arguments).add(env).build().toArray());
 
     } catch (IllegalAccessException e) {
       // this should never happen
       throw new RuntimeException(
           "Compiler created code that could not be accessed reflectively.", e);
     } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof InterruptedException) {
+        throw (InterruptedException) e.getCause();
+      }
       compilerDebug("Error running compiled version", e.getCause());
-      return null;
+      if (e.getCause() instanceof EvalException) {
+        throw (EvalException) e.getCause();
+      }
+      // Not an error of the Skylark code but of the compiler: stop using the compiled version for
+      // later calls.
+      method = Optional.absent();
+      throw new EvalExceptionWithJavaCause(
+          ast != null ? ast.getLocation() : getLocation(), e.getCause());
     } finally {
       Profiler.instance().completeTask(ProfilerTask.SKYLARK_USER_COMPILED_FN);
       env.exitScope();
@@ -174,9 +238,10 @@ public class UserDefinedFunction extends BaseFunction {
    * Generates a subclass of {@link CompiledFunction} with a static method "call" and static
    * methods for getting information from a {@link DebugInfo} instance.
    *
-   * <p>The "call" method contains the compiled version of this function's AST.
+   * <p>The "call" method contains the compiled version of this function's AST. Returns absent if
+   * the AST contains nodes the compiler does not support.
    */
-  private Optional<Method> buildCompiledFunction() throws EvalException {
+  private Optional<Method> buildCompiledFunction() {
     // replace the / character in the path so we have file system compatible class names
     // the java specification mentions that $ should be used in generated code
     // see http://docs.oracle.com/javase/specs/jls/se7/html/jls-3.html#jls-3.8
@@ -218,7 +283,9 @@ public class UserDefinedFunction extends BaseFunction {
       List<Class<?>> parameterTypes = sig.getShape().toClasses();
       parameterTypes.add(Environment.class);
       Unloaded<CompiledFunction> unloadedImplementation =
-          new ByteBuddy()
+          // Pin the class file version: the byte code is the same for all supported JVMs, and
+          // ByteBuddy cannot parse the version strings of newer ones.
+          new ByteBuddy(ClassFileVersion.JAVA_V8)
               .withClassVisitor(new StackMapFrameClassVisitor(debugCompilerPrintByteCode))
               .subclass(CompiledFunction.class)
               .name(compiledFunctionClassName)
@@ -252,12 +319,11 @@ public class UserDefinedFunction extends BaseFunction {
       return Optional.of(
           ReflectionUtils.getMethod(functionClass, "call", parameterTypes.toArray(new Class<?>[0]))
               .getLoadedMethod());
-    } catch (EvalException e) {
-      // don't capture EvalExceptions
-      throw e;
+    } catch (EvalException | UnsupportedOperationException e) {
+      // The function will be interpreted, which reports any EvalException when it is executed.
+      compilerDebug("Unsupported by the compiler", e);
     } catch (Throwable e) {
       compilerDebug("Error while compiling", e);
-      // TODO(bazel-team) don't capture all throwables? couldn't compile this, log somewhere?
     }
     return Optional.absent();
   }
@@ -328,12 +394,16 @@ public class UserDefinedFunction extends BaseFunction {
   }
 
   private void compilerDebug(String message) {
-    System.err.println(message);
+    if (debugCompiler) {
+      System.err.println(message);
+    }
   }
 
   private void compilerDebug(String message, Throwable e) {
-    compilerDebug(message);
-    e.printStackTrace();
+    if (debugCompiler) {
+      compilerDebug(message);
+      e.printStackTrace();
+    }
   }
 
   /**
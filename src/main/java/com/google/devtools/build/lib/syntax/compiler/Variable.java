@@ -13,10 +13,12 @@
 // limitations under the License.
 package com.google.devtools.build.lib.syntax.compiler;
 
+import com.google.devtools.build.lib.events.Location;
 import com.google.devtools.build.lib.syntax.ASTNode;
 import com.google.devtools.build.lib.syntax.Environment;
 import com.google.devtools.build.lib.syntax.EvalException;
 import com.google.devtools.build.lib.syntax.EvalExceptionWithStackTrace;
+import com.google.devtools.build.lib.syntax.LValue;
 import com.google.devtools.build.lib.syntax.compiler.DebugInfo.AstAccessors;
 import com.google.devtools.build.lib.syntax.compiler.Jump.ReferenceComparison;
 
@@ -100,6 +102,30 @@ public abstract class Variable {
       return store;
     }
 
+    /**
+     * Builds a ByteCodeAppender for an assignment of the operand on the stack to this variable.
+     * Like the interpreter, it fails if the variable is not bound yet and a global variable of the
+     * same name has already been read in the call.
+     */
+    public ByteCodeAppender assign(VariableScope scope, AstAccessors debugAccessors) {
+      LabelAdder bound = new LabelAdder();
+      return new ByteCodeAppender.Compound(
+          new ByteCodeAppender.Simple(
+              MethodVariableAccess.REFERENCE.loadOffset(index),
+              Jump.ifReferenceOperandToNull(ReferenceComparison.NOT_EQUAL).to(bound),
+              scope.loadEnvironment(),
+              new TextConstant(name),
+              debugAccessors.loadLocation,
+              ByteCodeUtils.invoke(
+                  LValue.class,
+                  "checkUnboundLocalAssignment",
+                  Environment.class,
+                  String.class,
+                  Location.class),
+              bound),
+          store);
+    }
+
     /**
      * Looks for the variable in the method calls outside environment and fail with debug info
      * if not found.
@@ -134,6 +160,12 @@ public abstract class Variable {
     public ByteCodeAppender load(VariableScope scope, AstAccessors debugAccessors) {
       return new ByteCodeAppender.Simple(MethodVariableAccess.REFERENCE.loadOffset(index));
     }
+
+    @Override
+    public ByteCodeAppender assign(VariableScope scope, AstAccessors debugAccessors) {
+      // Parameters are always bound.
+      return store();
+    }
   }
 
   /**
@@ -372,6 +372,19 @@ public final class NativePosixFiles {
   public static native void rename(String oldpath, String newpath)
       throws IOException;
 
+  /**
+   * Replaces the contents of newpath with a copy of the contents of oldpath. On file systems that
+   * support it (e.g. btrfs and XFS on Linux), the copy shares its data blocks with the original
+   * until either is modified (FICLONE). Otherwise the data is copied in the kernel with
+   * copy_file_range(2) where available, or through a buffer. A newly created file gets the
+   * permission bits of oldpath.
+   *
+   * @param oldpath the file to copy.
+   * @param newpath the destination file; created if it does not exist.
+   * @throws IOException if the copy failed for any reason.
+   */
+  public static native void copyFile(String oldpath, String newpath) throws IOException;
+
   /**
    * Native wrapper around POSIX remove(3) C library call.
    *
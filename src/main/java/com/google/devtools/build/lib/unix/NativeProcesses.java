@@ -0,0 +1,76 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.unix;
+
+import com.google.devtools.build.lib.UnixJniLoader;
+import java.io.IOException;
+
+/**
+ * Native methods for starting and managing processes without going through
+ * {@link java.lang.ProcessBuilder}.
+ *
+ * <p>Processes are started with {@code vfork()} followed by {@code execve()}, so that starting a
+ * process does not need to copy the page tables of the JVM and its cost does not grow with the
+ * size of the heap. All methods throw {@link IOException} with the message of the failing system
+ * call on error.
+ */
+final class NativeProcesses {
+
+  private NativeProcesses() {}
+
+  static {
+    if (!"0".equals(System.getProperty("io.bazel.EnableJni"))) {
+      UnixJniLoader.loadJni();
+    }
+  }
+
+  /**
+   * Starts a process.
+   *
+   * @param argv the command line; the program is looked up in the PATH of the server if it does
+   *     not contain a slash
+   * @param env the environment, as {@code NAME=value} entries, or null to inherit the
+   *     environment of the server
+   * @param cwd the working directory of the process
+   * @param stdoutPath the file to append stdout to, or null to connect it to a pipe
+   * @param stderrPath the file to append stderr to, or null to connect it to a pipe
+   * @param pipeFds receives the file descriptors of the parent's end of the stdin, stdout and
+   *     stderr pipes, in that order; -1 for streams that are redirected to a file
+   * @return the pid of the new process
+   */
+  static native int nativeSpawn(byte[][] argv, byte[][] env, byte[] cwd, byte[] stdoutPath,
+      byte[] stderrPath, int[] pipeFds) throws IOException;
+
+  /**
+   * Waits for a process to terminate and reaps it.
+   *
+   * @return the exit code of the process, or 128 plus the signal number if it was terminated by a
+   *     signal
+   */
+  static native int nativeWaitFor(int pid) throws IOException;
+
+  /** Sends a signal to a process. Returns whether the signal could be sent. */
+  static native boolean nativeKill(int pid, int signal);
+
+  /** Reads from a file descriptor. Returns the number of bytes read, or 0 at end of stream. */
+  static native int nativeRead(int fd, byte[] buffer, int offset, int length) throws IOException;
+
+  /** Writes to a file descriptor. Returns the number of bytes written. */
+  static native int nativeWrite(int fd, byte[] buffer, int offset, int length)
+      throws IOException;
+
+  /** Closes a file descriptor. */
+  static native void nativeClose(int fd);
+}
@@ -0,0 +1,237 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.unix;
+
+import com.google.devtools.build.lib.shell.Subprocess;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Unix subprocess started by {@link NativeProcesses}.
+ */
+public class UnixSubprocess implements Subprocess {
+  private static final int SIGTERM = 15;
+  private static final int CLOSED = -1;
+
+  /**
+   * Output stream for writing to the stdin of a process.
+   */
+  private static class ProcessOutputStream extends OutputStream {
+    private int fd;
+
+    ProcessOutputStream(int fd) {
+      this.fd = fd;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{ (byte) b }, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      if (fd == CLOSED) {
+        throw new IOException("Stream closed");
+      }
+      while (len > 0) {
+        int written = NativeProcesses.nativeWrite(fd, b, off, len);
+        off += written;
+        len -= written;
+      }
+    }
+
+    @Override
+    public synchronized void close() {
+      if (fd != CLOSED) {
+        NativeProcesses.nativeClose(fd);
+        fd = CLOSED;
+      }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+      close();
+      super.finalize();
+    }
+  }
+
+  /**
+   * Input stream for reading the stdout or stderr of a process.
+   */
+  private static class ProcessInputStream extends InputStream {
+    private int fd;
+
+    ProcessInputStream(int fd) {
+      this.fd = fd;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] buf = new byte[1];
+      if (read(buf, 0, 1) != 1) {
+        return -1;
+      } else {
+        return buf[0] & 0xff;
+      }
+    }
+
+    @Override
+    public synchronized int read(byte b[], int off, int len) throws IOException {
+      if (fd == CLOSED) {
+        throw new IOException("Stream closed");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      int result = NativeProcesses.nativeRead(fd, b, off, len);
+      return result == 0 ? -1 : result;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (fd != CLOSED) {
+        NativeProcesses.nativeClose(fd);
+        fd = CLOSED;
+      }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+      close();
+      super.finalize();
+    }
+  }
+
+  private static AtomicInteger THREAD_SEQUENCE_NUMBER = new AtomicInteger(1);
+  private static final ExecutorService WAITER_POOL = Executors.newCachedThreadPool(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(null, runnable,
+              "Unix-Process-Waiter-Thread-" + THREAD_SEQUENCE_NUMBER.getAndIncrement(),
+              16 * 1024);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  // For debugging purposes.
+  private final String commandLine;
+  private final int pid;
+  private final ProcessOutputStream stdinStream;
+  private final ProcessInputStream stdoutStream;
+  private final ProcessInputStream stderrStream;
+  private final CountDownLatch waitLatch = new CountDownLatch(1);
+  private volatile int exitCode;
+  private volatile IOException waitError;
+
+  UnixSubprocess(int pid, String commandLine, int stdinFd, int stdoutFd, int stderrFd) {
+    this.pid = pid;
+    this.commandLine = commandLine;
+    stdinStream = new ProcessOutputStream(stdinFd);
+    stdoutStream = stdoutFd == CLOSED ? null : new ProcessInputStream(stdoutFd);
+    stderrStream = stderrFd == CLOSED ? null : new ProcessInputStream(stderrFd);
+    // waitpid() cannot be interrupted from Java, so every process gets a thread that reaps it.
+    WAITER_POOL.submit(new Runnable() {
+        @Override public void run() {
+          waiterThreadFunc();
+        }
+    });
+  }
+
+  private void waiterThreadFunc() {
+    try {
+      exitCode = NativeProcesses.nativeWaitFor(pid);
+    } catch (IOException e) {
+      // Should not happen: we are the only ones waiting for this pid. Pretend the process
+      // terminated so that callers do not hang forever.
+      waitError = e;
+    }
+    waitLatch.countDown();
+  }
+
+  @Override
+  public boolean destroy() {
+    // Once the process is reaped, its pid may be reused by an unrelated process.
+    if (finished()) {
+      return false;
+    }
+    return NativeProcesses.nativeKill(pid, SIGTERM);
+  }
+
+  @Override
+  public int exitValue() {
+    if (!finished()) {
+      throw new IllegalThreadStateException("Process " + pid + " has not exited");
+    }
+    if (waitError != null) {
+      throw new IllegalStateException(waitError);
+    }
+    return exitCode;
+  }
+
+  @Override
+  public boolean finished() {
+    return waitLatch.getCount() == 0;
+  }
+
+  @Override
+  public boolean timedout() {
+    // Not supported.
+    return false;
+  }
+
+  @Override
+  public void waitFor() throws InterruptedException {
+    waitLatch.await();
+  }
+
+  @Override
+  public void close() {
+    stdinStream.close();
+    if (stdoutStream != null) {
+      stdoutStream.close();
+    }
+    if (stderrStream != null) {
+      stderrStream.close();
+    }
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return stdinStream;
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return stdoutStream;
+  }
+
+  @Override
+  public InputStream getErrorStream() {
+    return stderrStream;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s:[%s]", super.toString(), commandLine);
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.devtools.build.lib.unix;
+
+import com.google.common.base.Joiner;
+import com.google.devtools.build.lib.shell.Subprocess;
+import com.google.devtools.build.lib.shell.SubprocessBuilder;
+import com.google.devtools.build.lib.shell.SubprocessBuilder.StreamAction;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A subprocess factory that starts processes with {@code vfork()} and {@code execve()} through
+ * JNI.
+ *
+ * <p>{@link java.lang.ProcessBuilder} may use {@code fork()}, whose cost is proportional to the
+ * size of the address space of the JVM. With a large heap and many concurrent spawns that becomes
+ * a bottleneck; a {@code vfork()}-based launch takes constant time.
+ */
+public class UnixSubprocessFactory implements Subprocess.Factory {
+  public static final UnixSubprocessFactory INSTANCE = new UnixSubprocessFactory();
+
+  private UnixSubprocessFactory() {
+    // Singleton
+  }
+
+  @Override
+  public Subprocess create(SubprocessBuilder builder) throws IOException {
+    if (builder.getTimeoutMillis() >= 0) {
+      throw new UnsupportedOperationException("Timeouts are not supported");
+    }
+    List<String> argv = builder.getArgv();
+    byte[][] env = builder.getEnv() == null ? null : convertEnvToNative(builder.getEnv());
+    byte[] stdoutPath = getRedirectPath(builder.getStdout(), builder.getStdoutFile());
+    byte[] stderrPath = getRedirectPath(builder.getStderr(), builder.getStderrFile());
+    File workingDirectory = builder.getWorkingDirectory() != null
+        ? builder.getWorkingDirectory()
+        : new File(System.getProperty("user.dir"));
+
+    int[] pipeFds = new int[3];
+    int pid = NativeProcesses.nativeSpawn(toBytes(argv), env, toBytes(workingDirectory.getPath()),
+        stdoutPath, stderrPath, pipeFds);
+    return new UnixSubprocess(pid, Joiner.on(' ').join(argv), pipeFds[0], pipeFds[1], pipeFds[2]);
+  }
+
+  /**
+   * Returns the path to redirect a stream to, or null if it should be connected to a pipe. If a
+   * file redirected to exists, deletes the file before redirecting to it.
+   */
+  private static byte[] getRedirectPath(StreamAction action, File file) {
+    switch (action) {
+      case DISCARD:
+        return toBytes("/dev/null");
+
+      case REDIRECT:
+        // The file is opened in append mode (see JavaSubprocessFactory), so delete it first.
+        if (file.exists()) {
+          file.delete();
+        }
+        return toBytes(file.getPath());
+
+      case STREAM:
+        return null;
+
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  private static byte[][] convertEnvToNative(Map<String, String> env) {
+    byte[][] result = new byte[env.size()][];
+    int i = 0;
+    for (Map.Entry<String, String> entry : env.entrySet()) {
+      result[i++] = toBytes(entry.getKey() + "=" + entry.getValue());
+    }
+    return result;
+  }
+
+  private static byte[][] toBytes(List<String> strings) {
+    byte[][] result = new byte[strings.size()][];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = toBytes(strings.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Converts a string to the bytes passed to the kernel. Like the rest of the native code, this
+   * assumes that strings hold raw bytes as Latin-1 characters.
+   */
+  private static byte[] toBytes(String string) {
+    return string.getBytes(StandardCharsets.ISO_8859_1);
+  }
+}
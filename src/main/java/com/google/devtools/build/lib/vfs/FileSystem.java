@@ -19,6 +19,7 @@ import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import com.google.common.collect.Lists;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
 import com.google.devtools.build.lib.vfs.Dirent.Type;
@@ -703,6 +704,20 @@ public abstract class FileSystem {
    */
   protected abstract void renameTo(Path sourcePath, Path targetPath) throws IOException;
 
+  /**
+   * Replaces the contents of the file "targetPath" with a copy of the contents of the file
+   * "sourcePath", following symbolic links. Only the contents are copied; see {@link
+   * FileSystemUtils#copyFile} for the handling of metadata.
+   *
+   * <p>File systems that can copy files without moving the data through the JVM, or share data
+   * blocks between files, should override this.
+   */
+  protected void copyFileContents(Path sourcePath, Path targetPath) throws IOException {
+    try (InputStream in = getInputStream(sourcePath);
+        OutputStream out = getOutputStream(targetPath)) {
+      ByteStreams.copy(in, out);
+    }
+  }
 
   /**
    * Create a new hard link file at "linkPath" for file at "originalPath".
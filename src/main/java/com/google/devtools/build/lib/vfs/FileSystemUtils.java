@@ -435,7 +435,7 @@ public class FileSystemUtils {
       throw new IOException("error copying file: "
           + "couldn't delete destination: " + e.getMessage());
     }
-    asByteSource(from).copyTo(asByteSink(to));
+    copyFileContents(from, to);
     to.setLastModifiedTime(from.getLastModifiedTime()); // Preserve mtime.
     if (!from.isWritable()) {
       to.setWritable(false); // Make file read-only if original was read-only.
@@ -443,6 +443,18 @@ public class FileSystemUtils {
     to.setExecutable(from.isExecutable()); // Copy executable bit.
   }
 
+  /**
+   * Copies the contents of "from" to "to". Within a file system, this lets the file system avoid
+   * moving the data through the JVM or share data blocks between the files.
+   */
+  private static void copyFileContents(Path from, Path to) throws IOException {
+    if (from.getFileSystem() == to.getFileSystem()) {
+      from.getFileSystem().copyFileContents(from, to);
+    } else {
+      asByteSource(from).copyTo(asByteSink(to));
+    }
+  }
+
   /**
    * Moves the file from location "from" to location "to", while overwriting a
    * potentially existing "to". File's last modified time, executable and
@@ -463,7 +475,7 @@ public class FileSystemUtils {
     try {
       from.renameTo(to);
     } catch (IOException e) {
-      asByteSource(from).copyTo(asByteSink(to));
+      copyFileContents(from, to);
       if (!from.delete()) {
         if (!to.delete()) {
           throw new IOException("Unable to delete " + to);
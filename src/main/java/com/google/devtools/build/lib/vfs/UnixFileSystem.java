@@ -347,6 +347,11 @@ public class UnixFileSystem extends AbstractFileSystemWithCustomStat {
     }
   }
 
+  @Override
+  protected void copyFileContents(Path sourcePath, Path targetPath) throws IOException {
+    NativePosixFiles.copyFile(sourcePath.toString(), targetPath.toString());
+  }
+
   @Override
   protected long getFileSize(Path path, boolean followSymlinks) throws IOException {
     return stat(path, followSymlinks).getSize();
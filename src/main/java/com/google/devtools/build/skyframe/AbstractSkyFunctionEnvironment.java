@@ -15,6 +15,7 @@ package com.google.devtools.build.skyframe;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.devtools.build.skyframe.ValueOrExceptionUtils.BottomException;
@@ -403,4 +404,9 @@ public abstract class AbstractSkyFunctionEnvironment implements SkyFunction.Envi
       }
     };
   }
+
+  @Override
+  public <T> T getState(Supplier<T> stateSupplier) {
+    return stateSupplier.get();
+  }
 }
@@ -24,6 +24,8 @@ import com.google.devtools.build.lib.util.Preconditions;
 import com.google.devtools.build.skyframe.MemoizingEvaluator.EmittedEventState;
 import com.google.devtools.build.skyframe.QueryableGraph.Reason;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ForkJoinPool;
 import javax.annotation.Nullable;
 
@@ -57,6 +59,11 @@ class ParallelEvaluatorContext {
    * cases where it is not needed.
    */
   private final Supplier<NodeEntryVisitor> visitorSupplier;
+  /**
+   * The states that SkyFunctions keep across restarts, by the key being computed. See {@link
+   * SkyFunction.Environment#getState}.
+   */
+  private final ConcurrentMap<SkyKey, Object> restartStates = new ConcurrentHashMap<>();
 
   ParallelEvaluatorContext(
       QueryableGraph graph,
@@ -199,6 +206,25 @@ class ParallelEvaluatorContext {
     return skyFunctions;
   }
 
+  /**
+   * Returns the restart state of {@code key}, creating it with {@code stateSupplier} if there is
+   * none yet. A key is only ever computed by one thread at a time, so no further synchronization
+   * is needed.
+   */
+  @SuppressWarnings("unchecked")
+  <T> T getRestartState(SkyKey key, Supplier<T> stateSupplier) {
+    Object state = restartStates.get(key);
+    if (state == null) {
+      state = Preconditions.checkNotNull(stateSupplier.get(), key);
+      restartStates.put(key, state);
+    }
+    return (T) state;
+  }
+
+  void removeRestartState(SkyKey key) {
+    restartStates.remove(key);
+  }
+
   EventFilter getStoredEventFilter() {
     return storedEventFilter;
   }
@@ -14,6 +14,7 @@
 package com.google.devtools.build.skyframe;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
 import com.google.devtools.build.lib.concurrent.ThreadSafety.ThreadSafe;
 import com.google.devtools.build.lib.events.EventHandler;
 import java.util.Map;
@@ -272,6 +273,23 @@ public interface SkyFunction {
      */
     EventHandler getListener();
 
+    /**
+     * Returns the restart state of the value being computed, creating it with {@code
+     * stateSupplier} if there is none yet.
+     *
+     * <p>A {@link SkyFunction} that returns {@code null} because of missing dependencies is called
+     * again once those dependencies are done. The object returned here is the same on each of these
+     * calls, so that the function can keep the results of expensive work that does not need to be
+     * redone, instead of recomputing them on every restart. Dependencies requested during earlier
+     * calls remain dependencies of the value, even if the function does not request them again.
+     *
+     * <p>The state is dropped once the value is done (successfully or not), and at the end of the
+     * evaluation. There is one state object per value, so all the callers for a given
+     * {@link SkyFunction} must agree on its type. Environments that cannot keep state across
+     * restarts return a new object on each call.
+     */
+    <T> T getState(Supplier<T> stateSupplier);
+
     /** Returns whether we are currently in error bubbling. */
     @VisibleForTesting
     boolean inErrorBubblingForTesting();
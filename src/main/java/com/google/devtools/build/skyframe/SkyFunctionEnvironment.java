@@ -18,6 +18,7 @@ import static com.google.devtools.build.skyframe.ParallelEvaluator.maybeGetValue
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -484,6 +485,12 @@ class SkyFunctionEnvironment extends AbstractSkyFunctionEnvironment {
     return eventHandler;
   }
 
+  @Override
+  public <T> T getState(Supplier<T> stateSupplier) {
+    checkActive();
+    return evaluatorContext.getRestartState(skyKey, stateSupplier);
+  }
+
   void doneBuilding() {
     building = false;
   }
@@ -514,6 +521,8 @@ class SkyFunctionEnvironment extends AbstractSkyFunctionEnvironment {
    */
   void commit(NodeEntry primaryEntry, EnqueueParentBehavior enqueueParents)
       throws InterruptedException {
+    // The node is done, so it is not going to be restarted anymore.
+    evaluatorContext.removeRestartState(skyKey);
     // Construct the definitive error info, if there is one.
     finalizeErrorInfo();
 
@@ -14,8 +14,23 @@
 
 #include <jni.h>
 
+#include <dirent.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <signal.h>
+#include <stdlib.h>
+#include <sys/types.h>
+#include <sys/wait.h>
 #include <unistd.h>
 
+#include <string>
+#include <vector>
+
+#include "src/main/native/unix_jni.h"
+
+// Not in headers on OSX.
+extern char **environ;
+
 /*
  * Class:     com.google.devtools.build.lib.unix.ProcessUtils
  * Method:    getgid
@@ -45,3 +60,362 @@ extern "C" JNIEXPORT jint JNICALL
 Java_com_google_devtools_build_lib_unix_ProcessUtils_getuid(JNIEnv *env, jclass clazz) {
   return getuid();
 }
+
+// Native part of com.google.devtools.build.lib.unix.NativeProcesses.
+//
+// Processes are started with vfork() (fork() where vfork() is not available)
+// followed by exec, so that spawning a process does not copy the page tables
+// of the (potentially very large) JVM. All memory the child needs is prepared
+// by the parent before the vfork() call; the child only makes async-signal-safe
+// system calls before exec.
+
+namespace {
+
+// Copies the contents of a Java byte array into a NUL-terminated string.
+std::string ByteArrayToString(JNIEnv *env, jbyteArray array) {
+  jsize length = env->GetArrayLength(array);
+  std::string result(length, '\0');
+  env->GetByteArrayRegion(array, 0, length,
+                          reinterpret_cast<jbyte *>(&result[0]));
+  return result;
+}
+
+// Converts a Java byte[][] into a vector of strings.
+std::vector<std::string> ByteArraysToStrings(JNIEnv *env, jobjectArray arrays) {
+  std::vector<std::string> result;
+  jsize length = env->GetArrayLength(arrays);
+  for (jsize i = 0; i < length; i++) {
+    jbyteArray array =
+        reinterpret_cast<jbyteArray>(env->GetObjectArrayElement(arrays, i));
+    result.push_back(ByteArrayToString(env, array));
+    env->DeleteLocalRef(array);
+  }
+  return result;
+}
+
+// Returns a NULL-terminated array of pointers into the given strings.
+std::vector<char *> ToArgv(std::vector<std::string> *strings) {
+  std::vector<char *> result;
+  for (size_t i = 0; i < strings->size(); i++) {
+    result.push_back(&(*strings)[i][0]);
+  }
+  result.push_back(NULL);
+  return result;
+}
+
+// Resolves a program name without a slash using the PATH of this process,
+// like execvp() would. Returns the name unchanged if it cannot be resolved.
+std::string ResolveProgram(const std::string &name) {
+  if (name.find('/') != std::string::npos) {
+    return name;
+  }
+  const char *path = getenv("PATH");
+  if (path == NULL) {
+    path = "/bin:/usr/bin";
+  }
+  std::string dirs(path);
+  size_t start = 0;
+  while (start <= dirs.size()) {
+    size_t end = dirs.find(':', start);
+    if (end == std::string::npos) {
+      end = dirs.size();
+    }
+    std::string dir = dirs.substr(start, end - start);
+    std::string candidate = (dir.empty() ? "." : dir) + "/" + name;
+    if (access(candidate.c_str(), X_OK) == 0) {
+      return candidate;
+    }
+    start = end + 1;
+  }
+  return name;
+}
+
+// Returns the file descriptors above stderr currently open in this process.
+std::vector<int> OpenFileDescriptors() {
+  std::vector<int> result;
+#if defined(__linux__)
+  DIR *dir = opendir("/proc/self/fd");
+  if (dir != NULL) {
+    int dir_fd = dirfd(dir);
+    struct dirent *entry;
+    while ((entry = readdir(dir)) != NULL) {
+      int fd = atoi(entry->d_name);
+      if (fd > STDERR_FILENO && fd != dir_fd) {
+        result.push_back(fd);
+      }
+    }
+    closedir(dir);
+    return result;
+  }
+#endif
+  int max_fd = sysconf(_SC_OPEN_MAX);
+  for (int fd = STDERR_FILENO + 1; fd < max_fd; fd++) {
+    result.push_back(fd);
+  }
+  return result;
+}
+
+// Creates a pipe whose ends are closed on exec.
+int CloexecPipe(int fds[2]) {
+  if (pipe(fds) < 0) {
+    return -1;
+  }
+  fcntl(fds[0], F_SETFD, FD_CLOEXEC);
+  fcntl(fds[1], F_SETFD, FD_CLOEXEC);
+  return 0;
+}
+
+// Reports errno to the parent through error_fd and exits. Only
+// async-signal-safe calls are allowed here.
+void ChildFail(int error_fd) {
+  int error = errno;
+  ssize_t ignored = write(error_fd, &error, sizeof(error));
+  (void) ignored;
+  _exit(127);
+}
+
+// Opens path for writing (appending, to keep writes atomic on old kernels)
+// and moves it to target_fd. Only async-signal-safe calls are allowed here.
+void ChildRedirect(const char *path, int target_fd, int error_fd) {
+  int fd = open(path, O_WRONLY | O_CREAT | O_APPEND, 0666);
+  if (fd < 0 || dup2(fd, target_fd) < 0) {
+    ChildFail(error_fd);
+  }
+  if (fd != target_fd) {
+    close(fd);
+  }
+}
+
+}  // namespace
+
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativeProcesses
+ * Method:    nativeSpawn
+ * Signature: ([[B[[B[B[B[B[I)I
+ *
+ * Starts a process and returns its pid. For stdout and stderr, a null path
+ * means that the stream is connected to a pipe whose read end is returned in
+ * pipe_fds; stdin is always a pipe. pipe_fds receives the parent's ends of
+ * the stdin, stdout and stderr pipes, or -1 for redirected streams.
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_google_devtools_build_lib_unix_NativeProcesses_nativeSpawn(
+    JNIEnv *env, jclass clazz, jobjectArray java_argv, jobjectArray java_env,
+    jbyteArray java_cwd, jbyteArray java_stdout, jbyteArray java_stderr,
+    jintArray java_pipe_fds) {
+  std::vector<std::string> argv_strings = ByteArraysToStrings(env, java_argv);
+  if (argv_strings.empty()) {
+    PostException(env, EINVAL, "nativeSpawn: empty argv");
+    return -1;
+  }
+  std::string program = ResolveProgram(argv_strings[0]);
+  std::vector<char *> argv = ToArgv(&argv_strings);
+
+  std::vector<std::string> env_strings;
+  std::vector<char *> envp;
+  char **child_env = environ;
+  if (java_env != NULL) {
+    env_strings = ByteArraysToStrings(env, java_env);
+    envp = ToArgv(&env_strings);
+    child_env = envp.data();
+  }
+
+  std::string cwd = ByteArrayToString(env, java_cwd);
+  bool redirect_stdout = java_stdout != NULL;
+  bool redirect_stderr = java_stderr != NULL;
+  std::string stdout_path =
+      redirect_stdout ? ByteArrayToString(env, java_stdout) : "";
+  std::string stderr_path =
+      redirect_stderr ? ByteArrayToString(env, java_stderr) : "";
+  std::vector<int> inherited_fds = OpenFileDescriptors();
+
+  int stdin_pipe[2] = {-1, -1};
+  int stdout_pipe[2] = {-1, -1};
+  int stderr_pipe[2] = {-1, -1};
+  int error_pipe[2] = {-1, -1};
+  if (CloexecPipe(stdin_pipe) < 0 ||
+      (!redirect_stdout && CloexecPipe(stdout_pipe) < 0) ||
+      (!redirect_stderr && CloexecPipe(stderr_pipe) < 0) ||
+      CloexecPipe(error_pipe) < 0) {
+    int error = errno;
+    int *fds[] = {stdin_pipe, stdout_pipe, stderr_pipe, error_pipe};
+    for (int i = 0; i < 4; i++) {
+      if (fds[i][0] >= 0) close(fds[i][0]);
+      if (fds[i][1] >= 0) close(fds[i][1]);
+    }
+    PostSystemException(env, error, "pipe", argv_strings[0].c_str());
+    return -1;
+  }
+
+#if defined(__linux__)
+  pid_t pid = vfork();
+#else
+  pid_t pid = fork();
+#endif
+  if (pid == 0) {
+    // In child.
+    sigset_t empty_mask;
+    sigemptyset(&empty_mask);
+    sigprocmask(SIG_SETMASK, &empty_mask, NULL);
+
+    if (dup2(stdin_pipe[0], STDIN_FILENO) < 0) {
+      ChildFail(error_pipe[1]);
+    }
+    if (redirect_stdout) {
+      ChildRedirect(stdout_path.c_str(), STDOUT_FILENO, error_pipe[1]);
+    } else if (dup2(stdout_pipe[1], STDOUT_FILENO) < 0) {
+      ChildFail(error_pipe[1]);
+    }
+    if (redirect_stderr) {
+      ChildRedirect(stderr_path.c_str(), STDERR_FILENO, error_pipe[1]);
+    } else if (dup2(stderr_pipe[1], STDERR_FILENO) < 0) {
+      ChildFail(error_pipe[1]);
+    }
+
+    // Do not leak the JVM's file descriptors into the child. The error pipe
+    // is closed on exec.
+    for (size_t i = 0; i < inherited_fds.size(); i++) {
+      if (inherited_fds[i] != error_pipe[1]) {
+        close(inherited_fds[i]);
+      }
+    }
+
+    if (chdir(cwd.c_str()) < 0) {
+      ChildFail(error_pipe[1]);
+    }
+    execve(program.c_str(), argv.data(), child_env);
+    ChildFail(error_pipe[1]);
+  }
+
+  // In parent.
+  int spawn_errno = pid < 0 ? errno : 0;
+  close(stdin_pipe[0]);
+  if (!redirect_stdout) close(stdout_pipe[1]);
+  if (!redirect_stderr) close(stderr_pipe[1]);
+  close(error_pipe[1]);
+
+  if (pid > 0) {
+    // Wait for the exec to either succeed (EOF on the error pipe) or fail.
+    ssize_t bytes;
+    do {
+      bytes = read(error_pipe[0], &spawn_errno, sizeof(spawn_errno));
+    } while (bytes < 0 && errno == EINTR);
+    if (bytes != sizeof(spawn_errno)) {
+      spawn_errno = 0;
+    } else {
+      // The child has exited already; reap it.
+      int status;
+      while (waitpid(pid, &status, 0) < 0 && errno == EINTR) {
+      }
+    }
+  }
+  close(error_pipe[0]);
+
+  if (spawn_errno != 0) {
+    close(stdin_pipe[1]);
+    if (!redirect_stdout) close(stdout_pipe[0]);
+    if (!redirect_stderr) close(stderr_pipe[0]);
+    PostSystemException(env, spawn_errno, "exec", argv_strings[0].c_str());
+    return -1;
+  }
+
+  jint pipe_fds[3] = {stdin_pipe[1], stdout_pipe[0], stderr_pipe[0]};
+  env->SetIntArrayRegion(java_pipe_fds, 0, 3, pipe_fds);
+  return pid;
+}
+
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativeProcesses
+ * Method:    nativeWaitFor
+ * Signature: (I)I
+ *
+ * Waits for the given process to terminate and returns its exit code, or 128
+ * plus the signal number if it was killed by a signal (like
+ * java.lang.Process does).
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_google_devtools_build_lib_unix_NativeProcesses_nativeWaitFor(
+    JNIEnv *env, jclass clazz, jint pid) {
+  int status;
+  while (waitpid(pid, &status, 0) < 0) {
+    if (errno != EINTR) {
+      PostSystemException(env, errno, "waitpid", "");
+      return -1;
+    }
+  }
+  if (WIFEXITED(status)) {
+    return WEXITSTATUS(status);
+  }
+  return 0x80 + WTERMSIG(status);
+}
+
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativeProcesses
+ * Method:    nativeKill
+ * Signature: (II)Z
+ */
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_google_devtools_build_lib_unix_NativeProcesses_nativeKill(
+    JNIEnv *env, jclass clazz, jint pid, jint signal) {
+  return kill(pid, signal) == 0;
+}
+
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativeProcesses
+ * Method:    nativeRead
+ * Signature: (I[BII)I
+ *
+ * Reads from a pipe of a child process. Returns the number of bytes read, or
+ * 0 at end of stream.
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_google_devtools_build_lib_unix_NativeProcesses_nativeRead(
+    JNIEnv *env, jclass clazz, jint fd, jbyteArray buffer, jint offset,
+    jint length) {
+  std::vector<jbyte> data(length);
+  ssize_t result;
+  do {
+    result = read(fd, data.data(), length);
+  } while (result < 0 && errno == EINTR);
+  if (result < 0) {
+    PostSystemException(env, errno, "read", "");
+    return -1;
+  }
+  env->SetByteArrayRegion(buffer, offset, result, data.data());
+  return result;
+}
+
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativeProcesses
+ * Method:    nativeWrite
+ * Signature: (I[BII)I
+ *
+ * Writes to a pipe of a child process. Returns the number of bytes written.
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_google_devtools_build_lib_unix_NativeProcesses_nativeWrite(
+    JNIEnv *env, jclass clazz, jint fd, jbyteArray buffer, jint offset,
+    jint length) {
+  std::vector<jbyte> data(length);
+  env->GetByteArrayRegion(buffer, offset, length, data.data());
+  ssize_t result;
+  do {
+    result = write(fd, data.data(), length);
+  } while (result < 0 && errno == EINTR);
+  if (result < 0) {
+    PostSystemException(env, errno, "write", "");
+    return -1;
+  }
+  return result;
+}
+
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativeProcesses
+ * Method:    nativeClose
+ * Signature: (I)V
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_google_devtools_build_lib_unix_NativeProcesses_nativeClose(
+    JNIEnv *env, jclass clazz, jint fd) {
+  close(fd);
+}
@@ -292,6 +292,74 @@ Java_com_google_devtools_build_lib_unix_NativePosixFiles_link(JNIEnv *env,
   link_common(env, oldpath, newpath, ::link);
 }
 
+/*
+ * Class:     com.google.devtools.build.lib.unix.NativePosixFiles
+ * Method:    copyFile
+ * Signature: (Ljava/lang/String;Ljava/lang/String;)V
+ *
+ * Replaces newpath with a copy of the contents of oldpath, preferring
+ * copy-on-write clones and in-kernel copies to reading and writing the data.
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_com_google_devtools_build_lib_unix_NativePosixFiles_copyFile(
+    JNIEnv *env, jclass clazz, jstring oldpath, jstring newpath) {
+  const char *oldpath_chars = GetStringLatin1Chars(env, oldpath);
+  const char *newpath_chars = GetStringLatin1Chars(env, newpath);
+  int src_fd = -1;
+  int dst_fd = -1;
+  struct stat statbuf;
+  if ((src_fd = open(oldpath_chars, O_RDONLY)) == -1) {
+    ::PostFileException(env, errno, oldpath_chars);
+  } else if (fstat(src_fd, &statbuf) == -1) {
+    ::PostFileException(env, errno, oldpath_chars);
+  } else if ((dst_fd = open(newpath_chars, O_WRONLY | O_CREAT | O_TRUNC,
+                            statbuf.st_mode & 07777)) == -1) {
+    ::PostFileException(env, errno, newpath_chars);
+  } else if (portable_clone_file(src_fd, dst_fd) == -1) {
+    if (errno != ENOSYS) {
+      ::PostFileException(env, errno, newpath_chars);
+    } else {
+      // Copy through a buffer.
+      char buf[64 * 1024];
+      while (true) {
+        ssize_t r = read(src_fd, buf, sizeof buf);
+        if (r == 0) {
+          break;
+        } else if (r == -1) {
+          if (errno == EINTR) {
+            continue;
+          }
+          ::PostFileException(env, errno, oldpath_chars);
+          break;
+        }
+        ssize_t written = 0;
+        while (written < r) {
+          ssize_t w = write(dst_fd, buf + written, r - written);
+          if (w == -1) {
+            if (errno == EINTR) {
+              continue;
+            }
+            break;
+          }
+          written += w;
+        }
+        if (written < r) {
+          ::PostFileException(env, errno, newpath_chars);
+          break;
+        }
+      }
+    }
+  }
+  if (dst_fd != -1 && close(dst_fd) == -1 && !env->ExceptionOccurred()) {
+    ::PostFileException(env, errno, newpath_chars);
+  }
+  if (src_fd != -1) {
+    close(src_fd);
+  }
+  ReleaseStringLatin1Chars(oldpath_chars);
+  ReleaseStringLatin1Chars(newpath_chars);
+}
+
 extern "C" JNIEXPORT void JNICALL
 Java_com_google_devtools_build_lib_unix_NativePosixFiles_symlink(JNIEnv *env,
                                                     jclass clazz,
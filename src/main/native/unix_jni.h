@@ -61,7 +61,7 @@ extern void PostFileException(JNIEnv *env, int error_number,
 
 // Like PostFileException, but with a different error message.
 extern void PostSystemException(JNIEnv *env, int error_number,
-                                const char *name);
+                                const char *function, const char *name);
 
 // Returns the standard error message for a given UNIX error number.
 extern std::string ErrorMessage(int error_number);
@@ -94,4 +94,11 @@ ssize_t portable_lgetxattr(const char *path, const char *name, void *value,
 // Run sysctlbyname(3), only available on darwin
 int portable_sysctlbyname(const char *name_chars, long *mibp, size_t *sizep);
 
+// Makes the empty file dst_fd a copy of src_fd without moving the data through
+// user space: the data blocks are shared with a reflink (FICLONE) where the
+// file system supports it, or copied in the kernel with copy_file_range(2).
+// Returns 0 on success. Returns -1 and sets errno to ENOSYS if neither is
+// available, in which case nothing has been written to dst_fd.
+int portable_clone_file(int src_fd, int dst_fd);
+
 #endif  // BAZEL_SRC_MAIN_NATIVE_UNIX_JNI_H__
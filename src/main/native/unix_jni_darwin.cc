@@ -116,3 +116,8 @@ ssize_t portable_lgetxattr(const char *path, const char *name, void *value,
 int portable_sysctlbyname(const char *name_chars, long *mibp, size_t *sizep) {
   return sysctlbyname(name_chars, mibp, sizep, NULL, 0);
 }
+
+int portable_clone_file(int src_fd, int dst_fd) {
+  errno = ENOSYS;
+  return -1;
+}
@@ -17,8 +17,12 @@
 #include <errno.h>
 #include <stdlib.h>
 #include <string.h>
+#include <linux/fs.h>
+#include <sys/ioctl.h>
 #include <sys/stat.h>
+#include <sys/syscall.h>
 #include <sys/xattr.h>
+#include <unistd.h>
 
 #include <string>
 
@@ -87,3 +91,38 @@ int portable_sysctlbyname(const char *name_chars, long *mibp, size_t *sizep) {
   errno = ENOSYS;
   return -1;
 }
+
+int portable_clone_file(int src_fd, int dst_fd) {
+#ifdef FICLONE
+  if (ioctl(dst_fd, FICLONE, src_fd) == 0) {
+    return 0;
+  }
+#endif
+#ifdef __NR_copy_file_range
+  // Not all C libraries have a wrapper for copy_file_range(2) yet.
+  bool copied_any = false;
+  while (true) {
+    ssize_t copied = syscall(__NR_copy_file_range, src_fd, NULL, dst_fd, NULL,
+                             1 << 30, 0);
+    if (copied == 0) {
+      return 0;
+    }
+    if (copied < 0) {
+      if (errno == EINTR) {
+        continue;
+      }
+      // Older kernels do not support copying between file systems; let the
+      // caller fall back to read/write as long as nothing has been written.
+      if (!copied_any && (errno == ENOSYS || errno == EXDEV ||
+                          errno == EINVAL || errno == EOPNOTSUPP)) {
+        errno = ENOSYS;
+      }
+      return -1;
+    }
+    copied_any = true;
+  }
+#else
+  errno = ENOSYS;
+  return -1;
+#endif
+}
@@ -21,6 +21,10 @@
 // unless process-wrapper receives a signal. ie, on SIGTERM this program will
 // die with raise(SIGTERM) even if the child process handles SIGTERM with
 // exit(0).
+//
+// If the first argument is of the form --stats=<path>, the resource usage of
+// the child process tree (user and system CPU time and peak resident set
+// size) is written to <path> after the child terminates.
 
 #define _GNU_SOURCE
 
@@ -31,6 +35,7 @@
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
+#include <sys/resource.h>
 #include <sys/types.h>
 #include <sys/stat.h>
 #include <sys/wait.h>
@@ -43,6 +48,7 @@ extern char **environ;
 
 static double global_kill_delay;
 static int global_child_pid;
+static const char *global_stats_path;
 static volatile sig_atomic_t global_signal;
 
 // Options parsing result.
@@ -51,6 +57,7 @@ struct Options {
   double kill_delay_secs;
   const char *stdout_path;
   const char *stderr_path;
+  const char *stats_path;
   char *const *args;
 };
 
@@ -59,8 +66,8 @@ struct Options {
 // string for the error message to print.
 static void Usage(char *const *argv) {
   fprintf(stderr,
-          "Usage: %s <timeout-secs> <kill-delay-secs> <stdout-redirect> "
-          "<stderr-redirect> <command> [args] ...\n",
+          "Usage: %s [--stats=<stats-file>] <timeout-secs> <kill-delay-secs> "
+          "<stdout-redirect> <stderr-redirect> <command> [args] ...\n",
           argv[0]);
   exit(EXIT_FAILURE);
 }
@@ -68,11 +75,19 @@ static void Usage(char *const *argv) {
 // Parse the command line flags and return the result in an Options structure
 // passed as argument.
 static void ParseCommandLine(int argc, char *const *argv, struct Options *opt) {
-  if (argc <= 5) {
-    Usage(argv);
+  char *const *usage_argv = argv;
+  argv++;
+  argc--;
+  if (argc > 0 && strncmp(*argv, "--stats=", 8) == 0) {
+    opt->stats_path = *argv + 8;
+    argv++;
+    argc--;
+  }
+
+  if (argc <= 4) {
+    Usage(usage_argv);
   }
 
-  argv++;
   if (sscanf(*argv++, "%lf", &opt->timeout_secs) != 1) {
     DIE("timeout_secs is not a real number.\n");
   }
@@ -104,6 +119,33 @@ void OnSignal(int sig) {
   }
 }
 
+// Write the accumulated resource usage of all waited-for descendants to
+// global_stats_path, as "<user-usec> <system-usec> <maxrss-kb>\n". Failing to
+// do so is only reported, so that the exit status of the command is still
+// passed on.
+static void WriteStats() {
+  struct rusage usage;
+  FILE *stats;
+
+  if (global_stats_path == NULL) {
+    return;
+  }
+  if (getrusage(RUSAGE_CHILDREN, &usage) < 0) {
+    warn("getrusage");
+    return;
+  }
+  stats = fopen(global_stats_path, "w");
+  if (stats == NULL) {
+    warn("fopen(\"%s\")", global_stats_path);
+    return;
+  }
+  fprintf(stats, "%lld %lld %ld\n",
+          (long long)usage.ru_utime.tv_sec * 1000000 + usage.ru_utime.tv_usec,
+          (long long)usage.ru_stime.tv_sec * 1000000 + usage.ru_stime.tv_usec,
+          (long)usage.ru_maxrss);
+  fclose(stats);
+}
+
 // Run the command specified by the argv array and kill it after timeout
 // seconds.
 static void SpawnCommand(char *const *argv, double timeout_secs) {
@@ -135,6 +177,7 @@ static void SpawnCommand(char *const *argv, double timeout_secs) {
     // The child is done for, but may have grandchildren that we still have to
     // kill.
     kill(-global_child_pid, SIGKILL);
+    WriteStats();
 
     if (global_signal > 0) {
       // Don't trust the exit code if we got a timeout or signal.
@@ -156,6 +199,7 @@ int main(int argc, char *argv[]) {
 
   ParseCommandLine(argc, argv, &opt);
   global_kill_delay = opt.kill_delay_secs;
+  global_stats_path = opt.stats_path;
 
   SwitchToEuid();
   SwitchToEgid();
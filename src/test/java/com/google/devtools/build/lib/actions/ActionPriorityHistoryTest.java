@@ -0,0 +1,157 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.actions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.actions.util.TestAction.DummyAction;
+import com.google.devtools.build.lib.util.BlazeClock;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ActionPriorityHistory}. */
+@RunWith(JUnit4.class)
+public class ActionPriorityHistoryTest {
+
+  private Path execRoot;
+  private Root root;
+  private final ActionPriorityHistory history = new ActionPriorityHistory();
+
+  @Before
+  public final void createRoot() throws Exception {
+    execRoot = new InMemoryFileSystem().getPath("/exec");
+    execRoot.createDirectory();
+    root = Root.asDerivedRoot(execRoot, execRoot.getRelative("out"));
+  }
+
+  private Artifact artifact(String name) {
+    return new Artifact(execRoot.getRelative("out/" + name), root);
+  }
+
+  private Action run(long millis, Artifact output, Artifact... inputs) {
+    Action action = new DummyAction(ImmutableList.copyOf(inputs), output);
+    history.actionCached(new CachedActionEvent(
+        action, BlazeClock.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis)));
+    return action;
+  }
+
+  @Test
+  public void testUnknownActionHasZeroPriority() {
+    assertThat(history.getPriority(new DummyAction(ImmutableList.<Artifact>of(), artifact("a"))))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void testPriorityIsLongestDownstreamPath() {
+    Artifact a = artifact("a");
+    Artifact b = artifact("b");
+    Artifact c = artifact("c");
+    Artifact d = artifact("d");
+    // a -> b -> d and c -> d, where b is slow.
+    Action actionA = run(100, a);
+    Action actionC = run(10, c);
+    Action actionB = run(1000, b, a);
+    Action actionD = run(10, d, b, c);
+    history.computePriorities();
+
+    long priorityA = history.getPriority(actionA);
+    long priorityB = history.getPriority(actionB);
+    long priorityC = history.getPriority(actionC);
+    long priorityD = history.getPriority(actionD);
+    assertThat(priorityA).isAtLeast(1110L);
+    assertThat(priorityA).isGreaterThan(priorityB);
+    assertThat(priorityB).isGreaterThan(priorityC);
+    assertThat(priorityC).isGreaterThan(priorityD);
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    Artifact a = artifact("a");
+    Artifact b = artifact("b");
+    Action actionA = run(100, a);
+    run(100, b, a);
+    Path file = execRoot.getRelative("action_priorities");
+    history.save(file);
+
+    ActionPriorityHistory loaded = new ActionPriorityHistory();
+    loaded.load(file);
+    assertThat(loaded.getPriority(actionA)).isEqualTo(history.getPriority(actionA));
+    assertThat(loaded.getPriority(actionA)).isAtLeast(200L);
+  }
+
+  @Test
+  public void testStartBuildForgetsGraphButKeepsPriorities() {
+    Artifact a = artifact("a");
+    Action actionA = run(100, a);
+    history.computePriorities();
+    long priority = history.getPriority(actionA);
+
+    history.startBuild();
+    history.computePriorities();
+    assertThat(history.getPriority(actionA)).isEqualTo(priority);
+  }
+
+  @Test
+  public void testShorterPathOnlyLowersPriorityGradually() {
+    Artifact a = artifact("a");
+    Artifact b = artifact("b");
+    Action actionA = run(100, a);
+    run(1000, b, a);
+    history.computePriorities();
+    long priority = history.getPriority(actionA);
+
+    // An incremental build that does not re-evaluate the consumer of a.
+    history.startBuild();
+    run(100, a);
+    history.computePriorities();
+    assertThat(history.getPriority(actionA)).isLessThan(priority);
+    assertThat(history.getPriority(actionA)).isAtLeast(priority / 2);
+  }
+
+  @Test
+  public void testLongerPathRaisesPriority() {
+    Artifact a = artifact("a");
+    Artifact b = artifact("b");
+    Action actionA = run(100, a);
+    history.computePriorities();
+
+    history.startBuild();
+    run(100, a);
+    run(1000, b, a);
+    history.computePriorities();
+    assertThat(history.getPriority(actionA)).isAtLeast(1100L);
+  }
+
+  @Test
+  public void testKeepsHighestPrioritiesOnly() {
+    ActionPriorityHistory bounded = new ActionPriorityHistory(2);
+    Action[] actions = new Action[4];
+    for (int i = 0; i < actions.length; i++) {
+      actions[i] = new DummyAction(ImmutableList.<Artifact>of(), artifact("out" + i));
+      bounded.actionCached(new CachedActionEvent(
+          actions[i], BlazeClock.nanoTime() - TimeUnit.MILLISECONDS.toNanos(100 * (i + 1))));
+    }
+    bounded.computePriorities();
+    assertThat(bounded.getPriority(actions[0])).isEqualTo(0);
+    assertThat(bounded.getPriority(actions[1])).isEqualTo(0);
+    assertThat(bounded.getPriority(actions[2])).isAtLeast(300L);
+    assertThat(bounded.getPriority(actions[3])).isAtLeast(400L);
+  }
+}
@@ -20,11 +20,19 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.EventBus;
 import com.google.devtools.build.lib.actions.ResourceManager.ResourceHandle;
+import com.google.devtools.build.lib.actions.util.TestAction.DummyAction;
 import com.google.devtools.build.lib.testutil.TestThread;
 import com.google.devtools.build.lib.testutil.TestUtils;
+import com.google.devtools.build.lib.util.BlazeClock;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -468,6 +476,65 @@ public class ResourceManagerTest {
     assertFalse(rm.inUse());
   }
 
+  @Test
+  public void testWaitingRequestsAreServedByPriority() throws Exception {
+    Path execRoot = new InMemoryFileSystem().getPath("/exec");
+    execRoot.createDirectory();
+    Root root = Root.asDerivedRoot(execRoot, execRoot.getRelative("out"));
+    Artifact first = new Artifact(execRoot.getRelative("out/first"), root);
+    Artifact second = new Artifact(execRoot.getRelative("out/second"), root);
+    // The action producing first is on a longer path than the one consuming it.
+    final Action firstAction = new DummyAction(ImmutableList.<Artifact>of(), first);
+    final Action secondAction = new DummyAction(ImmutableList.of(first), second);
+    ActionPriorityHistory history = new ActionPriorityHistory();
+    history.actionCached(new CachedActionEvent(
+        firstAction, BlazeClock.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1000)));
+    history.actionCached(new CachedActionEvent(
+        secondAction, BlazeClock.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10)));
+    history.computePriorities();
+    assertThat(history.getPriority(firstAction)).isGreaterThan(history.getPriority(secondAction));
+    rm.setPriorityHistory(history);
+
+    final List<Action> order = Collections.synchronizedList(new ArrayList<Action>());
+    class AcquiringThread extends TestThread {
+      private final Action action;
+
+      AcquiringThread(Action action) {
+        this.action = action;
+      }
+
+      @Override
+      public void runTest() throws Exception {
+        ResourceSet cpu = ResourceSet.create(0, 1.0, 0, 0);
+        rm.acquireResources(action, cpu);
+        order.add(action);
+        rm.releaseResources(action, cpu);
+      }
+    }
+
+    Action holder = new DummyAction(
+        ImmutableList.<Artifact>of(), new Artifact(execRoot.getRelative("out/holder"), root));
+    ResourceSet cpu = ResourceSet.create(0, 1.0, 0, 0);
+    rm.acquireResources(holder, cpu);
+    // The low priority request arrives first.
+    TestThread secondThread = new AcquiringThread(secondAction);
+    secondThread.start();
+    while (rm.getWaitCount() < 1) {
+      Thread.yield();
+    }
+    TestThread firstThread = new AcquiringThread(firstAction);
+    firstThread.start();
+    while (rm.getWaitCount() < 2) {
+      Thread.yield();
+    }
+
+    rm.releaseResources(holder, cpu);
+    firstThread.joinAndAssertState(TestUtils.WAIT_TIMEOUT_MILLISECONDS);
+    secondThread.joinAndAssertState(TestUtils.WAIT_TIMEOUT_MILLISECONDS);
+    assertThat(order).containsExactly(firstAction, secondAction).inOrder();
+    assertFalse(rm.inUse());
+  }
+
   private static class ResourceOwnerStub implements ActionExecutionMetadata {
 
     @Override
@@ -0,0 +1,97 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.actions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.build.lib.actions.util.ActionsTestUtil.NullAction;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ResourceUsageEstimator}. */
+@RunWith(JUnit4.class)
+public class ResourceUsageEstimatorTest {
+
+  private static final ResourceSet STATIC_ESTIMATE = ResourceSet.create(250, 1.0, 0.5, 0);
+
+  private final ActionExecutionMetadata action = new NullAction();
+  private final ResourceUsageEstimator estimator = new ResourceUsageEstimator();
+
+  @Test
+  public void testStaticEstimateUsedWithoutMeasurements() {
+    assertThat(estimator.adjust(action, STATIC_ESTIMATE)).isSameAs(STATIC_ESTIMATE);
+  }
+
+  @Test
+  public void testMeasurementReplacesCpuAndRam() {
+    estimator.recordUsage(action, /*cpuTimeMillis=*/4000, /*wallTimeMillis=*/1000, 2000.0);
+
+    ResourceSet adjusted = estimator.adjust(action, STATIC_ESTIMATE);
+    assertThat(adjusted.getCpuUsage()).isWithin(0.001).of(4.0);
+    assertThat(adjusted.getMemoryMb()).isWithin(0.001).of(2000.0);
+    assertThat(adjusted.getIoUsage()).isWithin(0.001).of(0.5);
+  }
+
+  @Test
+  public void testCpuIsSmoothedAndMemoryIsPessimistic() {
+    estimator.recordUsage(action, 1000, 1000, 1000.0);
+    estimator.recordUsage(action, 3000, 1000, 100.0);
+
+    ResourceSet adjusted = estimator.adjust(action, STATIC_ESTIMATE);
+    assertThat(adjusted.getCpuUsage()).isGreaterThan(1.0);
+    assertThat(adjusted.getCpuUsage()).isLessThan(3.0);
+    assertThat(adjusted.getMemoryMb()).isGreaterThan(100.0);
+  }
+
+  @Test
+  public void testIdleActionsStillRequestSomeCpu() {
+    estimator.recordUsage(action, 0, 1000, 10.0);
+
+    assertThat(estimator.adjust(action, STATIC_ESTIMATE).getCpuUsage()).isGreaterThan(0.0);
+  }
+
+  @Test
+  public void testZeroAndTestEstimatesAreNotAdjusted() {
+    estimator.recordUsage(action, 4000, 1000, 2000.0);
+
+    ResourceSet test = ResourceSet.create(250, 1.0, 0.5, 1);
+    assertThat(estimator.adjust(action, ResourceSet.ZERO)).isSameAs(ResourceSet.ZERO);
+    assertThat(estimator.adjust(action, test)).isSameAs(test);
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    Path file = new InMemoryFileSystem().getPath("/output_base/resource_estimates");
+    file.getParentDirectory().createDirectory();
+    estimator.recordUsage(action, 2000, 1000, 300.0);
+    estimator.save(file);
+
+    ResourceUsageEstimator loaded = new ResourceUsageEstimator();
+    loaded.load(file);
+    ResourceSet adjusted = loaded.adjust(action, STATIC_ESTIMATE);
+    assertThat(adjusted.getCpuUsage()).isWithin(0.001).of(2.0);
+    assertThat(adjusted.getMemoryMb()).isWithin(0.001).of(300.0);
+    assertThat(loaded.getEstimate(action.getMnemonic()).samples).isEqualTo(1);
+  }
+
+  @Test
+  public void testLoadMissingFile() throws Exception {
+    estimator.load(new InMemoryFileSystem().getPath("/nonexistent"));
+
+    assertThat(estimator.adjust(action, STATIC_ESTIMATE)).isSameAs(STATIC_ESTIMATE);
+  }
+}
@@ -26,8 +26,12 @@ import com.google.devtools.build.lib.events.EventKind;
 import com.google.devtools.build.lib.testutil.FoundationTestCase;
 import com.google.devtools.build.lib.vfs.PathFragment;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
@@ -386,4 +390,77 @@ public class RunfilesTest extends FoundationTestCase {
         Maps.immutableEntry(new PathFragment("repo/b"), artifactExternalB));
     checkConflictWarning();
   }
+
+  private static List<Map.Entry<PathFragment, Artifact>> sortedEntries(
+      Map<PathFragment, Artifact> manifest) {
+    List<Map.Entry<PathFragment, Artifact>> entries = new ArrayList<>(manifest.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<PathFragment, Artifact>>() {
+      @Override
+      public int compare(Map.Entry<PathFragment, Artifact> entry1,
+          Map.Entry<PathFragment, Artifact> entry2) {
+        return entry1.getKey().compareTo(entry2.getKey());
+      }
+    });
+    return entries;
+  }
+
+  @Test
+  public void testSortedRunfilesInputsOfArtifacts() throws Exception {
+    Root root = Root.asSourceRoot(scratch.resolve("/workspace"));
+    for (boolean legacyExternalRunfiles : new boolean[] {false, true}) {
+      Runfiles runfiles = new Runfiles.Builder("wsname", legacyExternalRunfiles)
+          .addArtifact(new Artifact(new PathFragment("pkg/b"), root))
+          .addArtifact(new Artifact(new PathFragment("external/repo/a"), root))
+          .addArtifact(new Artifact(new PathFragment("pkg/a"), root))
+          .addArtifact(new Artifact(new PathFragment("pkg/a"), root))
+          .addArtifact(new Artifact(new PathFragment("pkg.txt"), root))
+          .build()
+          .setConflictPolicy(Runfiles.ConflictPolicy.WARN);
+
+      assertThat(runfiles.getSortedRunfilesInputs(reporter, null))
+          .containsExactlyElementsIn(sortedEntries(runfiles.getRunfilesInputs(reporter, null)))
+          .inOrder();
+    }
+    assertNoEvents();
+  }
+
+  @Test
+  public void testSortedRunfilesInputsOfExternalArtifactsOnly() throws Exception {
+    Root root = Root.asSourceRoot(scratch.resolve("/workspace"));
+    Artifact artifact = new Artifact(new PathFragment("external/repo/b"), root);
+    Runfiles runfiles = new Runfiles.Builder("wsname").addArtifact(artifact).build();
+
+    assertThat(runfiles.getSortedRunfilesInputs(reporter, null)).containsExactly(
+        Maps.immutableEntry(new PathFragment("repo/b"), artifact),
+        Maps.immutableEntry(new PathFragment("wsname/.runfile"), null)).inOrder();
+  }
+
+  @Test
+  public void testSortedRunfilesInputsReportConflicts() throws Exception {
+    Root root = Root.asSourceRoot(scratch.resolve("/workspace"));
+    Artifact artifactB = new Artifact(new PathFragment("repo/b"), root);
+    Artifact artifactExternalB = new Artifact(new PathFragment("external/repo/b"), root);
+    Runfiles runfiles = new Runfiles.Builder("")
+        .addArtifact(artifactB)
+        .addArtifact(artifactExternalB)
+        .build()
+        .setConflictPolicy(Runfiles.ConflictPolicy.WARN);
+
+    assertThat(runfiles.getSortedRunfilesInputs(reporter, null)).containsExactly(
+        Maps.immutableEntry(new PathFragment("repo/b"), artifactExternalB));
+    checkConflictWarning();
+  }
+
+  @Test
+  public void testSortedRunfilesInputsReportObscuredArtifacts() throws Exception {
+    Root root = Root.asSourceRoot(scratch.resolve("/workspace"));
+    Artifact artifactA = new Artifact(new PathFragment("a"), root);
+    Runfiles runfiles = new Runfiles.Builder("wsname")
+        .addArtifact(artifactA)
+        .addArtifact(new Artifact(new PathFragment("a/b"), root))
+        .build();
+
+    assertThat(runfiles.getSortedRunfilesInputs(reporter, null)).containsExactly(
+        Maps.immutableEntry(new PathFragment("wsname/a"), artifactA));
+  }
 }
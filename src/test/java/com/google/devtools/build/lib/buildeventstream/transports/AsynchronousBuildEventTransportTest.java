@@ -0,0 +1,223 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.buildeventstream.transports;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.buildeventstream.BuildEvent;
+import com.google.devtools.build.lib.buildeventstream.BuildEventId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
+import com.google.devtools.build.lib.buildeventstream.BuildEventTransport;
+import com.google.devtools.build.lib.buildeventstream.GenericBuildEvent;
+import com.google.devtools.build.lib.testutil.TestUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link AsynchronousBuildEventTransport} and {@link BinaryFormatFileTransport}. */
+@RunWith(JUnit4.class)
+public class AsynchronousBuildEventTransportTest {
+
+  private static class RecordingTransport implements BuildEventTransport, Flushable {
+    final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    volatile int flushes;
+    volatile boolean closed;
+
+    @Override
+    public void sendBuildEvent(BuildEvent event) throws IOException {
+      events.add(event.getEventId().asStreamProto().getUnknown().getDetails());
+    }
+
+    @Override
+    public void flush() {
+      flushes++;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private static BuildEvent event(String name) {
+    return new GenericBuildEvent(
+        BuildEventId.unknownBuildEventId(name), ImmutableSet.<BuildEventId>of());
+  }
+
+  @Test
+  public void testEventsArePassedOnInOrder() throws Exception {
+    RecordingTransport delegate = new RecordingTransport();
+    AsynchronousBuildEventTransport transport = new AsynchronousBuildEventTransport(delegate);
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      transport.sendBuildEvent(event("event" + i));
+      expected.add("event" + i);
+    }
+    transport.close();
+
+    assertThat(delegate.events).containsExactlyElementsIn(expected).inOrder();
+    assertThat(delegate.flushes).isAtLeast(1);
+    assertThat(delegate.closed).isTrue();
+    assertThat(transport.getDroppedEvents()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSendersBlockOnFullQueue() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    RecordingTransport delegate = new RecordingTransport() {
+      @Override
+      public void sendBuildEvent(BuildEvent event) throws IOException {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        super.sendBuildEvent(event);
+      }
+    };
+    final AsynchronousBuildEventTransport transport =
+        new AsynchronousBuildEventTransport(delegate, 2, 60000);
+    Thread sender = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 10; i++) {
+          transport.sendBuildEvent(event("event" + i));
+        }
+      }
+    };
+    sender.start();
+    while (sender.getState() != Thread.State.WAITING) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(10);
+    release.countDown();
+    sender.join();
+    transport.close();
+
+    assertThat(delegate.events).hasSize(10);
+    assertThat(transport.getMaxQueueDepth()).isEqualTo(2);
+    assertThat(transport.getBlockedNanos()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void testEventsSentConcurrentlyWithCloseAreDeliveredOrDropped() throws Exception {
+    RecordingTransport delegate = new RecordingTransport();
+    final AsynchronousBuildEventTransport transport = new AsynchronousBuildEventTransport(delegate);
+    final AtomicInteger sent = new AtomicInteger();
+    List<Thread> senders = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread sender = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; j++) {
+            transport.sendBuildEvent(event("event"));
+            sent.incrementAndGet();
+          }
+        }
+      };
+      sender.start();
+      senders.add(sender);
+    }
+    transport.close();
+    for (Thread sender : senders) {
+      sender.join();
+    }
+    transport.sendBuildEvent(event("late"));
+
+    assertThat(delegate.events.size() + transport.getDroppedEvents())
+        .isEqualTo(sent.get() + 1);
+  }
+
+  private static boolean isWriterRunning() {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("build-event-transport-") && thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void testWriterExitsWhenIdle() throws Exception {
+    RecordingTransport delegate = new RecordingTransport();
+    AsynchronousBuildEventTransport transport =
+        new AsynchronousBuildEventTransport(delegate, 10, 10);
+    transport.sendBuildEvent(event("first"));
+    for (int i = 0; i < 500 && isWriterRunning(); i++) {
+      Thread.sleep(10);
+    }
+    assertThat(isWriterRunning()).isFalse();
+
+    transport.sendBuildEvent(event("second"));
+    transport.close();
+    assertThat(delegate.events).containsExactly("first", "second").inOrder();
+  }
+
+  @Test
+  public void testFailureIsReportedOnClose() throws Exception {
+    RecordingTransport delegate = new RecordingTransport() {
+      @Override
+      public void sendBuildEvent(BuildEvent event) throws IOException {
+        if (events.size() == 2) {
+          throw new IOException("disk full");
+        }
+        super.sendBuildEvent(event);
+      }
+    };
+    AsynchronousBuildEventTransport transport = new AsynchronousBuildEventTransport(delegate);
+    for (int i = 0; i < 5; i++) {
+      transport.sendBuildEvent(event("event" + i));
+    }
+    try {
+      transport.close();
+      fail();
+    } catch (IOException expected) {
+      assertThat(expected).hasMessage("disk full");
+    }
+    assertThat(delegate.events).containsExactly("event0", "event1").inOrder();
+    assertThat(delegate.closed).isTrue();
+    assertThat(transport.getDroppedEvents()).isEqualTo(3);
+  }
+
+  @Test
+  public void testBinaryFormatFileTransport() throws Exception {
+    File file = new File(TestUtils.makeTempDir(), "events.bin");
+    AsynchronousBuildEventTransport transport = new AsynchronousBuildEventTransport(
+        new BinaryFormatFileTransport(file.getPath()));
+    for (int i = 0; i < 100; i++) {
+      transport.sendBuildEvent(event("event" + i));
+    }
+    transport.close();
+
+    try (InputStream in = new FileInputStream(file)) {
+      for (int i = 0; i < 100; i++) {
+        assertThat(BuildEventStreamProtos.BuildEvent.parseDelimitedFrom(in))
+            .isEqualTo(event("event" + i).asStreamProto());
+      }
+      assertThat(BuildEventStreamProtos.BuildEvent.parseDelimitedFrom(in)).isNull();
+    }
+  }
+}
@@ -0,0 +1,201 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.buildeventstream.transports;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.buildeventstream.BuildEvent;
+import com.google.devtools.build.lib.buildeventstream.BuildEventId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventServiceGrpc.BuildEventServiceImplBase;
+import com.google.devtools.build.lib.buildeventstream.BuildEventServiceProtos.PublishBuildEventsRequest;
+import com.google.devtools.build.lib.buildeventstream.BuildEventServiceProtos.PublishBuildEventsResponse;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
+import com.google.devtools.build.lib.buildeventstream.GenericBuildEvent;
+import com.google.devtools.build.lib.testutil.TestUtils;
+import com.google.protobuf.ByteString;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link GrpcBuildEventTransport}. */
+@RunWith(JUnit4.class)
+public class GrpcBuildEventTransportTest {
+
+  /**
+   * A build event service that stores the events in memory, after failing a given number of
+   * calls.
+   */
+  private static class FakeBuildEventService extends BuildEventServiceImplBase {
+    final List<String> events = new ArrayList<>();
+    int failuresLeft;
+    Status failure = Status.UNAVAILABLE;
+    int calls;
+
+    @Override
+    public synchronized void publishBuildEvents(
+        PublishBuildEventsRequest request,
+        StreamObserver<PublishBuildEventsResponse> responseObserver) {
+      calls++;
+      if (failuresLeft > 0) {
+        failuresLeft--;
+        responseObserver.onError(failure.asRuntimeException());
+        return;
+      }
+      assertThat(request.getInvocationId()).isEqualTo("invocation");
+      // Accept retransmitted events, but not gaps.
+      assertThat(request.getFirstSequenceNumber()).isAtMost((long) events.size());
+      long sequenceNumber = request.getFirstSequenceNumber();
+      for (ByteString event : request.getEventsList()) {
+        if (sequenceNumber++ == events.size()) {
+          events.add(details(event));
+        }
+      }
+      responseObserver.onNext(
+          PublishBuildEventsResponse.newBuilder().setStoredEventCount(events.size()).build());
+      responseObserver.onCompleted();
+    }
+  }
+
+  private final FakeBuildEventService service = new FakeBuildEventService();
+  private Server server;
+  private File spoolFile;
+
+  @Before
+  public final void setUp() throws Exception {
+    server = InProcessServerBuilder.forName(getClass().getSimpleName())
+        .directExecutor()
+        .addService(service)
+        .build()
+        .start();
+    spoolFile = new File(TestUtils.makeTempDir(), "events.bin");
+  }
+
+  @After
+  public final void tearDown() {
+    server.shutdownNow();
+  }
+
+  private GrpcBuildEventTransport createTransport(long uploadTimeoutMillis) throws IOException {
+    return new GrpcBuildEventTransport(
+        InProcessChannelBuilder.forName(getClass().getSimpleName()).directExecutor().build(),
+        "invocation", spoolFile, uploadTimeoutMillis, 1);
+  }
+
+  private static BuildEvent event(String name) {
+    return new GenericBuildEvent(
+        BuildEventId.unknownBuildEventId(name), ImmutableSet.<BuildEventId>of());
+  }
+
+  private static String details(ByteString event) {
+    try {
+      return BuildEventStreamProtos.BuildEvent.parseFrom(event).getId().getUnknown().getDetails();
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private List<String> sendEvents(GrpcBuildEventTransport transport, int count)
+      throws IOException {
+    List<String> sent = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      transport.sendBuildEvent(event("event" + i));
+      sent.add("event" + i);
+      if (i % 70 == 0) {
+        transport.flush();
+      }
+    }
+    return sent;
+  }
+
+  @Test
+  public void testUploadsEventsInOrder() throws Exception {
+    GrpcBuildEventTransport transport = createTransport(60000);
+    List<String> sent = sendEvents(transport, 250);
+    transport.close();
+    transport.awaitUpload();
+
+    assertThat(service.events).containsExactlyElementsIn(sent).inOrder();
+    assertThat(transport.getUploadedEvents()).isEqualTo(250);
+    assertThat(spoolFile.exists()).isFalse();
+  }
+
+  @Test
+  public void testRetriesFailedUploads() throws Exception {
+    service.failuresLeft = 5;
+    GrpcBuildEventTransport transport = createTransport(60000);
+    List<String> sent = sendEvents(transport, 250);
+    transport.close();
+    transport.awaitUpload();
+
+    assertThat(service.events).containsExactlyElementsIn(sent).inOrder();
+    assertThat(service.calls).isAtLeast(8);
+    assertThat(spoolFile.exists()).isFalse();
+  }
+
+  @Test
+  public void testDeletesEventsThatCouldNotBeUploaded() throws Exception {
+    server.shutdownNow();
+    GrpcBuildEventTransport transport = createTransport(100);
+    sendEvents(transport, 10);
+    transport.close();
+    transport.awaitUpload();
+
+    assertThat(transport.getUploadedEvents()).isEqualTo(0);
+    assertThat(spoolFile.exists()).isFalse();
+  }
+
+  @Test
+  public void testDoesNotRetryPermanentFailures() throws Exception {
+    service.failuresLeft = 1;
+    service.failure = Status.PERMISSION_DENIED;
+    GrpcBuildEventTransport transport = createTransport(60000);
+    sendEvents(transport, 10);
+    transport.flush();
+    transport.awaitUpload();
+    // Later events are discarded.
+    transport.sendBuildEvent(event("late"));
+    transport.close();
+
+    assertThat(service.calls).isEqualTo(1);
+    assertThat(service.events).isEmpty();
+    assertThat(spoolFile.exists()).isFalse();
+  }
+
+  @Test
+  public void testSendAfterCloseFails() throws Exception {
+    GrpcBuildEventTransport transport = createTransport(60000);
+    transport.close();
+    try {
+      transport.sendBuildEvent(event("late"));
+      fail();
+    } catch (IOException expected) {
+      assertThat(expected).hasMessage("Build event transport is already closed");
+    }
+    transport.awaitUpload();
+    assertThat(service.calls).isEqualTo(0);
+  }
+}
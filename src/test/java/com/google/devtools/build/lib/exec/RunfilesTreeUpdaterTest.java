@@ -0,0 +1,206 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.exec;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.testutil.TestThread;
+import com.google.devtools.build.lib.testutil.TestUtils;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import com.google.devtools.build.lib.vfs.inmemoryfs.InMemoryFileSystem;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link RunfilesTreeUpdater}. */
+@RunWith(JUnit4.class)
+public class RunfilesTreeUpdaterTest {
+
+  /**
+   * Counts the symbolic links created. Creating {@link #blockedLink} waits for {@link #release},
+   * and the link to {@link #failingLink} is only attempted once {@link #blockedLink} is.
+   */
+  private static final class CountingFileSystem extends InMemoryFileSystem {
+    final AtomicInteger links = new AtomicInteger();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    volatile String blockedLink;
+    volatile String failingLink;
+
+    @Override
+    protected void createSymbolicLink(Path path, PathFragment targetFragment)
+        throws IOException {
+      if (blockedLink != null && path.getPathString().endsWith("/" + blockedLink)) {
+        blocked.countDown();
+        Uninterruptibles.awaitUninterruptibly(release);
+      } else if (failingLink != null && path.getPathString().endsWith("/" + failingLink)) {
+        Uninterruptibles.awaitUninterruptibly(blocked, 10, TimeUnit.SECONDS);
+      }
+      super.createSymbolicLink(path, targetFragment);
+      links.incrementAndGet();
+    }
+  }
+
+  private final CountingFileSystem fileSystem = new CountingFileSystem();
+  private final Scratch scratch = new Scratch(fileSystem);
+  private Path inputManifest;
+  private Path treeRoot;
+
+  @Before
+  public final void createPaths() throws Exception {
+    inputManifest = scratch.resolve("/out/bin/test.runfiles_manifest");
+    treeRoot = scratch.dir("/out/bin/test.runfiles");
+  }
+
+  /** Simulates a run of build-runfiles with the given manifest lines. */
+  private void buildTree(String... lines) throws Exception {
+    for (String line : lines) {
+      String[] parts = line.split(" ", -1);
+      Path link = treeRoot.getRelative(parts[0]);
+      FileSystemUtils.createDirectoryAndParents(link.getParentDirectory());
+      if (parts[1].isEmpty()) {
+        FileSystemUtils.createEmptyFile(link);
+      } else {
+        link.createSymbolicLink(new PathFragment(parts[1]));
+      }
+    }
+    scratch.overwriteFile(treeRoot.getChild("MANIFEST").getPathString(), lines);
+  }
+
+  private boolean update(int parallelThreshold, String... lines) throws Exception {
+    scratch.overwriteFile(inputManifest.getPathString(), lines);
+    return RunfilesTreeUpdater.update(inputManifest, treeRoot, parallelThreshold);
+  }
+
+  private PathFragment target(String link) throws Exception {
+    return treeRoot.getRelative(link).readSymbolicLink();
+  }
+
+  @Test
+  public void testAppliesDifferenceBetweenManifests() throws Exception {
+    buildTree(
+        "ws/pkg/a /src/pkg/a",
+        "ws/pkg/b /src/pkg/b",
+        "ws/old/c /src/old/c",
+        "ws/pkg/__init__.py ");
+    assertThat(update(1000,
+        "ws/pkg/a /src/pkg/a",
+        "ws/pkg/b /gen/pkg/b",
+        "ws/new/d/e /src/new/d/e",
+        "ws/pkg/__init__.py ")).isTrue();
+
+    assertThat(target("ws/pkg/a")).isEqualTo(new PathFragment("/src/pkg/a"));
+    assertThat(target("ws/pkg/b")).isEqualTo(new PathFragment("/gen/pkg/b"));
+    assertThat(target("ws/new/d/e")).isEqualTo(new PathFragment("/src/new/d/e"));
+    assertThat(treeRoot.getRelative("ws/pkg/__init__.py").isFile()).isTrue();
+    assertThat(treeRoot.getRelative("ws/old").exists()).isFalse();
+    assertThat(FileSystemUtils.readContent(treeRoot.getChild("MANIFEST")))
+        .isEqualTo(FileSystemUtils.readContent(inputManifest));
+    assertThat(treeRoot.getChild("MANIFEST.tmp").exists()).isFalse();
+  }
+
+  @Test
+  public void testLinkReplacedByDirectory() throws Exception {
+    buildTree("ws/a /src/a");
+    assertThat(update(1000, "ws/a/b /src/a/b")).isTrue();
+    assertThat(target("ws/a/b")).isEqualTo(new PathFragment("/src/a/b"));
+
+    assertThat(update(1000, "ws/a /src/a")).isTrue();
+    assertThat(target("ws/a")).isEqualTo(new PathFragment("/src/a"));
+  }
+
+  @Test
+  public void testParallelUpdate() throws Exception {
+    List<String> oldLines = new ArrayList<>();
+    List<String> newLines = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      oldLines.add("ws/dir" + (i % 7) + "/file" + i + " /src/file" + i);
+      newLines.add("ws/dir" + (i % 5) + "/file" + i + " /gen/file" + i);
+    }
+    buildTree(oldLines.toArray(new String[0]));
+    assertThat(update(10, newLines.toArray(new String[0]))).isTrue();
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(target("ws/dir" + (i % 5) + "/file" + i))
+          .isEqualTo(new PathFragment("/gen/file" + i));
+    }
+    assertThat(treeRoot.getRelative("ws/dir6").exists()).isFalse();
+  }
+
+  @Test
+  public void testFailedParallelUpdateStopsBeforeReturning() throws Exception {
+    buildTree("ws/a /src/a");
+    // Something that is not in the manifest is in the way of the first new link.
+    scratch.file(treeRoot.getRelative("ws/b").getPathString());
+    final List<String> newLines = new ArrayList<>();
+    newLines.add("ws/b /src/b");
+    for (int i = 0; i < 1000; i++) {
+      newLines.add("ws/dir/file" + i + " /src/file" + i);
+    }
+    fileSystem.failingLink = "ws/b";
+    fileSystem.blockedLink = "ws/dir/file999";
+    final AtomicBoolean result = new AtomicBoolean(true);
+    TestThread updater = new TestThread() {
+      @Override
+      public void runTest() throws Exception {
+        result.set(update(10, newLines.toArray(new String[0])));
+      }
+    };
+    updater.start();
+
+    assertThat(fileSystem.blocked.await(10, TimeUnit.SECONDS)).isTrue();
+    // The other chunk fails now, but the blocked one is still creating its link.
+    updater.join(100);
+    assertThat(updater.isAlive()).isTrue();
+
+    fileSystem.release.countDown();
+    updater.joinAndAssertState(TestUtils.WAIT_TIMEOUT_MILLISECONDS);
+    assertThat(result.get()).isFalse();
+    assertThat(fileSystem.links.get()).isLessThan(1000);
+  }
+
+  @Test
+  public void testMissingManifestRequiresFullBuild() throws Exception {
+    assertThat(update(1000, "ws/a /src/a")).isFalse();
+    assertThat(treeRoot.getRelative("ws").exists()).isFalse();
+  }
+
+  @Test
+  public void testMalformedManifestRequiresFullBuild() throws Exception {
+    buildTree("ws/a /src/a");
+    assertThat(update(1000, "ws/b relative/b")).isFalse();
+    assertThat(target("ws/a")).isEqualTo(new PathFragment("/src/a"));
+  }
+
+  @Test
+  public void testFailedUpdateRequiresFullBuild() throws Exception {
+    buildTree("ws/a /src/a");
+    // Something that is not in the manifest is in the way of the new link.
+    scratch.file(treeRoot.getRelative("ws/b").getPathString());
+    assertThat(update(1000, "ws/a /src/a", "ws/b /src/b")).isFalse();
+    assertThat(treeRoot.getChild("MANIFEST").exists()).isFalse();
+  }
+}
@@ -90,6 +90,25 @@ public class PackageFactoryTest extends PackageFactoryTestBase {
     assertTrue(parser.hasParsed());
   }
 
+  @Test
+  public void testEqualAttributeValuesAreShared() throws Exception {
+    Path buildFile = scratch.file("/shared/BUILD",
+        "[cc_library(name = n, deps = [':x', ':y'], visibility = ['//foo:__pkg__'])",
+        " for n in ['a', 'b']]",
+        "cc_library(name = 'c', deps = [':x'], visibility = ['//foo:__pkg__'])");
+    Package pkg = packages.createPackage("shared", buildFile);
+    Rule a = pkg.getRule("a");
+    Rule b = pkg.getRule("b");
+    Rule c = pkg.getRule("c");
+
+    assertSame(a.getAttributeContainer().getAttr("deps"),
+        b.getAttributeContainer().getAttr("deps"));
+    assertThat(c.getAttributeContainer().getAttr("deps"))
+        .isNotEqualTo(a.getAttributeContainer().getAttr("deps"));
+    assertSame(a.getVisibility(), b.getVisibility());
+    assertSame(a.getVisibility(), c.getVisibility());
+  }
+
   @Test
   public void testBadRuleName() throws Exception {
     events.setFailFast(false);
@@ -0,0 +1,188 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+import com.google.devtools.build.lib.profiler.Profiler.ProfiledTaskKinds;
+import com.google.devtools.build.lib.testutil.FoundationTestCase;
+import com.google.devtools.build.lib.util.BlazeClock;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ChromeTraceWriter}. */
+@RunWith(JUnit4.class)
+public class ChromeTraceWriterTest extends FoundationTestCase {
+
+  private final Profiler profiler = Profiler.instance();
+
+  private static List<JsonObject> parseEvents(String json) {
+    JsonArray array =
+        new JsonParser().parse(json).getAsJsonObject().getAsJsonArray("traceEvents");
+    List<JsonObject> events = new ArrayList<>();
+    for (JsonElement element : array) {
+      events.add(element.getAsJsonObject());
+    }
+    return events;
+  }
+
+  private static List<JsonObject> eventsOfPhase(List<JsonObject> events, String phase) {
+    List<JsonObject> result = new ArrayList<>();
+    for (JsonObject event : events) {
+      if (event.get("ph").getAsString().equals(phase)) {
+        result.add(event);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testWritesTasksAndActionCounter() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ChromeTraceWriter writer = new ChromeTraceWriter(out, "comment")) {
+      writer.writeTask(1, "main", ProfilerTask.PHASE, "Load packages", 0, 0);
+      writer.writeTask(2, null, ProfilerTask.ACTION, "action 1", 1000000, 3000000);
+      writer.writeTask(3, null, ProfilerTask.ACTION, "action \"2\"\n", 2000000, 3000000);
+      writer.writeTask(3, null, ProfilerTask.VFS_STAT, "/some/file", 2500000, 1000);
+    }
+
+    List<JsonObject> events = parseEvents(out.toString("UTF-8"));
+    List<JsonObject> threadNames = eventsOfPhase(events, "M");
+    assertThat(threadNames).hasSize(3);
+    assertThat(threadNames.get(0).getAsJsonObject("args").get("name").getAsString())
+        .isEqualTo("main");
+    assertThat(threadNames.get(1).getAsJsonObject("args").get("name").getAsString())
+        .isEqualTo("thread 2");
+
+    JsonObject phase = eventsOfPhase(events, "i").get(0);
+    assertThat(phase.get("s").getAsString()).isEqualTo("g");
+    assertThat(phase.get("cat").getAsString()).isEqualTo("general,PHASE");
+
+    List<JsonObject> tasks = eventsOfPhase(events, "X");
+    assertThat(tasks).hasSize(3);
+    assertThat(tasks.get(1).get("name").getAsString()).isEqualTo("action \"2\"\n");
+    assertThat(tasks.get(1).get("cat").getAsString()).isEqualTo("action,ACTION");
+    assertThat(tasks.get(1).get("ts").getAsLong()).isEqualTo(2000);
+    assertThat(tasks.get(1).get("dur").getAsLong()).isEqualTo(3000);
+    assertThat(tasks.get(1).get("tid").getAsLong()).isEqualTo(3);
+    assertThat(tasks.get(2).get("cat").getAsString()).isEqualTo("vfs,VFS_STAT");
+
+    List<Integer> running = new ArrayList<>();
+    for (JsonObject counter : eventsOfPhase(events, "C")) {
+      assertThat(counter.get("name").getAsString()).isEqualTo("actions");
+      running.add(counter.getAsJsonObject("args").get("running").getAsInt());
+    }
+    assertThat(running).containsExactly(1, 2, 1, 0).inOrder();
+  }
+
+  @Test
+  public void testConvertsBinaryProfile() throws Exception {
+    Path profileFile = scratch.resolve("/tmp/profile.dat");
+    FileSystemUtils.createDirectoryAndParents(profileFile.getParentDirectory());
+    profiler.start(ProfiledTaskKinds.ALL, profileFile.getOutputStream(), "convert test", false,
+        BlazeClock.instance(), BlazeClock.instance().nanoTime());
+    profiler.markPhase(ProfilePhase.LOAD);
+    profiler.startTask(ProfilerTask.ACTION, "action task");
+    profiler.logSimpleTaskDuration(Profiler.nanoTimeMaybe(), 100000000, ProfilerTask.VFS_STAT,
+        "stat");
+    Thread.sleep(10);
+    profiler.completeTask(ProfilerTask.ACTION);
+    profiler.stop();
+
+    Path traceFile = scratch.resolve("/tmp/profile.dat.json");
+    assertThat(ChromeTraceWriter.convert(profileFile, traceFile)).isTrue();
+
+    List<JsonObject> events =
+        parseEvents(new String(FileSystemUtils.readContent(traceFile), UTF_8));
+    List<String> names = new ArrayList<>();
+    for (JsonObject event : eventsOfPhase(events, "X")) {
+      names.add(event.get("name").getAsString());
+    }
+    assertThat(names).containsExactly("stat", "action task");
+    assertThat(eventsOfPhase(events, "i")).hasSize(2); // The phase marker and "Finishing".
+    assertThat(eventsOfPhase(events, "C")).hasSize(2);
+  }
+
+  @Test
+  public void testConvertsTruncatedProfile() throws Exception {
+    Path profileFile = scratch.resolve("/tmp/profile.dat");
+    FileSystemUtils.createDirectoryAndParents(profileFile.getParentDirectory());
+    profiler.start(ProfiledTaskKinds.ALL, profileFile.getOutputStream(), "convert test", false,
+        BlazeClock.instance(), BlazeClock.instance().nanoTime());
+    for (int i = 0; i < 1000; i++) {
+      profiler.logEvent(ProfilerTask.TEST, "event " + i);
+    }
+    profiler.stop();
+    byte[] content = FileSystemUtils.readContent(profileFile);
+    FileSystemUtils.writeContent(profileFile, Arrays.copyOf(content, 2000));
+
+    Path traceFile = scratch.resolve("/tmp/profile.dat.json");
+    assertThat(ChromeTraceWriter.convert(profileFile, traceFile)).isFalse();
+    List<JsonObject> events =
+        parseEvents(new String(FileSystemUtils.readContent(traceFile), UTF_8));
+    assertThat(eventsOfPhase(events, "i")).isNotEmpty();
+  }
+
+  @Test
+  public void testDoesNotCreateTraceForInvalidProfile() throws Exception {
+    Path profileFile = scratch.file("/tmp/profile.dat", "not a profile");
+    Path traceFile = scratch.resolve("/tmp/profile.dat.json");
+    try {
+      ChromeTraceWriter.convert(profileFile, traceFile);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertThat(traceFile.exists()).isFalse();
+  }
+
+  @Test
+  public void testProfilerWritesTraceDirectly() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    profiler.start(ProfiledTaskKinds.ALL, out, Profiler.Format.JSON_TRACE_FILE_FORMAT,
+        "direct test", false, BlazeClock.instance(), BlazeClock.instance().nanoTime());
+    profiler.startTask(ProfilerTask.ACTION, "action task");
+    Thread.sleep(10);
+    profiler.completeTask(ProfilerTask.ACTION);
+    profiler.stop();
+
+    String json = new String(out.toByteArray(), UTF_8);
+    assertThat(new JsonParser().parse(json).getAsJsonObject().getAsJsonObject("otherData")
+        .get("comment").getAsString()).isEqualTo("direct test");
+    List<JsonObject> events = parseEvents(json);
+    assertThat(eventsOfPhase(events, "M").get(0).getAsJsonObject("args").get("name")
+        .getAsString()).isEqualTo(Thread.currentThread().getName());
+    assertThat(eventsOfPhase(events, "X").get(0).get("name").getAsString())
+        .isEqualTo("action task");
+    List<String> counters = new ArrayList<>();
+    for (JsonObject counter : eventsOfPhase(events, "C")) {
+      counters.add(counter.get("name").getAsString());
+    }
+    assertThat(counters).containsExactly("memory", "actions", "actions");
+  }
+}
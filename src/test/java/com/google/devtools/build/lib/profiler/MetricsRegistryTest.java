@@ -0,0 +1,130 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.devtools.build.lib.profiler.MetricsRegistry.Counter;
+import com.google.devtools.build.lib.profiler.MetricsRegistry.Histogram;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link MetricsRegistry}. */
+@RunWith(JUnit4.class)
+public class MetricsRegistryTest {
+
+  private final MetricsRegistry registry = new MetricsRegistry();
+
+  private String getText() throws Exception {
+    StringBuilder text = new StringBuilder();
+    registry.writeText(text);
+    return text.toString();
+  }
+
+  @Test
+  public void testCounter() throws Exception {
+    Counter counter = registry.counter("test_total", "Test counter.");
+    counter.increment();
+    counter.add(2);
+    assertThat(registry.counter("test_total", "Ignored.")).isSameAs(counter);
+    assertThat(counter.get()).isEqualTo(3);
+    assertThat(getText())
+        .isEqualTo("# HELP test_total Test counter.\n# TYPE test_total counter\ntest_total 3\n");
+  }
+
+  @Test
+  public void testHistogram() throws Exception {
+    Histogram histogram = registry.histogram("test_seconds", "Test histogram.");
+    histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(500));
+    histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(150));
+    histogram.recordNanos(TimeUnit.MINUTES.toNanos(2));
+    assertThat(histogram.getCount()).isEqualTo(4);
+    String text = getText();
+    assertThat(text).contains("# TYPE test_seconds histogram\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"0.001\"} 2\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"0.002\"} 2\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"0.1\"} 2\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"0.2\"} 3\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"60.0\"} 3\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"+Inf\"} 4\n");
+    assertThat(text).contains("test_seconds_sum 120.1515\n");
+    assertThat(text).contains("test_seconds_count 4\n");
+  }
+
+  @Test
+  public void testHistogramBucketsIncludeUpperBound() throws Exception {
+    Histogram histogram = registry.histogram("test_seconds", "Test histogram.");
+    histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(2));
+    histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(2) + 1);
+    histogram.recordNanos(TimeUnit.MINUTES.toNanos(1));
+    String text = getText();
+    assertThat(text).contains("test_seconds_bucket{le=\"0.001\"} 0\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"0.002\"} 1\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"0.005\"} 2\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"30.0\"} 2\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"60.0\"} 3\n");
+    assertThat(text).contains("test_seconds_bucket{le=\"+Inf\"} 3\n");
+  }
+
+  @Test
+  public void testGauge() throws Exception {
+    final long[] value = {7};
+    registry.registerGauge("test_gauge", "Test gauge.", new MetricsRegistry.Gauge() {
+      @Override
+      public long getValue() {
+        return value[0];
+      }
+    });
+    assertThat(getText()).contains("test_gauge 7\n");
+    value[0] = 8;
+    assertThat(getText()).contains("test_gauge 8\n");
+    registry.removeGauge("test_gauge");
+    assertThat(getText()).isEmpty();
+  }
+
+  @Test
+  public void testResetKeepsMetrics() throws Exception {
+    Counter counter = registry.counter("b_total", "Counter.");
+    Histogram histogram = registry.histogram("a_seconds", "Histogram.");
+    counter.increment();
+    histogram.recordNanos(1);
+    registry.reset();
+    assertThat(counter.get()).isEqualTo(0);
+    assertThat(histogram.getCount()).isEqualTo(0);
+    String text = getText();
+    // Metrics are sorted by name.
+    assertThat(text.indexOf("a_seconds_count 0")).isLessThan(text.indexOf("b_total 0"));
+  }
+
+  @Test
+  public void testNameConflicts() throws Exception {
+    registry.counter("test_total", "Test counter.");
+    try {
+      registry.histogram("test_total", "Test histogram.");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+    try {
+      registry.counter("invalid name", "Test counter.");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+}
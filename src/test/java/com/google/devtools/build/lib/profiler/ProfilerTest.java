@@ -20,12 +20,14 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import com.google.common.io.ByteStreams;
 import com.google.devtools.build.lib.profiler.Profiler.ProfiledTaskKinds;
 import com.google.devtools.build.lib.testutil.FoundationTestCase;
 import com.google.devtools.build.lib.testutil.Suite;
 import com.google.devtools.build.lib.testutil.TestSpec;
 import com.google.devtools.build.lib.util.BlazeClock;
 import com.google.devtools.build.lib.util.Clock;
+import com.google.devtools.build.lib.util.VarInt;
 import com.google.devtools.build.lib.vfs.FileSystemUtils;
 import com.google.devtools.build.lib.vfs.Path;
 
@@ -34,8 +36,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
@@ -439,6 +444,110 @@ public class ProfilerTest extends FoundationTestCase {
     profiler.stop();
   }
 
+  @Test
+  public void testEqualStringDescriptionsAreStoredOnce() throws Exception {
+    Path cacheFile = cacheDir.getRelative("profile6.dat");
+    profiler.start(ProfiledTaskKinds.ALL, cacheFile.getOutputStream(), "description test", false,
+        BlazeClock.instance(), BlazeClock.instance().nanoTime());
+    for (int i = 0; i < 1000; i++) {
+      profiler.logEvent(ProfilerTask.TEST, new String("repeated description"));
+    }
+    profiler.stop();
+
+    ProfileInfo info = ProfileInfo.loadProfile(cacheFile);
+    info.calculateStats();
+    assertThat(info.allTasksById).hasSize(1001);
+    assertEquals("repeated description", info.allTasksById.get(999).getDescription());
+
+    InputStream in = new InflaterInputStream(cacheFile.getInputStream(), new Inflater(false));
+    String content = new String(ByteStreams.toByteArray(in), ISO_8859_1);
+    in.close();
+    int first = content.indexOf("repeated description");
+    assertTrue(first > 0);
+    assertEquals(-1, content.indexOf("repeated description", first + 1));
+  }
+
+  @Test
+  public void testPeriodicSaveWritesPartialBuffers() throws Exception {
+    ByteArrayOutputStream trace = new ByteArrayOutputStream();
+    profiler.start(ProfiledTaskKinds.ALL, trace, Profiler.Format.JSON_TRACE_FILE_FORMAT,
+        "partial test", false, BlazeClock.instance(), BlazeClock.instance().nanoTime());
+    try {
+      profiler.logEvent(ProfilerTask.TEST, "before save");
+      // Wait for the timer to save the buffer of this thread, which is far from full.
+      for (int i = 0; i < 100 && !trace.toString("UTF-8").contains("before save"); i++) {
+        Thread.sleep(100);
+      }
+      assertThat(trace.toString("UTF-8")).contains("before save");
+      // The thread continues with a new buffer.
+      profiler.logEvent(ProfilerTask.TEST, "after save");
+    } finally {
+      profiler.stop();
+    }
+    assertThat(trace.toString("UTF-8")).contains("after save");
+  }
+
+  @Test
+  public void testLongDescription() throws Exception {
+    Path cacheFile = cacheDir.getRelative("profile7.dat");
+    profiler.start(ProfiledTaskKinds.ALL, cacheFile.getOutputStream(), "description test", false,
+        BlazeClock.instance(), BlazeClock.instance().nanoTime());
+    char[] chars = new char[100000];
+    Arrays.fill(chars, '\u00e9');
+    String description = new String(chars);
+    profiler.logEvent(ProfilerTask.TEST, description);
+    profiler.logEvent(ProfilerTask.TEST, "short description");
+    profiler.stop();
+
+    ProfileInfo info = ProfileInfo.loadProfile(cacheFile);
+    info.calculateStats();
+    assertFalse(info.isCorruptedOrIncomplete());
+    assertEquals(description, info.allTasksById.get(0).getDescription());
+    assertEquals("short description", info.allTasksById.get(1).getDescription());
+  }
+
+  @Test
+  public void testLoadPreviousVersion() throws Exception {
+    Path cacheFile = cacheDir.getRelative("profile8.dat");
+    DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+        cacheFile.getOutputStream(), new Deflater(Deflater.BEST_SPEED, false), 65536));
+    out.writeInt(Profiler.MAGIC);
+    out.writeInt(Profiler.PREVIOUS_VERSION);
+    out.writeUTF("old profile");
+    out.writeInt(ProfilerTask.TASK_COUNT);
+    for (ProfilerTask type : ProfilerTask.values()) {
+      out.writeUTF(type.toString());
+    }
+    for (int id = 1; id <= 2; id++) {
+      ByteBuffer record = ByteBuffer.allocate(100);
+      VarInt.putVarLong(42, record); // thread id
+      VarInt.putVarInt(id, record);
+      VarInt.putVarInt(0, record); // parent id
+      VarInt.putVarLong(1000 * id, record); // start time
+      VarInt.putVarLong(100, record); // duration
+      VarInt.putVarInt(id - 1, record); // description index + 1
+      record.put((byte) ProfilerTask.TEST.ordinal());
+      out.writeInt(record.position());
+      out.write(record.array(), 0, record.position());
+      if (id == 1) {
+        out.writeUTF("old task");
+      }
+    }
+    out.writeInt(Profiler.PREVIOUS_EOF_MARKER);
+    out.close();
+
+    ProfileInfo info = ProfileInfo.loadProfile(cacheFile);
+    info.calculateStats();
+    assertFalse(info.isCorruptedOrIncomplete());
+    assertEquals("old profile", info.comment);
+    assertThat(info.allTasksById).hasSize(2);
+    for (ProfileInfo.Task task : info.allTasksById) {
+      assertEquals(42, task.threadId);
+      assertEquals(ProfilerTask.TEST, task.type);
+      assertEquals("old task", task.getDescription());
+    }
+  }
+
   private Clock getTestClock() {
     return BlazeClock.instance();
   }
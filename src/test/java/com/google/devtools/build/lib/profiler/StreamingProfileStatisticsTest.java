@@ -0,0 +1,239 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.profiler;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.devtools.build.lib.profiler.ProfileInfo.InfoListener;
+import com.google.devtools.build.lib.profiler.Profiler.ProfiledTaskKinds;
+import com.google.devtools.build.lib.profiler.statistics.MultiProfileStatistics;
+import com.google.devtools.build.lib.profiler.statistics.PhaseStatistics;
+import com.google.devtools.build.lib.profiler.statistics.PhaseSummaryStatistics;
+import com.google.devtools.build.lib.profiler.statistics.PhaseVfsStatistics;
+import com.google.devtools.build.lib.profiler.statistics.SkylarkStatistics;
+import com.google.devtools.build.lib.profiler.statistics.StreamingProfileStatistics;
+import com.google.devtools.build.lib.profiler.statistics.TasksStatistics;
+import com.google.devtools.build.lib.testutil.FoundationTestCase;
+import com.google.devtools.build.lib.util.BlazeClock;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link StreamingProfileStatistics} and {@link MultiProfileStatistics}. */
+@RunWith(JUnit4.class)
+public class StreamingProfileStatisticsTest extends FoundationTestCase {
+
+  private static final String WORKSPACE = "workspace";
+
+  private final Profiler profiler = Profiler.instance();
+  private Path profileDir;
+
+  @Before
+  public final void createProfileDirectory() throws Exception {
+    profileDir = scratch.dir("/tmp/profiles");
+  }
+
+  /** Writes a profile with nested, aggregated and concurrent tasks in three phases. */
+  private Path writeProfile(String name, final int calls) throws Exception {
+    Path profileFile = profileDir.getRelative(name);
+    profiler.start(ProfiledTaskKinds.ALL, profileFile.getOutputStream(), "streaming test", false,
+        BlazeClock.instance(), BlazeClock.instance().nanoTime());
+    profiler.markPhase(ProfilePhase.LOAD);
+    for (int i = 0; i < calls; i++) {
+      profiler.startTask(ProfilerTask.SKYLARK_USER_FN, "function" + (i % 3));
+      long now = Profiler.nanoTimeMaybe();
+      profiler.logSimpleTaskDuration(now, 2000000, ProfilerTask.SKYLARK_BUILTIN_FN, "builtin");
+      // Recorded as a task of its own.
+      profiler.logSimpleTaskDuration(
+          now, 20000000, ProfilerTask.VFS_STAT, "/root/" + WORKSPACE + "/file" + (i % 5));
+      // Only aggregated into the statistics of the parent.
+      profiler.logSimpleTaskDuration(now, 1000, ProfilerTask.VFS_STAT, "/root/short");
+      profiler.completeTask(ProfilerTask.SKYLARK_USER_FN);
+    }
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < calls; i++) {
+          profiler.startTask(ProfilerTask.SKYFUNCTION, "skyfunction");
+          profiler.logSimpleTaskDuration(
+              Profiler.nanoTimeMaybe(), 30000000, ProfilerTask.VFS_READ, "/root/read");
+          profiler.completeTask(ProfilerTask.SKYFUNCTION);
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+    profiler.markPhase(ProfilePhase.ANALYZE);
+    profiler.logEvent(ProfilerTask.INFO, "empty phase");
+    profiler.markPhase(ProfilePhase.EXECUTE);
+    for (int i = 0; i < calls; i++) {
+      profiler.startTask(ProfilerTask.ACTION, "action " + i);
+      profiler.logSimpleTaskDuration(
+          Profiler.nanoTimeMaybe(), 15000000, ProfilerTask.VFS_MD5, "/root/output" + i);
+      profiler.logSimpleTaskDuration(Profiler.nanoTimeMaybe(), 100, ProfilerTask.VFS_OPEN, "x");
+      profiler.completeTask(ProfilerTask.ACTION);
+    }
+    profiler.stop();
+    return profileFile;
+  }
+
+  private static ProfileInfo loadProfileInfo(Path profileFile) throws Exception {
+    ProfileInfo info = ProfileInfo.loadProfile(profileFile);
+    info.calculateStats();
+    return info;
+  }
+
+  private static Map<String, String> toStrings(Map<String, TasksStatistics> statistics) {
+    return ImmutableMap.copyOf(Maps.transformValues(statistics, Functions.toStringFunction()));
+  }
+
+  private static void assertSamePhaseStatistics(PhaseStatistics expected, PhaseStatistics actual) {
+    assertThat(actual.wasExecuted()).isEqualTo(expected.wasExecuted());
+    assertThat(actual.isEmpty()).isEqualTo(expected.isEmpty());
+    assertThat(actual.getPhaseDurationNanos()).isEqualTo(expected.getPhaseDurationNanos());
+    assertThat(ImmutableList.copyOf(actual)).isEqualTo(ImmutableList.copyOf(expected));
+    for (ProfilerTask type : ProfilerTask.values()) {
+      assertThat(actual.getCount(type)).isEqualTo(expected.getCount(type));
+      assertThat(actual.getTotalDurationNanos(type))
+          .isEqualTo(expected.getTotalDurationNanos(type));
+      assertThat(actual.getTotalRelativeDuration(type))
+          .isEqualTo(expected.getTotalRelativeDuration(type));
+    }
+    PhaseVfsStatistics expectedVfs = expected.getVfsStatistics();
+    PhaseVfsStatistics actualVfs = actual.getVfsStatistics();
+    assertThat(ImmutableList.copyOf(actualVfs)).isEqualTo(ImmutableList.copyOf(expectedVfs));
+    for (ProfilerTask type : expectedVfs) {
+      assertThat(actualVfs.getSortedStatistics(type))
+          .containsExactlyElementsIn(expectedVfs.getSortedStatistics(type))
+          .inOrder();
+    }
+  }
+
+  private static void assertSameSkylarkStatistics(
+      SkylarkStatistics expected, SkylarkStatistics actual) {
+    assertThat(actual.getUserTotalNanos()).isEqualTo(expected.getUserTotalNanos());
+    assertThat(actual.getBuiltinTotalNanos()).isEqualTo(expected.getBuiltinTotalNanos());
+    assertThat(toStrings(actual.getUserFunctionStatistics()))
+        .isEqualTo(toStrings(expected.getUserFunctionStatistics()));
+    assertThat(toStrings(actual.getUserFunctionSelfStatistics()))
+        .isEqualTo(toStrings(expected.getUserFunctionSelfStatistics()));
+    assertThat(toStrings(actual.getBuiltinFunctionStatistics()))
+        .isEqualTo(toStrings(expected.getBuiltinFunctionStatistics()));
+    assertThat(toStrings(actual.getBuiltinFunctionSelfStatistics()))
+        .isEqualTo(toStrings(expected.getBuiltinFunctionSelfStatistics()));
+  }
+
+  private static void assertSameStatistics(ProfileInfo info, StreamingProfileStatistics actual) {
+    PhaseSummaryStatistics expectedSummary = new PhaseSummaryStatistics(info);
+    PhaseSummaryStatistics actualSummary = actual.getSummaryStatistics();
+    assertThat(ImmutableList.copyOf(actualSummary))
+        .isEqualTo(ImmutableList.copyOf(expectedSummary));
+    for (ProfilePhase phase : expectedSummary) {
+      assertThat(actualSummary.getDurationNanos(phase))
+          .isEqualTo(expectedSummary.getDurationNanos(phase));
+    }
+    for (ProfilePhase phase : ProfilePhase.values()) {
+      assertSamePhaseStatistics(
+          new PhaseStatistics(phase, info, WORKSPACE, true),
+          actual.getPhaseStatistics().get(phase));
+    }
+    assertSameSkylarkStatistics(new SkylarkStatistics(info), actual.getSkylarkStatistics());
+  }
+
+  @Test
+  public void testSameStatisticsAsProfileInfo() throws Exception {
+    Path profileFile = writeProfile("profile.dat", 50);
+
+    StreamingProfileStatistics statistics =
+        StreamingProfileStatistics.create(profileFile, WORKSPACE, true);
+
+    ProfileInfo info = loadProfileInfo(profileFile);
+    assertThat(statistics.isCorruptedOrIncomplete()).isFalse();
+    assertThat(statistics.getComment()).isEqualTo("streaming test");
+    assertThat(statistics.getRecordCount()).isEqualTo(info.allTasksById.size());
+    assertThat(statistics.getSummaryStatistics().contains(ProfilePhase.EXECUTE)).isTrue();
+    assertThat(statistics.getPhaseStatistics().get(ProfilePhase.LOAD)
+        .getVfsStatistics().getStatisticsCount(ProfilerTask.VFS_STAT)).isEqualTo(5);
+    assertSameStatistics(info, statistics);
+  }
+
+  @Test
+  public void testTruncatedProfile() throws Exception {
+    Path profileFile = writeProfile("profile.dat", 500);
+    byte[] content = FileSystemUtils.readContent(profileFile);
+    FileSystemUtils.writeContent(profileFile, Arrays.copyOf(content, content.length * 2 / 3));
+
+    StreamingProfileStatistics statistics =
+        StreamingProfileStatistics.create(profileFile, WORKSPACE, true);
+
+    ProfileInfo info = loadProfileInfo(profileFile);
+    assertThat(statistics.isCorruptedOrIncomplete()).isTrue();
+    assertThat(statistics.getRecordCount()).isEqualTo(info.allTasksById.size());
+    assertSameStatistics(info, statistics);
+  }
+
+  @Test
+  public void testCombinesProfilesInOrder() throws Exception {
+    writeProfile("first.dat", 20);
+    writeProfile("second.dat", 30);
+    final List<String> messages = new ArrayList<>();
+    InfoListener listener = new InfoListener() {
+      @Override
+      public void info(String text) {
+        messages.add(text);
+      }
+
+      @Override
+      public void warn(String text) {
+        messages.add("warning: " + text);
+      }
+    };
+
+    MultiProfileStatistics statistics = new MultiProfileStatistics(profileDir, WORKSPACE,
+        Arrays.asList("first.dat", "missing.dat", "second.dat"), listener, true, 2);
+
+    assertThat(messages).hasSize(3);
+    assertThat(messages.get(0)).startsWith("first.dat: streaming test, ");
+    assertThat(messages.get(1)).startsWith("warning: Ignoring file missing.dat - cannot load");
+    assertThat(messages.get(2)).startsWith("second.dat: streaming test, ");
+    assertThat(statistics).containsExactly(
+        profileDir.getRelative("first.dat"), profileDir.getRelative("second.dat"));
+
+    PhaseStatistics first = statistics.getPhaseStatistics(profileDir.getRelative("first.dat"))
+        .get(ProfilePhase.LOAD);
+    PhaseStatistics second = statistics.getPhaseStatistics(profileDir.getRelative("second.dat"))
+        .get(ProfilePhase.LOAD);
+    PhaseStatistics combined = statistics.getSummaryPhaseStatistics(ProfilePhase.LOAD);
+    assertThat(first.getCount(ProfilerTask.SKYLARK_BUILTIN_FN)).isEqualTo(20);
+    assertThat(second.getCount(ProfilerTask.SKYLARK_BUILTIN_FN)).isEqualTo(30);
+    assertThat(combined.getCount(ProfilerTask.SKYLARK_BUILTIN_FN)).isEqualTo(50);
+    assertThat(combined.getPhaseDurationNanos())
+        .isEqualTo(first.getPhaseDurationNanos() + second.getPhaseDurationNanos());
+    assertThat(combined.getVfsStatistics().getSortedStatistics(ProfilerTask.VFS_STAT).first()
+        .getCount()).isEqualTo(10);
+    assertThat(statistics.getSkylarkStatistics().getBuiltinFunctionDurations().get("builtin")
+        .size()).isEqualTo(50);
+  }
+}
@@ -15,6 +15,7 @@ package com.google.devtools.build.lib.shell;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.devtools.build.lib.shell.TestUtil.assertArrayEquals;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -35,6 +36,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.Collections;
 import java.util.Map;
 import java.util.logging.Level;
@@ -533,6 +535,23 @@ public class CommandTest {
     assertEquals(0, result.getStdout().length);
   }
 
+  @Test
+  public void testRedirectToFiles() throws Exception {
+    File stdout = File.createTempFile("stdout", null);
+    File stderr = File.createTempFile("stderr", null);
+    try {
+      Command command = new Command(new String[] {"/bin/sh", "-c", "echo out; echo err >&2"});
+      CommandResult result = command.execute(
+          Command.NO_INPUT, Command.NO_OBSERVER, stdout, stderr, false);
+      assertTrue(result.getTerminationStatus().success());
+      assertEquals("out\n", new String(Files.readAllBytes(stdout.toPath()), UTF_8));
+      assertEquals("err\n", new String(Files.readAllBytes(stderr.toPath()), UTF_8));
+    } finally {
+      stdout.delete();
+      stderr.delete();
+    }
+  }
+
   @Test
   public void testOutputStreamThrowsException() throws Exception {
     OutputStream out = new OutputStream () {
@@ -0,0 +1,96 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.build.lib.actions.ActionInputHelper;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.Artifact.SpecialArtifact;
+import com.google.devtools.build.lib.actions.Artifact.SpecialArtifactType;
+import com.google.devtools.build.lib.actions.ArtifactOwner;
+import com.google.devtools.build.lib.actions.Root;
+import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ConcurrentArtifactPathTrie}. */
+@RunWith(JUnit4.class)
+public class ConcurrentArtifactPathTrieTest {
+
+  private Root root;
+  private final ConcurrentArtifactPathTrie trie = new ConcurrentArtifactPathTrie();
+
+  @Before
+  public final void createRoot() throws Exception {
+    Scratch scratch = new Scratch();
+    scratch.dir("/exec");
+    root = Root.asDerivedRoot(scratch.dir("/exec/out"));
+  }
+
+  private Artifact artifact(String path) {
+    return new Artifact(new PathFragment(path), root);
+  }
+
+  private Artifact treeArtifact(String path) {
+    PathFragment relpath = new PathFragment(path);
+    return new SpecialArtifact(root.getPath().getRelative(relpath), root,
+        root.getExecPath().getRelative(relpath), ArtifactOwner.NULL_OWNER,
+        SpecialArtifactType.TREE);
+  }
+
+  @Test
+  public void testSiblingsDoNotConflict() {
+    assertThat(trie.add(artifact("a/b"))).isTrue();
+    assertThat(trie.add(artifact("a/c"))).isTrue();
+    assertThat(trie.add(artifact("a/bc"))).isTrue();
+    // The same path can be added by several shared actions.
+    assertThat(trie.add(artifact("a/b"))).isTrue();
+  }
+
+  @Test
+  public void testPrefixConflicts() {
+    assertThat(trie.add(artifact("a/b"))).isTrue();
+    assertThat(trie.add(artifact("a/b/c"))).isFalse();
+
+    ConcurrentArtifactPathTrie otherTrie = new ConcurrentArtifactPathTrie();
+    assertThat(otherTrie.add(artifact("a/b/c"))).isTrue();
+    assertThat(otherTrie.add(artifact("a/b"))).isFalse();
+  }
+
+  @Test
+  public void testRemoveResolvesConflict() {
+    Artifact ab = artifact("a/b");
+    assertThat(trie.add(ab)).isTrue();
+    assertThat(trie.add(ab)).isTrue();
+    trie.remove(ab);
+    // Still added once.
+    assertThat(trie.add(artifact("a/b/c"))).isFalse();
+    trie.remove(artifact("a/b/c"));
+    trie.remove(ab);
+    assertThat(trie.add(artifact("a/b/c"))).isTrue();
+  }
+
+  @Test
+  public void testTreeFileArtifactsDoNotConflictWithParent() {
+    Artifact tree = treeArtifact("a/tree");
+    Artifact child = ActionInputHelper.treeFileArtifact(tree, new PathFragment("b/c"));
+    assertThat(trie.add(tree)).isTrue();
+    assertThat(trie.add(child)).isTrue();
+    assertThat(trie.add(artifact("a/tree/d"))).isFalse();
+  }
+}
@@ -514,6 +514,17 @@ public abstract class GlobFunctionTest {
         "BUILD");
   }
 
+  @Test
+  public void testRunsOfDoubleStarShareKey() throws Exception {
+    assertThat(GlobValue.normalizePattern("**/**")).isEqualTo("**");
+    assertThat(GlobValue.normalizePattern("foo/**/**/**/bar/**/**")).isEqualTo("foo/**/bar/**");
+    assertThat(GlobValue.normalizePattern("**/*/**")).isEqualTo("**/*/**");
+    assertEquals(
+        GlobValue.key(PKG_ID, root, "foo/**/wiz", false, PathFragment.EMPTY_FRAGMENT),
+        GlobValue.key(PKG_ID, root, "foo/**/**/wiz", false, PathFragment.EMPTY_FRAGMENT));
+    assertGlobsEqual("foo/**/**/wiz", "foo/**/wiz");
+  }
+
   @Test
   public void testDirectoryWithDoubleStar() throws Exception {
     assertGlobMatches(
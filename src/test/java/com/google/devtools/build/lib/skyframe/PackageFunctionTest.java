@@ -34,9 +34,11 @@ import com.google.devtools.build.lib.packages.util.SubincludePreprocessor;
 import com.google.devtools.build.lib.pkgcache.PackageCacheOptions;
 import com.google.devtools.build.lib.pkgcache.PathPackageLocator;
 import com.google.devtools.build.lib.skyframe.util.SkyframeExecutorTestUtils;
+import com.google.devtools.build.lib.syntax.BuildFileAST;
 import com.google.devtools.build.lib.testutil.ManualClock;
 import com.google.devtools.build.lib.testutil.TestUtils;
 import com.google.devtools.build.lib.util.BlazeClock;
+import com.google.devtools.build.lib.util.Pair;
 import com.google.devtools.build.lib.util.io.TimestampGranularityMonitor;
 import com.google.devtools.build.lib.vfs.Dirent;
 import com.google.devtools.build.lib.vfs.FileStatus;
@@ -55,6 +57,7 @@ import com.google.devtools.build.skyframe.SkyValue;
 import com.google.devtools.common.options.Options;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -527,6 +530,21 @@ public class PackageFunctionTest extends BuildViewTestCase {
         Label.parseAbsolute("//bar:ext.bzl"), Label.parseAbsolute("//qux:ext.bzl"));
   }
 
+  @Test
+  public void testLiteralGlobsAreFoundForPrefetching() throws Exception {
+    BuildFileAST ast = BuildFileAST.parseBuildString(reporter,
+        "load('/bar/ext', 'a')",
+        "cc_library(name = 'a', srcs = glob(['*.cc'], exclude = ['x.cc']))",
+        "cc_library(name = 'b', hdrs = glob(include = ['*.h'], exclude_directories = 0))",
+        "cc_library(name = 'c', srcs = glob([a + '.cc']))",
+        "cc_library(name = 'd', srcs = native.glob(['*.c']))");
+
+    List<Pair<List<String>, Boolean>> globs = PackageFunction.findLiteralGlobs(ast);
+    assertThat(globs).containsExactly(
+        Pair.of(ImmutableList.of("*.cc", "x.cc"), true),
+        Pair.of(ImmutableList.of("*.h"), false));
+  }
+
   @Test
   public void testNonExistingSkylarkExtension() throws Exception {
     reporter.removeHandler(failFastHandler);
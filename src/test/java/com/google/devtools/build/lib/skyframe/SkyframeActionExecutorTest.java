@@ -0,0 +1,140 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.skyframe;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.actions.ActionAnalysisMetadata;
+import com.google.devtools.build.lib.actions.Artifact;
+import com.google.devtools.build.lib.actions.Root;
+import com.google.devtools.build.lib.actions.util.ActionsTestUtil.NullAction;
+import com.google.devtools.build.lib.testutil.Scratch;
+import com.google.devtools.build.lib.vfs.PathFragment;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the artifact conflict checking of {@link SkyframeActionExecutor}. */
+@RunWith(JUnit4.class)
+public class SkyframeActionExecutorTest {
+
+  private Root root;
+  private SkyframeActionExecutor executor;
+
+  @Before
+  public final void createExecutor() throws Exception {
+    Scratch scratch = new Scratch();
+    scratch.dir("/exec");
+    root = Root.asDerivedRoot(scratch.dir("/exec/out"));
+    executor = new SkyframeActionExecutor(null, new AtomicReference<>(null),
+        new AtomicReference<>(null));
+  }
+
+  private ActionLookupValue value(String... outputs) {
+    Artifact[] artifacts = new Artifact[outputs.length];
+    for (int i = 0; i < outputs.length; i++) {
+      artifacts[i] = new Artifact(new PathFragment(outputs[i]), root);
+    }
+    return new ActionLookupValue(
+        ImmutableList.<ActionAnalysisMetadata>of(new NullAction(artifacts)));
+  }
+
+  private void check(ActionLookupValue... values) throws InterruptedException {
+    executor.findAndStoreArtifactConflicts(ImmutableList.copyOf(values), /*incremental=*/ true);
+  }
+
+  @Test
+  public void testConflictIntroducedOnLaterBuildIsReported() throws Exception {
+    ActionLookupValue a = value("pkg/a");
+    ActionLookupValue b = value("pkg/b");
+    check(a, b);
+    assertThat(executor.badActions()).isEmpty();
+
+    ActionLookupValue prefix = value("pkg/a/c");
+    check(a, b, prefix);
+    assertThat(executor.badActions()).isNotEmpty();
+
+    // The conflict is still reported if nothing changes.
+    check(a, b, prefix);
+    assertThat(executor.badActions()).isNotEmpty();
+  }
+
+  @Test
+  public void testRemovingConflictingValueClearsConflict() throws Exception {
+    ActionLookupValue a = value("pkg/a");
+    ActionLookupValue prefix = value("pkg/a/c");
+    ActionLookupValue other = value("other");
+    check(a, other);
+    check(a, other, prefix);
+    assertThat(executor.badActions()).isNotEmpty();
+
+    check(prefix, other);
+    assertThat(executor.badActions()).isEmpty();
+
+    // The next build starts from the state of the conflict-free one.
+    check(a, prefix, other);
+    assertThat(executor.badActions()).isNotEmpty();
+  }
+
+  @Test
+  public void testSharedActionsAcrossRemovedAndAddedValues() throws Exception {
+    ActionLookupValue first = value("pkg/shared");
+    ActionLookupValue second = value("pkg/shared");
+    ActionLookupValue other = value("other");
+    check(first, other);
+
+    // An action shared with a value that stays registered.
+    check(first, second, other);
+    assertThat(executor.badActions()).isEmpty();
+
+    // Removing one of the values keeps the output of the shared action registered.
+    check(second, other);
+    assertThat(executor.badActions()).isEmpty();
+    check(second, other, value("pkg/shared/c"));
+    assertThat(executor.badActions()).isNotEmpty();
+
+    // A value added in the same build that another sharing value is removed.
+    check(second, other);
+    check(first, other);
+    assertThat(executor.badActions()).isEmpty();
+    check(first, other, value("pkg/shared/c"));
+    assertThat(executor.badActions()).isNotEmpty();
+  }
+
+  @Test
+  public void testClearedStateIsRebuilt() throws Exception {
+    ActionLookupValue a = value("pkg/a");
+    check(a);
+    executor.clearConflictCheckState();
+    check(a, value("pkg/a/c"));
+    assertThat(executor.badActions()).isNotEmpty();
+  }
+
+  @Test
+  public void testNonIncrementalCheck() throws Exception {
+    ActionLookupValue a = value("pkg/a");
+    ActionLookupValue prefix = value("pkg/a/c");
+    executor.findAndStoreArtifactConflicts(ImmutableList.of(a, prefix), /*incremental=*/ false);
+    assertThat(executor.badActions()).isNotEmpty();
+
+    executor.findAndStoreArtifactConflicts(ImmutableList.of(a), /*incremental=*/ false);
+    assertThat(executor.badActions()).isEmpty();
+    // Nothing was kept for the incremental check, which starts from scratch.
+    check(a, prefix);
+    assertThat(executor.badActions()).isNotEmpty();
+  }
+}
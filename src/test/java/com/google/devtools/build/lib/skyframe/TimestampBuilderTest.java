@@ -21,6 +21,10 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.devtools.build.lib.actions.ActionCacheChecker.MissReason;
+import com.google.devtools.build.lib.actions.ActionCacheMissEvent;
 import com.google.devtools.build.lib.actions.Artifact;
 import com.google.devtools.build.lib.actions.BuildFailedException;
 import com.google.devtools.build.lib.actions.util.TestAction;
@@ -31,8 +35,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Test suite for TimestampBuilder.
@@ -181,6 +187,39 @@ public class TimestampBuilderTest extends TimestampBuilderTestCase {
     assertFalse(button.pressed); // not rebuilt
   }
 
+  @Test
+  public void testActionCacheMissReasons() throws Exception {
+    // hello -> [action] -> goodbye
+    Artifact hello = createSourceArtifact("hello");
+    BlazeTestUtils.makeEmptyFile(hello.getPath());
+    Artifact goodbye = createDerivedArtifact("goodbye");
+    createActionButton(Sets.newHashSet(hello), Sets.newHashSet(goodbye));
+    final List<MissReason> reasons = new ArrayList<>();
+    EventBus eventBus = new EventBus();
+    eventBus.register(new Object() {
+      @Subscribe
+      public void actionCacheMiss(ActionCacheMissEvent event) {
+        reasons.add(event.getReason());
+      }
+    });
+    eventBusRef.set(eventBus);
+
+    buildArtifacts(cachingBuilder(), goodbye);
+    buildArtifacts(cachingBuilder(), goodbye); // not rebuilt
+    assertThat(reasons).containsExactly(MissReason.NOT_CACHED);
+
+    reasons.clear();
+    hello.getPath().setWritable(true);
+    FileSystemUtils.writeContentAsLatin1(hello.getPath(), "new content");
+    buildArtifacts(cachingBuilder(), goodbye);
+    assertThat(reasons).containsExactly(MissReason.DIFFERENT_FILES);
+
+    reasons.clear();
+    goodbye.getPath().delete();
+    buildArtifacts(cachingBuilder(), goodbye);
+    assertThat(reasons).containsExactly(MissReason.MISSING_OUTPUT);
+  }
+
   @Test
   public void testOnlyModifyingInputContentCausesReexecution() throws Exception {
     // hello -> [action] -> goodbye
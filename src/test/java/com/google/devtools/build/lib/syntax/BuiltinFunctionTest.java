@@ -0,0 +1,69 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.syntax;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.devtools.build.lib.events.Location;
+import com.google.devtools.build.lib.syntax.util.EvaluationTestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for the invocation of {@link BuiltinFunction}s. */
+@RunWith(JUnit4.class)
+public class BuiltinFunctionTest extends EvaluationTestCase {
+
+  private final BuiltinFunction twice =
+      new BuiltinFunction("twice", FunctionSignature.of("x")) {
+        @SuppressWarnings("unused")
+        public Integer invoke(int x) {
+          return 2 * x;
+        }
+      };
+
+  @Before
+  public final void registerFunction() throws Exception {
+    update(twice.getName(), twice);
+  }
+
+  @Test
+  public void testPrimitiveParameter() throws Exception {
+    assertThat(eval("twice(21)")).isEqualTo(42);
+  }
+
+  @Test
+  public void testNoneForPrimitiveParameter() throws Exception {
+    try {
+      eval("twice(None)");
+      fail();
+    } catch (EvalException e) {
+      assertThat(e.getMessage()).contains("'x' is NoneType, but should be int");
+      assertThat(e.getLocation()).isNotNull();
+    }
+  }
+
+  @Test
+  public void testNullForPrimitiveParameter() throws Exception {
+    try {
+      twice.call(new Object[] {null}, null, getEnvironment());
+      fail();
+    } catch (EvalException e) {
+      assertThat(e.getMessage()).contains("'x' is NoneType, but should be int");
+      assertThat(e.getLocation()).isEqualTo(Location.BUILTIN);
+    }
+  }
+}
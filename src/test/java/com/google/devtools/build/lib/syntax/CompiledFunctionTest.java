@@ -0,0 +1,78 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.syntax;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.build.lib.syntax.util.EvaluationTestCase;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests that Skylark functions behave the same before and after they have been compiled to byte
+ * code.
+ */
+@RunWith(JUnit4.class)
+public class CompiledFunctionTest extends EvaluationTestCase {
+
+  @Override
+  protected void beforeInitialization() throws Exception {
+    UserDefinedFunction.setCompileThreshold(1);
+  }
+
+  @After
+  public final void disableCompiler() {
+    UserDefinedFunction.setCompileThreshold(-1);
+  }
+
+  @Test
+  public void testCompiledFunctionReturnsSameResults() throws Exception {
+    eval("def func(s, l):",
+        "  x = s[1:] + s[0]",
+        "  return x + str(l[-1])",
+        "a = func('abc', [1, 2])",
+        "b = func('abc', [1, 2])",
+        "c = func('xyz', [3])");
+    assertThat(lookup("a")).isEqualTo("bca2");
+    assertThat(lookup("b")).isEqualTo("bca2");
+    assertThat(lookup("c")).isEqualTo("yzx3");
+  }
+
+  @Test
+  public void testUnsupportedFunctionIsInterpreted() throws Exception {
+    eval("def func(d, k):",
+        "  d[k] = len(d)",
+        "  return d",
+        "d = {}",
+        "func(d, 'a')",
+        "func(d, 'b')",
+        "func(d, 'c')");
+    assertThat((SkylarkDict<?, ?>) lookup("d")).containsExactly("a", 0, "b", 1, "c", 2);
+  }
+
+  @Test
+  public void testGlobalReferencedBeforeAssignmentAfterCompilation() throws Exception {
+    eval("a = 1",
+        "def func(x):",
+        "  if x:",
+        "    b = a",
+        "    a = 2",
+        "  return x",
+        "func(False)",
+        "func(False)");
+    checkEvalErrorContains("Variable 'a' is referenced before assignment.", "func(True)");
+  }
+}
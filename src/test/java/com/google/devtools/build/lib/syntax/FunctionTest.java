@@ -131,6 +131,50 @@ public class FunctionTest extends EvaluationTestCase {
         "func()\n");
   }
 
+  @Test
+  public void testFunctionDefLocalsAreResolvedToSlots() throws Exception {
+    List<Statement> statements = parseFile(
+        "def func(a, b):",
+        "  c, (d, e) = a, (b, 3)",
+        "  for f in [d]:",
+        "    g = [h for h in [f]]",
+        "  return c.x + len(g)\n");
+    FunctionDefStatement def = (FunctionDefStatement) statements.get(0);
+    AssignmentStatement assignment = (AssignmentStatement) def.getStatements().get(0);
+    ReturnStatement returnStatement = (ReturnStatement) def.getStatements().get(2);
+    BinaryOperatorExpression sum = (BinaryOperatorExpression) returnStatement.getReturnExpression();
+    DotExpression field = (DotExpression) sum.getLhs();
+    FuncallExpression call = (FuncallExpression) sum.getRhs();
+
+    ListLiteral targets = (ListLiteral) assignment.getLValue().getExpression();
+    assertThat(((Identifier) targets.getElements().get(0)).getSlot()).isEqualTo(2);
+    assertThat(((Identifier) field.getObj()).getSlot()).isEqualTo(2);
+    assertThat(field.getField().getSlot()).isEqualTo(-1);
+    assertThat(call.getFunction().getSlot()).isEqualTo(-1);
+    assertThat(((Identifier) call.getArguments().get(0).getValue()).getSlot()).isEqualTo(6);
+  }
+
+  @Test
+  public void testFunctionDefLocalSlotsAreFreshForEachCall() throws Exception {
+    eval("def func(x):",
+        "  if x:",
+        "    y = x",
+        "  return y",
+        "a = func(1)");
+    assertEquals(1, lookup("a"));
+    checkEvalErrorContains("name 'y' is not defined", "func(0)");
+  }
+
+  @Test
+  public void testFunctionDefLocalShadowingMethodName() throws Exception {
+    eval("def func():",
+        "  append = [1]",
+        "  append.append(2)",
+        "  return append",
+        "a = func()");
+    assertThat((Iterable<?>) lookup("a")).containsExactly(1, 2).inOrder();
+  }
+
   @Test
   public void testFunctionDefLocalVariableReferencedAfterAssignment() throws Exception {
     eval("a = 1",
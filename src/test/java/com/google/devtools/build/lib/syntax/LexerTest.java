@@ -15,6 +15,7 @@ package com.google.devtools.build.lib.syntax;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import com.google.devtools.build.lib.events.Event;
@@ -483,4 +484,17 @@ public class LexerTest {
     assertEquals(s.length(), lastErrorLocation.getEndOffset());
     assertEquals("STRING(unterminated) NEWLINE EOF", values(tokens(s)));
   }
+
+  @Test
+  public void testTokensAreScannedOnDemand() throws Exception {
+    Lexer lexer = createLexer("x = 1\ny = $");
+    assertEquals("IDENTIFIER(x) EQUALS INT(1) NEWLINE", values(new Token[] {
+        lexer.nextToken(), lexer.nextToken(), lexer.nextToken(), lexer.nextToken()}));
+    assertNull(lastError);
+
+    assertEquals("IDENTIFIER(y) EQUALS NEWLINE EOF",
+        values(lexer.getTokens().toArray(new Token[0])));
+    assertEquals("/some/path.txt:2: invalid character: '$'", lastError);
+    assertEquals(TokenKind.EOF, lexer.nextToken().kind);
+  }
 }
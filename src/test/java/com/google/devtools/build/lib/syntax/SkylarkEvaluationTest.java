@@ -675,6 +675,21 @@ public class SkylarkEvaluationTest extends EvaluationTest {
         .testLookup("b", Boolean.FALSE);
   }
 
+  @Test
+  public void testJavaCallSiteWithDifferentReceiverClasses() throws Exception {
+    new SkylarkTest()
+        .update("mock", new Mock())
+        .update("sub", new MockSubClass())
+        .setUp("def f(x):",
+            "  return x.with_params(1, named=True) + str(x.is_empty(''))",
+            "a = f(mock)",
+            "b = f(sub)",
+            "c = f(mock)")
+        .testLookup("a", "with_params(1, false, false, true, false, a)True")
+        .testLookup("b", "with_params(1, false, false, true, false, a)True")
+        .testLookup("c", "with_params(1, false, false, true, false, a)True");
+  }
+
   @Test
   public void testJavaCallsNotSkylarkCallable() throws Exception {
     new SkylarkTest()
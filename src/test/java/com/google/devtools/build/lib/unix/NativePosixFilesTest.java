@@ -98,6 +98,35 @@ public class NativePosixFilesTest {
     }
   }
 
+  @Test
+  public void testCopyFile() throws Exception {
+    Path target = workingDir.getRelative("copy");
+    FileSystemUtils.writeContentAsLatin1(testFile, "contents");
+    testFile.setExecutable(true);
+    FileSystemUtils.writeContentAsLatin1(target, "much longer stale contents");
+
+    NativePosixFiles.copyFile(testFile.getPathString(), target.getPathString());
+    assertThat(new String(FileSystemUtils.readContentAsLatin1(target))).isEqualTo("contents");
+
+    Path newTarget = workingDir.getRelative("new_copy");
+    NativePosixFiles.copyFile(testFile.getPathString(), newTarget.getPathString());
+    assertThat(new String(FileSystemUtils.readContentAsLatin1(newTarget)))
+        .isEqualTo("contents");
+    assertThat(newTarget.isExecutable()).isTrue();
+  }
+
+  @Test
+  public void testCopyFileWithMissingSource() throws Exception {
+    Path source = workingDir.getRelative("missing");
+    try {
+      NativePosixFiles.copyFile(source.getPathString(),
+          workingDir.getRelative("copy").getPathString());
+      fail("Expected FileNotFoundException, but wasn't thrown.");
+    } catch (FileNotFoundException e) {
+      assertThat(e).hasMessage(source + " (No such file or directory)");
+    }
+  }
+
   @Test
   public void throwsFilePermissionException() throws Exception {
     File foo = new File("/bin");
@@ -0,0 +1,116 @@
+// Copyright 2016 The Bazel Authors. All rights reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.devtools.build.lib.unix;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.devtools.build.lib.shell.Subprocess;
+import com.google.devtools.build.lib.shell.SubprocessBuilder;
+import com.google.devtools.build.lib.shell.SubprocessBuilder.StreamAction;
+import com.google.devtools.build.lib.testutil.TestUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link UnixSubprocessFactory}. */
+@RunWith(JUnit4.class)
+public class UnixSubprocessFactoryTest {
+  private File workingDir;
+
+  @Before
+  public final void createWorkingDir() throws Exception {
+    workingDir = new File(TestUtils.tmpDir()).getCanonicalFile();
+  }
+
+  private SubprocessBuilder command(String... argv) {
+    return new SubprocessBuilder()
+        .setArgv(ImmutableList.copyOf(argv))
+        .setWorkingDirectory(workingDir);
+  }
+
+  private static String readAll(Subprocess process) throws IOException {
+    return new String(ByteStreams.toByteArray(process.getInputStream()), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testStdinAndStdout() throws Exception {
+    Subprocess process = UnixSubprocessFactory.INSTANCE.create(command("cat"));
+    process.getOutputStream().write("hello\n".getBytes(StandardCharsets.UTF_8));
+    process.getOutputStream().close();
+    assertThat(readAll(process)).isEqualTo("hello\n");
+    process.waitFor();
+    assertThat(process.finished()).isTrue();
+    assertThat(process.exitValue()).isEqualTo(0);
+    process.close();
+  }
+
+  @Test
+  public void testEnvironmentAndWorkingDirectory() throws Exception {
+    Subprocess process = UnixSubprocessFactory.INSTANCE.create(
+        command("/bin/sh", "-c", "echo $FOO; pwd")
+            .setEnv(ImmutableMap.of("FOO", "bar")));
+    assertThat(readAll(process)).isEqualTo("bar\n" + workingDir.getPath() + "\n");
+    process.waitFor();
+    process.close();
+  }
+
+  @Test
+  public void testExitCodeAndSignal() throws Exception {
+    Subprocess process = UnixSubprocessFactory.INSTANCE.create(command("/bin/sh", "-c", "exit 3"));
+    process.waitFor();
+    assertThat(process.exitValue()).isEqualTo(3);
+    process.close();
+
+    process = UnixSubprocessFactory.INSTANCE.create(command("sleep", "100"));
+    assertThat(process.destroy()).isTrue();
+    process.waitFor();
+    assertThat(process.exitValue()).isEqualTo(0x80 + 15);
+    process.close();
+  }
+
+  @Test
+  public void testRedirectToFile() throws Exception {
+    File stdout = new File(workingDir, "stdout");
+    Files.write(stdout.toPath(), "stale".getBytes(StandardCharsets.UTF_8));
+    Subprocess process = UnixSubprocessFactory.INSTANCE.create(
+        command("/bin/sh", "-c", "echo out; echo err >&2")
+            .setStdout(stdout)
+            .setStderr(StreamAction.DISCARD));
+    assertThat(process.getInputStream()).isNull();
+    assertThat(process.getErrorStream()).isNull();
+    process.waitFor();
+    process.close();
+    assertThat(new String(Files.readAllBytes(stdout.toPath()), StandardCharsets.UTF_8))
+        .isEqualTo("out\n");
+  }
+
+  @Test
+  public void testMissingExecutable() throws Exception {
+    try {
+      UnixSubprocessFactory.INSTANCE.create(command("/nonexistent/program"));
+      fail();
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("/nonexistent/program");
+    }
+  }
+}
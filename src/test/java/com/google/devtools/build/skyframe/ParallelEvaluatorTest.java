@@ -443,6 +443,47 @@ public class ParallelEvaluatorTest {
     assertEventCount(1, eventCollector);
   }
 
+  @Test
+  public void restartStateIsKeptAcrossRestarts() throws Exception {
+    graph = new InMemoryGraphImpl();
+    set("a", "a");
+    set("b", "b");
+    final AtomicInteger statesCreated = new AtomicInteger();
+    final Supplier<AtomicInteger> stateSupplier = new Supplier<AtomicInteger>() {
+      @Override
+      public AtomicInteger get() {
+        statesCreated.incrementAndGet();
+        return new AtomicInteger();
+      }
+    };
+    SkyKey top = GraphTester.toSkyKey("top");
+    tester.getOrCreate(top).setBuilder(new SkyFunction() {
+      @Nullable
+      @Override
+      public SkyValue compute(SkyKey skyKey, Environment env) throws InterruptedException {
+        AtomicInteger computations = env.getState(stateSupplier);
+        computations.incrementAndGet();
+        StringValue a = (StringValue) env.getValue(GraphTester.toSkyKey("a"));
+        if (a == null) {
+          return null;
+        }
+        StringValue b = (StringValue) env.getValue(GraphTester.toSkyKey("b"));
+        if (b == null) {
+          return null;
+        }
+        return new StringValue(a.getValue() + b.getValue() + computations.get());
+      }
+
+      @Nullable
+      @Override
+      public String extractTag(SkyKey skyKey) {
+        return null;
+      }
+    });
+    assertEquals("ab3", ((StringValue) eval(false, top)).getValue());
+    assertEquals(1, statesCreated.get());
+  }
+
   @Test
   public void storedEventFilter() throws Exception {
     graph = new InMemoryGraphImpl();